@@ -0,0 +1,322 @@
+package batch;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+
+import functions.CoolingSchedule.SCHEDULE;
+
+/**
+ * One optimization job for BatchRunner, read from a JSON job file. Everything except the input directory and the sensors is optional:
+ * <pre>
+ * {
+ *   "name": "pressure_and_tds",
+ *   "input": "C:/DREAM/HDF5_Example",
+ *   "output": "C:/DREAM/Results_pressure_and_tds",
+ *   "scenarios": {"s1": 1.0, "s2": 0.5},
+ *   "sensors": [
+ *     {"parameter": "pressure", "alias": "P", "cost": 100, "trigger": "rel", "threshold": "+0.1", "minZ": -500, "maxZ": 0},
+ *     {"parameter": "tds", "trigger": "above", "threshold": "1500"}
+ *   ],
+ *   "tests": [{"Any Technology": 1}, {"pressure": 1, "tds": 1}],
+ *   "budget": 1000, "wells": 10, "exclusionRadius": 0, "wellCost": 1000, "wellDepthCost": 60, "remediationCost": 0,
+ *   "iterations": 1000, "runs": 1, "seed": 10, "parallelRuns": false, "guidedMutation": false, "plots": false,
+ *   "coolingSchedule": "exponential", "earlyStop": false, "optimizer": "annealing", "greedyStart": false,
+ *   "checkpointInterval": 300, "resume": false
+ * }
+ * </pre>
+ * Scenarios can also be a plain list of names (all weighted 1), and default to every scenario in the input directory.
+ * The optimizer is annealing or greedy, greedy builds a single design with LazyGreedy and ignores the annealing settings.
+ * Annealing runs save a checkpoint in the output directory every checkpointInterval seconds (0 for none), and resume picks
+ * up from it after a crash or a cancel, provided the job is otherwise unchanged.
+ * Triggers and thresholds use the same text as the IAM files: below, above, rel or abs, with a +/- on the threshold for the change direction.
+ */
+
+public class BatchJob {
+
+	public String name;
+	public String input;
+	public String output;
+	public Map<String, Float> scenarios = new LinkedHashMap<String, Float>(); // Empty for every scenario
+	public List<Sensor> sensors = new ArrayList<Sensor>();
+	public List<Map<String, Integer>> tests = new ArrayList<Map<String, Integer>>();
+	public float budget = 0;
+	public int wells = 10;
+	public float exclusionRadius = 0;
+	public float wellCost = 1000;
+	public float wellDepthCost = 60;
+	public float remediationCost = 0;
+	public int iterations = 1000;
+	public int runs = 1;
+	public long seed = 10; // Same seed the wizard uses
+	public boolean parallelRuns = false;
+	public boolean guidedMutation = false;
+	public SCHEDULE coolingSchedule = SCHEDULE.EXPONENTIAL;
+	public boolean earlyStop = false;
+	public boolean greedy = false; // "optimizer": "greedy" instead of "annealing"
+	public boolean greedyStart = false;
+	public int checkpointInterval = 300; // Seconds
+	public boolean resume = false;
+	public boolean plots = false;
+
+	public static class Sensor {
+		public String name; // Defaults to the parameter, used by the tests
+		public String parameter;
+		public String alias;
+		public float cost = 100;
+		public String trigger;
+		public String threshold;
+		public Float minZ; // null for the whole domain
+		public Float maxZ;
+	}
+
+	public static BatchJob read(File file) throws IOException {
+		Object parsed = new Parser(FileUtils.readFileToString(file, "UTF-8")).parse();
+		if(!(parsed instanceof Map))
+			throw new IOException(file.getName() + ": a job file must hold a single JSON object");
+		Map<?, ?> json = (Map<?, ?>)parsed;
+
+		BatchJob job = new BatchJob();
+		job.name = json.containsKey("name") ? getString(json, "name") : file.getName().replaceAll("\\.[^.]*$", "");
+		job.input = getString(json, "input");
+		if(job.input == null)
+			throw new IOException(job.name + ": the input directory is required");
+		job.output = json.containsKey("output") ? getString(json, "output") : new File(new File(job.input).getParentFile(), "Results_" + job.name).getPath();
+
+		Object scenarios = json.get("scenarios");
+		if(scenarios instanceof Map) {
+			for(Object scenario: ((Map<?, ?>)scenarios).keySet())
+				job.scenarios.put(scenario.toString(), ((Number)((Map<?, ?>)scenarios).get(scenario)).floatValue());
+		} else if(scenarios instanceof List) {
+			for(Object scenario: (List<?>)scenarios)
+				job.scenarios.put(scenario.toString(), 1f);
+		}
+
+		if(!(json.get("sensors") instanceof List) || ((List<?>)json.get("sensors")).isEmpty())
+			throw new IOException(job.name + ": at least one sensor is required");
+		for(Object item: (List<?>)json.get("sensors")) {
+			Map<?, ?> settings = (Map<?, ?>)item;
+			Sensor sensor = new Sensor();
+			sensor.parameter = getString(settings, "parameter");
+			if(sensor.parameter == null)
+				throw new IOException(job.name + ": every sensor needs a parameter");
+			sensor.name = settings.containsKey("name") ? getString(settings, "name") : sensor.parameter;
+			sensor.alias = settings.containsKey("alias") ? getString(settings, "alias") : sensor.name;
+			sensor.cost = getNumber(settings, "cost", sensor.cost).floatValue();
+			sensor.trigger = settings.containsKey("trigger") ? getString(settings, "trigger") : "below";
+			sensor.threshold = settings.containsKey("threshold") ? getString(settings, "threshold") : "0";
+			if(settings.containsKey("minZ")) sensor.minZ = getNumber(settings, "minZ", 0).floatValue();
+			if(settings.containsKey("maxZ")) sensor.maxZ = getNumber(settings, "maxZ", 0).floatValue();
+			job.sensors.add(sensor);
+		}
+
+		if(json.get("tests") instanceof List) {
+			for(Object item: (List<?>)json.get("tests")) {
+				Map<String, Integer> test = new LinkedHashMap<String, Integer>();
+				for(Object sensor: ((Map<?, ?>)item).keySet())
+					test.put(sensor.toString(), ((Number)((Map<?, ?>)item).get(sensor)).intValue());
+				job.tests.add(test);
+			}
+		}
+		if(job.tests.isEmpty()) { // Same default as the wizard
+			Map<String, Integer> test = new LinkedHashMap<String, Integer>();
+			test.put("Any Technology", 1);
+			job.tests.add(test);
+		}
+
+		job.budget = getNumber(json, "budget", job.budget).floatValue();
+		job.wells = getNumber(json, "wells", job.wells).intValue();
+		job.exclusionRadius = getNumber(json, "exclusionRadius", job.exclusionRadius).floatValue();
+		job.wellCost = getNumber(json, "wellCost", job.wellCost).floatValue();
+		job.wellDepthCost = getNumber(json, "wellDepthCost", job.wellDepthCost).floatValue();
+		job.remediationCost = getNumber(json, "remediationCost", job.remediationCost).floatValue();
+		job.iterations = getNumber(json, "iterations", job.iterations).intValue();
+		job.runs = getNumber(json, "runs", job.runs).intValue();
+		job.seed = getNumber(json, "seed", job.seed).longValue();
+		job.parallelRuns = Boolean.TRUE.equals(json.get("parallelRuns"));
+		job.guidedMutation = Boolean.TRUE.equals(json.get("guidedMutation"));
+		job.plots = Boolean.TRUE.equals(json.get("plots"));
+		if(json.containsKey("coolingSchedule"))
+			job.coolingSchedule = getSchedule(getString(json, "coolingSchedule"));
+		job.earlyStop = Boolean.TRUE.equals(json.get("earlyStop"));
+		job.greedyStart = Boolean.TRUE.equals(json.get("greedyStart"));
+		job.checkpointInterval = getNumber(json, "checkpointInterval", job.checkpointInterval).intValue();
+		job.resume = Boolean.TRUE.equals(json.get("resume"));
+		String optimizer = getString(json, "optimizer");
+		if(optimizer != null && !optimizer.equalsIgnoreCase("annealing")) {
+			if(!optimizer.equalsIgnoreCase("greedy"))
+				throw new IOException("Unknown optimizer " + optimizer + ", expected annealing or greedy");
+			job.greedy = true;
+		}
+		return job;
+	}
+
+	private static SCHEDULE getSchedule(String text) throws IOException {
+		for(SCHEDULE schedule: SCHEDULE.values()) {
+			if(schedule.name().equalsIgnoreCase(text))
+				return schedule;
+		}
+		throw new IOException("Unknown cooling schedule " + text + ", expected exponential, adaptive or reheating");
+	}
+
+	// Numbers are accepted as strings too, so thresholds like "+0.1" and 0.1 both work
+	private static String getString(Map<?, ?> json, String key) {
+		Object value = json.get(key);
+		if(value instanceof Double && (Double)value == Math.rint((Double)value))
+			return String.valueOf(((Double)value).longValue());
+		return value == null ? null : value.toString();
+	}
+
+	private static Number getNumber(Map<?, ?> json, String key, Number defaultValue) throws IOException {
+		Object value = json.get(key);
+		if(value == null)
+			return defaultValue;
+		if(value instanceof Number)
+			return (Number)value;
+		try {
+			return Double.parseDouble(value.toString());
+		} catch (NumberFormatException e) {
+			throw new IOException("Expected a number for " + key + " but found " + value);
+		}
+	}
+
+	/**
+	 * Minimal JSON reader: objects become LinkedHashMaps, arrays ArrayLists, numbers Doubles, plus Strings, Booleans and null.
+	 */
+	private static class Parser {
+
+		private final String text;
+		private int position = 0;
+
+		private Parser(String text) {
+			this.text = text;
+		}
+
+		private Object parse() throws IOException {
+			Object value = readValue();
+			skipWhitespace();
+			if(position < text.length())
+				throw error("Unexpected text after the job");
+			return value;
+		}
+
+		private Object readValue() throws IOException {
+			skipWhitespace();
+			if(position >= text.length())
+				throw error("Unexpected end of file");
+			char c = text.charAt(position);
+			if(c == '{') return readObject();
+			if(c == '[') return readArray();
+			if(c == '"') return readString();
+			if(text.startsWith("true", position)) { position += 4; return Boolean.TRUE; }
+			if(text.startsWith("false", position)) { position += 5; return Boolean.FALSE; }
+			if(text.startsWith("null", position)) { position += 4; return null; }
+			return readNumber();
+		}
+
+		private Map<String, Object> readObject() throws IOException {
+			Map<String, Object> object = new LinkedHashMap<String, Object>();
+			position++; // {
+			skipWhitespace();
+			if(peek() == '}') { position++; return object; }
+			while(true) {
+				skipWhitespace();
+				if(peek() != '"')
+					throw error("Expected a quoted name");
+				String key = readString();
+				skipWhitespace();
+				expect(':');
+				object.put(key, readValue());
+				skipWhitespace();
+				if(peek() == ',') { position++; continue; }
+				expect('}');
+				return object;
+			}
+		}
+
+		private List<Object> readArray() throws IOException {
+			List<Object> array = new ArrayList<Object>();
+			position++; // [
+			skipWhitespace();
+			if(peek() == ']') { position++; return array; }
+			while(true) {
+				array.add(readValue());
+				skipWhitespace();
+				if(peek() == ',') { position++; continue; }
+				expect(']');
+				return array;
+			}
+		}
+
+		private String readString() throws IOException {
+			StringBuilder builder = new StringBuilder();
+			position++; // Opening quote
+			while(position < text.length()) {
+				char c = text.charAt(position++);
+				if(c == '"')
+					return builder.toString();
+				if(c != '\\') {
+					builder.append(c);
+					continue;
+				}
+				if(position >= text.length())
+					break;
+				char escaped = text.charAt(position++);
+				switch(escaped) {
+				case 'n': builder.append('\n'); break;
+				case 't': builder.append('\t'); break;
+				case 'r': builder.append('\r'); break;
+				case 'b': builder.append('\b'); break;
+				case 'f': builder.append('\f'); break;
+				case 'u':
+					if(position+4 > text.length())
+						throw error("Bad unicode escape");
+					builder.append((char)Integer.parseInt(text.substring(position, position+4), 16));
+					position += 4;
+					break;
+				default: builder.append(escaped); // Quotes, slashes and backslashes (Windows paths)
+				}
+			}
+			throw error("Unterminated string");
+		}
+
+		private Double readNumber() throws IOException {
+			int start = position;
+			while(position < text.length() && "+-0123456789.eE".indexOf(text.charAt(position)) >= 0)
+				position++;
+			try {
+				return Double.parseDouble(text.substring(start, position));
+			} catch (NumberFormatException e) {
+				throw error("Unexpected value");
+			}
+		}
+
+		private void skipWhitespace() {
+			while(position < text.length() && Character.isWhitespace(text.charAt(position)))
+				position++;
+		}
+
+		private char peek() {
+			return position < text.length() ? text.charAt(position) : 0;
+		}
+
+		private void expect(char c) throws IOException {
+			if(peek() != c)
+				throw error("Expected '" + c + "'");
+			position++;
+		}
+
+		private IOException error(String message) {
+			int line = 1;
+			for(int i=0; i<position && i<text.length(); i++) {
+				if(text.charAt(i) == '\n') line++;
+			}
+			return new IOException(message + " on line " + line + " of the job file");
+		}
+	}
+}
@@ -0,0 +1,234 @@
+package batch;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import functions.Function;
+import functions.LazyGreedy;
+import functions.MutationFunction.MUTATE;
+import functions.SimulatedAnnealing;
+import hdf5Tool.HDF5Interface;
+import hdf5Tool.IAMInterface;
+import objects.ExtendedConfiguration;
+import objects.ScenarioSet;
+import objects.Sensor;
+import objects.SensorSetting;
+import results.ResultPrinter;
+import utilities.Constants;
+
+/**
+ * Headless entry point, runs the same setup and iterative procedure as the wizard from JSON job files (see BatchJob).
+ * Usage: java -Dncsa.hdf.hdf5lib.H5.hdf5lib=[path to jhdf5 library] -cp DREAM.jar batch.BatchRunner job1.json [job2.json ...]
+ * Jobs in one call run one after another, since results are collected in ResultPrinter's static state.
+ * To run jobs side by side, start one process per job with a different output directory; the detection map cache can be shared.
+ * Exits with 1 if any job failed.
+ */
+
+public class BatchRunner {
+
+	public static void main(String[] args) {
+		if(args.length == 0) {
+			System.out.println("Usage: BatchRunner job.json [job.json ...]");
+			System.exit(1);
+		}
+		int failures = 0;
+		for(String path: args) {
+			try {
+				BatchJob job = BatchJob.read(new File(path));
+				if(!run(job))
+					failures++;
+			} catch (Exception e) {
+				try {
+					PrintWriter errorWriter = new PrintWriter("Errors " + Constants.uniqueError + ".txt");
+					e.printStackTrace(errorWriter);
+					Constants.uniqueError++;
+					errorWriter.close();
+				} catch (FileNotFoundException e1) {
+					e1.printStackTrace();
+				}
+				System.out.println("Job " + path + " failed: " + e.getMessage());
+				e.printStackTrace();
+				failures++;
+			}
+		}
+		Function.shutdownEngine();
+		System.exit(failures == 0 ? 0 : 1);
+	}
+
+	// Returns false if the job was cancelled
+	public static boolean run(BatchJob job) throws Exception {
+		long startTime = System.currentTimeMillis();
+		ConsoleProgressMonitor monitor = new ConsoleProgressMonitor(job.name);
+
+		ScenarioSet set = new ScenarioSet();
+		boolean isH5 = loadScenarioSet(job, set, monitor);
+		setupScenarios(job, set);
+		setupSensors(job, set, isH5, monitor);
+		if(monitor.isCanceled())
+			return false;
+		setupInferenceTests(job, set);
+		set.setUserSettings(set.getAddPoint(), job.wells, job.budget, job.exclusionRadius, job.wellCost, job.wellDepthCost, job.remediationCost);
+		set.setIterations(job.iterations);
+
+		// Same run settings as the Run Iterative Procedure button on Page_RunDREAM
+		Function runner = job.greedy ? new LazyGreedy() : new SimulatedAnnealing(MUTATE.SENSOR);
+		new File(job.output).mkdirs();
+		runner.setResultsDirectory(job.output);
+		runner.setMonitor(monitor);
+		ResultPrinter.runScripts = job.plots;
+		Constants.runChainsInParallel = job.parallelRuns;
+		Constants.useGuidedMutation = job.guidedMutation;
+		Constants.coolingSchedule = job.coolingSchedule;
+		Constants.earlyStop = job.earlyStop;
+		Constants.greedyStart = job.greedyStart;
+		Constants.checkpointInterval = job.checkpointInterval;
+		Constants.resume = job.resume;
+		Constants.random.setSeed(job.seed);
+		monitor.beginTask("Running iterative procedure", job.iterations*job.runs);
+		boolean cancelled;
+		if(job.runs > 1)
+			cancelled = runner.run(new ExtendedConfiguration(), set, false, job.runs);
+		else
+			cancelled = runner.run(new ExtendedConfiguration(), set, false);
+		monitor.done();
+
+		long time = (System.currentTimeMillis() - startTime) / 1000;
+		System.out.println("[" + job.name + "] Completed " + (job.greedy ? "a greedy design" : job.runs + " x " + job.iterations + " iterations") + " in " + Constants.formatSeconds(time) + ". Results can be found at: " + job.output);
+		return !cancelled;
+	}
+
+	// Same loading as DREAMWizard.STORMData.setupScenarioSet, returns true for hdf5 files and false for IAM files
+	private static boolean loadScenarioSet(BatchJob job, ScenarioSet set, IProgressMonitor monitor) throws Exception {
+		File inputFolder = new File(job.input);
+		File[] list = inputFolder.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.endsWith(".h5") || name.endsWith(".iam");
+			}
+		});
+		if(list == null || list.length == 0)
+			throw new IOException(job.name + ": no .h5 or .iam files were found in " + job.input);
+		Constants.homeDirectory = job.input;
+		set.setScenarioEnsemble(inputFolder.getName());
+
+		if(list[0].getPath().endsWith(".h5")) {
+			monitor.beginTask("Loading H5 scenario set", 10);
+			HDF5Interface.hdf5Files.clear(); // From an earlier job
+			set.setNodeStructure(HDF5Interface.readNodeStructureH5(list[0]));
+			set.setupScenarios(HDF5Interface.queryScenarioNamesFromFiles(list));
+			Constants.isH5 = true;
+			Constants.isIAM = false;
+			monitor.worked(10);
+			return true;
+		}
+		monitor.beginTask("Loading IAM scenario set", list.length + 2);
+		File grid = new File(inputFolder, "iam.grid");
+		if(grid.exists())
+			set.setNodeStructure(IAMInterface.readNodeStructureIAM(grid));
+		else
+			set.setNodeStructure(IAMInterface.readNodeStructureIAM_Uncompressed(list[0]));
+		IAMInterface.readIAMFiles(monitor, list, set);
+		set.getNodeStructure().setParameters(IAMInterface.getDataTypes());
+		set.setupScenarios(IAMInterface.getScenarios());
+		Constants.isH5 = false;
+		Constants.isIAM = true;
+		return false;
+	}
+
+	// Same as Page_ScenarioWeighting.completePage, unlisted scenarios are left out
+	private static void setupScenarios(BatchJob job, ScenarioSet set) throws IOException {
+		if(job.scenarios.isEmpty())
+			return; // Every scenario, weighted 1
+		for(String scenario: job.scenarios.keySet()) {
+			if(!set.getAllScenarios().contains(scenario))
+				throw new IOException(job.name + ": scenario " + scenario + " was not found in " + job.input);
+		}
+		set.setEqualWeights(true);
+		set.getScenarioWeights().clear();
+		set.getScenarios().clear();
+		float firstWeight = job.scenarios.values().iterator().next();
+		for(String scenario: set.getAllScenarios()) {
+			Float weight = job.scenarios.get(scenario);
+			if(weight == null || weight == 0) continue;
+			set.getScenarioWeights().put(scenario, weight);
+			set.getScenarios().add(scenario);
+			if(weight != firstWeight)
+				set.setEqualWeights(false);
+		}
+		System.out.println("Number of scenarios = " + set.getScenarios().size() + " (" + set.getAllScenarios().size() + " available)");
+	}
+
+	// Same as Page_LeakageCriteria.findTriggeringNodes, followed by the volume of aquifer degraded
+	private static void setupSensors(BatchJob job, ScenarioSet set, boolean isH5, IProgressMonitor monitor) throws IOException {
+		set.setupSensorSettings();
+		Sensor.sensorAliases = new HashMap<String, String>();
+		List<String> names = new ArrayList<String>();
+		for(BatchJob.Sensor sensor: job.sensors)
+			names.add(sensor.name);
+		for(String type: new ArrayList<String>(set.getSensorSettings().keySet())) {
+			if(!names.contains(type))
+				set.removeSensorSettings(type);
+		}
+
+		List<SensorSetting> newSettings = new ArrayList<SensorSetting>();
+		List<String> newSpecificTypes = new ArrayList<String>();
+		for(BatchJob.Sensor sensor: job.sensors) {
+			if(!set.getNodeStructure().getParameters().contains(sensor.parameter))
+				throw new IOException(job.name + ": parameter " + sensor.parameter + " was not found in " + job.input);
+			if(sensor.parameter.contains("Electrical Conductivity"))
+				throw new IOException(job.name + ": ERT sensors need the E4D module and can only be set up in the wizard");
+			set.addSensorSetting(sensor.name, sensor.parameter);
+			SensorSetting setting = set.getSensorSettings(sensor.name);
+			setting.getTriggerFromText(sensor.trigger, sensor.threshold); // Sets the trigger and delta type
+			float minZ = sensor.minZ != null ? sensor.minZ : setting.getGlobalMinZ();
+			float maxZ = sensor.maxZ != null ? sensor.maxZ : setting.getGlobalMaxZ();
+			setting.setUserSettings(sensor.cost, Float.parseFloat(sensor.threshold), setting.getTrigger(), setting.getDeltaType(), minZ, maxZ, sensor.alias);
+			Sensor.sensorAliases.put(sensor.name, sensor.alias);
+			if(!set.getDetectionMap().containsKey(setting.specificType) && !newSpecificTypes.contains(setting.specificType)) {
+				if(!isH5)
+					throw new IOException(job.name + ": the IAM files have no detections for " + setting.specificType);
+				newSettings.add(setting);
+				newSpecificTypes.add(setting.specificType);
+			}
+		}
+
+		monitor.beginTask("Sensor settings", 900*newSettings.size() + 50*job.sensors.size());
+		if(!newSettings.isEmpty())
+			HDF5Interface.createDetectionMaps(monitor, set, newSettings, newSpecificTypes);
+		if(monitor.isCanceled())
+			return;
+		HashSet<Integer> nodes = new HashSet<Integer>();
+		for(BatchJob.Sensor sensor: job.sensors) {
+			monitor.subTask(sensor.name + " - generating a list of valid nodes");
+			set.getSensorSettings(sensor.name).setNodes(set);
+			nodes.addAll(set.getSensorSettings(sensor.name).getValidNodes());
+			monitor.worked(50);
+		}
+		if(nodes.isEmpty())
+			throw new IOException(job.name + ": no nodes were found for the provided parameters");
+		SensorSetting.calculateVolumeDegradedByYear(set);
+	}
+
+	// Same as Page_DetectionCriteria, every sensor named in a test must be one of the job's sensors
+	private static void setupInferenceTests(BatchJob job, ScenarioSet set) throws IOException {
+		set.setupInferenceTest();
+		set.getInferenceTest().getActiveTests().clear();
+		for(Map<String, Integer> test: job.tests) {
+			for(String sensor: test.keySet()) {
+				if(!sensor.equals("Any Technology") && !set.getSensorSettings().containsKey(sensor))
+					throw new IOException(job.name + ": test sensor " + sensor + " is not one of the job's sensors");
+			}
+			set.getInferenceTest().addActiveTest(new HashMap<String, Integer>(test));
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package batch;
+
+import java.util.logging.Level;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import utilities.Constants;
+
+/**
+ * Progress monitor for headless runs, prints the task, sub task and percent complete to the console and the log.
+ * Lines are prefixed with the job name so several jobs writing to the same terminal or log can be told apart.
+ * Work is reported from worker threads during detection map scans and parallel chains, so every method is synchronized.
+ */
+
+public class ConsoleProgressMonitor extends NullProgressMonitor {
+
+	private static final long INTERVAL = 5000; // Milliseconds between progress lines
+
+	private final String job;
+	private String taskName = "";
+	private String subTask = "";
+	private double totalWork = 0;
+	private double worked = 0;
+	private int lastPercent = -1;
+	private long lastPrint = 0;
+
+	public ConsoleProgressMonitor(String job) {
+		this.job = job;
+	}
+
+	@Override
+	public synchronized void beginTask(String name, int totalWork) {
+		taskName = name;
+		this.totalWork = totalWork;
+		worked = 0;
+		lastPercent = -1;
+		print(name, true);
+	}
+
+	@Override
+	public synchronized void setTaskName(String name) {
+		taskName = name;
+		print(name, true);
+	}
+
+	@Override
+	public synchronized void subTask(String name) {
+		subTask = name;
+		print(null, false);
+	}
+
+	@Override
+	public void worked(int work) {
+		internalWorked(work);
+	}
+
+	@Override
+	public synchronized void internalWorked(double work) {
+		worked += work;
+		print(null, false);
+	}
+
+	@Override
+	public synchronized void done() {
+		worked = totalWork;
+		print(taskName + " - done", true);
+	}
+
+	// Always prints when forced, otherwise only when the percentage changed and enough time has passed
+	private void print(String message, boolean force) {
+		int percent = totalWork <= 0 ? 0 : (int)Math.min(100, Math.max(0, 100 * worked / totalWork));
+		long now = System.currentTimeMillis();
+		if(!force && (percent == lastPercent || now - lastPrint < INTERVAL))
+			return;
+		lastPercent = percent;
+		lastPrint = now;
+		String line = "[" + job + "] " + (message != null ? message : taskName + " " + percent + "%" + (subTask.isEmpty() ? "" : ": " + subTask));
+		System.out.println(line);
+		Constants.log(Level.INFO, line, null);
+	}
+}
@@ -0,0 +1,116 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * A single timed operation, run by Benchmarks in the style of JMH: warmup rounds are thrown away,
+ * then each measurement round reports operations per second and the bytes allocated per operation.
+ * Allocation is measured on the calling thread only, so work handed to other threads is not counted.
+ */
+
+public abstract class Benchmark {
+
+	public static int warmupRounds = 3;
+	public static int measurementRounds = 5;
+	public static long roundMillis = 1000;
+
+	private static volatile Object sink; // Results go here so the JIT can't remove the work
+
+	private final String name;
+
+	public Benchmark(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	// Called once before the warmup, outside the timing
+	public void setup() throws Exception {
+	}
+
+	// The operation being measured, invocation counts up from 0 across all rounds
+	public abstract Object operation(long invocation) throws Exception;
+
+	public Result run() throws Exception {
+		setup();
+		long invocation = 0;
+		for(int round=0; round<warmupRounds; round++)
+			invocation = round(invocation, null);
+		double[] throughput = new double[measurementRounds];
+		double[] allocation = new double[measurementRounds];
+		for(int round=0; round<measurementRounds; round++) {
+			double[] measured = new double[2];
+			invocation = round(invocation, measured);
+			throughput[round] = measured[0];
+			allocation[round] = measured[1];
+		}
+		return new Result(name, throughput, allocation);
+	}
+
+	// Runs operations until the round time is up, returns the next invocation count
+	private long round(long invocation, double[] measured) throws Exception {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long startBytes = allocatedBytes(threads, thread);
+		long start = System.nanoTime();
+		long end = start + roundMillis * 1000000;
+		long operations = 0;
+		long now;
+		do {
+			sink = operation(invocation++);
+			operations++;
+			now = System.nanoTime();
+		} while(now < end);
+		if(measured != null) {
+			measured[0] = operations / ((now - start) / 1e9);
+			long bytes = allocatedBytes(threads, thread);
+			measured[1] = startBytes < 0 || bytes < 0 ? Double.NaN : (double)(bytes - startBytes) / operations;
+		}
+		return invocation;
+	}
+
+	// -1 when the JVM can't report per-thread allocation
+	private static long allocatedBytes(ThreadMXBean threads, long thread) {
+		if(threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(thread);
+		return -1;
+	}
+
+	public static class Result {
+		public final String name;
+		public final double[] throughput; // Operations per second in each measurement round
+		public final double[] allocation; // Bytes per operation in each measurement round
+
+		private Result(String name, double[] throughput, double[] allocation) {
+			this.name = name;
+			this.throughput = throughput;
+			this.allocation = allocation;
+		}
+
+		public double getMeanThroughput() {
+			return mean(throughput);
+		}
+
+		// Half the spread between the slowest and fastest round
+		public double getThroughputError() {
+			double[] sorted = throughput.clone();
+			Arrays.sort(sorted);
+			return (sorted[sorted.length-1] - sorted[0]) / 2;
+		}
+
+		public double getMeanAllocation() {
+			return mean(allocation);
+		}
+
+		private static double mean(double[] values) {
+			double sum = 0;
+			for(double value: values)
+				sum += value;
+			return sum / values.length;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import functions.Function;
+import functions.SimulatedAnnealing;
+import functions.MutationFunction.MUTATE;
+import hdf5Tool.HDF5Interface;
+import objects.ExtendedConfiguration;
+import objects.ScenarioSet;
+import objects.SensorSetting;
+import objects.SensorSetting.DeltaType;
+import objects.SensorSetting.Trigger;
+import results.Results;
+import utilities.Constants;
+
+/**
+ * Micro-benchmarks for the optimization hot paths, run on synthetic ensembles of several sizes (see SyntheticEnsemble).
+ * Usage: java -cp DREAM.jar benchmark.Benchmarks [small|medium|large ...] [-only name] [-rounds n] [-millis n]
+ * Prints operations per second (configurations per second for the objective) and bytes allocated per operation,
+ * so changes to the objective, mutation and bookkeeping code can be compared run to run.
+ */
+
+public class Benchmarks {
+
+	private static final int POOL = 256; // Configurations cycled through by the objective benchmarks
+
+	public static void main(String[] args) throws Exception {
+		List<String> sizes = new ArrayList<String>();
+		String only = null;
+		for(int a=0; a<args.length; a++) {
+			if(args[a].equals("-only")) only = args[++a];
+			else if(args[a].equals("-rounds")) Benchmark.measurementRounds = Integer.parseInt(args[++a]);
+			else if(args[a].equals("-millis")) Benchmark.roundMillis = Long.parseLong(args[++a]);
+			else sizes.add(args[a]);
+		}
+		if(sizes.isEmpty()) {
+			sizes.add("small");
+			sizes.add("medium");
+		}
+
+		System.out.println(String.format("%-40s %-8s %14s %12s %14s", "Benchmark", "Size", "ops/s", "error", "bytes/op"));
+		for(SyntheticEnsemble ensemble: SyntheticEnsemble.getSizes()) {
+			if(!sizes.contains(ensemble.name)) continue;
+			ScenarioSet set = ensemble.createScenarioSet(1);
+			for(Benchmark benchmark: createBenchmarks(set)) {
+				if(only != null && !benchmark.getName().contains(only)) continue;
+				int cacheSize = Constants.objectiveCacheSize;
+				boolean incremental = Constants.runIncremental;
+				Benchmark.Result result = benchmark.run();
+				Constants.objectiveCacheSize = cacheSize; // Benchmarks may change these in setup
+				Constants.runIncremental = incremental;
+				System.out.println(String.format("%-40s %-8s %14.1f %12.1f %14.0f", result.name, ensemble.name,
+						result.getMeanThroughput(), result.getThroughputError(), result.getMeanAllocation()));
+			}
+		}
+		Function.shutdownEngine();
+	}
+
+	// A chain of configurations one mutation apart, like the ones annealing visits
+	private static List<ExtendedConfiguration> createConfigurations(ScenarioSet set, int count) {
+		Constants.random.setSeed(10);
+		SimulatedAnnealing annealing = new SimulatedAnnealing(MUTATE.SENSOR);
+		List<ExtendedConfiguration> configurations = new ArrayList<ExtendedConfiguration>();
+		ExtendedConfiguration current = new ExtendedConfiguration();
+		for(int c=0; c<count; c++) {
+			annealing.mutate(current, set);
+			ExtendedConfiguration configuration = new ExtendedConfiguration(true);
+			configuration.matchConfiguration(current);
+			configurations.add(configuration);
+		}
+		return configurations;
+	}
+
+	private static List<Benchmark> createBenchmarks(final ScenarioSet set) {
+		final List<ExtendedConfiguration> configurations = createConfigurations(set, POOL);
+		final ExtendedConfiguration typical = configurations.get(configurations.size()-1);
+		final String type = set.getDataTypes().get(0);
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+		benchmarks.add(new Benchmark("SimulatedAnnealing.objective") {
+			private SimulatedAnnealing annealing;
+			@Override
+			public void setup() {
+				Constants.objectiveCacheSize = 0; // Measure the evaluation, not the cache
+				Constants.runIncremental = true;
+				annealing = new SimulatedAnnealing(MUTATE.SENSOR);
+			}
+			@Override
+			public Object operation(long invocation) {
+				return annealing.objective(configurations.get((int)(invocation % POOL)), set, Constants.runThreaded);
+			}
+		});
+
+		benchmarks.add(new Benchmark("SimulatedAnnealing.objective (full)") {
+			private SimulatedAnnealing annealing;
+			@Override
+			public void setup() {
+				Constants.objectiveCacheSize = 0;
+				Constants.runIncremental = false;
+				annealing = new SimulatedAnnealing(MUTATE.SENSOR);
+			}
+			@Override
+			public Object operation(long invocation) {
+				return annealing.objective(configurations.get((int)(invocation % POOL)), set, Constants.runThreaded);
+			}
+		});
+
+		benchmarks.add(new Benchmark("ExtendedConfiguration.mutateSensor") {
+			private ExtendedConfiguration configuration;
+			@Override
+			public void setup() {
+				Constants.random.setSeed(10);
+				configuration = new ExtendedConfiguration(true);
+			}
+			@Override
+			public Object operation(long invocation) {
+				if(invocation % 1000 == 0)
+					configuration.matchConfiguration(typical); // Keep the mutations starting from a realistic configuration
+				return configuration.mutateSensor(set);
+			}
+		});
+
+		// The copies annealing makes every iteration: new from current, and current or best from new when accepted
+		benchmarks.add(new Benchmark("ExtendedConfiguration.matchConfiguration") {
+			private ExtendedConfiguration configuration;
+			@Override
+			public void setup() {
+				configuration = new ExtendedConfiguration(true);
+			}
+			@Override
+			public Object operation(long invocation) {
+				configuration.matchConfiguration(configurations.get((int)(invocation % POOL)));
+				return configuration;
+			}
+		});
+
+		benchmarks.add(new Benchmark("ScenarioSet.getValidNodes") {
+			@Override
+			public Object operation(long invocation) {
+				return set.getValidNodes(type, configurations.get((int)(invocation % POOL)), true, true, true);
+			}
+		});
+
+		benchmarks.add(new Benchmark("ScenarioSet.getRandomValidNode") {
+			@Override
+			public Object operation(long invocation) {
+				return set.getRandomValidNode(type, configurations.get((int)(invocation % POOL)), true, true, -1);
+			}
+		});
+
+		benchmarks.add(new Benchmark("ScenarioSet.costOfConfiguration") {
+			@Override
+			public Object operation(long invocation) {
+				ExtendedConfiguration configuration = configurations.get((int)(invocation % POOL));
+				configuration.setConfigCost(0); // Otherwise the cost stored on the configuration is returned
+				return set.costOfConfiguration(configuration);
+			}
+		});
+
+		// One operation is a single comparison, cycling through every trigger and delta type
+		benchmarks.add(new Benchmark("HDF5Interface.sensorTriggered") {
+			private SensorSetting[] settings;
+			private float[] values;
+			@Override
+			public void setup() {
+				List<SensorSetting> list = new ArrayList<SensorSetting>();
+				for(Trigger trigger: Trigger.values()) {
+					for(DeltaType deltaType: DeltaType.values()) {
+						SensorSetting setting = new SensorSetting(set.getNodeStructure(), type);
+						setting.setUserSettings(100, 0.1f, trigger, deltaType, setting.getGlobalMinZ(), setting.getGlobalMaxZ(), type);
+						list.add(setting);
+					}
+				}
+				settings = list.toArray(new SensorSetting[list.size()]);
+				values = new float[1024];
+				java.util.Random random = new java.util.Random(1);
+				for(int v=0; v<values.length; v++)
+					values[v] = random.nextFloat();
+			}
+			@Override
+			public Object operation(long invocation) {
+				int v = (int)(invocation % values.length);
+				return HDF5Interface.sensorTriggered(settings[(int)(invocation % settings.length)], values[v], values[(v+1) % values.length]);
+			}
+		});
+
+		benchmarks.add(new Benchmark("Results.storeResult") {
+			private Results results;
+			@Override
+			public Object operation(long invocation) {
+				if(invocation % 10000 == 0)
+					results = new Results(set, false); // Results keeps every iteration, start over so memory stays flat
+				ExtendedConfiguration configuration = configurations.get((int)(invocation % POOL));
+				results.storeResult(0, (int)(invocation % 10000), configuration, typical, configuration, set);
+				return results;
+			}
+		});
+		return benchmarks;
+	}
+}
@@ -0,0 +1,362 @@
+package benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import javax.swing.JCheckBox;
+
+import hdf5Tool.ParseRawFiles;
+
+/**
+ * Read throughput of the file converter's readers, one benchmark per format, on synthetic STOMP, NUFT, TOUGH and Tecplot
+ * files written to a temporary directory. One operation reads every file of one scenario with a BlockSink that drops the
+ * blocks, so only the parsing is measured, not the HDF5 writing.
+ * Usage: java -cp DREAM.jar benchmark.ConverterBenchmarks [stomp|nuft|tough|tecplot ...] [-rounds n] [-millis n]
+ * Prints megabytes read per second along with the allocation per operation.
+ */
+
+public class ConverterBenchmarks {
+
+	private static final String SCENARIO = "Scenario1";
+
+	public static void main(String[] args) throws Exception {
+		List<String> formats = new ArrayList<String>();
+		for(int a=0; a<args.length; a++) {
+			if(args[a].equals("-rounds")) Benchmark.measurementRounds = Integer.parseInt(args[++a]);
+			else if(args[a].equals("-millis")) Benchmark.roundMillis = Long.parseLong(args[++a]);
+			else formats.add(args[a].toLowerCase());
+		}
+		if(formats.isEmpty()) {
+			formats.add("stomp");
+			formats.add("nuft");
+			formats.add("tough");
+			formats.add("tecplot");
+		}
+
+		File directory = Files.createTempDirectory("dream-converter").toFile();
+		System.out.println(String.format("%-40s %12s %12s %10s %14s", "Benchmark", "MB/scenario", "MB/s", "error", "bytes/op"));
+		try {
+			for(String format: formats) {
+				File input = new File(directory, format);
+				ReadBenchmark benchmark = createBenchmark(format, input);
+				if(benchmark == null) {
+					System.out.println("Unknown format " + format);
+					continue;
+				}
+				benchmark.write();
+				benchmark.bytes = size(input);
+				Benchmark.Result result = benchmark.run();
+				double megabytes = benchmark.bytes / 1048576.0;
+				System.out.println(String.format("%-40s %12.1f %12.1f %10.1f %14.0f", result.name, megabytes,
+						result.getMeanThroughput() * megabytes, result.getThroughputError() * megabytes, result.getMeanAllocation()));
+			}
+		} finally {
+			delete(directory);
+		}
+	}
+
+	// Reads one format's files, the structure once in setup and the data of one scenario per operation
+	private static abstract class ReadBenchmark extends Benchmark {
+
+		protected final File input;
+		protected ParseRawFiles reader;
+		private long bytes;
+
+		private ReadBenchmark(String name, File input) {
+			super(name);
+			this.input = input;
+		}
+
+		protected abstract void write() throws IOException;
+
+		protected abstract void readStructure();
+
+		protected abstract void readData(ParseRawFiles.BlockSink sink);
+
+		@Override
+		public void setup() {
+			reader = new ParseRawFiles();
+			quietly(new Runnable() {
+				@Override
+				public void run() {
+					readStructure();
+				}
+			});
+			reader.setSelected(checkBoxes(reader.getScenarios()), checkBoxes(reader.getTimes()), checkBoxes(reader.getParameters()));
+		}
+
+		@Override
+		public Object operation(long invocation) {
+			final int[] blocks = new int[1];
+			final ParseRawFiles.BlockSink sink = new ParseRawFiles.BlockSink() {
+				@Override
+				public void write(String scenario, String parameter, int timeIndex, float[] values) {
+					blocks[0]++;
+				}
+
+				@Override
+				public void read(long bytes) {
+				}
+			};
+			quietly(new Runnable() {
+				@Override
+				public void run() {
+					readData(sink);
+				}
+			});
+			reader.release(SCENARIO);
+			return blocks[0];
+		}
+	}
+
+	private static ReadBenchmark createBenchmark(String format, File input) {
+		if(format.equals("stomp")) {
+			return new ReadBenchmark("ParseRawFiles.extractStompData", input) {
+				@Override
+				protected void write() throws IOException {
+					writeStomp(input, 50, 50, 40, 5);
+				}
+				@Override
+				protected void readStructure() {
+					reader.extractStompStructure(input);
+				}
+				@Override
+				protected void readData(ParseRawFiles.BlockSink sink) {
+					reader.extractStompData(new File(input, SCENARIO), sink);
+				}
+			};
+		} else if(format.equals("nuft")) {
+			return new ReadBenchmark("ParseRawFiles.extractNuftData", input) {
+				@Override
+				protected void write() throws IOException {
+					writeNuft(input, 50, 50, 40, 5);
+				}
+				@Override
+				protected void readStructure() {
+					reader.extractNuftStructure(input);
+				}
+				@Override
+				protected void readData(ParseRawFiles.BlockSink sink) {
+					reader.extractNuftData(input, SCENARIO, sink);
+				}
+			};
+		} else if(format.equals("tough")) {
+			return new ReadBenchmark("ParseRawFiles.extractToughData", input) {
+				@Override
+				protected void write() throws IOException {
+					writeTough(input, 200000, 2);
+				}
+				@Override
+				protected void readStructure() {
+					reader.extractToughStructure(input);
+				}
+				@Override
+				protected void readData(ParseRawFiles.BlockSink sink) {
+					reader.extractToughData(new File(input, SCENARIO), sink);
+				}
+			};
+		} else if(format.equals("tecplot")) {
+			return new ReadBenchmark("ParseRawFiles.extractTecplotData", input) {
+				@Override
+				protected void write() throws IOException {
+					writeTecplot(input, 51, 51, 41);
+				}
+				@Override
+				protected void readStructure() {
+					reader.extractTecplotStructure(input);
+				}
+				@Override
+				protected void readData(ParseRawFiles.BlockSink sink) {
+					reader.extractTecplotData(new File(input, SCENARIO + ".dat"), sink);
+				}
+			};
+		}
+		return null;
+	}
+
+	// A folder per scenario, a file per time with a block per parameter, values in STOMP's E format
+	private static void writeStomp(File directory, int nx, int ny, int nz, int times) throws IOException {
+		File scenario = new File(directory, SCENARIO);
+		scenario.mkdirs();
+		Random random = new Random(1);
+		String[] parameters = {"Aqueous Pressure, Pa", "Gas Saturation", "CO2 Aqueous Mass Fraction"};
+		for(int t=0; t<times; t++) {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(new File(scenario, String.format("plot.%03d", t))));
+			try {
+				writer.write(String.format(Locale.US, " Time = %.4E,s %.4E,min %.4E,h %.4E,day %.4E,wk %.4E,yr%n", 0f, 0f, 0f, 0f, 0f, (float)t));
+				writer.write(" Number of Vertices = 8\n\n");
+				writeStompBlock(writer, "X-Direction Nodal Vertices, m", axis(nx+1));
+				writeStompBlock(writer, "Y-Direction Nodal Vertices, m", axis(ny+1));
+				writeStompBlock(writer, "Z-Direction Nodal Vertices, m", axis(nz+1));
+				for(String parameter: parameters)
+					writeStompBlock(writer, parameter, values(random, nx*ny*nz));
+				writeStompBlock(writer, "Porosity", values(random, nx*ny*nz));
+				writeStompBlock(writer, "Node Volume, m^3", values(random, 10)); // A block is only kept once the next starts
+			} finally {
+				writer.close();
+			}
+		}
+	}
+
+	private static void writeStompBlock(BufferedWriter writer, String parameter, float[] values) throws IOException {
+		writer.write(parameter + "\n");
+		for(int i=0; i<values.length; i++) {
+			writer.write(String.format(Locale.US, " %.5E", values[i]));
+			if(i % 10 == 9 || i == values.length-1)
+				writer.write("\n");
+		}
+		writer.write("\n");
+	}
+
+	// A file per scenario and parameter, a line per node with every time in a column
+	private static void writeNuft(File directory, int nx, int ny, int nz, int times) throws IOException {
+		directory.mkdirs();
+		Random random = new Random(1);
+		for(String parameter: new String[] {"pressure", "saturation"}) {
+			BufferedWriter writer = new BufferedWriter(new FileWriter(new File(directory, parameter + "1.ntab")));
+			try {
+				writer.write("index i j k element_ref nuft_ind x y z dx dy dz volume");
+				for(int t=0; t<times; t++)
+					writer.write(" " + t + "y");
+				writer.write("\n");
+				int index = 1;
+				for(int i=0; i<nx; i++) {
+					for(int j=0; j<ny; j++) {
+						for(int k=0; k<nz; k++) {
+							writer.write(String.format(Locale.US, "%d %d %d %d %d %d %.1f %.1f %.1f 10 10 5 500", index, i+1, j+1, k+1, index, index, i*10f, j*10f, k*5f));
+							for(int t=0; t<times; t++)
+								writer.write(String.format(Locale.US, " %.6e", random.nextFloat()));
+							writer.write("\n");
+							index++;
+						}
+					}
+				}
+			} finally {
+				writer.close();
+			}
+		}
+	}
+
+	// A map of the columns, then a folder per scenario with a file per time, a line per point
+	private static void writeTough(File directory, int points, int times) throws IOException {
+		File scenario = new File(directory, SCENARIO);
+		scenario.mkdirs();
+		BufferedWriter writer = new BufferedWriter(new FileWriter(new File(directory, "columns.map")));
+		try {
+			writer.write("1 x\n2 y\n3 z\n4 pressure(Pa)\n5 saturation\n6 porosity\n");
+		} finally {
+			writer.close();
+		}
+		Random random = new Random(1);
+		for(int t=0; t<times; t++) {
+			writer = new BufferedWriter(new FileWriter(new File(scenario, "gravity_" + (t+1) + ".OUT")));
+			try {
+				for(int p=0; p<points; p++)
+					writer.write(String.format(Locale.US, "%.4f %.4f %.4f %.6E %.6E %.6E%n", random.nextFloat()*1000, random.nextFloat()*1000,
+							random.nextFloat()*100, random.nextFloat()*1e7, random.nextFloat(), random.nextFloat()));
+			} finally {
+				writer.close();
+			}
+		}
+	}
+
+	// A file per scenario with one zone, x, y and z at the vertices then a block per parameter over the cells
+	private static void writeTecplot(File directory, int nx, int ny, int nz) throws IOException {
+		directory.mkdirs();
+		Random random = new Random(1);
+		int nodes = nx*ny*nz;
+		int elements = (nx-1)*(ny-1)*(nz-1);
+		BufferedWriter writer = new BufferedWriter(new FileWriter(new File(directory, SCENARIO + ".dat")));
+		try {
+			writer.write("VARIABLES = \"X, m\" \"Y, m\" \"Z, m\" \"Pressure, Pa\" \"Saturation\" \"Porosity\"\n");
+			writer.write("ZONE T=\"Time 1.0 y\", NODES = " + nodes + ", ELEMENTS = " + elements + ", DATAPACKING=BLOCK\n");
+			float[][] coordinates = new float[3][nodes];
+			int node = 0;
+			for(int k=0; k<nz; k++) {
+				for(int j=0; j<ny; j++) {
+					for(int i=0; i<nx; i++) {
+						coordinates[0][node] = i*10f;
+						coordinates[1][node] = j*10f;
+						coordinates[2][node++] = k*5f;
+					}
+				}
+			}
+			for(float[] values: coordinates)
+				writeTecplotBlock(writer, values);
+			for(int p=0; p<3; p++)
+				writeTecplotBlock(writer, values(random, elements));
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void writeTecplotBlock(BufferedWriter writer, float[] values) throws IOException {
+		for(int i=0; i<values.length; i++) {
+			writer.write(String.format(Locale.US, i % 5 == 0 ? "%.6E" : " %.6E", values[i]));
+			if(i % 5 == 4 || i == values.length-1)
+				writer.write("\n");
+		}
+	}
+
+	private static float[] axis(int size) {
+		float[] values = new float[size];
+		for(int i=0; i<size; i++)
+			values[i] = i * 10f;
+		return values;
+	}
+
+	private static float[] values(Random random, int size) {
+		float[] values = new float[size];
+		for(int i=0; i<size; i++)
+			values[i] = random.nextFloat() * 100;
+		return values;
+	}
+
+	private static JCheckBox[] checkBoxes(Object[] values) {
+		JCheckBox[] boxes = new JCheckBox[values.length];
+		for(int i=0; i<values.length; i++)
+			boxes[i] = new JCheckBox(values[i].toString(), true);
+		return boxes;
+	}
+
+	// The readers log every file, which would swamp the results
+	private static void quietly(Runnable runnable) {
+		PrintStream out = System.out;
+		System.setOut(new PrintStream(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		}));
+		try {
+			runnable.run();
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	private static long size(File file) {
+		if(!file.isDirectory())
+			return file.length();
+		long size = 0;
+		for(File child: file.listFiles())
+			size += size(child);
+		return size;
+	}
+
+	private static void delete(File file) {
+		if(file.isDirectory()) {
+			for(File child: file.listFiles())
+				delete(child);
+		}
+		file.delete();
+	}
+}
@@ -0,0 +1,128 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import objects.DenseDetectionMatrix;
+import objects.NodeStructure;
+import objects.ScenarioSet;
+import objects.Sensor;
+import objects.SensorSetting;
+import objects.SensorSetting.DeltaType;
+import objects.SensorSetting.Trigger;
+import objects.TimeStep;
+import utilities.Point3i;
+
+/**
+ * Builds a ScenarioSet without any input files, for benchmarking.
+ * Each scenario is a plume that starts at a random location at the bottom of the grid and spreads at a random speed,
+ * each parameter detects from its own fraction of that plume, so detection clouds overlap the way real ensembles do.
+ */
+
+public class SyntheticEnsemble {
+
+	public final String name;
+	public final int iMax, jMax, kMax;
+	public final int scenarios;
+	public final int timeSteps;
+	public final int parameters;
+
+	public SyntheticEnsemble(String name, int iMax, int jMax, int kMax, int scenarios, int timeSteps, int parameters) {
+		this.name = name;
+		this.iMax = iMax;
+		this.jMax = jMax;
+		this.kMax = kMax;
+		this.scenarios = scenarios;
+		this.timeSteps = timeSteps;
+		this.parameters = parameters;
+	}
+
+	@Override
+	public String toString() {
+		return name + " (" + iMax + "x" + jMax + "x" + kMax + ", " + scenarios + " scenarios, " + parameters + " parameters)";
+	}
+
+	public static List<SyntheticEnsemble> getSizes() {
+		List<SyntheticEnsemble> sizes = new ArrayList<SyntheticEnsemble>();
+		sizes.add(new SyntheticEnsemble("small", 20, 20, 10, 10, 10, 2));
+		sizes.add(new SyntheticEnsemble("medium", 50, 50, 20, 50, 20, 3));
+		sizes.add(new SyntheticEnsemble("large", 100, 100, 40, 200, 30, 4));
+		return sizes;
+	}
+
+	public NodeStructure createNodeStructure() {
+		List<TimeStep> times = new ArrayList<TimeStep>();
+		for(int t=0; t<timeSteps; t++)
+			times.add(new TimeStep(t, t, t));
+		NodeStructure nodeStructure = new NodeStructure(axis(iMax, 10), axis(jMax, 10), axis(kMax, -5), times);
+		List<String> types = new ArrayList<String>();
+		for(int p=0; p<parameters; p++)
+			types.add("parameter" + p);
+		nodeStructure.setParameters(types);
+		return nodeStructure;
+	}
+
+	// Cell centers, spacing is negative for depth
+	private static List<Float> axis(int cells, float spacing) {
+		List<Float> axis = new ArrayList<Float>();
+		for(int c=0; c<cells; c++)
+			axis.add(spacing * c + spacing / 2);
+		if(spacing < 0)
+			Collections.reverse(axis);
+		return axis;
+	}
+
+	/**
+	 * A ready to run set: scenarios weighted 1, one sensor per parameter costing 100, detection maps and valid nodes filled in,
+	 * and a budget of 12 sensors in at most 6 wells.
+	 */
+	public ScenarioSet createScenarioSet(long seed) {
+		Random random = new Random(seed);
+		ScenarioSet set = new ScenarioSet();
+		NodeStructure nodeStructure = createNodeStructure();
+		set.setNodeStructure(nodeStructure);
+		set.setScenarioEnsemble(name);
+		List<String> names = new ArrayList<String>();
+		for(int s=0; s<scenarios; s++)
+			names.add("scenario" + (s+1));
+		set.setupScenarios(names);
+		set.setupSensorSettings();
+
+		// Plume source and speed for each scenario, shared by every parameter
+		float[][] plumes = new float[scenarios][4];
+		for(int s=0; s<scenarios; s++) {
+			plumes[s][0] = 1 + random.nextInt(iMax);
+			plumes[s][1] = 1 + random.nextInt(jMax);
+			plumes[s][2] = kMax;
+			plumes[s][3] = 0.5f + random.nextFloat() * Math.max(iMax, jMax) / timeSteps;
+		}
+
+		Sensor.sensorAliases = new HashMap<String, String>();
+		int totalNodes = nodeStructure.getTotalNodes();
+		for(int p=0; p<parameters; p++) {
+			String type = nodeStructure.getParameters().get(p);
+			SensorSetting setting = set.getSensorSettings(type);
+			setting.setUserSettings(100, 0.1f, Trigger.ABOVE_THRESHOLD, DeltaType.BOTH, setting.getGlobalMinZ(), setting.getGlobalMaxZ(), type);
+			Sensor.sensorAliases.put(type, type);
+			float reach = 1f / (p+1); // Later parameters see a smaller part of the plume
+			DenseDetectionMatrix detections = new DenseDetectionMatrix(totalNodes, names);
+			for(int s=0; s<scenarios; s++) {
+				for(int node=1; node<=totalNodes; node++) {
+					Point3i ijk = nodeStructure.getIJKFromNodeNumber(node);
+					double distance = Math.sqrt(Math.pow(ijk.getI()-plumes[s][0], 2) + Math.pow(ijk.getJ()-plumes[s][1], 2) + Math.pow(ijk.getK()-plumes[s][2], 2));
+					int step = (int)Math.ceil(distance / (plumes[s][3] * reach));
+					if(step > 0 && step < timeSteps)
+						detections.setTTD(s, node, nodeStructure.getTimeAt(step));
+				}
+			}
+			set.getDetectionMap().put(setting.specificType, detections.compact());
+			setting.setNodes(set);
+		}
+		set.setupInferenceTest();
+		set.setUserSettings(new Point3i(1, 1, 1), 6, 1200, 0, 0, 0, 0);
+		return set;
+	}
+}
@@ -0,0 +1,370 @@
+package functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+
+import objects.ExtendedConfiguration;
+import objects.ScenarioSet;
+import utilities.Constants;
+
+/**
+ * Exact search for the configuration with the lowest objective, under the same constraints the annealing uses:
+ * sensor cost within the budget, at most the maximum number of wells and one sensor of each type per node.
+ * Candidates are numbered and every subset is reached once by only adding candidates above the last one added.
+ * A subtree is dropped when a lower bound on anything it can reach is no better than the best configuration found so far.
+ * The bound gives each scenario the inference time it would have if the remaining budget bought the earliest detecting
+ * candidates for every technology at once, so it never overestimates and the configuration returned is optimal.
+ * The top of the tree is split into fork/join tasks that share the best configuration found.
+ * ERT is left out, its detections depend on the well pairing rather than the candidate node.
+ */
+
+public class BranchAndBound {
+
+	private static final int SPLIT_DEPTH = 2; // Subtrees starting above this depth become their own tasks
+	private static final int CHECK_INTERVAL = 65536; // Nodes between checks for cancellation
+	private static final long SUFFIX_LIMIT = 16000000; // Most floats spent on the suffix table before falling back to walking the lists
+
+	private final CandidateTable table;
+	private final int types;
+	private final int candidates;
+	private final float[] cost;
+	private final int[] column;
+	private final float[][] ttd;
+	private final double[] weights;
+	private final float[] typeCost;
+	private final float minCost;
+	private final float budget;
+	private final int maxWells;
+	private final int capacity;
+
+	private final int[][][] earliest; // [scenario][type], detecting candidates from earliest to latest
+	private final float[][][] suffix; // [scenario][type], the capacity earliest TTDs among the candidates from each index on, NaN padded
+
+	private volatile double bestValue = Double.MAX_VALUE;
+	private int[] bestSensors = new int[0];
+	private final AtomicLong explored = new AtomicLong();
+	private final AtomicLong pruned = new AtomicLong();
+	private volatile boolean cancelled = false;
+	private IProgressMonitor monitor;
+
+	public BranchAndBound(ScenarioSet set) {
+		table = new CandidateTable(set);
+		types = table.types;
+		candidates = table.candidates;
+		cost = table.cost;
+		column = table.column;
+		ttd = table.ttd;
+		weights = table.weights;
+		typeCost = table.typeCost;
+		minCost = table.minCost;
+		budget = table.budget;
+		maxWells = table.maxWells;
+		capacity = table.capacity;
+
+		earliest = new int[weights.length][types][];
+		for(int s=0; s<weights.length; s++) {
+			final float[] row = ttd[s];
+			for(int t=0; t<types; t++) {
+				List<Integer> detecting = new ArrayList<Integer>();
+				for(int c=0; c<candidates; c++) {
+					if(table.candidateType[c] == t && !Float.isNaN(row[c]))
+						detecting.add(c);
+				}
+				Collections.sort(detecting, new Comparator<Integer>() {
+					@Override
+					public int compare(Integer a, Integer b) {
+						return Float.compare(row[a], row[b]);
+					}
+				});
+				earliest[s][t] = new int[detecting.size()];
+				for(int d=0; d<detecting.size(); d++)
+					earliest[s][t][d] = detecting.get(d);
+			}
+		}
+
+		// Small enough problems keep, for every starting index, the earliest TTDs that can still be added
+		if((long)weights.length * types * (candidates+1) * capacity <= SUFFIX_LIMIT && capacity > 0) {
+			suffix = new float[weights.length][types][(candidates+1) * capacity];
+			for(int s=0; s<weights.length; s++) {
+				for(int t=0; t<types; t++) {
+					float[] row = suffix[s][t];
+					Arrays.fill(row, candidates * capacity, row.length, Float.NaN);
+					for(int c=candidates-1; c>=0; c--) {
+						int at = c * capacity;
+						System.arraycopy(row, at + capacity, row, at, capacity);
+						float value = ttd[s][c];
+						if(table.candidateType[c] != t || Float.isNaN(value))
+							continue;
+						// Insert into the sorted row, dropping the latest if it is full
+						int position = capacity - 1;
+						if(!Float.isNaN(row[at + position]) && row[at + position] <= value)
+							continue;
+						while(position > 0 && (Float.isNaN(row[at + position-1]) || row[at + position-1] > value)) {
+							row[at + position] = row[at + position-1];
+							position--;
+						}
+						row[at + position] = value;
+					}
+				}
+			}
+		} else {
+			suffix = null;
+		}
+	}
+
+	/**
+	 * Runs the search to completion (or until the monitor is cancelled) and returns the best configuration found,
+	 * not yet scored by the objective. The result is optimal unless the search was cancelled.
+	 */
+	public ExtendedConfiguration solve(IProgressMonitor monitor) {
+		this.monitor = monitor;
+		greedy();
+		ForkJoinPool pool = new ForkJoinPool(Constants.parallelism);
+		try {
+			pool.invoke(new Subtree(new int[0], 0, 0, 0));
+		} finally {
+			pool.shutdown();
+		}
+		int[] best = getBestSensors();
+		return table.toConfiguration(best, best.length);
+	}
+
+	public int getCandidateCount() {
+		return candidates;
+	}
+
+	public double getBestValue() {
+		return bestValue;
+	}
+
+	public long getNodesExplored() {
+		return explored.get();
+	}
+
+	public long getNodesPruned() {
+		return pruned.get();
+	}
+
+	public boolean wasCancelled() {
+		return cancelled;
+	}
+
+	private synchronized int[] getBestSensors() {
+		return bestSensors;
+	}
+
+	private synchronized void offer(double value, int[] chosen, int size) {
+		if(value < bestValue) {
+			bestSensors = Arrays.copyOf(chosen, size);
+			bestValue = value;
+		}
+	}
+
+	// Adds whichever candidate lowers the objective most until nothing does, a starting point for pruning
+	private void greedy() {
+		Searcher searcher = new Searcher(new int[0], 0, 0, 0);
+		offer(searcher.evaluate(), searcher.chosen, 0);
+		while(true) {
+			int best = -1;
+			double bestGreedy = bestValue;
+			for(int c=0; c<candidates; c++) {
+				if(searcher.contains(c) || !searcher.canAdd(c))
+					continue;
+				searcher.push(c);
+				double value = searcher.evaluate();
+				searcher.pop();
+				if(value < bestGreedy) {
+					bestGreedy = value;
+					best = c;
+				}
+			}
+			if(best == -1)
+				break;
+			searcher.push(best);
+			offer(bestGreedy, searcher.chosen, searcher.size);
+		}
+	}
+
+	/**
+	 * One top level branch: evaluates its own configuration, then either forks a task per child
+	 * or searches the rest of the subtree depth first on this thread.
+	 */
+	private class Subtree extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] chosen;
+		private final int next;
+		private final float spent;
+		private final int wells;
+
+		private Subtree(int[] chosen, int next, float spent, int wells) {
+			this.chosen = chosen;
+			this.next = next;
+			this.spent = spent;
+			this.wells = wells;
+		}
+
+		@Override
+		protected void compute() {
+			Searcher searcher = new Searcher(chosen, next, spent, wells);
+			if(chosen.length >= SPLIT_DEPTH) {
+				searcher.search();
+				return;
+			}
+			if(!searcher.visit())
+				return;
+			List<Subtree> children = new ArrayList<Subtree>();
+			for(int c=next; c<candidates; c++) {
+				if(!searcher.canAdd(c))
+					continue;
+				int[] child = Arrays.copyOf(chosen, chosen.length+1);
+				child[chosen.length] = c;
+				children.add(new Subtree(child, c+1, spent + cost[c], wells + (searcher.hasWell(column[c]) ? 0 : 1)));
+			}
+			invokeAll(children);
+		}
+	}
+
+	// Depth first search state for one thread: the chosen candidates as a stack, plus scratch space for the evaluation
+	private class Searcher {
+
+		private final int[] chosen = new int[capacity+1];
+		private int size;
+		private int next;
+		private float spent;
+		private int wells;
+		private final int[] nextStack = new int[capacity+2];
+		private final int[] wellStack = new int[capacity+2];
+
+		private final CandidateTable.Scorer scorer = table.new Scorer();
+
+		private Searcher(int[] start, int next, float spent, int wells) {
+			System.arraycopy(start, 0, chosen, 0, start.length);
+			size = start.length;
+			this.next = next;
+			this.spent = spent;
+			this.wells = wells;
+		}
+
+		private boolean contains(int candidate) {
+			for(int i=0; i<size; i++) {
+				if(chosen[i] == candidate)
+					return true;
+			}
+			return false;
+		}
+
+		private boolean hasWell(int well) {
+			for(int i=0; i<size; i++) {
+				if(column[chosen[i]] == well)
+					return true;
+			}
+			return false;
+		}
+
+		private boolean canAdd(int candidate) {
+			if(size >= capacity || spent + cost[candidate] > budget)
+				return false;
+			return wells < maxWells || hasWell(column[candidate]);
+		}
+
+		private void push(int candidate) {
+			nextStack[size] = next;
+			wellStack[size] = wells;
+			if(!hasWell(column[candidate]))
+				wells++;
+			chosen[size++] = candidate;
+			spent += cost[candidate];
+			next = candidate + 1;
+		}
+
+		private void pop() {
+			int candidate = chosen[--size];
+			spent -= cost[candidate];
+			next = nextStack[size];
+			wells = wellStack[size];
+		}
+
+		private void search() {
+			if(!visit())
+				return;
+			for(int c=next; c<candidates && !cancelled; c++) {
+				if(!canAdd(c))
+					continue;
+				push(c);
+				search();
+				pop();
+			}
+		}
+
+		// Scores this configuration and returns true if its subtree could still hold something better
+		private boolean visit() {
+			long count = explored.incrementAndGet();
+			if(count % CHECK_INTERVAL == 0 && monitor != null) {
+				if(monitor.isCanceled())
+					cancelled = true;
+				monitor.subTask("Exact search: " + count + " configurations explored, best " + Constants.decimalFormat.format(bestValue));
+			}
+			if(cancelled)
+				return false;
+
+			// Bound everything below this configuration first, it is part of its own subtree so usually nothing more is needed
+			if(next < candidates) {
+				float left = budget - spent;
+				int room = Math.min(capacity - size, minCost > 0 ? (int)Math.floor(left / minCost) : candidates);
+				boolean wellsFull = wells >= maxWells;
+				double bound = 0;
+				for(int s=0; s<weights.length; s++) {
+					scorer.fill(s, chosen, size);
+					bound += weights[s] * bestPossible(s, left, room, wellsFull);
+					if(bound >= bestValue) {
+						pruned.incrementAndGet();
+						return false;
+					}
+				}
+			}
+			offer(evaluate(), chosen, size);
+			return next < candidates;
+		}
+
+		// The objective of the chosen candidates, the weighted sum of each scenario's inference time
+		private double evaluate() {
+			return scorer.evaluate(chosen, size);
+		}
+
+		/**
+		 * A lower bound on the scenario's inference time anywhere in this subtree, called with the chosen TTDs filled in.
+		 * Adds, for each type, the earliest remaining candidates the leftover budget could buy, within the wells if they are used up.
+		 */
+		private float bestPossible(int s, float left, int room, boolean wellsFull) {
+			for(int t=0; t<types; t++) {
+				int extra = Math.min(room, typeCost[t] > 0 ? (int)Math.floor(left / typeCost[t]) : room);
+				if(suffix != null && !wellsFull) {
+					float[] row = suffix[s][t];
+					int at = next * capacity;
+					for(int e=0; e<extra && !Float.isNaN(row[at + e]); e++)
+						scorer.insert(t, row[at + e]);
+					continue;
+				}
+				int[] order = earliest[s][t];
+				for(int o=0; o<order.length && extra > 0; o++) {
+					int c = order[o];
+					if(c < next || (wellsFull && !hasWell(column[c])))
+						continue;
+					scorer.insert(t, ttd[s][c]);
+					extra--;
+				}
+			}
+			return scorer.inference();
+		}
+	}
+}
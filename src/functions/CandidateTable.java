@@ -0,0 +1,273 @@
+package functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import objects.DetectionMatrix;
+import objects.ExtendedConfiguration;
+import objects.ExtendedSensor;
+import objects.NodeStructure;
+import objects.ScenarioSet;
+import objects.SensorSetting;
+import utilities.Point3i;
+
+/**
+ * The sensors an optimizer can choose from, as flat arrays: one candidate per sensor type and valid node that detects in
+ * at least one scenario, with its cost, well location and TTD in every weighted scenario, plus the detection criteria.
+ * Scorer evaluates a set of candidates the same way SimulatedAnnealing's objective does, without building a configuration.
+ * Shared by the exact and greedy searches. ERT is left out, its detections depend on the well pairing rather than the node.
+ */
+
+public class CandidateTable {
+
+	static final float PENALTY = 1000000; // Same penalty the objective gives a scenario that is not detected
+
+	final NodeStructure nodeStructure;
+	final int types;
+	final String[] typeNames;
+	final int candidates;
+	final int[] candidateType;
+	final int[] candidateNode;
+	final float[] cost;
+	final int[] column; // Well location, i + j * iMax
+	final float[][] ttd; // [scenario][candidate], NaN where the candidate does not detect
+	final double[] weights; // Globally normalized, as in the objective
+	final float[] typeCost;
+	final float minCost;
+
+	// Detection criteria: one entry per active test
+	final int[] minimum; // Sensors the whole test needs
+	final int[][] keyCounts; // Sensors needed for each technology in the test
+	final boolean[][][] keyTypes; // [test][key][type], types the technology in the test matches
+	final boolean[] allTypes;
+
+	final float budget;
+	final int maxWells;
+	final int capacity; // Most sensors any affordable configuration holds
+
+	private Map<String, Integer> index; // "type node" to candidate, built when first needed
+
+	public CandidateTable(ScenarioSet set) {
+		nodeStructure = set.getNodeStructure();
+		budget = set.getSensorCostConstraint();
+		maxWells = set.getMaxWells();
+		int iMax = nodeStructure.getIJKDimensions().getI();
+
+		List<String> scenarios = new ArrayList<String>();
+		for(String scenario: set.getScenarios()) {
+			if(set.getScenarioWeights().get(scenario) > 0) //Skip any scenarios with a weighting of 0, like the objective
+				scenarios.add(scenario);
+		}
+		weights = new double[scenarios.size()];
+		for(int s=0; s<scenarios.size(); s++)
+			weights[s] = set.getGloballyNormalizedScenarioWeight(scenarios.get(s));
+
+		List<String> typeList = new ArrayList<String>();
+		for(String type: set.getDataTypes()) {
+			if(!type.contains("Electrical Conductivity") && set.getSensorSettings(type) != null)
+				typeList.add(type);
+		}
+		types = typeList.size();
+		typeNames = typeList.toArray(new String[types]);
+		typeCost = new float[types];
+
+		// Gather the candidates that detect something, sensors that never detect can't lower the objective
+		List<int[]> found = new ArrayList<int[]>();
+		final List<float[]> foundTTDs = new ArrayList<float[]>();
+		for(int t=0; t<types; t++) {
+			SensorSetting setting = set.getSensorSettings(typeNames[t]);
+			typeCost[t] = setting.getSensorCost();
+			DetectionMatrix detections = set.getDetectionMatrix(setting.specificType);
+			if(detections == null)
+				continue;
+			List<Integer> nodes = new ArrayList<Integer>(setting.getValidNodes());
+			Collections.sort(nodes);
+			for(Integer node: nodes) {
+				float[] row = new float[scenarios.size()];
+				boolean detects = false;
+				for(int s=0; s<scenarios.size(); s++) {
+					row[s] = detections.getTTD(scenarios.get(s), node);
+					detects |= !Float.isNaN(row[s]);
+				}
+				if(detects) {
+					found.add(new int[] {t, node, found.size()});
+					foundTTDs.add(row);
+				}
+			}
+		}
+
+		// Candidates that detect more scenarios sooner go first, so searches come across good configurations early
+		final double[] score = new double[found.size()];
+		for(int c=0; c<found.size(); c++) {
+			for(int s=0; s<weights.length; s++) {
+				float value = foundTTDs.get(c)[s];
+				if(!Float.isNaN(value))
+					score[c] += weights[s] / (1 + value);
+			}
+		}
+		Collections.sort(found, new Comparator<int[]>() {
+			@Override
+			public int compare(int[] a, int[] b) {
+				return Double.compare(score[b[2]], score[a[2]]);
+			}
+		});
+
+		candidates = found.size();
+		candidateType = new int[candidates];
+		candidateNode = new int[candidates];
+		cost = new float[candidates];
+		column = new int[candidates];
+		ttd = new float[weights.length][candidates];
+		for(int c=0; c<candidates; c++) {
+			int[] candidate = found.get(c);
+			candidateType[c] = candidate[0];
+			candidateNode[c] = candidate[1];
+			cost[c] = typeCost[candidate[0]];
+			Point3i ijk = nodeStructure.getIJKFromNodeNumber(candidate[1]);
+			column[c] = (ijk.getI()-1) + (ijk.getJ()-1) * iMax;
+			for(int s=0; s<weights.length; s++)
+				ttd[s][c] = foundTTDs.get(candidate[2])[s];
+		}
+
+		float cheapest = Float.MAX_VALUE;
+		for(int t=0; t<types; t++)
+			cheapest = Math.min(cheapest, typeCost[t]);
+		minCost = cheapest;
+		capacity = types == 0 ? 0 : (int)Math.min(candidates, cheapest > 0 ? Math.floor(budget / cheapest) : candidates);
+
+		List<HashMap<String, Integer>> tests = set.getInferenceTest().getActiveTests();
+		minimum = new int[tests.size()];
+		keyCounts = new int[tests.size()][];
+		keyTypes = new boolean[tests.size()][][];
+		allTypes = new boolean[types];
+		Arrays.fill(allTypes, true);
+		for(int test=0; test<tests.size(); test++) {
+			List<String> keys = new ArrayList<String>();
+			for(Map.Entry<String, Integer> entry: tests.get(test).entrySet()) {
+				minimum[test] += entry.getValue();
+				if(!entry.getKey().equals("Any Technology")) // Only counts toward the minimum
+					keys.add(entry.getKey());
+			}
+			keyCounts[test] = new int[keys.size()];
+			keyTypes[test] = new boolean[keys.size()][types];
+			for(int k=0; k<keys.size(); k++) {
+				keyCounts[test][k] = tests.get(test).get(keys.get(k));
+				for(int t=0; t<types; t++)
+					keyTypes[test][k][t] = typeNames[t].contains(keys.get(k)); // Same matching as the objective
+			}
+		}
+	}
+
+	public int size() {
+		return candidates;
+	}
+
+	// The candidate for a sensor of this type at this node, or -1 if it is not one
+	public synchronized int indexOf(String type, int node) {
+		if(index == null) {
+			index = new HashMap<String, Integer>();
+			for(int c=0; c<candidates; c++)
+				index.put(typeNames[candidateType[c]] + " " + candidateNode[c], c);
+		}
+		Integer candidate = index.get(type + " " + node);
+		return candidate == null ? -1 : candidate;
+	}
+
+	public ExtendedConfiguration toConfiguration(int[] chosen, int size) {
+		ExtendedConfiguration configuration = new ExtendedConfiguration();
+		for(int i=0; i<size; i++)
+			configuration.addSensor(new ExtendedSensor(candidateNode[chosen[i]], typeNames[candidateType[chosen[i]]], nodeStructure));
+		configuration.orderSensors();
+		return configuration;
+	}
+
+	/**
+	 * Scratch space for scoring one scenario at a time: the TTDs of the chosen candidates sorted per type,
+	 * which callers can add to before asking for the inference time. Not thread safe, use one per thread.
+	 */
+	public class Scorer {
+
+		private final float[][] lists = new float[types][capacity+1];
+		private final int[] sizes = new int[types];
+		private final int[] heads = new int[types];
+
+		// The objective of the chosen candidates, the weighted sum of each scenario's inference time
+		public double evaluate(int[] chosen, int size) {
+			double value = 0;
+			for(int s=0; s<weights.length; s++) {
+				fill(s, chosen, size);
+				value += weights[s] * inference();
+			}
+			return value;
+		}
+
+		public void fill(int s, int[] chosen, int size) {
+			Arrays.fill(sizes, 0);
+			for(int i=0; i<size; i++) {
+				float value = ttd[s][chosen[i]];
+				if(!Float.isNaN(value))
+					insert(candidateType[chosen[i]], value);
+			}
+		}
+
+		public void insert(int type, float value) {
+			float[] list = lists[type];
+			int position = sizes[type]++;
+			while(position > 0 && list[position-1] > value) {
+				list[position] = list[position-1];
+				position--;
+			}
+			list[position] = value;
+		}
+
+		// Mirrors SimulatedAnnealing's inference on the sorted lists: the best time any active test passes, or the penalty
+		public float inference() {
+			float value = PENALTY;
+			for(int test=0; test<minimum.length; test++) {
+				float testValue = 0;
+				boolean pass = true;
+				for(int k=0; k<keyCounts[test].length && pass; k++) {
+					float kth = kthSmallest(keyTypes[test][k], keyCounts[test][k]);
+					if(Float.isNaN(kth))
+						pass = false;
+					else if(kth > testValue)
+						testValue = kth;
+				}
+				if(!pass)
+					continue;
+				float all = kthSmallest(allTypes, minimum[test]);
+				if(Float.isNaN(all))
+					continue;
+				if(all > testValue)
+					testValue = all;
+				if(testValue < value)
+					value = testValue;
+			}
+			return value;
+		}
+
+		// The k'th smallest TTD over the lists of the included types, NaN if there are fewer than k
+		private float kthSmallest(boolean[] include, int k) {
+			if(k <= 0)
+				return 0;
+			Arrays.fill(heads, 0);
+			float value = Float.NaN;
+			for(int taken=0; taken<k; taken++) {
+				int from = -1;
+				for(int t=0; t<types; t++) {
+					if(include[t] && heads[t] < sizes[t] && (from == -1 || lists[t][heads[t]] < lists[from][heads[from]]))
+						from = t;
+				}
+				if(from == -1)
+					return Float.NaN;
+				value = lists[from][heads[from]++];
+			}
+			return value;
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package functions;
+
+import java.util.concurrent.Phaser;
+
+import objects.ExtendedConfiguration;
+
+/**
+ * Meeting point for annealing chains that run at the same time on a temperature ladder (chain 0 is the hottest).
+ * When every chain has arrived, neighbouring chains swap current configurations if the hotter one holds the better
+ * configuration, and every chain adopts the overall best configuration as its own best.
+ * The rebase rule in Function then pulls stagnant chains toward the best design found by any chain.
+ * A chain that stops deregisters from the phaser, so a chain already waiting is released rather than left waiting on it,
+ * and the chains still running keep exchanging among themselves.
+ */
+
+public class ChainExchange {
+
+	private final Phaser phaser;
+	private final boolean[] left; // Chains that have deregistered, guarded by itself
+	private final ExtendedConfiguration[] currents;
+	private final ExtendedConfiguration[] bests;
+	private final float[] currentValues;
+	private final float[] bestValues;
+	private int round = 0;
+
+	public ChainExchange(int chains) {
+		currents = new ExtendedConfiguration[chains];
+		bests = new ExtendedConfiguration[chains];
+		currentValues = new float[chains];
+		bestValues = new float[chains];
+		left = new boolean[chains];
+		phaser = new Phaser(chains) {
+			// Runs once every registered chain has arrived, so the configurations are safe to touch
+			@Override
+			protected boolean onAdvance(int phase, int registeredParties) {
+				swap();
+				return registeredParties == 0;
+			}
+		};
+	}
+
+	/**
+	 * Blocks until every chain still running has arrived, the configurations passed in are updated in place.
+	 */
+	public boolean exchange(int chain, ExtendedConfiguration current, float currentValue, ExtendedConfiguration best, float bestValue) {
+		currents[chain] = current;
+		bests[chain] = best;
+		currentValues[chain] = currentValue;
+		bestValues[chain] = bestValue;
+		int phase = phaser.arrive();
+		if(phase < 0)
+			return false; // Every chain has left
+		// A chain that leaves while this one waits still counts toward the advance, so this can't wait on it forever
+		phaser.awaitAdvance(phase);
+		return true;
+	}
+
+	public float getCurrentValue(int chain) {
+		return currentValues[chain];
+	}
+
+	public float getBestValue(int chain) {
+		return bestValues[chain];
+	}
+
+	// Called when a chain finishes or is cancelled, so nobody waits on it. The other chains carry on without it.
+	public void leave(int chain) {
+		synchronized(left) {
+			if(left[chain])
+				return;
+			left[chain] = true;
+		}
+		phaser.arriveAndDeregister();
+	}
+
+	private void swap() {
+		// Chains that left hold stale entries, the rest form the ladder in order
+		int[] active = new int[currents.length];
+		int count = 0;
+		synchronized(left) {
+			for(int i=0; i<currents.length; i++) {
+				if(!left[i])
+					active[count++] = i;
+			}
+		}
+		if(count == 0)
+			return;
+
+		// Alternate between even and odd neighbours so configurations can travel the whole ladder
+		for(int n = round % 2; n+1 < count; n += 2) {
+			int i = active[n];
+			int j = active[n+1];
+			if(currentValues[i] < currentValues[j]) {
+				ExtendedConfiguration hotter = currents[i].makeCopy();
+				currents[i].matchConfiguration(currents[j]);
+				currents[j].matchConfiguration(hotter);
+				float value = currentValues[i];
+				currentValues[i] = currentValues[j];
+				currentValues[j] = value;
+			}
+		}
+		round++;
+
+		// Share the best configuration found by any chain still running
+		int best = active[0];
+		for(int n=1; n<count; n++) {
+			if(bestValues[active[n]] < bestValues[best])
+				best = active[n];
+		}
+		for(int n=0; n<count; n++) {
+			int i = active[n];
+			if(i != best && bestValues[i] > bestValues[best]) {
+				bests[i].matchConfiguration(bests[best]);
+				bestValues[i] = bestValues[best];
+			}
+		}
+	}
+}
@@ -0,0 +1,256 @@
+package functions;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import functions.MutationFunction.MUTATE;
+import objects.E4DSensors;
+import objects.ExtendedConfiguration;
+import objects.ExtendedSensor;
+import objects.ScenarioSet;
+import results.ResultPrinter;
+import results.Results;
+import utilities.Constants;
+
+/**
+ * Everything an annealing run needs to carry on where it left off, taken at the start of an iteration: the current, new
+ * and best configurations and their values, the rebase counter, the cooling schedule, convergence and guided mutation
+ * state, the random state, the ERT well pairings and the best configuration summary of the runs so far.
+ * Written to checkpoint.txt in the results directory as tab separated lines, replacing the last one, every
+ * Constants.checkpointInterval seconds and when a run is cancelled. A resumed run continues with the same trajectory.
+ * Only written by runs that run one after another, parallel chains depend on each other's timing.
+ */
+
+public class Checkpoint {
+
+	public static final String FILE_NAME = "checkpoint.txt";
+	private static final int VERSION = 1;
+
+	// The runs it belongs to, a checkpoint from other settings is not resumed
+	private String ensemble;
+	private int iterations;
+	private int runs;
+	private String settings;
+
+	int run;
+	int iteration; // The next iteration to run
+	int counter;
+	float currentValue;
+	float newValue;
+	float bestValue;
+	ExtendedConfiguration currentConfiguration;
+	ExtendedConfiguration newConfiguration;
+	ExtendedConfiguration bestConfiguration;
+	String scheduleState = "";
+	String convergenceState = "";
+	String guidedState = "";
+	private long random;
+
+	private List<String[]> current = new ArrayList<String[]>();
+	private List<String[]> next = new ArrayList<String[]>();
+	private List<String[]> best = new ArrayList<String[]>();
+	private List<List<String[]>> bestSummary = new ArrayList<List<String[]>>();
+	private List<String[]> ertPairings = new ArrayList<String[]>();
+	private List<String[]> earlyStops = new ArrayList<String[]>();
+
+	Checkpoint(ScenarioSet set, int runs, MUTATE mutate) {
+		ensemble = set.getScenarioEnsemble();
+		iterations = set.getIterations();
+		this.runs = runs;
+		settings = mutate + " " + Constants.coolingSchedule.name() + " " + Constants.useGuidedMutation;
+	}
+
+	public static File getFile() {
+		return new File(ResultPrinter.resultsDirectory, FILE_NAME);
+	}
+
+	/**
+	 * Writes the checkpoint, along with the global state (random numbers, ERT pairings and result summaries)
+	 * as it is now. Results stored so far are flushed to disk first so the checkpoint is never ahead of them.
+	 */
+	void write() {
+		random = Constants.random.getState();
+		List<String> lines = new ArrayList<String>();
+		lines.add("version\t" + VERSION);
+		lines.add("ensemble\t" + ensemble);
+		lines.add("iterations\t" + iterations);
+		lines.add("runs\t" + runs);
+		lines.add("settings\t" + settings);
+		lines.add("run\t" + run);
+		lines.add("iteration\t" + iteration);
+		lines.add("counter\t" + counter);
+		lines.add("values\t" + currentValue + "\t" + newValue + "\t" + bestValue);
+		lines.add("random\t" + random);
+		lines.add("schedule\t" + scheduleState);
+		lines.add("convergence\t" + convergenceState);
+		lines.add("guided\t" + guidedState);
+		addSensors(lines, "current", currentConfiguration);
+		addSensors(lines, "new", newConfiguration);
+		addSensors(lines, "best", bestConfiguration);
+		for(Float threshold: E4DSensors.ertWellPairings.keySet()) {
+			for(Map.Entry<Integer, Integer> pairing: E4DSensors.ertWellPairings.get(threshold).entrySet())
+				lines.add("ert\t" + threshold + "\t" + pairing.getKey() + "\t" + pairing.getValue());
+		}
+		Results results = ResultPrinter.results;
+		if(results != null) {
+			synchronized(ResultPrinter.class) {
+				int index = 0;
+				for(ExtendedConfiguration configuration: results.bestConfigSumList)
+					addSensors(lines, "summary\t" + index++, configuration);
+				for(Integer earlier: results.iterationsRun.keySet())
+					lines.add("earlyStop\t" + earlier + "\t" + results.iterationsRun.get(earlier) + "\t" + results.iterationsSaved.get(earlier));
+			}
+			results.stream.flush();
+		}
+		File file = getFile();
+		File written = new File(file.getPath() + ".tmp");
+		try {
+			Files.write(written.toPath(), lines, StandardCharsets.UTF_8);
+			Files.move(written.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Constants.log(java.util.logging.Level.INFO, "Function: checkpoint written", "run=" + run + ", iteration=" + iteration);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.out.println("Unable to write the checkpoint to " + file.getPath());
+		}
+	}
+
+	private static void addSensors(List<String> lines, String key, ExtendedConfiguration configuration) {
+		for(ExtendedSensor sensor: configuration.getExtendedSensors())
+			lines.add(key + "\t" + sensor.getSensorType() + "\t" + sensor.getNodeNumber() + "\t" + sensor.getNodePairNumber());
+	}
+
+	/**
+	 * The checkpoint in the results directory, if there is one for these runs
+	 * @return null if there is none, or it was written for other settings or can't be read
+	 */
+	public static Checkpoint find(ScenarioSet set, int runs, MUTATE mutate) {
+		File file = getFile();
+		if(!file.exists())
+			return null;
+		Checkpoint checkpoint = new Checkpoint(set, runs, mutate);
+		String settings = checkpoint.settings;
+		try {
+			checkpoint.read(Files.readAllLines(file.toPath(), StandardCharsets.UTF_8));
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Unable to read the checkpoint in " + file.getPath() + ", starting over");
+			return null;
+		}
+		if(!set.getScenarioEnsemble().equals(checkpoint.ensemble) || set.getIterations() != checkpoint.iterations ||
+				runs != checkpoint.runs || !settings.equals(checkpoint.settings) || checkpoint.run >= runs) {
+			System.out.println("The checkpoint in " + file.getPath() + " was written for different run settings, starting over");
+			return null;
+		}
+		checkpoint.currentConfiguration = toConfiguration(checkpoint.current, set);
+		checkpoint.newConfiguration = toConfiguration(checkpoint.next, set);
+		checkpoint.bestConfiguration = toConfiguration(checkpoint.best, set);
+		return checkpoint;
+	}
+
+	private void read(List<String> lines) throws IOException {
+		Map<Integer, List<String[]>> summaries = new HashMap<Integer, List<String[]>>();
+		for(String line: lines) {
+			int tab = line.indexOf('\t');
+			String key = tab == -1 ? line : line.substring(0, tab);
+			String value = tab == -1 ? "" : line.substring(tab+1);
+			String[] values = value.split("\t", -1);
+			if(key.equals("version") && Integer.parseInt(value) != VERSION)
+				throw new IOException("Unknown checkpoint version " + value);
+			else if(key.equals("ensemble"))
+				ensemble = value;
+			else if(key.equals("iterations"))
+				iterations = Integer.parseInt(value);
+			else if(key.equals("runs"))
+				runs = Integer.parseInt(value);
+			else if(key.equals("settings"))
+				settings = value;
+			else if(key.equals("run"))
+				run = Integer.parseInt(value);
+			else if(key.equals("iteration"))
+				iteration = Integer.parseInt(value);
+			else if(key.equals("counter"))
+				counter = Integer.parseInt(value);
+			else if(key.equals("values")) {
+				currentValue = Float.parseFloat(values[0]);
+				newValue = Float.parseFloat(values[1]);
+				bestValue = Float.parseFloat(values[2]);
+			} else if(key.equals("random"))
+				random = Long.parseLong(value);
+			else if(key.equals("schedule"))
+				scheduleState = value;
+			else if(key.equals("convergence"))
+				convergenceState = value;
+			else if(key.equals("guided"))
+				guidedState = value;
+			else if(key.equals("current"))
+				current.add(values);
+			else if(key.equals("new"))
+				next.add(values);
+			else if(key.equals("best"))
+				best.add(values);
+			else if(key.equals("ert"))
+				ertPairings.add(values);
+			else if(key.equals("earlyStop"))
+				earlyStops.add(values);
+			else if(key.equals("summary")) {
+				int index = Integer.parseInt(values[0]);
+				if(!summaries.containsKey(index))
+					summaries.put(index, new ArrayList<String[]>());
+				summaries.get(index).add(new String[] {values[1], values[2], values[3]});
+			}
+		}
+		for(int index=0; summaries.containsKey(index); index++)
+			bestSummary.add(summaries.get(index));
+	}
+
+	private static ExtendedConfiguration toConfiguration(List<String[]> sensors, ScenarioSet set) {
+		ExtendedConfiguration configuration = new ExtendedConfiguration(true);
+		for(String[] values: sensors) {
+			ExtendedSensor sensor = new ExtendedSensor(Integer.parseInt(values[1]), values[0], set.getNodeStructure());
+			if(values[0].contains("Electrical Conductivity"))
+				sensor.setNodePair(Integer.parseInt(values[2]), set.getNodeStructure());
+			configuration.addSensor(sensor);
+		}
+		return configuration;
+	}
+
+	/**
+	 * Puts back the global state from when the checkpoint was written: the ERT pairings, early stops and best configuration
+	 * summary, and has the results pick up this run's files where they were. Call after clearing the results.
+	 */
+	void restore(ScenarioSet set, Function function) {
+		for(String[] values: ertPairings) {
+			float threshold = Float.parseFloat(values[0]);
+			if(!E4DSensors.ertWellPairings.containsKey(threshold))
+				E4DSensors.ertWellPairings.put(threshold, new HashMap<Integer, Integer>());
+			E4DSensors.ertWellPairings.get(threshold).put(Integer.parseInt(values[1]), Integer.parseInt(values[2]));
+		}
+		for(String[] values: earlyStops)
+			ResultPrinter.storeEarlyStop(Integer.parseInt(values[0]), Integer.parseInt(values[1]), Integer.parseInt(values[2]));
+		// Scoring the summary configurations again gives back the detections the summary files print
+		for(List<String[]> sensors: bestSummary) {
+			ExtendedConfiguration configuration = toConfiguration(sensors, set);
+			function.objective(configuration, set, Constants.runThreaded);
+			ResultPrinter.results.addBest(configuration, set);
+		}
+		ResultPrinter.results.resume(run, iteration);
+	}
+
+	// The random state goes back last, right before the iterations continue
+	void restoreRandom() {
+		Constants.random.setState(random);
+	}
+
+	public static void delete() {
+		File file = getFile();
+		if(file.exists() && !file.delete())
+			System.out.println("Unable to remove the finished checkpoint " + file.getPath());
+	}
+}
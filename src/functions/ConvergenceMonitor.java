@@ -0,0 +1,83 @@
+package functions;
+
+/**
+ * Tracks how an annealing run is progressing: the share of recent proposals that were accepted and how long it has been
+ * since the best value improved. Cooling schedules read it to adjust the temperature, and the run stops early once the
+ * best has stagnated and almost nothing is being accepted any more.
+ */
+
+public class ConvergenceMonitor {
+
+	private final boolean[] accepted; // Ring of the most recent acceptance decisions
+	private int next = 0;
+	private int recorded = 0;
+	private int acceptedCount = 0;
+	private int sinceBest = 0;
+
+	private final int stagnationWindow;
+	private final double minAcceptanceRate;
+
+	/**
+	 * @param iterations length of the run
+	 * @param stagnationFraction fraction of the run without a new best before it counts as converged
+	 * @param minAcceptanceRate recent acceptance rate it also has to fall below
+	 */
+	public ConvergenceMonitor(int iterations, double stagnationFraction, double minAcceptanceRate) {
+		accepted = new boolean[Math.max(20, iterations / 20)];
+		stagnationWindow = Math.max(accepted.length, (int)(iterations * stagnationFraction));
+		this.minAcceptanceRate = minAcceptanceRate;
+	}
+
+	// Called once per iteration, after the annealing has decided on the new configuration
+	public void record(boolean wasAccepted, boolean newBest) {
+		if(recorded == accepted.length && accepted[next])
+			acceptedCount--;
+		else if(recorded < accepted.length)
+			recorded++;
+		accepted[next] = wasAccepted;
+		if(wasAccepted)
+			acceptedCount++;
+		next = (next + 1) % accepted.length;
+		sinceBest = newBest ? 0 : sinceBest + 1;
+	}
+
+	// Another chain shared a better best, count it as progress
+	public void bestImproved() {
+		sinceBest = 0;
+	}
+
+	// Share of the recent proposals that replaced the current configuration, 1 before anything is recorded
+	public double getAcceptanceRate() {
+		return recorded == 0 ? 1 : (double)acceptedCount / recorded;
+	}
+
+	public int getIterationsSinceBest() {
+		return sinceBest;
+	}
+
+	public int getWindow() {
+		return accepted.length;
+	}
+
+	public boolean hasConverged() {
+		return sinceBest >= stagnationWindow && recorded == accepted.length && getAcceptanceRate() < minAcceptanceRate;
+	}
+
+	// For checkpoints: the counters, then the ring as 0s and 1s
+	public String getState() {
+		StringBuilder ring = new StringBuilder();
+		for(boolean wasAccepted: accepted)
+			ring.append(wasAccepted ? '1' : '0');
+		return next + "\t" + recorded + "\t" + acceptedCount + "\t" + sinceBest + "\t" + ring;
+	}
+
+	public void setState(String state) {
+		String[] values = state.split("\t");
+		next = Integer.parseInt(values[0]);
+		recorded = Integer.parseInt(values[1]);
+		acceptedCount = Integer.parseInt(values[2]);
+		sinceBest = Integer.parseInt(values[3]);
+		for(int i=0; i<accepted.length; i++)
+			accepted[i] = values[4].charAt(i) == '1';
+	}
+}
@@ -0,0 +1,135 @@
+package functions;
+
+/**
+ * Temperature for each annealing iteration. The temperature is the probability of accepting a configuration that is no
+ * better than the current one, scaled by the chain's step on the parallel tempering ladder.
+ * EXPONENTIAL is the original decay from 1 to 0.01 over the run.
+ * ADAPTIVE steers the temperature so the recent acceptance rate follows a target that decays from 50% to 1%,
+ * so runs where few moves improve stay warm longer and easy runs cool sooner.
+ * REHEATING follows the exponential decay but steps back to a warmer point whenever the best value stagnates,
+ * then cools faster over the remaining iterations so the run still ends cold.
+ */
+
+public abstract class CoolingSchedule {
+
+	public static enum SCHEDULE {
+		EXPONENTIAL("Exponential"),
+		ADAPTIVE("Adaptive"),
+		REHEATING("Reheating");
+
+		private String name;
+		SCHEDULE(String name) {
+			this.name = name;
+		}
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	protected final int iterations;
+	protected final double scale;
+
+	protected CoolingSchedule(int iterations, double scale) {
+		this.iterations = Math.max(1, iterations);
+		this.scale = scale;
+	}
+
+	public static CoolingSchedule create(SCHEDULE schedule, int iterations, double scale) {
+		switch(schedule) {
+		case ADAPTIVE:
+			return new Adaptive(iterations, scale);
+		case REHEATING:
+			return new Reheating(iterations, scale);
+		default:
+			return new Exponential(iterations, scale);
+		}
+	}
+
+	public abstract double getTemperature(int iteration, ConvergenceMonitor convergence);
+
+	// For checkpoints, schedules that carry state from one iteration to the next override these
+	public String getState() {
+		return "";
+	}
+
+	public void setState(String state) {
+	}
+
+	public static class Exponential extends CoolingSchedule {
+
+		public Exponential(int iterations, double scale) {
+			super(iterations, scale);
+		}
+
+		@Override
+		public double getTemperature(int iteration, ConvergenceMonitor convergence) {
+			return scale * Math.pow(0.01, (double)iteration / iterations);
+		}
+	}
+
+	public static class Adaptive extends CoolingSchedule {
+
+		private static final double STEP = 0.97; // Change in temperature per iteration while off target
+		private double temperature = 1;
+
+		public Adaptive(int iterations, double scale) {
+			super(iterations, scale);
+		}
+
+		@Override
+		public double getTemperature(int iteration, ConvergenceMonitor convergence) {
+			double target = 0.5 * Math.pow(0.02, (double)iteration / iterations);
+			if(convergence.getAcceptanceRate() > target)
+				temperature = Math.max(0.0001, temperature * STEP);
+			else
+				temperature = Math.min(1, temperature / STEP);
+			return scale * temperature;
+		}
+
+		@Override
+		public String getState() {
+			return Double.toString(temperature);
+		}
+
+		@Override
+		public void setState(String state) {
+			temperature = Double.parseDouble(state);
+		}
+	}
+
+	public static class Reheating extends CoolingSchedule {
+
+		private final int patience; // Iterations without a new best before reheating
+		private double progress = 0; // Position along the exponential decay, from 0 to 1
+		private int lastReheat = 0;
+
+		public Reheating(int iterations, double scale) {
+			super(iterations, scale);
+			patience = Math.max(10, this.iterations / 5);
+		}
+
+		@Override
+		public double getTemperature(int iteration, ConvergenceMonitor convergence) {
+			if(iteration > 0)
+				progress += (1 - progress) / (iterations - iteration + 1);
+			if(convergence.getIterationsSinceBest() >= patience && iteration - lastReheat >= patience) {
+				progress = Math.max(0, progress - 0.5 * patience / iterations); // Part of the way back toward where the last best was found
+				lastReheat = iteration;
+			}
+			return scale * Math.pow(0.01, progress);
+		}
+
+		@Override
+		public String getState() {
+			return progress + "\t" + lastReheat;
+		}
+
+		@Override
+		public void setState(String state) {
+			String[] values = state.split("\t");
+			progress = Double.parseDouble(values[0]);
+			lastReheat = Integer.parseInt(values[1]);
+		}
+	}
+}
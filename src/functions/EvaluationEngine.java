@@ -0,0 +1,153 @@
+package functions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import utilities.Constants;
+
+/**
+ * Long-lived worker pool that evaluates the objective across scenarios.
+ * Threads are created once and reused for every configuration, iteration and run.
+ * The pool is owned by Function and shut down when the wizard closes.
+ */
+
+public class EvaluationEngine {
+
+	// Work done for a single scenario, exceptions are printed and do not stop the other scenarios
+	public interface ScenarioTask {
+		public void evaluate(String scenario) throws Exception;
+	}
+
+	// Work done for a contiguous block of scenario indices, from (inclusive) to (exclusive)
+	public interface BlockTask {
+		public void evaluate(int from, int to) throws Exception;
+	}
+
+	private final int parallelism;
+	private final ExecutorService executor;
+	private volatile double lastUtilisation = 1;
+
+	public EvaluationEngine(int parallelism) {
+		this.parallelism = Math.max(1, parallelism); //Single core machines still get one worker
+		executor = Executors.newFixedThreadPool(this.parallelism, new ThreadFactory() {
+			private int count = 0;
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "DREAM evaluation " + (++count));
+				thread.setDaemon(true); //Don't keep the JVM alive if the wizard is closed mid-run
+				return thread;
+			}
+		});
+	}
+
+	// Splits the scenarios into one balanced chunk per thread and blocks until every scenario has been evaluated
+	public void evaluate(final List<String> scenarios, final ScenarioTask task) {
+		evaluate(scenarios.size(), new BlockTask() {
+			@Override
+			public void evaluate(int from, int to) {
+				for(String scenario: scenarios.subList(from, to)) {
+					try {
+						task.evaluate(scenario);
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		});
+	}
+
+	// Splits the scenario indices into one balanced block per thread and blocks until every block has been evaluated
+	public void evaluate(int scenarios, final BlockTask task) {
+		long startTime = System.nanoTime();
+		List<int[]> chunks = partition(scenarios, parallelism);
+
+		// Nothing to share, skip the hand-off to the pool
+		if(chunks.size() <= 1) {
+			for(int[] chunk: chunks)
+				evaluateChunk(chunk, task);
+			lastUtilisation = 1;
+			Constants.timer.addUtilisation(lastUtilisation);
+			return;
+		}
+
+		List<Callable<Long>> callables = new ArrayList<Callable<Long>>();
+		for(final int[] chunk: chunks) {
+			callables.add(new Callable<Long>() {
+				@Override
+				public Long call() {
+					return evaluateChunk(chunk, task);
+				}
+			});
+		}
+
+		long busyTime = 0;
+		try {
+			for(Future<Long> future: executor.invokeAll(callables))
+				busyTime += future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		}
+
+		// Fraction of the available thread time that was spent evaluating scenarios
+		long wallTime = System.nanoTime() - startTime;
+		lastUtilisation = wallTime <= 0 ? 1 : Math.min(1, (double)busyTime / ((double)wallTime * chunks.size()));
+		Constants.timer.addUtilisation(lastUtilisation);
+	}
+
+	// Returns the time in nanoseconds spent evaluating the chunk
+	private static long evaluateChunk(int[] chunk, BlockTask task) {
+		long startTime = System.nanoTime();
+		try {
+			task.evaluate(chunk[0], chunk[1]);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+		return System.nanoTime() - startTime;
+	}
+
+	// Contiguous chunks (from, to) whose sizes differ by at most one
+	private static List<int[]> partition(int scenarios, int count) {
+		List<int[]> chunks = new ArrayList<int[]>();
+		int chunkCount = Math.min(count, scenarios);
+		int start = 0;
+		for(int i=0; i<chunkCount; i++) {
+			int size = scenarios / chunkCount + (i < scenarios % chunkCount ? 1 : 0);
+			chunks.add(new int[] {start, start+size});
+			start += size;
+		}
+		return chunks;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	// Utilisation of the worker threads during the last call to evaluate, between 0 and 1
+	public double getLastUtilisation() {
+		return lastUtilisation;
+	}
+
+	public boolean isShutdown() {
+		return executor.isShutdown();
+	}
+
+	public void shutdown() {
+		executor.shutdown();
+		try {
+			if(!executor.awaitTermination(60, TimeUnit.SECONDS))
+				executor.shutdownNow();
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+}
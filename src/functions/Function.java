@@ -1,5 +1,7 @@
 package functions;
 
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -26,7 +28,6 @@ import visualization.DomainVisualization;
 
 public class Function implements ObjectiveFunction, MutationFunction, InferenceModel {
 	
-	protected Integer currentIteration = -3; 
 	protected Integer currentRun = 0;
 	
 	protected MUTATE mutate = MUTATE.SENSOR; // Default mutation
@@ -38,8 +39,11 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 	protected volatile Map<String, Map<Integer, Map<Float, Map<String, Boolean>>>> history;
 
 	private IProgressMonitor monitor; // So we can update the status
+	private int checkpointRuns = 0; // Runs in the sequence being checkpointed, 0 when runs are not checkpointed
 	private DomainVisualization viewer; // Graphical representation of the run
 	
+	private static EvaluationEngine engine; // Shared by every function so the worker threads survive across runs
+	
 	/**
 	 * Main algorithm
 	 */
@@ -64,14 +68,22 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 
 
 	/**
-	 * Runs full enumeration given the provided scenario set
+	 * Finds the optimal configuration for the provided scenario set with an exact branch and bound search (see BranchAndBound)
 	 * @param initialConfiguration
 	 * @param set
 	 */
 	public void fullEnumeration(ExtendedConfiguration initialConfiguration, ScenarioSet set) {
 		ResultPrinter.clearResults(set, false);
 		iterative = false;
-		generateConfigurations(new ArrayList<ExtendedSensor>(),  getAllPossibleSensors(set), set);
+		long startTime = System.currentTimeMillis();
+		BranchAndBound search = new BranchAndBound(set);
+		System.out.println("Exact search over " + search.getCandidateCount() + " candidate sensors");
+		ExtendedConfiguration configuration = search.solve(monitor);
+		objective(configuration, set, Constants.runThreaded);
+		ResultPrinter.storeResults(0, 0, configuration, configuration, configuration, set);
+		System.out.println((search.wasCancelled() ? "Exact search cancelled, best found " : "Exact search done, optimal objective ") + configuration.getObjectiveValue() + " after " +
+				search.getNodesExplored() + " configurations (" + search.getNodesPruned() + " subtrees pruned) in " + Constants.formatSeconds((System.currentTimeMillis() - startTime) / 1000));
+		Constants.log(Level.CONFIG, "Function: exact search best configuration", configuration);
 		ResultPrinter.printAll(set.getNodeStructure());
 	}
 
@@ -82,7 +94,7 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 		if(!sets.isEmpty()) {
 			ResultPrinter.clearResults(sets.get(0), false);
 			for(ScenarioSet set: sets) {
-				runInternal(initialConfiguration, set);
+				runInternal(getStart(initialConfiguration, set), set);
 			}
 			ResultPrinter.printAll(sets.get(0).getNodeStructure());
 		}
@@ -96,19 +108,34 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 	
 	
 	public boolean run(ExtendedConfiguration initialConfiguration, ScenarioSet set, boolean showPlots, int sets) {
+		initialConfiguration = getStart(initialConfiguration, set);
+		Checkpoint resume = findCheckpoint(set, sets);
+		if(resume == null && Constants.runChainsInParallel && sets > 1) {
+			if(!set.getDataTypes().toString().contains("Electrical Conductivity"))
+				return runChains(initialConfiguration, set, showPlots, sets);
+			System.out.println("ERT well pairings are shared between runs, running the chains one after another.");
+		}
 		boolean wasCancelled = false;
 		ResultPrinter.clearResults(set, showPlots);
-		for(int i = 0; i < sets; i++) {
-			if(i !=0) ResultPrinter.newTTDPlots(set, i+1); //already set up for the first iteration
-			currentRun = i;
-			if(monitor != null) 
-				monitor.setTaskName("Running iterative procedure " + (i+1) + "/" + sets);
-			wasCancelled = runInternal(initialConfiguration, set);
-			if(wasCancelled) {
-				return true;
+		int first = resume(resume, set);
+		checkpointRuns = sets;
+		try {
+			for(int i = first; i < sets; i++) {
+				if(i !=0) ResultPrinter.newTTDPlots(set, i+1); //already set up for the first iteration
+				currentRun = i;
+				if(monitor != null) 
+					monitor.setTaskName("Running iterative procedure " + (i+1) + "/" + sets);
+				wasCancelled = runInternal(initialConfiguration, set, new Chain(currentRun, 1, null), i == first ? resume : null);
+				if(wasCancelled) {
+					return true;
+				}
 			}
+		} finally {
+			checkpointRuns = 0;
 		}
-		monitor.setTaskName("Printing results");
+		Checkpoint.delete();
+		if(monitor != null)
+			monitor.setTaskName("Printing results");
 		ResultPrinter.printAll(set.getNodeStructure());
 		return false;
 	}
@@ -127,17 +154,91 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 	//	run(initialConfiguration, set, null);
 	//}
 	
+	/**
+	 * Runs the chains at the same time, each on its own random stream and on its own step of the temperature ladder.
+	 * The chains meet Constants.chainExchanges times per run to swap configurations (see ChainExchange).
+	 * Each chain is stored as its own run in the shared results.
+	 * @param initialConfiguration
+	 * @param set
+	 * @param showPlots
+	 * @param chains
+	 */
+	public boolean runChains(final ExtendedConfiguration initialConfiguration, final ScenarioSet set, boolean showPlots, final int chains) {
+		ResultPrinter.clearResults(set, showPlots);
+		ResultPrinter.results.plotRun = 0; // Mixing the chains on the same plots isn't readable, only show the first
+		if(monitor != null)
+			monitor.setTaskName("Running " + chains + " chains in parallel");
+		
+		final ChainExchange exchange = new ChainExchange(chains);
+		final boolean[] cancelled = new boolean[chains];
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int i = 0; i < chains; i++) {
+			final int index = i;
+			final double temperatureScale = Math.pow(Constants.chainTemperatureRatio, i);
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Constants.random.setStream(index); // Split off the seed, so it doesn't depend on thread timing
+					try {
+						cancelled[index] = runInternal(initialConfiguration, set, new Chain(index, temperatureScale, exchange));
+					} catch (Exception e) {
+						try {
+							PrintWriter errorWriter = new PrintWriter("Errors " + Constants.uniqueError + ".txt");
+							e.printStackTrace(errorWriter);
+							Constants.uniqueError++;
+							errorWriter.close();
+						} catch (FileNotFoundException e1) {
+							e1.printStackTrace();
+						}
+						System.out.println("Chain " + (index+1) + " stopped early.");
+					} finally {
+						exchange.leave(index);
+						Constants.random.clearStream();
+					}
+				}
+			}, "DREAM chain " + (i+1));
+			threads.add(thread);
+			thread.start();
+		}
+		
+		for(Thread thread: threads) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return true;
+			}
+		}
+		for(boolean wasCancelled: cancelled) {
+			if(wasCancelled)
+				return true;
+		}
+		if(monitor != null)
+			monitor.setTaskName("Printing results");
+		ResultPrinter.printAll(set.getNodeStructure());
+		return false;
+	}
+	
 	public boolean run(ExtendedConfiguration initialConfiguration, ScenarioSet set, boolean showPlots) {
 		boolean wasCancelled = false;
+		Checkpoint resume = findCheckpoint(set, 1);
 		ResultPrinter.clearResults(set, showPlots);
-		wasCancelled = runInternal(initialConfiguration, set);
+		resume(resume, set);
+		checkpointRuns = 1;
+		try {
+			wasCancelled = runInternal(getStart(initialConfiguration, set), set, new Chain(currentRun, 1, null), resume);
+		} finally {
+			checkpointRuns = 0;
+		}
+		if(!wasCancelled)
+			Checkpoint.delete();
 		ResultPrinter.printAll(set.getNodeStructure());
 		return wasCancelled;
 	}
 
 	public void run(ExtendedConfiguration initialConfiguration, ScenarioSet set, String resultTag) {
 		ResultPrinter.clearResults(set, false);
-		runInternal(initialConfiguration, set);
+		runInternal(getStart(initialConfiguration, set), set);
 		ResultPrinter.printAll(set.getNodeStructure());
 	}
 //	/**
@@ -156,69 +257,187 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 //			
 //	}
 
+	// With Constants.greedyStart the annealing starts from a greedy design (see LazyGreedy) built on the initial configuration
+	private ExtendedConfiguration getStart(ExtendedConfiguration initialConfiguration, ScenarioSet set) {
+		if(!Constants.greedyStart)
+			return initialConfiguration;
+		if(monitor != null)
+			monitor.subTask("Building greedy starting configuration");
+		ExtendedConfiguration start = new LazyGreedy().design(initialConfiguration, set);
+		System.out.println("Starting from a greedy design with " + start.getExtendedSensors().size() + " sensors");
+		Constants.log(Level.FINER, "Function: greedy starting configuration", start);
+		return start;
+	}
+
+	// With Constants.resume, the checkpoint left in the results directory by an earlier run with these settings
+	private Checkpoint findCheckpoint(ScenarioSet set, int runs) {
+		if(!Constants.resume)
+			return null;
+		Checkpoint checkpoint = Checkpoint.find(set, runs, mutate);
+		if(checkpoint == null)
+			System.out.println("No checkpoint to resume from in " + ResultPrinter.resultsDirectory + ", starting over");
+		return checkpoint;
+	}
+	
+	// Puts the results back the way they were at the checkpoint and returns the run to continue from, call after clearing the results
+	private int resume(Checkpoint checkpoint, ScenarioSet set) {
+		if(checkpoint == null)
+			return 0;
+		System.out.println("Resuming from run " + (checkpoint.run+1) + ", iteration " + checkpoint.iteration);
+		Constants.log(Level.INFO, "Function: resuming from a checkpoint", "run=" + checkpoint.run + ", iteration=" + checkpoint.iteration);
+		checkpoint.restore(set, this);
+		if(monitor != null)
+			monitor.worked(checkpoint.run * set.getIterations() + checkpoint.iteration);
+		return checkpoint.run;
+	}
+
 	/**
 	 * Runs the basic algorithm
 	 * @param initialConfiguration
 	 * @param set
 	 */
 	private boolean runInternal(final ExtendedConfiguration initialConfiguration, ScenarioSet set) {
+		return runInternal(initialConfiguration, set, new Chain(currentRun, 1, null), null);
+	}
+	
+	private boolean runInternal(final ExtendedConfiguration initialConfiguration, ScenarioSet set, Chain chain) {
+		return runInternal(initialConfiguration, set, chain, null);
+	}
+	
+	/**
+	 * Runs the basic algorithm, continuing from the checkpoint if there is one.
+	 * Runs in a checkpointed sequence write a checkpoint every Constants.checkpointInterval seconds and when cancelled.
+	 */
+	private boolean runInternal(final ExtendedConfiguration initialConfiguration, ScenarioSet set, Chain chain, Checkpoint resume) {
 		iterative = true;
 		float percent = (float) 0.2;
 		
 		Constants.log(Level.INFO, "Function: running", null);
 		Constants.log(Level.FINER, "Function: running - initial configuration", initialConfiguration);
 		
-		currentIteration = -3;
-		
-		// Create three more configurations from the initial configuration
-		ExtendedConfiguration currentConfiguration = initialConfiguration.makeCopy();
-		ExtendedConfiguration newConfiguration = initialConfiguration.makeCopy();
-		ExtendedConfiguration bestConfiguration = initialConfiguration.makeCopy();
-		float currentValue = objective(currentConfiguration, set, Constants.runThreaded);
-		float newValue = currentValue;
-		float bestValue = currentValue;
-		ResultPrinter.storeResults(currentRun, currentIteration, newConfiguration, bestConfiguration, currentConfiguration, set);
-		
-		// Apply first mutation
-		mutate(newConfiguration, set);
+		int currentIteration = -3;
+		boolean primary = chain.exchange == null || chain.run == 0; // Only one chain drives the viewer and status line
+		String prefix = chain.exchange == null ? "" : "Chain " + (chain.run+1) + ", ";
+		GuidedMutation guided = Constants.useGuidedMutation && mutate == MUTATE.SENSOR ? new GuidedMutation() : null; // Keeps tabu moves for this chain only
 		
-		Constants.log(Level.FINER, "Function: running - new configuration", newConfiguration);
-		currentIteration = -2;
-		currentValue = objective(currentConfiguration, set, Constants.runThreaded);
-		ResultPrinter.storeResults(currentRun, currentIteration, newConfiguration, bestConfiguration, currentConfiguration, set);
-		
-		currentIteration = -1;
-		newValue = objective(newConfiguration, set, Constants.runThreaded);
-		bestValue = currentValue;
+		ExtendedConfiguration currentConfiguration;
+		ExtendedConfiguration newConfiguration;
+		ExtendedConfiguration bestConfiguration;
+		float currentValue;
+		float newValue;
+		float bestValue;
+		int counter = 0; //count the number of iterations since the last "best"
+		if(resume == null) {
+			// Create three more configurations from the initial configuration
+			currentConfiguration = initialConfiguration.makeCopy();
+			newConfiguration = initialConfiguration.makeCopy();
+			bestConfiguration = initialConfiguration.makeCopy();
+			currentValue = objective(currentConfiguration, set, Constants.runThreaded);
+			newValue = currentValue;
+			bestValue = currentValue;
+			ResultPrinter.storeResults(chain.run, currentIteration, newConfiguration, bestConfiguration, currentConfiguration, set);
+			
+			// Apply first mutation
+			if(guided != null)
+				guided.mutate(newConfiguration, set);
+			else
+				mutate(newConfiguration, set);
+			
+			Constants.log(Level.FINER, "Function: running - new configuration", newConfiguration);
+			currentIteration = -2;
+			currentValue = objective(currentConfiguration, set, Constants.runThreaded);
+			ResultPrinter.storeResults(chain.run, currentIteration, newConfiguration, bestConfiguration, currentConfiguration, set);
+			
+			currentIteration = -1;
+			newValue = objective(newConfiguration, set, Constants.runThreaded);
+			bestValue = currentValue;
+			
+			Constants.log(Level.FINER, "Function: running - iteration", "-1\tCurrent: " + currentValue + "\tNew: " + newValue + "\tBest: " + bestValue);
+			ResultPrinter.storeResults(chain.run, currentIteration, newConfiguration, bestConfiguration, currentConfiguration, set);
+			
+			// Did not detect in any scenario
+			if(bestValue < 0)
+				bestValue = Integer.MAX_VALUE;
+			
+			// Hack to add a well pairing for ERT technology
+			newConfiguration = E4DSensors.ertAddPairing(newConfiguration, currentConfiguration, set.getNodeStructure());
+		} else {
+			// Scoring the configurations again puts back their detections, the values are kept as they were
+			currentConfiguration = resume.currentConfiguration;
+			newConfiguration = resume.newConfiguration;
+			bestConfiguration = resume.bestConfiguration;
+			objective(currentConfiguration, set, Constants.runThreaded);
+			objective(newConfiguration, set, Constants.runThreaded);
+			objective(bestConfiguration, set, Constants.runThreaded);
+			currentValue = resume.currentValue;
+			newValue = resume.newValue;
+			bestValue = resume.bestValue;
+			counter = resume.counter;
+		}
 		double temperature = 1;
 		
 		float totalMutateTime = 0;
 		float totalObjectiveTime = 0;
 		
-		Constants.log(Level.FINER, "Function: running - iteration", "-1\tCurrent: " + currentValue + "\tNew: " + newValue + "\tBest: " + bestValue);
-		ResultPrinter.storeResults(currentRun, currentIteration, newConfiguration, bestConfiguration, currentConfiguration, set);
-		
-		// Did not detect in any scenario
-		if(bestValue < 0)
-			bestValue = Integer.MAX_VALUE;
-		
-		// Hack to add a well pairing for ERT technology
-		newConfiguration = E4DSensors.ertAddPairing(newConfiguration, currentConfiguration, set.getNodeStructure());
-		
-		int counter = 0; //count the number of iterations since the last "best"
-		for(currentIteration = 0; currentIteration < set.getIterations(); currentIteration++) {
+		int exchangeInterval = Math.max(1, set.getIterations() / Math.max(1, Constants.chainExchanges));
+		CoolingSchedule schedule = CoolingSchedule.create(Constants.coolingSchedule, set.getIterations(), chain.temperatureScale); // Scaled by the chain's step on the ladder
+		ConvergenceMonitor convergence = new ConvergenceMonitor(set.getIterations(), Constants.stagnationFraction, Constants.minAcceptanceRate);
+		Checkpoint checkpoint = checkpointRuns > 0 && Constants.checkpointInterval > 0 && chain.exchange == null ? new Checkpoint(set, checkpointRuns, mutate) : null;
+		long lastCheckpoint = System.currentTimeMillis();
+		int startIteration = 0;
+		if(resume != null) {
+			schedule.setState(resume.scheduleState);
+			convergence.setState(resume.convergenceState);
+			if(guided != null)
+				guided.setState(resume.guidedState);
+			resume.restoreRandom();
+			startIteration = resume.iteration;
+		}
+		for(currentIteration = startIteration; currentIteration < set.getIterations(); currentIteration++) {
+			boolean cancelled = monitor != null && monitor.isCanceled();
+			// Taken before anything in the iteration draws a random number or moves the schedule on
+			if(checkpoint != null && (cancelled || System.currentTimeMillis() - lastCheckpoint >= Constants.checkpointInterval * 1000L)) {
+				checkpoint.run = chain.run;
+				checkpoint.iteration = currentIteration;
+				checkpoint.counter = counter;
+				checkpoint.currentValue = currentValue;
+				checkpoint.newValue = newValue;
+				checkpoint.bestValue = bestValue;
+				checkpoint.currentConfiguration = currentConfiguration;
+				checkpoint.newConfiguration = newConfiguration;
+				checkpoint.bestConfiguration = bestConfiguration;
+				checkpoint.scheduleState = schedule.getState();
+				checkpoint.convergenceState = convergence.getState();
+				checkpoint.guidedState = guided == null ? "" : guided.getState();
+				checkpoint.write();
+				lastCheckpoint = System.currentTimeMillis();
+			}
+			if(cancelled) {
+				return true;
+			}
 			//temperature= temperature * 0.99f;
-			temperature = java.lang.Math.pow(0.01,(double)currentIteration/(double)set.getIterations()); //exponential decay
+			temperature = schedule.getTemperature(currentIteration, convergence);
+			boolean accepted = false;
+			boolean newBest = false;
 			//float randomValue = 1;
 			float randomValue = Constants.random.nextFloat(); //seeded random number for consistent results
 			counter++;
 			
-			if(monitor.isCanceled()) {
-				return true;
-			}
-			if(monitor != null)
+			if(monitor != null && primary)
 				monitor.subTask("iteration " + currentIteration);
-			System.out.println("Iteration "+currentIteration+", Current "+currentValue+", New "+newValue+"("+newConfiguration.countScenariosDetected()+" detected), Best "+bestValue);
+			System.out.println(prefix+"Iteration "+currentIteration+", Current "+currentValue+", New "+newValue+"("+newConfiguration.countScenariosDetected()+" detected), Best "+bestValue);
+			
+			// Parallel chains periodically swap configurations with their neighbours and share the overall best
+			if(chain.exchange != null && currentIteration > 0 && currentIteration % exchangeInterval == 0) {
+				if(chain.exchange.exchange(chain.run, currentConfiguration, currentValue, bestConfiguration, bestValue)) {
+					currentValue = chain.exchange.getCurrentValue(chain.run);
+					if(chain.exchange.getBestValue(chain.run) < bestValue) {
+						counter = 0; // Another chain found a better configuration, give it time before rebasing
+						convergence.bestImproved();
+					}
+					bestValue = chain.exchange.getBestValue(chain.run);
+				}
+			}
 			
 			// If new configuration is better than current, set current equal to new
 			if(newValue < currentValue) {
@@ -226,6 +445,7 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 				// Make a copy of the new configuration and save it into the current configuration
 				currentConfiguration.matchConfiguration(newConfiguration);
 				currentValue = newValue;
+				accepted = true;
 			}
 			// If new configuration is worse than current, compare with temperature to decide whether to swap
 			else if (newValue >= currentValue) {
@@ -233,8 +453,11 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 					Constants.log(Level.FINER, "Function: running - new configuration was worse than current, but swapping them anyway.", "newValue="+newValue+", currentValue="+currentValue+", Temp="+temperature+", rand="+randomValue);
 					currentConfiguration.matchConfiguration(newConfiguration);
 					currentValue = newValue;
+					accepted = true;
 				} else {
 					Constants.log(Level.FINER, "Function: running - new configuration was worse than current, NOT swapping.", "newValue="+newValue+", currentValue="+currentValue+", Temp="+temperature+", rand="+randomValue);
+					if(guided != null)
+						guided.rejected();
 				}
 			}
 			
@@ -243,9 +466,11 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 				Constants.log(Level.FINER, "Function: running - new configuration was better then best, swapping them.", "currentValue="+currentValue+", bestValue="+bestValue+", Temp="+temperature);
 				// Make a copy of the current configuration and save it into the best configuration
 				bestConfiguration.matchConfiguration(newConfiguration);
+				newBest = newValue < bestValue; // Ties do not count as progress toward convergence
 				bestValue = newValue;
 				counter = 0; //reset the counter to 0
 			}
+			convergence.record(accepted, newBest);
 			
 			// Starting the next iteration - newConfiguration starts as the currentConfiguration
 			// Unless we haven't found a new best configuration for a while, then rebase to bestConfiguration
@@ -258,7 +483,10 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 			
 			// Mutate the new configuration
 			long start = System.currentTimeMillis();
-			mutate(newConfiguration, set);
+			if(guided != null)
+				guided.mutate(newConfiguration, set);
+			else
+				mutate(newConfiguration, set);
 			newConfiguration.orderSensors(); //Order the sensors so we can avoid saving duplicate configurations
 			newConfiguration = E4DSensors.ertAddPairing(newConfiguration, currentConfiguration, set.getNodeStructure()); // Hack to add a well pairing for ERT technology
 			float ttm = System.currentTimeMillis()-start;
@@ -271,30 +499,41 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 			newValue = objective(newConfiguration, set, Constants.runThreaded);
 			float tto = System.currentTimeMillis()-start;
 			Constants.log(Level.FINE, "Function: running - time taken to run objective", (tto) + " ms");
+			if(Constants.runThreaded)
+				Constants.log(Level.FINE, "Function: running - thread utilisation", Constants.percentageFormat.format(getEngine().getLastUtilisation()*100) + "%");
 			totalObjectiveTime += tto;
 			Constants.log(Level.FINER, "Function: running - iteration", currentIteration + "\tCurrent: " + currentValue + "\tNew: " + newValue + "\tBest: " + bestValue);
 			
 			// Save the new configuration in results
-			ResultPrinter.storeResults(currentRun, currentIteration, newConfiguration, bestConfiguration, currentConfiguration, set);
+			ResultPrinter.storeResults(chain.run, currentIteration, newConfiguration, bestConfiguration, currentConfiguration, set);
 			
 			// Save the new configuration in the viewer
-			if(viewer != null)
+			if(viewer != null && primary)
 				viewer.addConfiguration(newConfiguration);
 			
 			// Add completed work to the monitor
 			if(monitor != null)
 				monitor.worked(1);
+			
+			// Stop once the best has not moved for a while and hardly anything is accepted
+			if(Constants.earlyStop && convergence.hasConverged() && currentIteration+1 < set.getIterations()) {
+				int saved = set.getIterations() - (currentIteration+1);
+				System.out.println(prefix+"Converged after "+(currentIteration+1)+" iterations, stopping early and saving "+saved);
+				Constants.log(Level.INFO, "Function: converged, stopping early", "iterations="+(currentIteration+1)+", saved="+saved+", acceptance rate="+convergence.getAcceptanceRate());
+				ResultPrinter.storeEarlyStop(chain.run, currentIteration+1, saved);
+				if(monitor != null)
+					monitor.worked(saved);
+				break;
+			}
 		}
 		
-		if(viewer != null) {
+		if(viewer != null && primary) {
 			//After running iterations, scan through the viewer configurations and remove duplicates
 			viewer.sortConfigurations();
 			//After running iterations, clear the last displayed configuration
 			viewer.clearViewer();
 		}
 		
-		currentIteration = null;
-
 		Constants.log(Level.FINE, "Function: running - total time taken to run objective", (totalMutateTime) + " ms");
 		Constants.log(Level.FINE, "Function: running - total time taken to run objective", (totalObjectiveTime) + " ms");
 
@@ -440,6 +679,19 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 		return null;
 	}
 
+	// State that differs between annealing chains running at the same time
+	private static class Chain {
+		private final int run;
+		private final double temperatureScale; // Step on the temperature ladder, 1 is the normal schedule
+		private final ChainExchange exchange; // null when the chain runs on its own
+		
+		private Chain(int run, double temperatureScale, ChainExchange exchange) {
+			this.run = run;
+			this.temperatureScale = temperatureScale;
+			this.exchange = exchange;
+		}
+	}
+	
 	public MUTATE getMutate() {
 		return mutate;
 	}
@@ -455,6 +707,22 @@ public class Function implements ObjectiveFunction, MutationFunction, InferenceM
 	public void setMonitor(IProgressMonitor monitor) {
 		this.monitor = monitor;
 	}
+	
+	// Lazily starts the worker pool, restarting it if the parallelism setting has changed
+	public static synchronized EvaluationEngine getEngine() {
+		if(engine != null && engine.getParallelism() != Math.max(1, Constants.parallelism))
+			shutdownEngine();
+		if(engine == null || engine.isShutdown())
+			engine = new EvaluationEngine(Constants.parallelism);
+		return engine;
+	}
+	
+	public static synchronized void shutdownEngine() {
+		if(engine != null) {
+			engine.shutdown();
+			engine = null;
+		}
+	}
 
 
 	/**					**\
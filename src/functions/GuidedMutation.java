@@ -0,0 +1,169 @@
+package functions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+import objects.DetectionMatrix;
+import objects.ExtendedConfiguration;
+import objects.ExtendedSensor;
+import objects.ScenarioSet;
+import utilities.Constants;
+
+/**
+ * Sensor mutation that moves sensors toward nodes that detect what the configuration misses.
+ * Part of the time a sensor that is not triggering (or any sensor, if they all trigger) is moved to the best of a sample
+ * of its neighbours and random valid nodes, scored from the detection matrix: a scenario the configuration does not detect
+ * counts more than any improvement, then scenarios it would detect sooner count by how much sooner.
+ * The rest of the time, or when no candidate improves anything, this falls back to ExtendedConfiguration.mutateSensor
+ * so sensors are still added, removed and moved between wells.
+ * Destinations of proposals the annealing rejected are tabu for a while. Holds per-chain state, so use one per chain.
+ */
+
+public class GuidedMutation implements MutationFunction {
+
+	private static final double GUIDED_FRACTION = 0.5; // Share of mutations that try a guided move first
+	private static final int RANDOM_CANDIDATES = 16; // Random valid nodes scored alongside the neighbours
+	private static final int TABU_SIZE = 32; // Rejected destinations remembered
+
+	private final String[] tabuTypes = new String[TABU_SIZE];
+	private final int[] tabuNodes = new int[TABU_SIZE];
+	private int tabuNext = 0;
+
+	// The last guided move, made tabu if it gets rejected
+	private String lastType = null;
+	private int lastNode = -1;
+
+	@Override
+	public boolean mutate(ExtendedConfiguration configuration, ScenarioSet set) {
+		lastType = null;
+		if(Constants.random.nextDouble() < GUIDED_FRACTION && moveTowardMisses(configuration, set))
+			return true;
+		return configuration.mutateSensor(set);
+	}
+
+	// Called when the annealing did not accept the last mutation
+	public void rejected() {
+		if(lastType == null)
+			return;
+		tabuTypes[tabuNext] = lastType;
+		tabuNodes[tabuNext] = lastNode;
+		tabuNext = (tabuNext + 1) % TABU_SIZE;
+		lastType = null;
+	}
+
+	// For checkpoints: the next tabu slot, the last guided move, then the tabu moves, empty types for none
+	public String getState() {
+		StringBuilder state = new StringBuilder();
+		state.append(tabuNext + "\t" + (lastType == null ? "" : lastType) + "\t" + lastNode);
+		for(int t=0; t<TABU_SIZE; t++)
+			state.append("\t" + (tabuTypes[t] == null ? "" : tabuTypes[t]) + "\t" + tabuNodes[t]);
+		return state.toString();
+	}
+
+	public void setState(String state) {
+		String[] values = state.split("\t", -1);
+		tabuNext = Integer.parseInt(values[0]);
+		lastType = values[1].isEmpty() ? null : values[1];
+		lastNode = Integer.parseInt(values[2]);
+		for(int t=0; t<TABU_SIZE; t++) {
+			tabuTypes[t] = values[3 + 2*t].isEmpty() ? null : values[3 + 2*t];
+			tabuNodes[t] = Integer.parseInt(values[4 + 2*t]);
+		}
+	}
+
+	private boolean isTabu(String type, int node) {
+		for(int t=0; t<TABU_SIZE; t++) {
+			if(tabuNodes[t] == node && type.equals(tabuTypes[t]))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean moveTowardMisses(ExtendedConfiguration configuration, ScenarioSet set) {
+		List<ExtendedSensor> sensors = configuration.getExtendedSensors();
+		if(sensors.isEmpty())
+			return false;
+		configuration.getWells(); // Sensors need their wells to decide how they can move
+
+		// Sensors that are not helping are the ones worth moving
+		List<ExtendedSensor> idle = new ArrayList<ExtendedSensor>();
+		for(ExtendedSensor sensor: sensors) {
+			if(!sensor.isTriggering())
+				idle.add(sensor);
+		}
+		List<ExtendedSensor> pool = idle.isEmpty() ? sensors : idle;
+		ExtendedSensor sensor = pool.get(Constants.random.nextInt(pool.size()));
+		String type = sensor.getSensorType();
+		if(type.contains("Electrical Conductivity"))
+			return false; // ERT detections depend on the well pairing, not a single node
+		DetectionMatrix detections = set.getDetectionMatrix(set.getSensorSettings(type).specificType);
+		if(detections == null)
+			return false;
+
+		// Scenario weights and current TTDs lined up with the matrix rows, NaN where the configuration does not detect
+		List<String> scenarios = set.getScenarios();
+		int[] rows = new int[scenarios.size()];
+		float[] weights = new float[scenarios.size()];
+		float[] current = new float[scenarios.size()];
+		Map<String, Float> timesToDetection = configuration.getTimesToDetection();
+		for(int s=0; s<scenarios.size(); s++) {
+			rows[s] = detections.getScenarioIndex(scenarios.get(s));
+			weights[s] = set.getScenarioWeights().get(scenarios.get(s));
+			Float ttd = timesToDetection.get(scenarios.get(s));
+			current[s] = ttd == null ? Float.NaN : ttd;
+		}
+
+		boolean wellConstraint = !sensor.isWell();
+		int from = sensor.getNodeNumber();
+		int best = -1;
+		float bestScore = 0;
+		for(Integer node: set.getNodeStructure().getNeighborNodes(sensor.getIJK())) {
+			if(isTabu(type, node) || !set.isValidNode(type, configuration, node, false, wellConstraint))
+				continue;
+			float score = score(detections, node, rows, weights, current);
+			if(score > bestScore) {
+				bestScore = score;
+				best = node;
+			}
+		}
+		for(int c=0; c<RANDOM_CANDIDATES; c++) {
+			int node = set.getRandomValidNode(type, configuration, false, wellConstraint, from);
+			if(node == -1)
+				break; // Nowhere to go
+			if(isTabu(type, node))
+				continue;
+			float score = score(detections, node, rows, weights, current);
+			if(score > bestScore) {
+				bestScore = score;
+				best = node;
+			}
+		}
+		if(best == -1)
+			return false;
+
+		sensor.moveTo(best, set.getNodeStructure());
+		configuration.sensorMoved();
+		lastType = type;
+		lastNode = best;
+		Constants.log(Level.FINER, "Sensor configuration: mutated, GUIDED MOVE", sensor);
+		return true;
+	}
+
+	private static float score(DetectionMatrix detections, int node, int[] rows, float[] weights, float[] current) {
+		float score = 0;
+		for(int s=0; s<rows.length; s++) {
+			if(weights[s] <= 0 || rows[s] < 0)
+				continue;
+			float ttd = detections.getTTD(rows[s], node);
+			if(Float.isNaN(ttd))
+				continue;
+			if(Float.isNaN(current[s]))
+				score += weights[s] * 2; // A missed scenario outweighs any speedup
+			else if(ttd < current[s] && current[s] > 0)
+				score += weights[s] * (current[s] - ttd) / current[s];
+		}
+		return score;
+	}
+}
@@ -0,0 +1,330 @@
+package functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import objects.DetectionMatrix;
+import objects.ExtendedSensor;
+import objects.InferenceResult;
+import objects.ScenarioSet;
+import objects.SensorSetting;
+
+/**
+ * Incremental objective evaluation for configurations that differ by a single sensor.
+ * Keeps the sorted TTDs of every scenario, split by inference test key, for the last few evaluated configurations.
+ * When a configuration adds, moves or removes one sensor relative to one of those, only that sensor's TTD is
+ * inserted or removed, and scenarios where neither sensor detects reuse the cached inference result.
+ * ERT sensors come from the pairing matrix in E4DSensors, so configurations with them are not handled here.
+ */
+
+public class IncrementalEvaluator {
+
+	private static final int STATES = 4; // Enough for current, best and the last couple of new configurations
+	private static final String ALL_SENSORS = ""; // Every sensor type contains the empty key
+
+	private List<Object> context; // When any of this changes the cached states are no longer valid
+	private int[] testMinimum; // Sensors each active test needs, "Any Technology" included
+	private int[][] testKeys; // Position of the TTD list for each technology in the test
+	private int[][] testCounts; // Sensors needed for each technology in the test
+	private Map<String, Integer> keyIndex; // Test key to the position of its TTD list, ALL_SENSORS is 0
+	private List<String> keys;
+	private Map<String, Integer> scenarioIndex;
+
+	private Map<List<SensorKey>, State> states = new LinkedHashMap<List<SensorKey>, State>(STATES, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<SensorKey>, State> eldest) {
+			return size() > STATES;
+		}
+	};
+
+	/**
+	 * Finds the closest cached configuration and returns an update that evaluates the new one scenario by scenario.
+	 * Returns null when the configuration has to be fully recomputed (ERT sensors).
+	 */
+	public synchronized Update prepare(List<ExtendedSensor> sensors, ScenarioSet set) {
+		List<SensorKey> sensorKeys = new ArrayList<SensorKey>();
+		for(ExtendedSensor sensor: sensors) {
+			if(sensor.getSensorType().contains("Electrical Conductivity"))
+				return null;
+			sensorKeys.add(new SensorKey(sensor.getSensorType(), sensor.getNodeNumber()));
+		}
+		Collections.sort(sensorKeys);
+
+		List<Object> newContext = buildContext(set);
+		if(!newContext.equals(context))
+			reset(newContext, set);
+
+		// Look for a cached configuration that is at most one sensor away
+		State base = null;
+		SensorKey added = null;
+		SensorKey removed = null;
+		int bestDistance = Integer.MAX_VALUE;
+		for(State state: states.values()) {
+			SensorKey[] difference = new SensorKey[2];
+			int distance = difference(state.sensors, sensorKeys, difference);
+			if(distance < bestDistance) {
+				base = state;
+				removed = difference[0];
+				added = difference[1];
+				bestDistance = distance;
+				if(distance == 0) break;
+			}
+		}
+		if(base != null)
+			states.get(base.sensors); // Mark as recently used
+
+		return new Update(base, removed, added, new State(sensorKeys, scenarioIndex.size()), set);
+	}
+
+	public synchronized void commit(Update update) {
+		states.put(update.state.sensors, update.state);
+	}
+
+	public synchronized void clear() {
+		states.clear();
+		context = null;
+	}
+
+	// Everything outside the configuration that the inference results depend on, also used by ObjectiveCache
+	static List<Object> buildContext(ScenarioSet set) {
+		List<Object> newContext = new ArrayList<Object>();
+		newContext.add(set);
+		newContext.add(new ArrayList<String>(set.getScenarios()));
+		for(HashMap<String, Integer> test: set.getInferenceTest().getActiveTests())
+			newContext.add(new HashMap<String, Integer>(test));
+		for(String type: set.getDataTypes()) {
+			SensorSetting setting = set.getSensorSettings(type);
+			if(setting == null) continue;
+			newContext.add(setting.specificType);
+			newContext.add(set.getDetectionMatrix(setting.specificType)); // Compared by identity, a new matrix means new TTDs
+		}
+		return newContext;
+	}
+
+	private void reset(List<Object> newContext, ScenarioSet set) {
+		states.clear();
+		context = newContext;
+		keys = new ArrayList<String>();
+		keyIndex = new HashMap<String, Integer>();
+		keys.add(ALL_SENSORS);
+		keyIndex.put(ALL_SENSORS, 0);
+		List<HashMap<String, Integer>> tests = set.getInferenceTest().getActiveTests();
+		testMinimum = new int[tests.size()];
+		testKeys = new int[tests.size()][];
+		testCounts = new int[tests.size()][];
+		for(int t=0; t<tests.size(); t++) {
+			List<String> testKeyList = new ArrayList<String>();
+			for(Map.Entry<String, Integer> entry: tests.get(t).entrySet()) {
+				testMinimum[t] += entry.getValue();
+				if(!entry.getKey().equals("Any Technology"))
+					testKeyList.add(entry.getKey());
+			}
+			testKeys[t] = new int[testKeyList.size()];
+			testCounts[t] = new int[testKeyList.size()];
+			for(int k=0; k<testKeyList.size(); k++) {
+				String testKey = testKeyList.get(k);
+				if(!keyIndex.containsKey(testKey)) {
+					keyIndex.put(testKey, keys.size());
+					keys.add(testKey);
+				}
+				testKeys[t][k] = keyIndex.get(testKey);
+				testCounts[t][k] = tests.get(t).get(testKey);
+			}
+		}
+		scenarioIndex = new HashMap<String, Integer>();
+		for(String scenario: set.getScenarios())
+			scenarioIndex.put(scenario, scenarioIndex.size());
+	}
+
+	// Returns removed + added, or MAX_VALUE when more than one sensor was removed or added
+	private static int difference(List<SensorKey> from, List<SensorKey> to, SensorKey[] difference) {
+		int removed = 0;
+		int added = 0;
+		int i = 0;
+		int j = 0;
+		while(i < from.size() || j < to.size()) {
+			int compare = i == from.size() ? 1 : j == to.size() ? -1 : from.get(i).compareTo(to.get(j));
+			if(compare == 0) {
+				i++;
+				j++;
+			} else if(compare < 0) {
+				difference[0] = from.get(i++);
+				if(++removed > 1) return Integer.MAX_VALUE;
+			} else {
+				difference[1] = to.get(j++);
+				if(++added > 1) return Integer.MAX_VALUE;
+			}
+		}
+		return removed + added;
+	}
+
+	/**
+	 * The evaluation of one configuration, scenarios can be evaluated in parallel since each only touches its own row.
+	 */
+	public class Update {
+
+		private final State base; // null when there was no close configuration, every row is built from scratch
+		private final SensorKey removed;
+		private final SensorKey added;
+		private final State state;
+		private final ScenarioSet set;
+
+		private Update(State base, SensorKey removed, SensorKey added, State state, ScenarioSet set) {
+			this.base = base;
+			this.removed = removed;
+			this.added = added;
+			this.state = state;
+			this.set = set;
+		}
+
+		public InferenceResult evaluate(String scenario) {
+			int s = scenarioIndex.get(scenario);
+			float[][] row = base == null ? null : base.ttds[s];
+			if(row == null) {
+				row = buildRow(scenario);
+			} else {
+				float removedTTD = removed == null ? Float.NaN : getTTD(removed, scenario);
+				float addedTTD = added == null ? Float.NaN : getTTD(added, scenario);
+				// The changed sensor never detects in this scenario, nothing to recalculate
+				if(Float.isNaN(removedTTD) && Float.isNaN(addedTTD) && base.results[s] != null) {
+					state.ttds[s] = row;
+					state.results[s] = base.results[s];
+					return base.results[s];
+				}
+				row = row.clone(); // Rows are shared between states, copy before changing
+				for(int k=0; k<keys.size(); k++) {
+					if(!Float.isNaN(removedTTD) && removed.type.contains(keys.get(k)))
+						row[k] = remove(row[k], removedTTD);
+					if(!Float.isNaN(addedTTD) && added.type.contains(keys.get(k)))
+						row[k] = insert(row[k], addedTTD);
+				}
+			}
+			state.ttds[s] = row;
+			state.results[s] = inference(row, state.sensors.size());
+			return state.results[s];
+		}
+
+		private float[][] buildRow(String scenario) {
+			List<List<Float>> lists = new ArrayList<List<Float>>();
+			for(int k=0; k<keys.size(); k++)
+				lists.add(new ArrayList<Float>());
+			for(SensorKey sensor: state.sensors) {
+				float ttd = getTTD(sensor, scenario);
+				if(Float.isNaN(ttd)) continue;
+				for(int k=0; k<keys.size(); k++) {
+					if(sensor.type.contains(keys.get(k)))
+						lists.get(k).add(ttd);
+				}
+			}
+			float[][] row = new float[keys.size()][];
+			for(int k=0; k<keys.size(); k++) {
+				row[k] = new float[lists.get(k).size()];
+				for(int i=0; i<row[k].length; i++)
+					row[k][i] = lists.get(k).get(i);
+				Arrays.sort(row[k]);
+			}
+			return row;
+		}
+
+		private float getTTD(SensorKey sensor, String scenario) {
+			DetectionMatrix matrix = set.getDetectionMatrix(set.getSensorSettings(sensor.type).specificType);
+			return matrix == null ? Float.NaN : matrix.getTTD(scenario, sensor.node);
+		}
+	}
+
+	// Same rules as InferenceKernel, but reading from the sorted TTD lists
+	private InferenceResult inference(float[][] row, int sensorCount) {
+		boolean inferencePass = false;
+		float inferenceValue = 1000000; //Default penalty for no detection
+		for(int t=0; t<testMinimum.length; t++) {
+			int minReq = testMinimum[t];
+			if(sensorCount < minReq) continue; //Not enough sensors to complete test
+			boolean testPass = true;
+			float testValue = 0;
+			for(int k=0; k<testKeys[t].length; k++) {
+				float[] ttds = row[testKeys[t][k]];
+				int count = testCounts[t][k];
+				if(ttds.length < count) {
+					testPass = false;
+					break;
+				}
+				if(ttds[count-1] > testValue)
+					testValue = ttds[count-1];
+			}
+			if(testPass) {
+				float[] allTTDs = row[0]; // ALL_SENSORS
+				if(allTTDs.length < minReq) continue; //Not enough detecting sensors to complete test
+				if(allTTDs[minReq-1] > testValue)
+					testValue = allTTDs[minReq-1];
+				inferencePass = true;
+				if(testValue < inferenceValue)
+					inferenceValue = testValue;
+			}
+		}
+		return new InferenceResult(inferencePass, inferenceValue);
+	}
+
+	// Binary search for the position, then copy around it
+	private static float[] insert(float[] ttds, float ttd) {
+		int position = Arrays.binarySearch(ttds, ttd);
+		if(position < 0) position = -position - 1;
+		float[] result = new float[ttds.length+1];
+		System.arraycopy(ttds, 0, result, 0, position);
+		result[position] = ttd;
+		System.arraycopy(ttds, position, result, position+1, ttds.length-position);
+		return result;
+	}
+
+	private static float[] remove(float[] ttds, float ttd) {
+		int position = Arrays.binarySearch(ttds, ttd);
+		if(position < 0) return ttds; // Shouldn't happen, the sensor was counted in the base configuration
+		float[] result = new float[ttds.length-1];
+		System.arraycopy(ttds, 0, result, 0, position);
+		System.arraycopy(ttds, position+1, result, position, ttds.length-position-1);
+		return result;
+	}
+
+	private static class State {
+		private final List<SensorKey> sensors; // Sorted by type, then node number
+		private final float[][][] ttds; // Scenario, test key, sorted TTDs of the detecting sensors
+		private final InferenceResult[] results;
+
+		private State(List<SensorKey> sensors, int scenarios) {
+			this.sensors = sensors;
+			ttds = new float[scenarios][][];
+			results = new InferenceResult[scenarios];
+		}
+	}
+
+	private static class SensorKey implements Comparable<SensorKey> {
+		private final String type;
+		private final int node;
+
+		private SensorKey(String type, int node) {
+			this.type = type;
+			this.node = node;
+		}
+
+		@Override
+		public int compareTo(SensorKey other) {
+			int compare = type.compareTo(other.type);
+			return compare != 0 ? compare : Integer.compare(node, other.node);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof SensorKey && compareTo((SensorKey)other) == 0;
+		}
+
+		@Override
+		public int hashCode() {
+			return type.hashCode() * 31 + node;
+		}
+	}
+}
@@ -0,0 +1,250 @@
+package functions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import objects.DetectionMatrix;
+import objects.E4DSensors;
+import objects.ExtendedSensor;
+import objects.ScenarioSet;
+import objects.SensorSetting;
+
+/**
+ * Evaluates the inference tests for a whole configuration over blocks of scenarios, on primitive arrays.
+ * Sensor types, test keys and each detection matrix's scenario indices are resolved to integers once, whenever the
+ * scenario set, tests or detection matrices change, so the per scenario loop does no string matching, hashing or boxing.
+ * A block first gathers its sensors' TTDs into one packed array (scenario by scenario, sensors in configuration order),
+ * then takes the k'th smallest TTD each test needs by keeping only the k smallest rather than sorting.
+ * Gives exactly the results of the sorted list evaluation it replaces. ERT TTDs still come from E4DSensors by scenario name.
+ */
+
+public class InferenceKernel {
+
+	private static final float PENALTY = 1000000; // Default penalty for no detection
+
+	private List<Object> context; // When any of this changes the resolved tables are rebuilt
+	private String[] scenarios;
+	private Map<String, Integer> scenarioIndex;
+	private Map<String, Integer> typeIndex;
+	private DetectionMatrix[] matrices; // By type, null for ERT or a type without a matrix
+	private int[][] matrixScenario; // [type][scenario], the scenario's index in the type's matrix
+	private boolean[] ert;
+	private Float[] ertThreshold;
+
+	// Active tests
+	private int[] minimum; // Sensors the whole test needs, "Any Technology" included
+	private int[][] keyCounts; // Sensors needed for each technology in the test
+	private boolean[][][] keyTypes; // [test][key][type], types whose name contains the technology
+
+	/**
+	 * Resolves the configuration's sensors against the scenario set, rebuilding the tables first if the set has changed.
+	 * The batch can then be evaluated one block of scenarios per thread.
+	 */
+	public synchronized Batch prepare(List<ExtendedSensor> sensors, List<String> scenarios, ScenarioSet set) {
+		List<Object> newContext = IncrementalEvaluator.buildContext(set);
+		if(!newContext.equals(context))
+			reset(newContext, set);
+		int[] types = new int[sensors.size()];
+		int[] nodes = new int[sensors.size()];
+		for(int i=0; i<sensors.size(); i++) {
+			Integer type = typeIndex.get(sensors.get(i).getSensorType());
+			types[i] = type == null ? -1 : type;
+			nodes[i] = sensors.get(i).getNodeNumber();
+		}
+		int[] rows = new int[scenarios.size()];
+		for(int s=0; s<rows.length; s++) {
+			Integer index = scenarioIndex.get(scenarios.get(s));
+			rows[s] = index == null ? -1 : index;
+		}
+		return new Batch(types, nodes, rows);
+	}
+
+	private void reset(List<Object> newContext, ScenarioSet set) {
+		context = newContext;
+		scenarios = set.getScenarios().toArray(new String[0]);
+		scenarioIndex = new HashMap<String, Integer>();
+		for(int s=0; s<scenarios.length; s++)
+			scenarioIndex.put(scenarios[s], s);
+
+		List<String> typeNames = new ArrayList<String>(set.getDataTypes());
+		typeIndex = new HashMap<String, Integer>();
+		matrices = new DetectionMatrix[typeNames.size()];
+		matrixScenario = new int[typeNames.size()][];
+		ert = new boolean[typeNames.size()];
+		ertThreshold = new Float[typeNames.size()];
+		for(int t=0; t<typeNames.size(); t++) {
+			String type = typeNames.get(t);
+			typeIndex.put(type, t);
+			SensorSetting setting = set.getSensorSettings(type);
+			if(type.contains("Electrical Conductivity")) { //Exception because ERT comes from a different matrix
+				ert[t] = true;
+				ertThreshold[t] = setting == null ? null : setting.getDetectionThreshold();
+				continue;
+			}
+			matrices[t] = setting == null ? null : set.getDetectionMatrix(setting.specificType);
+			if(matrices[t] == null)
+				continue;
+			matrixScenario[t] = new int[scenarios.length];
+			for(int s=0; s<scenarios.length; s++)
+				matrixScenario[t][s] = matrices[t].getScenarioIndex(scenarios[s]);
+		}
+
+		List<HashMap<String, Integer>> tests = set.getInferenceTest().getActiveTests();
+		minimum = new int[tests.size()];
+		keyCounts = new int[tests.size()][];
+		keyTypes = new boolean[tests.size()][][];
+		for(int test=0; test<tests.size(); test++) {
+			List<String> keys = new ArrayList<String>();
+			for(Map.Entry<String, Integer> entry: tests.get(test).entrySet()) {
+				minimum[test] += entry.getValue();
+				if(!entry.getKey().equals("Any Technology")) // Only counts toward the minimum
+					keys.add(entry.getKey());
+			}
+			keyCounts[test] = new int[keys.size()];
+			keyTypes[test] = new boolean[keys.size()][typeNames.size()];
+			for(int k=0; k<keys.size(); k++) {
+				keyCounts[test][k] = tests.get(test).get(keys.get(k));
+				for(int t=0; t<typeNames.size(); t++)
+					keyTypes[test][k][t] = typeNames.get(t).contains(keys.get(k));
+			}
+		}
+	}
+
+	/**
+	 * One configuration over a list of scenarios. Blocks write to their own part of the arrays, so different
+	 * blocks can be evaluated on different threads.
+	 */
+	public class Batch {
+
+		private final int[] types; // Sensor type index, -1 if the set doesn't have the type
+		private final int[] nodes;
+		private final int[] rows; // Scenario index, -1 if the set doesn't have the scenario
+		private final float[] ttds; // [scenario * sensors + sensor], NaN where the sensor doesn't detect
+		private final float[] values;
+		private final boolean[] inferred;
+
+		// Tables as of prepare, a later reset doesn't change them under a running batch
+		private final String[] scenarios = InferenceKernel.this.scenarios;
+		private final DetectionMatrix[] matrices = InferenceKernel.this.matrices;
+		private final int[][] matrixScenario = InferenceKernel.this.matrixScenario;
+		private final boolean[] ert = InferenceKernel.this.ert;
+		private final Float[] ertThreshold = InferenceKernel.this.ertThreshold;
+		private final int[] minimum = InferenceKernel.this.minimum;
+		private final int[][] keyCounts = InferenceKernel.this.keyCounts;
+		private final boolean[][][] keyTypes = InferenceKernel.this.keyTypes;
+
+		private Batch(int[] types, int[] nodes, int[] rows) {
+			this.types = types;
+			this.nodes = nodes;
+			this.rows = rows;
+			ttds = new float[rows.length * types.length];
+			values = new float[rows.length];
+			inferred = new boolean[rows.length];
+		}
+
+		public int size() {
+			return rows.length;
+		}
+
+		// Evaluates scenarios from (inclusive) to (exclusive), in the order they were given to prepare
+		public void evaluate(int from, int to) {
+			int sensors = types.length;
+			// Gather sensor by sensor, each reads one matrix
+			for(int i=0; i<sensors; i++) {
+				int type = types[i];
+				for(int s=from; s<to; s++)
+					ttds[s*sensors + i] = getTTD(type, nodes[i], rows[s]);
+			}
+			int largest = 0;
+			for(int test=0; test<minimum.length; test++)
+				largest = Math.max(largest, minimum[test]);
+			float[] kept = new float[Math.max(1, largest)];
+			for(int s=from; s<to; s++)
+				evaluateScenario(s, kept);
+		}
+
+		private float getTTD(int type, int node, int row) {
+			if(type < 0 || row < 0)
+				return Float.NaN;
+			if(ert[type]) {
+				Float ttd = E4DSensors.ertGetDetection(scenarios[row], node, ertThreshold[type]);
+				return ttd == null ? Float.NaN : ttd;
+			}
+			return matrices[type] == null ? Float.NaN : matrices[type].getTTD(matrixScenario[type][row], node);
+		}
+
+		// Same rules as the sorted lists: for each test, the latest of the k'th TTDs it needs, and the best test wins
+		private void evaluateScenario(int s, float[] kept) {
+			int sensors = types.length;
+			int offset = s * sensors;
+			boolean inferencePass = false;
+			float inferenceValue = PENALTY;
+			for(int test=0; test<minimum.length; test++) {
+				if(sensors < minimum[test])
+					continue; //Not enough sensors to complete test
+				boolean testPass = true;
+				float testValue = 0;
+				for(int k=0; k<keyCounts[test].length; k++) {
+					float kth = kthSmallest(offset, keyTypes[test][k], keyCounts[test][k], kept);
+					if(Float.isNaN(kth)) { // Not enough of this technology detects
+						testPass = false;
+						break;
+					}
+					if(kth > testValue)
+						testValue = kth;
+				}
+				if(!testPass)
+					continue;
+				float all = kthSmallest(offset, null, minimum[test], kept);
+				if(Float.isNaN(all))
+					continue; //Not enough detecting sensors to complete test
+				if(all > testValue)
+					testValue = all;
+				inferencePass = true;
+				if(testValue < inferenceValue)
+					inferenceValue = testValue;
+			}
+			values[s] = inferenceValue;
+			inferred[s] = inferencePass;
+		}
+
+		/**
+		 * The k'th smallest detecting TTD among sensors of the included types (null for all), NaN if fewer than k detect.
+		 * Keeps the k smallest seen so far in order, which for the handful of sensors in a test beats sorting them all.
+		 */
+		private float kthSmallest(int offset, boolean[] include, int k, float[] kept) {
+			if(k <= 0)
+				return 0;
+			int size = 0;
+			for(int i=0; i<types.length; i++) {
+				float ttd = ttds[offset + i];
+				if(Float.isNaN(ttd) || (include != null && (types[i] < 0 || !include[types[i]])))
+					continue;
+				if(size == k && ttd >= kept[k-1])
+					continue;
+				int position = size < k ? size++ : k-1;
+				while(position > 0 && kept[position-1] > ttd) {
+					kept[position] = kept[position-1];
+					position--;
+				}
+				kept[position] = ttd;
+			}
+			return size < k ? Float.NaN : kept[k-1];
+		}
+
+		public float getValue(int s) {
+			return values[s];
+		}
+
+		public boolean isInferred(int s) {
+			return inferred[s];
+		}
+
+		// The TTD of the configuration's i'th sensor in the s'th scenario, once its block has been evaluated
+		public float getTTD(int s, int i) {
+			return ttds[s * types.length + i];
+		}
+	}
+}
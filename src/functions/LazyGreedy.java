@@ -0,0 +1,246 @@
+package functions;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.logging.Level;
+
+import objects.ExtendedConfiguration;
+import objects.ExtendedSensor;
+import objects.InferenceResult;
+import objects.ScenarioSet;
+import results.ResultPrinter;
+import utilities.Constants;
+
+/**
+ * Builds a design in one pass by repeatedly adding the sensor with the largest marginal gain, within the sensor budget,
+ * the maximum number of wells and one sensor of each type per node. Takes seconds where the annealing takes much longer,
+ * so it is a baseline for the annealing and, with Constants.greedyStart, its starting configuration.
+ * The gain is the drop in the objective, plus partial credit for scenarios the inference test needs more sensors to infer:
+ * the scenario's penalty in proportion to how much of what is missing the sensor supplies.
+ * Gains only shrink as sensors are added (close enough, detection is near submodular), so they are kept in a priority queue
+ * and only the top one is re-evaluated after each addition until it is fresh (lazy greedy).
+ * Runs once by gain and once by gain per cost when sensor costs differ, and keeps the better design.
+ * Sensors in the initial configuration are kept if they are candidates in CandidateTable, others (like ERT) are dropped.
+ */
+
+public class LazyGreedy extends Function {
+
+	private final SimulatedAnnealing scoring = new SimulatedAnnealing(); // Scores designs the same way as the annealing
+
+	@Override
+	public String toString() {
+		return "LazyGreedy";
+	}
+
+	@Override
+	public Float objective(ExtendedConfiguration configuration, ScenarioSet set, boolean runThreaded) {
+		return scoring.objective(configuration, set, runThreaded);
+	}
+
+	@Override
+	public InferenceResult inference(ExtendedConfiguration configuration, ScenarioSet set, String scenario) {
+		return scoring.inference(configuration, set, scenario);
+	}
+
+	/**
+	 * The greedy design, not yet scored by the objective
+	 * @param initialConfiguration sensors to start from
+	 * @param set
+	 */
+	public ExtendedConfiguration design(ExtendedConfiguration initialConfiguration, ScenarioSet set) {
+		CandidateTable table = new CandidateTable(set);
+		Pass best = new Pass(table, initialConfiguration, false);
+		best.run();
+		boolean uniform = true;
+		for(int t=1; t<table.types; t++)
+			uniform &= table.typeCost[t] == table.typeCost[0];
+		if(!uniform) {
+			Pass perCost = new Pass(table, initialConfiguration, true);
+			perCost.run();
+			if(perCost.value < best.value)
+				best = perCost;
+		}
+		return table.toConfiguration(best.chosen, best.size);
+	}
+
+	// The design is the same every time, so a single one covers any number of runs
+	@Override
+	public void run(ExtendedConfiguration initialConfiguration, List<ScenarioSet> sets) {
+		if(!sets.isEmpty()) {
+			ResultPrinter.clearResults(sets.get(0), false);
+			for(ScenarioSet set: sets)
+				build(initialConfiguration, set);
+			ResultPrinter.printAll(sets.get(0).getNodeStructure());
+		}
+	}
+
+	@Override
+	public boolean run(ExtendedConfiguration initialConfiguration, ScenarioSet set, boolean showPlots, int sets) {
+		return run(initialConfiguration, set, showPlots);
+	}
+
+	@Override
+	public boolean run(ExtendedConfiguration initialConfiguration, ScenarioSet set, boolean showPlots) {
+		ResultPrinter.clearResults(set, showPlots);
+		build(initialConfiguration, set);
+		ResultPrinter.printAll(set.getNodeStructure());
+		return false;
+	}
+
+	@Override
+	public void run(ExtendedConfiguration initialConfiguration, ScenarioSet set, String resultTag) {
+		ResultPrinter.clearResults(set, false);
+		build(initialConfiguration, set);
+		ResultPrinter.printAll(set.getNodeStructure());
+	}
+
+	private void build(ExtendedConfiguration initialConfiguration, ScenarioSet set) {
+		long startTime = System.currentTimeMillis();
+		ExtendedConfiguration configuration = design(initialConfiguration, set);
+		objective(configuration, set, Constants.runThreaded);
+		ResultPrinter.storeResults(0, 0, configuration, configuration, configuration, set);
+		System.out.println("Greedy design: " + configuration.getExtendedSensors().size() + " sensors, objective " + configuration.getObjectiveValue() +
+				" in " + Constants.formatSeconds((System.currentTimeMillis() - startTime) / 1000));
+		Constants.log(Level.CONFIG, "Function: greedy design", configuration);
+	}
+
+	// A candidate's gain as of the given round, rounds count the sensors added
+	private static class Gain implements Comparable<Gain> {
+		private final int candidate;
+		private final double gain;
+		private final int round;
+
+		private Gain(int candidate, double gain, int round) {
+			this.candidate = candidate;
+			this.gain = gain;
+			this.round = round;
+		}
+
+		@Override
+		public int compareTo(Gain other) {
+			return Double.compare(other.gain, gain); // Largest first
+		}
+	}
+
+	// One greedy pass, by gain or by gain per cost
+	private static class Pass {
+
+		private final CandidateTable table;
+		private final CandidateTable.Scorer scorer;
+		private final boolean perCost;
+
+		private final int[] chosen;
+		private int size = 0;
+		private final boolean[] taken;
+		private float spent = 0;
+		private final Set<Integer> wells = new HashSet<Integer>();
+		private double value;
+		private int round = 0;
+
+		private final int[][] counts; // [scenario][type], chosen sensors that detect the scenario
+		private final int[] missing; // Sensors the scenario is still short of passing an inference test
+
+		private Pass(CandidateTable table, ExtendedConfiguration initialConfiguration, boolean perCost) {
+			this.table = table;
+			this.perCost = perCost;
+			scorer = table.new Scorer();
+			chosen = new int[table.capacity+1];
+			taken = new boolean[table.candidates];
+			counts = new int[table.weights.length][table.types];
+			missing = new int[table.weights.length];
+			for(int s=0; s<missing.length; s++)
+				missing[s] = missing(counts[s]);
+			value = scorer.evaluate(chosen, 0);
+			for(ExtendedSensor sensor: initialConfiguration.getExtendedSensors()) {
+				int c = table.indexOf(sensor.getSensorType(), sensor.getNodeNumber());
+				if(c != -1 && !taken[c] && canAdd(c)) {
+					chosen[size] = c;
+					add(c, scorer.evaluate(chosen, size+1));
+				}
+			}
+		}
+
+		private void run() {
+			PriorityQueue<Gain> queue = new PriorityQueue<Gain>();
+			for(int c=0; c<table.candidates; c++) {
+				if(!taken[c] && canAdd(c))
+					queue.add(evaluate(c));
+			}
+			while(!queue.isEmpty()) {
+				Gain top = queue.poll();
+				if(!canAdd(top.candidate))
+					continue; // Budget and wells only get tighter, it won't fit later either
+				if(top.round != round) {
+					queue.add(evaluate(top.candidate)); // Stale, see where it falls now
+					continue;
+				}
+				if(top.gain <= 0)
+					break;
+				chosen[size] = top.candidate;
+				add(top.candidate, scorer.evaluate(chosen, size+1));
+			}
+			Constants.log(Level.FINE, "LazyGreedy: " + (perCost ? "gain per cost" : "gain") + " pass done, objective " + value, null);
+		}
+
+		private boolean canAdd(int c) {
+			if(size >= table.capacity || spent + table.cost[c] > table.budget)
+				return false;
+			return wells.size() < table.maxWells || wells.contains(table.column[c]);
+		}
+
+		private void add(int c, double newValue) {
+			taken[c] = true;
+			chosen[size++] = c;
+			spent += table.cost[c];
+			wells.add(table.column[c]);
+			int type = table.candidateType[c];
+			for(int s=0; s<missing.length; s++) {
+				if(!Float.isNaN(table.ttd[s][c])) {
+					counts[s][type]++;
+					missing[s] = missing(counts[s]);
+				}
+			}
+			value = newValue;
+			round++;
+		}
+
+		private Gain evaluate(int c) {
+			chosen[size] = c;
+			double gain = value - scorer.evaluate(chosen, size+1);
+			int type = table.candidateType[c];
+			for(int s=0; s<missing.length; s++) {
+				if(missing[s] <= 0 || Float.isNaN(table.ttd[s][c]))
+					continue;
+				counts[s][type]++;
+				int after = missing(counts[s]);
+				counts[s][type]--;
+				if(after > 0) // Passing is already counted in the objective
+					gain += table.weights[s] * CandidateTable.PENALTY * (missing[s] - after) / missing[s];
+			}
+			return new Gain(c, perCost && table.cost[c] > 0 ? gain / table.cost[c] : gain, round);
+		}
+
+		// Fewest sensors that would have to be added for any active test to pass, given how many of each type detect
+		private int missing(int[] count) {
+			int fewest = Integer.MAX_VALUE;
+			int total = 0;
+			for(int t=0; t<count.length; t++)
+				total += count[t];
+			for(int test=0; test<table.minimum.length; test++) {
+				int needed = 0;
+				for(int k=0; k<table.keyCounts[test].length; k++) {
+					int matching = 0;
+					for(int t=0; t<count.length; t++) {
+						if(table.keyTypes[test][k][t])
+							matching += count[t];
+					}
+					needed += Math.max(0, table.keyCounts[test][k] - matching);
+				}
+				fewest = Math.min(fewest, Math.max(needed, table.minimum[test] - total));
+			}
+			return fewest == Integer.MAX_VALUE ? 0 : fewest;
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package functions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import objects.ExtendedConfiguration;
+import objects.ExtendedSensor;
+import objects.InferenceResult;
+import objects.ScenarioSet;
+import utilities.Constants;
+
+/**
+ * Bounded LRU cache of objective results, so configurations that annealing revisits are not scored again.
+ * Configurations are keyed on their sorted (sensor type, node number, ERT pair) tuples, ignoring sensor order.
+ * A cached result holds everything objective() leaves behind: the per-scenario TTDs, objective values and
+ * inference results, and which scenarios each sensor triggered in.
+ */
+
+public class ObjectiveCache {
+
+	private List<Object> context; // When any of this changes the cached results are no longer valid
+	private Map<String, Integer> typeIds = new HashMap<String, Integer>();
+	private final Map<Key, CachedResult> entries;
+
+	public ObjectiveCache(final int capacity) {
+		entries = new LinkedHashMap<Key, CachedResult>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CachedResult> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Copies a cached result into the configuration and its sensors.
+	 * Returns false on a miss, the configuration is left untouched.
+	 */
+	public synchronized boolean restore(ExtendedConfiguration configuration, ScenarioSet set) {
+		checkContext(set);
+		List<ExtendedSensor> sensors = configuration.getExtendedSensors();
+		Integer[] order = canonicalOrder(sensors);
+		CachedResult entry = entries.get(new Key(sensors, order));
+		if(entry == null) {
+			Constants.timer.addCacheMiss();
+			return false;
+		}
+		Constants.timer.addCacheHit();
+
+		configuration.getTimesToDetection().clear();
+		configuration.getObjectiveValues().clear();
+		configuration.getInferenceResultsByScenario().clear();
+		for(String scenario: entry.timesToDetection.keySet())
+			configuration.addTimeToDetection(scenario, entry.timesToDetection.get(scenario));
+		for(String scenario: entry.objectiveValues.keySet())
+			configuration.addObjectiveValue(scenario, entry.objectiveValues.get(scenario));
+		for(String scenario: entry.inferenceResults.keySet())
+			configuration.addInferenceResult(scenario, entry.inferenceResults.get(scenario));
+		for(int i=0; i<order.length; i++) {
+			Map<String, TreeMap<Float, Double>> triggered = entry.triggered.get(i);
+			for(String scenario: triggered.keySet()) {
+				for(Float time: triggered.get(scenario).keySet())
+					sensors.get(order[i]).setTriggered(true, scenario, time, triggered.get(scenario).get(time));
+			}
+		}
+		return true;
+	}
+
+	// Saves the results of a configuration that was just evaluated
+	public synchronized void store(ExtendedConfiguration configuration, ScenarioSet set) {
+		checkContext(set);
+		List<ExtendedSensor> sensors = configuration.getExtendedSensors();
+		Integer[] order = canonicalOrder(sensors);
+		CachedResult entry = new CachedResult();
+		entry.timesToDetection = new HashMap<String, Float>(configuration.getTimesToDetection());
+		entry.objectiveValues = new HashMap<String, Float>(configuration.getObjectiveValues());
+		entry.inferenceResults = new HashMap<String, InferenceResult>(configuration.getInferenceResultsByScenario());
+		entry.triggered = new ArrayList<Map<String, TreeMap<Float, Double>>>();
+		for(int i=0; i<order.length; i++)
+			entry.triggered.add(sensors.get(order[i]).getScenariosUsed());
+		entries.put(new Key(sensors, order), entry);
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		typeIds.clear();
+		context = null;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private void checkContext(ScenarioSet set) {
+		List<Object> newContext = IncrementalEvaluator.buildContext(set);
+		newContext.add(new HashMap<String, Float>(set.getScenarioWeights())); // The objective is weighted
+		if(!newContext.equals(context)) {
+			clear();
+			context = newContext;
+		}
+	}
+
+	// Sensor positions sorted by type, node number, then ERT pair
+	private Integer[] canonicalOrder(final List<ExtendedSensor> sensors) {
+		Integer[] order = new Integer[sensors.size()];
+		for(int i=0; i<order.length; i++)
+			order[i] = i;
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				ExtendedSensor s1 = sensors.get(i1);
+				ExtendedSensor s2 = sensors.get(i2);
+				int compare = typeId(s1.getSensorType()) - typeId(s2.getSensorType());
+				if(compare != 0) return compare;
+				compare = Integer.compare(s1.getNodeNumber(), s2.getNodeNumber());
+				if(compare != 0) return compare;
+				return Integer.compare(s1.getNodePairNumber(), s2.getNodePairNumber());
+			}
+		});
+		return order;
+	}
+
+	private int typeId(String type) {
+		Integer id = typeIds.get(type);
+		if(id == null) {
+			id = typeIds.size();
+			typeIds.put(type, id);
+		}
+		return id;
+	}
+
+	private class Key {
+		private final int[] tuples; // type id, node number, ERT pair for each sensor in canonical order
+		private final int hash;
+
+		private Key(List<ExtendedSensor> sensors, Integer[] order) {
+			tuples = new int[order.length*3];
+			for(int i=0; i<order.length; i++) {
+				ExtendedSensor sensor = sensors.get(order[i]);
+				tuples[i*3] = typeId(sensor.getSensorType());
+				tuples[i*3+1] = sensor.getNodeNumber();
+				tuples[i*3+2] = sensor.getNodePairNumber();
+			}
+			hash = Arrays.hashCode(tuples);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && Arrays.equals(tuples, ((Key)other).tuples);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static class CachedResult {
+		private Map<String, Float> timesToDetection;
+		private Map<String, Float> objectiveValues;
+		private Map<String, InferenceResult> inferenceResults;
+		private List<Map<String, TreeMap<Float, Double>>> triggered; // Scenarios used by each sensor, in canonical order
+	}
+}
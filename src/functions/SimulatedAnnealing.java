@@ -2,10 +2,8 @@ package functions;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.*;
+import java.util.logging.Level;
 
 import objects.E4DSensors;
 import objects.ExtendedConfiguration;
@@ -22,6 +20,16 @@ import utilities.Constants;
  */
 
 public class SimulatedAnnealing extends Function {
+	
+	// One per thread, parallel chains would otherwise push each other's configurations out of the evaluator
+	private ThreadLocal<IncrementalEvaluator> incremental = new ThreadLocal<IncrementalEvaluator>() {
+		@Override
+		protected IncrementalEvaluator initialValue() {
+			return new IncrementalEvaluator();
+		}
+	};
+	private ObjectiveCache cache = new ObjectiveCache(Constants.objectiveCacheSize);
+	private InferenceKernel kernel = new InferenceKernel();
 
 	public SimulatedAnnealing() {
 	}
@@ -43,145 +51,148 @@ public class SimulatedAnnealing extends Function {
 		// Start a timer	
 		long startTime = System.currentTimeMillis();		
 		// Clear out previous information
-		for (ExtendedSensor sensor: configuration.getExtendedSensors()) {
+		final List<ExtendedSensor> sensors = configuration.getExtendedSensors();
+		for (ExtendedSensor sensor: sensors) {
 			sensor.clearScenariosUsed();
 		}
 		
-		if(runThreaded) { //Threaded
-		    ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()-1);
-		    for(final String scenario: set.getScenarios()) {
-		    	if(set.getScenarioWeights().get(scenario) <= 0) continue; //Skip any scenarios with a weighting of 0
-		    	executor.execute(new Runnable() {
-		    		@Override
-		    		public void run() {
-		    			try {
-							innerLoopParallel(configuration, set, scenario);
-						} catch (Exception e) {
-							e.printStackTrace();
-						}
-		    		}
-		    	});
-		    }
-		    awaitTerminationAfterShutdown(executor);
+		// Annealing revisits configurations often, reuse the results if we have scored this one before
+		if(Constants.objectiveCacheSize > 0 && cache.restore(configuration, set)) {
+			Constants.timer.addPerConfiguration(System.currentTimeMillis() - startTime);
+			return configuration.getObjectiveValue();
+		}
+		
+		// Null when the configuration has to be fully recomputed
+		final IncrementalEvaluator.Update update = Constants.runIncremental ? incremental.get().prepare(sensors, set) : null;
+		
+		if(update == null) { //Every scenario from scratch, in blocks
+			List<String> scenarios = new ArrayList<String>();
+			for(String scenario: set.getScenarios()) {
+				if(set.getScenarioWeights().get(scenario) <= 0) continue; //Skip any scenarios with a weighting of 0
+				scenarios.add(scenario);
+			}
+			evaluateBatch(configuration, sensors, set, scenarios, runThreaded);
+			
+		} else if(runThreaded) { //Threaded
+			List<String> scenarios = new ArrayList<String>();
+			for(String scenario: set.getScenarios()) {
+				if(set.getScenarioWeights().get(scenario) <= 0) continue; //Skip any scenarios with a weighting of 0
+				scenarios.add(scenario);
+			}
+			getEngine().evaluate(scenarios, new EvaluationEngine.ScenarioTask() {
+				@Override
+				public void evaluate(String scenario) throws Exception {
+					evaluateScenario(configuration, sensors, set, scenario, update);
+				}
+			});
 			
 		} else { //Not threaded
 			for(final String scenario: set.getScenarios()) {
 				if(set.getScenarioWeights().get(scenario) <= 0) continue; //Skip any scenarios with a weighting of 0
 				try {
-					innerLoopParallel(configuration, set, scenario);
+					evaluateScenario(configuration, sensors, set, scenario, update);
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
 			}
 		}
+		if(update != null)
+			incremental.get().commit(update);
+		if(Constants.objectiveCacheSize > 0)
+			cache.store(configuration, set);
 		
 		Constants.timer.addPerConfiguration(System.currentTimeMillis() - startTime);
 		return configuration.getObjectiveValue();
 	}
 	
 	
-	public void awaitTerminationAfterShutdown(ExecutorService threadPool) {
-	    threadPool.shutdown();
-	    try {
-	        if (!threadPool.awaitTermination(60, TimeUnit.SECONDS)) {
-	            threadPool.shutdownNow();
-	        }
-	    } catch (InterruptedException ex) {
-	        threadPool.shutdownNow();
-	        Thread.currentThread().interrupt();
-	    }
+	// Evaluates the scenarios with the inference kernel, one block of scenarios per thread
+	private void evaluateBatch(final ExtendedConfiguration configuration, final List<ExtendedSensor> sensors, final ScenarioSet set, final List<String> scenarios, boolean runThreaded) {
+		final InferenceKernel.Batch batch = kernel.prepare(sensors, scenarios, set);
+		EvaluationEngine.BlockTask task = new EvaluationEngine.BlockTask() {
+			@Override
+			public void evaluate(int from, int to) {
+				batch.evaluate(from, to);
+				for(int s=from; s<to; s++)
+					storeInference(configuration, sensors, set, scenarios.get(s), new InferenceResult(batch.isInferred(s), batch.getValue(s)), batch, s);
+			}
+		};
+		if(runThreaded) {
+			getEngine().evaluate(scenarios.size(), task);
+		} else {
+			try {
+				task.evaluate(0, scenarios.size());
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+	
+	
+	private void evaluateScenario(ExtendedConfiguration configuration, List<ExtendedSensor> sensors, ScenarioSet set, String scenario, IncrementalEvaluator.Update update) throws Exception {
+		InferenceResult result = update.evaluate(scenario);
+		if(Constants.verifyIncremental) {
+			InferenceResult full = fullInference(sensors, set, scenario);
+			if(full.isInferred() != result.isInferred() || Float.compare(full.getGoodness(), result.getGoodness()) != 0) {
+				Constants.log(Level.WARNING, "SimulatedAnnealing: incremental evaluation didn't match the full recompute", scenario + "\tIncremental: " + result + "\tFull: " + full);
+				result = full;
+			}
+		}
+		storeInference(configuration, sensors, set, scenario, result);
 	}
 	
 	
 	// This basically tests that enough sensors detected their threshold to count as a leak
 	// The testing criteria is set from Page_DetectionCriteria
 	public void innerLoopParallel(ExtendedConfiguration configuration, ScenarioSet set, String scenario) throws Exception {
-		
-		boolean inferencePass = false;
-		float inferenceValue = 1000000; //Default penalty for no detection
-		List<HashMap<String, Integer>> activeTests = set.getInferenceTest().getActiveTests();
 		List<ExtendedSensor> sensors = configuration.getExtendedSensors();
-		
-		// Loop through active tests to calculate the best inference time, if any
-		for(Map<String, Integer> test: activeTests) { //Loop through tests
-			// Pre-check: determine the minimum sensor requirement to verify valid configuration
-			int minReq = 0;
-			for(int count: test.values()) minReq += count;
-			if(sensors.size() < minReq) continue; //Not enough sensors to complete test
-			// Primary check: determine that sensor types match up to verify valid configuration
-			boolean testPass = true;
-			float testValue = 0;
-			for(String testKey: test.keySet()) { //Loop through sensors in a test
-				
-				// We already checked that there were enough technologies, so we don't need to do anything more here
-				if(testKey.equals("Any Technology")) continue;
-				
-				// Create a list of ttds for the given sensor from the test
-				List<Float> ttds = listOfValidTTDs(sensors, set, scenario, testKey);
-				
-				// If there are not enough of this sensor, the test fails
-				if(ttds.size() < test.get(testKey)) {
-					testPass = false;
-					break;
-				}
-				
-				// Save the largest TTD at the minimum test requirement
-				if(ttds.get(test.get(testKey)-1) > testValue)
-					testValue = ttds.get(test.get(testKey)-1);
-			}
-			
-			// The configuration passed this test
-			if(testPass) {
-				
-				// Do a final check to confirm that the "Any Technology" requirement doesn't increase the inferenceValue
-				List<Float> allTTDs = listOfValidTTDs(sensors, set, scenario, "");
-				if(allTTDs.size() < minReq) continue; //Not enough detecting sensors to complete test
-				if(allTTDs.get(minReq-1) > testValue) //Save the largest TTD at the minimum "All Sensor" test requirement
-					testValue = allTTDs.get(minReq-1);
-				
-				// Store values globally
-				inferencePass = true;
-				if(testValue < inferenceValue)
-					inferenceValue = testValue;
-			}
-		}
+		InferenceKernel.Batch batch = kernel.prepare(sensors, Collections.singletonList(scenario), set);
+		batch.evaluate(0, 1);
+		storeInference(configuration, sensors, set, scenario, new InferenceResult(batch.isInferred(0), batch.getValue(0)), batch, 0);
+	}
+	
+	
+	// Finds the best inference time for one scenario from scratch, if any
+	private InferenceResult fullInference(List<ExtendedSensor> sensors, ScenarioSet set, String scenario) {
+		InferenceKernel.Batch batch = kernel.prepare(sensors, Collections.singletonList(scenario), set);
+		batch.evaluate(0, 1);
+		return new InferenceResult(batch.isInferred(0), batch.getValue(0));
+	}
+	
+	
+	private void storeInference(ExtendedConfiguration configuration, List<ExtendedSensor> sensors, ScenarioSet set, String scenario, InferenceResult result) {
+		storeInference(configuration, sensors, set, scenario, result, null, 0);
+	}
+	
+	// The batch, if there is one, already has the sensors' TTDs for the s'th scenario
+	private void storeInference(ExtendedConfiguration configuration, List<ExtendedSensor> sensors, ScenarioSet set, String scenario, InferenceResult result, InferenceKernel.Batch batch, int s) {
+		boolean inferencePass = result.isInferred();
+		float inferenceValue = result.getGoodness();
 		
 		// Store results in configuration
 		if(inferencePass) {
 			configuration.addTimeToDetection(scenario, inferenceValue);
 			// Store triggering information for the sensors
-			for(ExtendedSensor sensor: sensors) {
-				String specificType = set.getSensorSettings(sensor.getSensorType()).specificType;
-				Float ttd = null;
-				if(sensor.getSensorType().contains("Electrical Conductivity")) //Exception because ERT comes from a different matrix
-					ttd = E4DSensors.ertGetDetection(scenario, sensor.getNodeNumber(), set.getSensorSettings(sensor.getSensorType()).getDetectionThreshold());
-				else
-					ttd = set.getDetectionMap().get(specificType).get(scenario).get(sensor.getNodeNumber());
-				if(ttd!= null && ttd <= inferenceValue)
+			for(int i=0; i<sensors.size(); i++) {
+				ExtendedSensor sensor = sensors.get(i);
+				float ttd = batch == null ? getTTD(sensor, set, scenario) : batch.getTTD(s, i);
+				if(!Float.isNaN(ttd) && ttd <= inferenceValue)
 					sensor.setTriggered(true, scenario, ttd, 0.0);
 			}
 		} else
 			configuration.getTimesToDetection().remove(scenario);
 		configuration.addObjectiveValue(scenario, inferenceValue*set.getGloballyNormalizedScenarioWeight(scenario));
-		configuration.addInferenceResult(scenario, new InferenceResult(inferencePass, inferenceValue));
+		configuration.addInferenceResult(scenario, result);
 	}
 	
-	private List<Float> listOfValidTTDs(List<ExtendedSensor> sensors, ScenarioSet set, String scenario, String testType) {
-		List<Float> ttds = new ArrayList<Float>();
-		for(ExtendedSensor sensor: sensors) { //Loop through sensors in configuration
-			Float ttd = null;
-			if(sensor.getSensorType().contains("Electrical Conductivity")) //Exception because ERT comes from a different matrix
-				ttd = E4DSensors.ertGetDetection(scenario, sensor.getNodeNumber(), set.getSensorSettings(sensor.getSensorType()).getDetectionThreshold());
-			else {
-				String specificType = set.getSensorSettings(sensor.getSensorType()).specificType; //Specific Type of the sensor
-				ttd = set.getDetectionMap().get(specificType).get(scenario).get(sensor.getNodeNumber());
-			}
-			// We only want to keep detections (not null) for a given sensor that is being tested
-			if(ttd!=null && sensor.getSensorType().contains(testType)) //TODO: Doesn't work with dupliate sensors, need to key to alias or specificType
-				ttds.add(ttd);
+	// Returns the TTD for a sensor in a scenario, or NaN when the sensor doesn't detect
+	protected static float getTTD(ExtendedSensor sensor, ScenarioSet set, String scenario) {
+		if(sensor.getSensorType().contains("Electrical Conductivity")) { //Exception because ERT comes from a different matrix
+			Float ttd = E4DSensors.ertGetDetection(scenario, sensor.getNodeNumber(), set.getSensorSettings(sensor.getSensorType()).getDetectionThreshold());
+			return ttd == null ? Float.NaN : ttd;
 		}
-		Collections.sort(ttds); //Sort the TTDs, smallest to largest
-		return ttds;
+		String specificType = set.getSensorSettings(sensor.getSensorType()).specificType; //Specific Type of the sensor
+		return set.getDetectionMatrix(specificType).getTTD(scenario, sensor.getNodeNumber());
 	}
 	
 }
@@ -0,0 +1,92 @@
+package hdf5Tool;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import objects.SensorSetting;
+import objects.SensorSetting.DeltaType;
+import objects.SensorSetting.Trigger;
+
+/**
+ * The most extreme value, change and relative change that each node reaches in any scenario after the first timestep.
+ * Collected while building the first detection map for a parameter, so later thresholds for the same parameter can be
+ * checked (does this node ever trigger?) without reading the hdf5 files again.
+ * Arrays are indexed by node number - 1.
+ */
+
+public class ChangeExtremes {
+
+	private final float[] minValue;
+	private final float[] maxValue;
+	private final float[] minChange;
+	private final float[] maxChange;
+	private final float[] minRelative;
+	private final float[] maxRelative;
+
+	public ChangeExtremes(int totalNodes) {
+		minValue = filled(totalNodes, Float.POSITIVE_INFINITY);
+		maxValue = filled(totalNodes, Float.NEGATIVE_INFINITY);
+		minChange = filled(totalNodes, Float.POSITIVE_INFINITY);
+		maxChange = filled(totalNodes, Float.NEGATIVE_INFINITY);
+		minRelative = filled(totalNodes, Float.POSITIVE_INFINITY);
+		maxRelative = filled(totalNodes, Float.NEGATIVE_INFINITY);
+	}
+
+	private static float[] filled(int size, float value) {
+		float[] array = new float[size];
+		Arrays.fill(array, value);
+		return array;
+	}
+
+	// NaN values fail every comparison, so they are skipped
+	public void add(int nodeNumber, float value, float baseline) {
+		int node = nodeNumber-1;
+		float change = value - baseline;
+		float relative = baseline == 0 ? 0 : change / baseline; // Same rule as HDF5Interface.sensorTriggered
+		if(value < minValue[node]) minValue[node] = value;
+		if(value > maxValue[node]) maxValue[node] = value;
+		if(change < minChange[node]) minChange[node] = change;
+		if(change > maxChange[node]) maxChange[node] = change;
+		if(relative < minRelative[node]) minRelative[node] = relative;
+		if(relative > maxRelative[node]) maxRelative[node] = relative;
+	}
+
+	// Combines the extremes from another scenario into these
+	public synchronized void merge(ChangeExtremes other) {
+		for(int node=0; node<minValue.length; node++) {
+			minValue[node] = Math.min(minValue[node], other.minValue[node]);
+			maxValue[node] = Math.max(maxValue[node], other.maxValue[node]);
+			minChange[node] = Math.min(minChange[node], other.minChange[node]);
+			maxChange[node] = Math.max(maxChange[node], other.maxChange[node]);
+			minRelative[node] = Math.min(minRelative[node], other.minRelative[node]);
+			maxRelative[node] = Math.max(maxRelative[node], other.maxRelative[node]);
+		}
+	}
+
+	// Whether the node triggers in at least one scenario with these settings
+	public boolean triggers(SensorSetting setting, int nodeNumber) {
+		int node = nodeNumber-1;
+		float threshold = setting.getDetectionThreshold();
+		if(setting.getTrigger() == Trigger.ABOVE_THRESHOLD)
+			return threshold <= maxValue[node];
+		if(setting.getTrigger() == Trigger.BELOW_THRESHOLD)
+			return threshold >= minValue[node];
+		float min = setting.getTrigger() == Trigger.RELATIVE_CHANGE ? minRelative[node] : minChange[node];
+		float max = setting.getTrigger() == Trigger.RELATIVE_CHANGE ? maxRelative[node] : maxChange[node];
+		if(setting.getDeltaType() == DeltaType.INCREASE)
+			return threshold <= max;
+		if(setting.getDeltaType() == DeltaType.DECREASE)
+			return threshold >= min;
+		return threshold <= Math.max(max, -min); // BOTH, the largest absolute change
+	}
+
+	public Set<Integer> getTriggeringNodes(SensorSetting setting) {
+		Set<Integer> nodes = new HashSet<Integer>();
+		for(int node=0; node<minValue.length; node++) {
+			if(triggers(setting, node+1))
+				nodes.add(node+1);
+		}
+		return nodes;
+	}
+}
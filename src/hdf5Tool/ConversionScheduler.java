@@ -0,0 +1,297 @@
+package hdf5Tool;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts scenarios in two stages: a bounded pool of readers parses the input files, and a single writer thread puts the
+ * blocks they hand over into the HDF5 files, so parsing carries on while blocks are written. HDF5 calls all go through
+ * one library lock, so one writer is as fast as several and keeps each file on one thread.
+ * Idle readers take the next scenario off a shared queue, which keeps every reader busy when scenarios differ in size.
+ * The queue between the stages is bounded, so readers wait rather than pile up blocks when writing falls behind.
+ * Cancelling stops each reader at its next buffer read or block and removes the files of scenarios that didn't finish.
+ */
+
+public class ConversionScheduler {
+
+	private static final int QUEUED_PER_READER = 2; // Blocks each reader can have waiting for the writer
+
+	/**
+	 * What is done with each scenario. read runs on a reader thread; open, write, finish and abort run on the writer
+	 * thread, in that order for a scenario, so they need no locking between them.
+	 */
+	public interface Conversion {
+		// Bytes of input the scenario has, for progress
+		public long size(String scenario);
+		// Parses the scenario, handing each block and each read from its files to the sink
+		public void read(String scenario, ParseRawFiles.BlockSink sink) throws Exception;
+		public void open(String scenario) throws Exception;
+		public void write(String scenario, String parameter, int timeIndex, float[] values) throws Exception;
+		// Everything has been read, writes the rest of the file and closes it
+		public void finish(String scenario) throws Exception;
+		// Closes and removes a file that won't be finished, cause is null if the conversion was canceled
+		public void abort(String scenario, Exception cause);
+	}
+
+	private enum Kind { OPEN, BLOCK, FINISH, ABORT, END }
+
+	// Work handed from the readers to the writer
+	private static class Job {
+		private final Kind kind;
+		private final String scenario;
+		private String parameter;
+		private int timeIndex;
+		private float[] values;
+		private Exception cause;
+
+		private Job(Kind kind, String scenario) {
+			this.kind = kind;
+			this.scenario = scenario;
+		}
+	}
+
+	private final Conversion conversion;
+	private final List<String> scenarios;
+	private final long[] sizes;
+	private final long totalBytes;
+	private final int readers;
+	private final ExecutorService pool;
+	private final BlockingQueue<Job> queue;
+	private final Set<String> failed = Collections.synchronizedSet(new HashSet<String>()); // Scenarios the writer gave up on
+	private final AtomicInteger remaining;
+	private final AtomicLong bytesRead = new AtomicLong();
+	private final AtomicInteger blocksWritten = new AtomicInteger();
+	private final AtomicInteger converted = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+	private volatile boolean canceled;
+	private volatile boolean done;
+
+	public ConversionScheduler(List<String> scenarios, Conversion conversion, int readers) {
+		this.conversion = conversion;
+		this.scenarios = new ArrayList<String>(scenarios);
+		this.readers = Math.max(1, readers);
+		sizes = new long[scenarios.size()];
+		long total = 0;
+		for(int i=0; i<sizes.length; i++) {
+			sizes[i] = conversion.size(scenarios.get(i));
+			total += sizes[i];
+		}
+		totalBytes = total;
+		remaining = new AtomicInteger(scenarios.size());
+		queue = new ArrayBlockingQueue<Job>(this.readers * QUEUED_PER_READER + 1);
+		pool = Executors.newFixedThreadPool(this.readers, new ThreadFactory() {
+			private int count = 0;
+			@Override
+			public synchronized Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "DREAM converter " + (++count));
+				thread.setDaemon(true); //Don't keep the JVM alive if the converter is closed mid-run
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Readers to run at once: one per core, leaving one for the writer, but no more than fit in half of the free heap
+	 * when each holds this many blocks of this size while it reads, along with its share of the queue to the writer.
+	 */
+	public static int poolSize(long blockBytes, int blocksPerReader) {
+		Runtime runtime = Runtime.getRuntime();
+		int cores = Math.max(1, runtime.availableProcessors() - 1);
+		long free = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+		long perReader = Math.max(1, blockBytes * (blocksPerReader + QUEUED_PER_READER));
+		return (int)Math.max(1, Math.min(cores, free / 2 / perReader));
+	}
+
+	public void start() {
+		if(scenarios.isEmpty()) {
+			done = true;
+			return;
+		}
+		Thread writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "DREAM converter writer");
+		writer.setDaemon(true);
+		writer.start();
+		for(int i=0; i<scenarios.size(); i++) {
+			final int index = i;
+			pool.execute(new Runnable() {
+				@Override
+				public void run() {
+					read(index);
+				}
+			});
+		}
+		pool.shutdown(); // Takes no more work, the readers finish what is queued
+	}
+
+	// Readers stop at their next read or block, scenarios that haven't started are skipped
+	public void cancel() {
+		canceled = true;
+	}
+
+	private void checkCanceled(String scenario) {
+		if(canceled || failed.contains(scenario))
+			throw new CancellationException();
+	}
+
+	private void read(int index) {
+		final String scenario = scenarios.get(index);
+		final long[] read = new long[1];
+		try {
+			checkCanceled(scenario);
+			put(new Job(Kind.OPEN, scenario));
+			conversion.read(scenario, new ParseRawFiles.BlockSink() {
+				@Override
+				public void write(String scenario, String parameter, int timeIndex, float[] values) {
+					checkCanceled(scenario);
+					Job job = new Job(Kind.BLOCK, scenario);
+					job.parameter = parameter;
+					job.timeIndex = timeIndex;
+					job.values = values;
+					put(job);
+				}
+
+				@Override
+				public void read(long bytes) {
+					read[0] += bytes;
+					bytesRead.addAndGet(bytes);
+					checkCanceled(scenario);
+				}
+			});
+			put(new Job(Kind.FINISH, scenario));
+		} catch (CancellationException e) {
+			put(new Job(Kind.ABORT, scenario));
+		} catch (Exception e) {
+			e.printStackTrace();
+			Job job = new Job(Kind.ABORT, scenario);
+			job.cause = e;
+			put(job);
+		} finally {
+			bytesRead.addAndGet(Math.max(0, sizes[index] - read[0])); // Files and times the reader skipped count as done
+			if(remaining.decrementAndGet() == 0)
+				put(new Job(Kind.END, null));
+		}
+	}
+
+	// Nothing interrupts these threads, but if something does the job still has to reach the writer
+	private void put(Job job) {
+		boolean interrupted = false;
+		while(true) {
+			try {
+				queue.put(job);
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private void write() {
+		Set<String> open = new HashSet<String>();
+		while(true) {
+			Job job;
+			try {
+				job = queue.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if(job.kind == Kind.END)
+				break;
+			String scenario = job.scenario;
+			try {
+				switch(job.kind) {
+				case OPEN:
+					if(canceled)
+						break; // The reader will stop at its first read
+					conversion.open(scenario);
+					open.add(scenario);
+					break;
+				case BLOCK:
+					if(canceled || !open.contains(scenario))
+						break; // Canceled or already failed, the block is dropped
+					conversion.write(scenario, job.parameter, job.timeIndex, job.values);
+					blocksWritten.incrementAndGet();
+					break;
+				case FINISH:
+					if(!open.remove(scenario))
+						break;
+					if(canceled) // Blocks may have been dropped
+						conversion.abort(scenario, null);
+					else {
+						conversion.finish(scenario);
+						converted.incrementAndGet();
+					}
+					break;
+				case ABORT:
+					if(open.remove(scenario))
+						conversion.abort(scenario, job.cause);
+					if(job.cause != null)
+						failures.incrementAndGet();
+					break;
+				default:
+					break;
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+				failed.add(scenario); // Its reader stops at the next read or block
+				open.remove(scenario);
+				failures.incrementAndGet();
+				conversion.abort(scenario, e);
+			}
+		}
+		done = true;
+	}
+
+	public int getReaders() {
+		return readers;
+	}
+
+	public int getScenarioCount() {
+		return scenarios.size();
+	}
+
+	public long getTotalBytes() {
+		return totalBytes;
+	}
+
+	public long getBytesRead() {
+		return bytesRead.get();
+	}
+
+	public int getBlocksWritten() {
+		return blocksWritten.get();
+	}
+
+	public int getConverted() {
+		return converted.get();
+	}
+
+	public int getFailures() {
+		return failures.get();
+	}
+
+	public boolean isCanceled() {
+		return canceled;
+	}
+
+	// Every scenario has been written, failed or been canceled
+	public boolean isDone() {
+		return done;
+	}
+}
@@ -0,0 +1,203 @@
+package hdf5Tool;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+
+import ncsa.hdf.object.h5.H5File;
+import objects.DetectionMatrix;
+import objects.MappedDetectionMatrix;
+import objects.SensorSetting;
+import utilities.Constants;
+
+/**
+ * Keeps detection matrices on disk so reopening the same ensemble doesn't scan the hdf5 files again.
+ * Files are named by a hash of the hdf5 file list (paths, sizes and modified times) and the sensor setting
+ * (parameter, trigger, delta type and threshold), so changed inputs simply miss and old files are never overwritten.
+ * Cached matrices are memory-mapped back in (see MappedDetectionMatrix).
+ *
+ * File layout: magic, version, header length, header, then the row data.
+ * The header holds the full key, total nodes, and for each scenario its name, row layout, detection count and data offset.
+ */
+
+public class DetectionMapCache {
+
+	private static final int MAGIC = 0x4454544D; // "DTTM"
+	private static final int VERSION = 1;
+	private static final String EXTENSION = ".ttd";
+
+	// Returns the cached matrix for this setting, or null if there isn't a valid one
+	public static DetectionMatrix load(SensorSetting setting, int totalNodes) {
+		if(!Constants.useDetectionCache)
+			return null;
+		byte[] key = getKey(setting);
+		File file = new File(getDirectory(), hash(key) + EXTENSION);
+		if(!file.exists())
+			return null;
+		try (RandomAccessFile input = new RandomAccessFile(file, "r"); FileChannel channel = input.getChannel()) {
+			if(input.readInt() != MAGIC || input.readInt() != VERSION)
+				return null;
+			byte[] header = new byte[input.readInt()];
+			input.readFully(header);
+			long dataStart = input.getFilePointer();
+			DataInputStream headerInput = new DataInputStream(new ByteArrayInputStream(header));
+			byte[] fileKey = new byte[headerInput.readInt()];
+			headerInput.readFully(fileKey);
+			if(!Arrays.equals(fileKey, key) || headerInput.readInt() != totalNodes)
+				return null; // Hash collision or a different grid
+			int scenarioCount = headerInput.readInt();
+			List<String> scenarios = new ArrayList<String>();
+			ByteBuffer[] rows = new ByteBuffer[scenarioCount];
+			byte[] layouts = new byte[scenarioCount];
+			int[] counts = new int[scenarioCount];
+			for(int s=0; s<scenarioCount; s++) {
+				scenarios.add(headerInput.readUTF());
+				layouts[s] = headerInput.readByte();
+				counts[s] = headerInput.readInt();
+				long offset = headerInput.readLong();
+				if(layouts[s] != MappedDetectionMatrix.EMPTY) // Each row is mapped on its own so no single mapping passes 2GB
+					rows[s] = channel.map(MapMode.READ_ONLY, dataStart + offset, rowBytes(layouts[s], counts[s], totalNodes));
+			}
+			System.out.println("Loaded the detection map for " + setting.getSpecificType() + " from " + file.getName());
+			return new MappedDetectionMatrix(totalNodes, scenarios, rows, layouts, counts);
+		} catch (Exception e) {
+			// A broken cache file shouldn't stop anything, the map is just rebuilt from the hdf5 files
+			Constants.log(Level.WARNING, "Unable to read the detection map cache", file.getAbsolutePath());
+			System.out.println("Unable to read the detection map cache " + file.getName() + ", rebuilding from the hdf5 files...");
+			return null;
+		}
+	}
+
+	// Writes the matrix under this setting's key, rows use whichever layout is smaller
+	public static void save(SensorSetting setting, DetectionMatrix matrix) {
+		if(!Constants.useDetectionCache)
+			return;
+		byte[] key = getKey(setting);
+		File directory = getDirectory();
+		directory.mkdirs();
+		File file = new File(directory, hash(key) + EXTENSION);
+		File temp = new File(directory, file.getName() + ".tmp");
+		int totalNodes = matrix.getTotalNodes();
+		try {
+			// The header goes first, so work out every row's layout and offset before writing any data
+			ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+			DataOutputStream header = new DataOutputStream(headerBytes);
+			header.writeInt(key.length); // Not writeUTF, a long file list can pass its 64K limit
+			header.write(key);
+			header.writeInt(totalNodes);
+			header.writeInt(matrix.getScenarios().size());
+			long offset = 0;
+			for(String scenario: matrix.getScenarios()) {
+				int count = matrix.countDetections(scenario);
+				byte layout = getLayout(count, totalNodes);
+				header.writeUTF(scenario);
+				header.writeByte(layout);
+				header.writeInt(count);
+				header.writeLong(offset);
+				offset += rowBytes(layout, count, totalNodes);
+			}
+			header.close();
+
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+				output.writeInt(MAGIC);
+				output.writeInt(VERSION);
+				output.writeInt(headerBytes.size());
+				headerBytes.writeTo(output);
+				for(int s=0; s<matrix.getScenarios().size(); s++) {
+					String scenario = matrix.getScenarios().get(s);
+					int[] nodes = matrix.getDetectingNodes(scenario);
+					byte layout = getLayout(nodes.length, totalNodes);
+					if(layout == MappedDetectionMatrix.SPARSE) {
+						for(int node: nodes)
+							output.writeInt(node);
+						for(int node: nodes)
+							output.writeFloat(matrix.getTTD(s, node));
+					} else if(layout == MappedDetectionMatrix.DENSE) {
+						for(int node=1; node<=totalNodes; node++)
+							output.writeFloat(matrix.getTTD(s, node));
+					}
+				}
+			}
+			// Only a complete file gets the real name, so an interrupted write is never read
+			if(!temp.renameTo(file))
+				temp.delete();
+		} catch (IOException e) {
+			temp.delete();
+			try {
+				PrintWriter errorWriter = new PrintWriter("Errors " + Constants.uniqueError + ".txt");
+				e.printStackTrace(errorWriter);
+				Constants.uniqueError++;
+				errorWriter.close();
+			} catch (FileNotFoundException e1) {
+				e1.printStackTrace();
+			}
+			System.out.println("Unable to write the detection map cache for " + setting.getSpecificType());
+			e.printStackTrace();
+		}
+	}
+
+	public static File getDirectory() {
+		return new File(Constants.userDir, "detection_cache");
+	}
+
+	// Sparse rows take 8 bytes per detection, dense rows 4 bytes per node
+	private static byte getLayout(int count, int totalNodes) {
+		if(count == 0)
+			return MappedDetectionMatrix.EMPTY;
+		return (long)count*2 < totalNodes ? MappedDetectionMatrix.SPARSE : MappedDetectionMatrix.DENSE;
+	}
+
+	private static long rowBytes(byte layout, int count, int totalNodes) {
+		if(layout == MappedDetectionMatrix.SPARSE)
+			return (long)count*8;
+		if(layout == MappedDetectionMatrix.DENSE)
+			return (long)totalNodes*4;
+		return 0;
+	}
+
+	// Everything a detection map depends on as UTF-8, the hdf5 files are listed in name order
+	private static byte[] getKey(SensorSetting setting) {
+		StringBuilder key = new StringBuilder();
+		List<String> scenarios = new ArrayList<String>(HDF5Interface.hdf5Files.keySet());
+		Collections.sort(scenarios);
+		for(String scenario: scenarios) {
+			H5File hdf5File = HDF5Interface.hdf5Files.get(scenario);
+			File file = new File(hdf5File.getFilePath());
+			key.append(file.getAbsolutePath()).append('|').append(file.length()).append('|').append(file.lastModified()).append('\n');
+		}
+		key.append(setting.getType()).append('|').append(setting.getTrigger()).append('|').append(setting.getDeltaType()).append('|');
+		key.append(Float.floatToIntBits(setting.getDetectionThreshold()));
+		return key.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static String hash(byte[] key) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(key);
+			StringBuilder hex = new StringBuilder();
+			for(byte b: digest)
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(Arrays.hashCode(key)); // Every JVM has SHA-1, but just in case
+		}
+	}
+}
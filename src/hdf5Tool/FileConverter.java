@@ -11,14 +11,17 @@ import java.awt.Label;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
+import java.io.FileFilter;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
+import java.util.Map;
 
 import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JLabel;
@@ -30,6 +33,7 @@ import javax.swing.JPanel;
 import javax.swing.JTextField;
 import javax.swing.ProgressMonitor;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 import ncsa.hdf.hdf5lib.exceptions.HDF5Exception;
 import ncsa.hdf.object.Datatype;
@@ -69,8 +73,16 @@ public class FileConverter extends javax.swing.JFrame {
 	public static final String SCENARIO_PER_FILE = "scenario per file";
 	public static final String SCENARIO_PER_FOLDER = "scenario per folder";
 	
+	public static final String CONTIGUOUS = "contiguous";
+	public static final String CHUNKED = "chunked, compressed";
+	
+	private static final int PROGRESS = 1000; // Steps on the progress monitor
+	
 	private JComboBox<String[]> jComboBox_fileType;
 	private JComboBox<String[]> jComboBox_folderStructure;
+	private JComboBox<String[]> jComboBox_layout;
+	private JTextField jTextField_digits;
+	private JCheckBox jCheckBox_timeSeries;
 		
 	private JTextField jTextField_inputDir;
 	private JTextField jTextField_outputDir;
@@ -83,9 +95,6 @@ public class FileConverter extends javax.swing.JFrame {
 	private CheckList checkList_scenarios;
 	private CheckList checkList_parameters;	
 	
-	private ProgressMonitor monitor;
-	private int processedTasks;
-	
 	private ParseRawFiles gp;
 
 	private JLabel statusLabel;
@@ -162,6 +171,33 @@ public class FileConverter extends javax.swing.JFrame {
 		jPanel_fileType.add(jComboBox_folderStructure);
 		jPanel_fileType.add(Box.createRigidArea(new Dimension(15,0)));
 		
+		// How the plot datasets are stored, significant digits only help once they are compressed
+		JPanel jPanel_layout = new JPanel();
+		jComboBox_layout = new JComboBox(new String[]{CONTIGUOUS, CHUNKED});
+		jTextField_digits = new JTextField(3);
+		jTextField_digits.setToolTipText("Round values to this many significant digits so they compress better, blank keeps them exact");
+		jTextField_digits.setEnabled(false);
+		jCheckBox_timeSeries = new JCheckBox("Time series");
+		jCheckBox_timeSeries.setToolTipText("Also write every time for each node together, so detection maps can stop reading nodes once they trigger");
+		jComboBox_layout.addActionListener(new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				jTextField_digits.setEnabled(jComboBox_layout.getSelectedItem().equals(CHUNKED));
+			}
+		});
+		jPanel_layout.setLayout(new BoxLayout(jPanel_layout, BoxLayout.LINE_AXIS));
+		jPanel_layout.add(Box.createRigidArea(new Dimension(30,0)));
+		jPanel_layout.add(new JLabel("Layout:"));
+		jPanel_layout.add(Box.createRigidArea(new Dimension(5,0)));
+		jPanel_layout.add(jComboBox_layout);
+		jPanel_layout.add(Box.createRigidArea(new Dimension(30,0)));
+		jPanel_layout.add(new JLabel("Significant digits:"));
+		jPanel_layout.add(Box.createRigidArea(new Dimension(5,0)));
+		jPanel_layout.add(jTextField_digits);
+		jPanel_layout.add(Box.createRigidArea(new Dimension(30,0)));
+		jPanel_layout.add(jCheckBox_timeSeries);
+		jPanel_layout.add(Box.createRigidArea(new Dimension(15,0)));
+		
 		checkList_parameters = new CheckList();
 		checkList_timesteps = new CheckList();
 		checkList_scenarios = new CheckList();
@@ -271,6 +307,10 @@ public class FileConverter extends javax.swing.JFrame {
 										.addGap(8, 8, 8)
 										.addComponent(jPanel_fileType)
 										.addGap(69, 69, 69))
+								.addGroup(layout.createSequentialGroup()
+										.addGap(8, 8, 8)
+										.addComponent(jPanel_layout)
+										.addGap(69, 69, 69))
 								.addGroup(layout.createSequentialGroup()
 										.addGap(8, 8, 8)
 										.addComponent(jLabel_inputDir)
@@ -307,6 +347,9 @@ public class FileConverter extends javax.swing.JFrame {
 						.addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
 							.addComponent(jPanel_fileType))
 							.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+						.addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
+							.addComponent(jPanel_layout))
+							.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
 						.addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.BASELINE)
 								.addComponent(jTextField_inputDir, javax.swing.GroupLayout.PREFERRED_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.PREFERRED_SIZE)
 								.addComponent(jLabel_inputDir)
@@ -349,18 +392,21 @@ public class FileConverter extends javax.swing.JFrame {
 			statusLabel.setText("Select atleast one: Param/Scenario/Time");
 			statusLabel.setForeground(Color.red);
 
-		} else {
-			// Initialize global variables
-			processedTasks = 0;
+		} else if (getPlotLayout() == null) {
+			statusLabel.setText("Significant digits should be blank or a whole number from 1 to 7");
+			statusLabel.setForeground(Color.red);
 
+		} else {
 			// Create the HDF5 output directory if it doesn't exist
 			if (!file_outputDir.exists())
 				file_outputDir.mkdir();
 
-			// Use them all.. well okay, all but one :)
-			final int cores = Runtime.getRuntime().availableProcessors() - 1;
-			// ExecutorService service = Executors.newFixedThreadPool(cores);
-			System.out.println("Using " + (cores) + " cores...");
+			// One reader per core, leaving one for the writer, as many as the heap holds blocks for
+			String fileType = jComboBox_fileType.getSelectedItem().toString();
+			long blockBytes = 4L * gp.getX().length * gp.getY().length * gp.getZ().length;
+			int readers = ConversionScheduler.poolSize(blockBytes, blocksPerReader(fileType));
+			System.out.println("Using " + readers + " cores...");
+			System.out.println("Layout: " + getPlotLayout() + (jCheckBox_timeSeries.isSelected() ? ", with time series" : ""));
 			if (gp.getSelectedScenarios().size() == gp.getScenarios().length)
 				System.out.println("Selected Scenarios: All");
 			else
@@ -374,171 +420,268 @@ public class FileConverter extends javax.swing.JFrame {
 			else
 				System.out.println("Selected Parameters: " + gp.getSelectedParameters().toString());
 
-			final List<Thread> runningThreads = new ArrayList<Thread>();
-			final List<Thread> threadsToRun = new ArrayList<Thread>();
-
-			for (String scenario : gp.getSelectedScenarios()) {
-				FileConverterThread runnable = new FileConverterThread(scenario);
-				Thread thread = new Thread(runnable);
-				threadsToRun.add(thread);
-			}
-
-			MonitorRunnable monitorRunnable = new MonitorRunnable(null, (cores), gp.getSelectedScenarios().size());
-			new Thread(monitorRunnable).start();
-
-			Thread runningAllStuffThread = new Thread(new Runnable() {
+			final ConversionScheduler scheduler = new ConversionScheduler(gp.getSelectedScenarios(), new ScenarioConversion(), readers);
+			final int totalBlocks = gp.getSelectedScenarios().size() * gp.getSelectedTimes().size() * gp.getSelectedParameters().size();
+			final ProgressMonitor monitor = new ProgressMonitor(this, "Converting files on " + readers + " cores", "", 0, PROGRESS);
+			
+			// Checks on the conversion from the event thread, which is where the monitor should be updated anyway
+			Timer timer = new Timer(200, new ActionListener() {
 				@Override
-				public void run() {
-					while (!threadsToRun.isEmpty()) {
-						if (runningThreads.size() < cores - 1) { // probably not
-							Thread thread = threadsToRun.remove(0);
-							thread.start();
-							runningThreads.add(thread);
-						} else {
-							List<Thread> deadThreads = new ArrayList<Thread>();
-							for (Thread thread : runningThreads) {
-								if (!thread.isAlive()) {
-									deadThreads.add(thread);
-								}
-							}
-							for (Thread dead : deadThreads) {
-								runningThreads.remove(dead); // remove the dead...!
-							}
-						}
-						try {
-							Thread.sleep(100); // mmmm maybe?
-							// Listening for a cancel
-							if (monitor.isCanceled()) {
-								// Kill everything
-								for (Thread killable : runningThreads)
-									killable.interrupt();
-								runningThreads.clear();
-								threadsToRun.clear(); // maybe java can collect these???
-								return;
-							}
-						} catch (Exception e) {
-							e.printStackTrace();
-						}
-					}
-
-					while (!runningThreads.isEmpty()) {
-						List<Thread> deadThreads = new ArrayList<Thread>();
-						for (Thread thread : runningThreads) {
-							if (!thread.isAlive())
-								deadThreads.add(thread);
-						}
-						for (Thread dead : deadThreads) {
-							runningThreads.remove(dead); // remove the dead...!
-						}
-						try {
-							Thread.sleep(1000); // mmmm maybe?
-							// Listening for a cancel
-							if (monitor.isCanceled()) {
-								// kill everything
-								for (Thread killable : runningThreads)
-									killable.interrupt();
-								runningThreads.clear();
-								threadsToRun.clear(); // maybe java can collect these???
-								return;
-							}
-						} catch (Exception e) {
-							e.printStackTrace();
-						}
+				public void actionPerformed(ActionEvent e) {
+					if (monitor.isCanceled())
+						scheduler.cancel();
+					if (scheduler.isDone()) {
+						((Timer)e.getSource()).stop();
+						monitor.close();
+						String message;
+						if (scheduler.isCanceled())
+							message = "Canceled File Conversion";
+						else if (scheduler.getFailures() > 0)
+							message = scheduler.getConverted() + " of " + scheduler.getScenarioCount() + " scenarios converted, "
+									+ scheduler.getFailures() + " failed, h5 files are located here: " + file_outputDir.getAbsolutePath();
+						else
+							message = "Success, h5 files are located here: " + file_outputDir.getAbsolutePath();
+						JOptionPane.showMessageDialog(FileConverter.this, message);
+						return;
 					}
+					long total = Math.max(1, scheduler.getTotalBytes());
+					monitor.setNote(String.format("%d/%d scenarios, %.0f of %.0f MB read, %d of %d blocks written",
+							scheduler.getConverted(), scheduler.getScenarioCount(), scheduler.getBytesRead() / 1048576.0,
+							total / 1048576.0, scheduler.getBlocksWritten(), totalBlocks));
+					// Reaching the maximum closes the monitor, which waits for the writer to finish instead
+					monitor.setProgress((int)Math.min(PROGRESS - 1, PROGRESS * scheduler.getBytesRead() / total));
 				}
 			});
-			runningAllStuffThread.start();
+			scheduler.start();
+			timer.start();
 		}
 	}
 
-	private class MonitorRunnable implements Runnable {
-
-		private int totalTasks;
-
-		MonitorRunnable(ExecutorService service, int cores, int totalTasks) {
-			this.totalTasks = totalTasks;
-			monitor = new ProgressMonitor(FileConverter.this, "Converting files on " + cores + " cores", "0/" + totalTasks, 0, totalTasks);
-			processedTasks = 0;
+	// The layout picked for the plot datasets, null if the significant digits can't be used
+	private H5Layout getPlotLayout() {
+		if (!jComboBox_layout.getSelectedItem().equals(CHUNKED))
+			return H5Layout.CONTIGUOUS;
+		String digits = jTextField_digits.getText().trim();
+		if (digits.isEmpty())
+			return new H5Layout(true, 0);
+		try {
+			int significantDigits = Integer.parseInt(digits);
+			if (significantDigits >= 1 && significantDigits <= 7) // A float holds about 7
+				return new H5Layout(true, significantDigits);
+		} catch (NumberFormatException e) {
+			System.out.println("Significant digits: " + digits);
 		}
+		return null;
+	}
 
-		@Override
-		public void run() {
-			while(!monitor.isCanceled()) {
-				// or maybe some done check too?
-				try {
-					monitor.setNote(processedTasks + "/" + totalTasks);
-					monitor.setProgress(processedTasks);
-					Thread.sleep(100);
-				} catch (InterruptedException e) {
-					e.printStackTrace(); // Ignore and continue
-					JOptionPane.showMessageDialog(FileConverter.this, Arrays.toString(e.getStackTrace()), e.getMessage(), JOptionPane.ERROR_MESSAGE);
-				}
-			}
-			monitor.setProgress(processedTasks);
-			JOptionPane.showMessageDialog(FileConverter.this, (!monitor.isCanceled() ? "Success, h5 files are located here: " + file_outputDir.getAbsolutePath() : "Canceled File Conversion"));
-		}
+	// Blocks a reader holds while it reads one scenario
+	private int blocksPerReader(String fileType) {
+		if (fileType.equals(NUFT))
+			return gp.getSelectedTimes().size() + 1; // One parameter at every time, and the block being handed over
+		if (fileType.equals(GRAVITY_OUT))
+			return 2 * gp.getSelectedParameters().size() + 1; // Sums and counts for every parameter at one time
+		return 2; // The block being read and its reordered copy
 	}
 	
 	
-	// Each thread is assigned a scenario to both to read in the data and write the file
+	// Each scenario is read on one of the scheduler's readers, and written by its writer
 	// At this point, we've already filtered down to only selected scenarios
-	private class FileConverterThread implements Runnable {
-
-		private String scenario;
-		public FileConverterThread(String scenario) {
-			this.scenario = scenario;
+	private class ScenarioConversion implements ConversionScheduler.Conversion {
+		
+		// Figure out what we're reading
+		private final String folderStructure = jComboBox_folderStructure.getSelectedItem().toString();
+		private final String fileType = jComboBox_fileType.getSelectedItem().toString();
+		private final long[] dims3D = {gp.getX().length, gp.getY().length, gp.getZ().length};
+		private final H5Layout layout = getPlotLayout();
+		private final boolean timeSeries = jCheckBox_timeSeries.isSelected();
+		
+		// Only used on the writer thread
+		private final Map<String, H5File> files = new HashMap<String, H5File>();
+		private final Map<String, PlotWriter> plots = new HashMap<String, PlotWriter>();
+		private final Map<String, Long> startTimes = new HashMap<String, Long>();
+		
+		@Override
+		public long size(String scenario) {
+			long size = 0;
+			for(File file: inputFiles(scenario))
+				size += file.length();
+			return size;
+		}
+		
+		// The files the reader for this file type looks at
+		private List<File> inputFiles(final String scenario) {
+			File[] found = null;
+			if(fileType.equals(STOMP)) {
+				found = new File(file_inputDir, scenario).listFiles();
+			} else if(fileType.equals(NUFT)) {
+				found = file_inputDir.listFiles(new FileFilter() {
+					@Override
+					public boolean accept(File file) {
+						return file.getName().endsWith(".ntab") &&
+								scenario.equals("Scenario" + file.getName().split("\\.")[0].replaceAll("\\D+", ""));
+					}
+				});
+			} else if(fileType.equals(GRAVITY_OUT)) {
+				found = new File(file_inputDir, scenario).listFiles(new FileFilter() {
+					@Override
+					public boolean accept(File file) {
+						return file.getName().endsWith(".OUT");
+					}
+				});
+			} else if(fileType.equals(TECPLOT) && folderStructure.equals(SCENARIO_PER_FILE)) {
+				found = new File[]{new File(file_inputDir, scenario + ".dat")};
+			}
+			return found == null ? new ArrayList<File>() : Arrays.asList(found);
 		}
 		
 		@Override
-		public void run() {
-			long startTime = System.currentTimeMillis();
-			
-			// Figure out what we're reading
-			String folderStructure = FileConverter.this.jComboBox_folderStructure.getSelectedItem().toString();
-			String fileType = jComboBox_fileType.getSelectedItem().toString();
-			
+		public void read(String scenario, ParseRawFiles.BlockSink sink) throws Exception {
 			// Extract the data and statistics from the selected directory
 			if(fileType.equals(STOMP)) {
 				File scenarioFolder = new File(file_inputDir, scenario);
-				gp.extractStompData(scenarioFolder);
+				gp.extractStompData(scenarioFolder, sink);
 			} else if(fileType.equals(NUFT)) {
-				gp.extractNuftData(file_inputDir, scenario);
+				gp.extractNuftData(file_inputDir, scenario, sink);
 			} else if(fileType.equals(GRAVITY_OUT)) {
 				File scenarioFolder = new File(file_inputDir, scenario);
-				gp.extractToughData(scenarioFolder);
+				gp.extractToughData(scenarioFolder, sink);
 			} else if(fileType.equals(TECPLOT) && folderStructure.equals(SCENARIO_PER_FILE)) { //TODO: This assumes files per folder, need to add folders per folder option when I get an example
 				File scenarioFile = new File(file_inputDir, scenario + ".dat");
-				gp.extractTecplotData(scenarioFile);
+				gp.extractTecplotData(scenarioFile, sink);
 			}
-			H5File hdf5File = null;
-			try {
-				FileFormat hdf5Format = FileFormat.getFileFormat(FileFormat.FILE_TYPE_HDF5);
-				File hdf5FileLocation = new File(file_outputDir, scenario + ".h5");
-				hdf5File = (H5File)hdf5Format.createFile(hdf5FileLocation.getAbsolutePath(), FileFormat.FILE_CREATE_DELETE);
-				hdf5File.open();
-				
-				writeH5Files(gp, hdf5File, scenario);
-				
-				statusLabel.setText("The " + fileType + " files were successfully converted to H5 files.");
-				statusLabel.setForeground(new java.awt.Color(5, 70, 5));
-				long endTime = (System.currentTimeMillis()-startTime)/1000;
-				System.out.println("Finished reading "+scenario+", writing to "+hdf5File+"... took "+Constants.formatSeconds(endTime));
-			} catch (Exception e) {
-				e.printStackTrace();
-				statusLabel.setText("Error converting the files.");
-				statusLabel.setForeground(Color.RED);
-				JOptionPane.showMessageDialog(FileConverter.this, Arrays.toString(e.getStackTrace()), e.getMessage(), JOptionPane.ERROR_MESSAGE);
-				hdf5File.delete(); // Remove the file
-			} finally {
-				if(hdf5File != null)  {
-					try {
-						hdf5File.close();
-					} catch (HDF5Exception e) {
-						System.out.println("Error closing the HDF5 File.");
-						e.printStackTrace();
-					}
+		}
+		
+		@Override
+		public void open(String scenario) throws Exception {
+			startTimes.put(scenario, System.currentTimeMillis());
+			FileFormat hdf5Format = FileFormat.getFileFormat(FileFormat.FILE_TYPE_HDF5);
+			File hdf5FileLocation = new File(file_outputDir, scenario + ".h5");
+			H5File hdf5File = (H5File)hdf5Format.createFile(hdf5FileLocation.getAbsolutePath(), FileFormat.FILE_CREATE_DELETE);
+			files.put(scenario, hdf5File);
+			hdf5File.open();
+			// Each block is written to the file as soon as it is read, rather than holding the scenario
+			plots.put(scenario, new PlotWriter(hdf5File, dims3D, layout, timeSeries));
+		}
+		
+		@Override
+		public void write(String scenario, String parameter, int timeIndex, float[] values) throws Exception {
+			plots.get(scenario).write(scenario, parameter, timeIndex, values);
+		}
+		
+		@Override
+		public void finish(String scenario) throws Exception {
+			H5File hdf5File = files.get(scenario);
+			writeH5Files(gp, hdf5File, scenario, plots.get(scenario));
+			close(scenario);
+			statusLabel.setText("The " + fileType + " files were successfully converted to H5 files.");
+			statusLabel.setForeground(new java.awt.Color(5, 70, 5));
+			long endTime = (System.currentTimeMillis()-startTimes.remove(scenario))/1000;
+			System.out.println("Finished reading "+scenario+", writing to "+hdf5File+"... took "+Constants.formatSeconds(endTime));
+		}
+		
+		@Override
+		public void abort(String scenario, final Exception cause) {
+			close(scenario);
+			startTimes.remove(scenario);
+			File hdf5FileLocation = new File(file_outputDir, scenario + ".h5");
+			if(hdf5FileLocation.exists() && !hdf5FileLocation.delete()) // Remove the file
+				System.out.println("Unable to remove the unfinished " + hdf5FileLocation.getPath());
+			if(cause == null)
+				return; // Canceled
+			statusLabel.setText("Error converting the files.");
+			statusLabel.setForeground(Color.RED);
+			SwingUtilities.invokeLater(new Runnable() { // The writer carries on with the other scenarios
+				@Override
+				public void run() {
+					JOptionPane.showMessageDialog(FileConverter.this, Arrays.toString(cause.getStackTrace()), cause.getMessage(), JOptionPane.ERROR_MESSAGE);
+				}
+			});
+		}
+		
+		private void close(String scenario) {
+			H5File hdf5File = files.remove(scenario);
+			plots.remove(scenario);
+			if(hdf5File != null)  {
+				try {
+					hdf5File.close();
+				} catch (HDF5Exception e) {
+					System.out.println("Error closing the HDF5 File.");
+					e.printStackTrace();
+				}
+			}
+			gp.release(scenario); // Only the statistics were kept, and they are written
+		}
+	}
+	
+	
+	// Writes blocks into their plot group datasets, in the chosen layout, as they are read, so only the block being read is held in memory
+	private class PlotWriter {
+		
+		private final H5File hdf5File;
+		private final Group root;
+		private final Datatype dtype;
+		private final long[] dims3D;
+		private final H5Layout layout;
+		private final boolean timeSeries; // Also write the node-major timeseries group
+		private final Map<Integer, Group> timeStepGroups = new HashMap<Integer, Group>();
+		private final Map<String, Dataset> datasets = new HashMap<String, Dataset>(); // plot group/parameter
+		
+		private PlotWriter(H5File hdf5File, long[] dims3D, H5Layout layout, boolean timeSeries) throws Exception {
+			this.hdf5File = hdf5File;
+			this.dims3D = dims3D;
+			this.layout = layout;
+			this.timeSeries = timeSeries;
+			root = (Group)((javax.swing.tree.DefaultMutableTreeNode)hdf5File.getRootNode()).getUserObject();
+			dtype = hdf5File.createDatatype(Datatype.CLASS_FLOAT, 4, Datatype.NATIVE, -1);
+		}
+		
+		private Group getGroup(int timeIndex) throws Exception {
+			Group timeStepGroup = timeStepGroups.get(timeIndex);
+			if(timeStepGroup == null) {
+				timeStepGroup = hdf5File.createGroup("plot" + timeIndex, root);
+				timeStepGroups.put(timeIndex, timeStepGroup);
+			}
+			return timeStepGroup;
+		}
+		
+		public void write(String scenario, String parameter, int timeIndex, float[] values) throws Exception {
+			String key = "plot" + timeIndex + "/" + parameter;
+			Dataset d = datasets.get(key);
+			if(d == null) { // Created empty, a block read again for the same time replaces the values
+				d = layout.create(hdf5File, getGroup(timeIndex), parameter, dtype, dims3D);
+				addUnits(d, parameter);
+				d.init();
+				datasets.put(key, d);
+			}
+			// The block goes in through a hyperslab selecting the whole grid
+			long[] start = d.getStartDims();
+			long[] selected = d.getSelectedDims();
+			for(int i=0; i<dims3D.length; i++) {
+				start[i] = 0;
+				selected[i] = dims3D[i];
+			}
+			d.write(layout.quantize(values));
+		}
+		
+		private void addUnits(Dataset d, String parameter) throws Exception {
+			if (!gp.getUnit(parameter).equals("")) { // Add units as an attribute if they exist
+				Datatype attrType = new H5Datatype(Datatype.CLASS_STRING, 10, -1, -1);
+				d.writeMetadata(new Attribute("units", attrType, new long[]{1}, new String[]{gp.getUnit(parameter)}));
+			}
+		}
+		
+		// Writes timeseries/<parameter> from the plot datasets, for each parameter that has one at every time
+		private void writeTimeSeries(List<String> parameters, int times) throws Exception {
+			Group seriesGroup = hdf5File.createGroup(TimeSeries.GROUP, root);
+			for(String parameter: parameters) {
+				Dataset[] plots = new Dataset[times];
+				for(int t=0; t<times; t++)
+					plots[t] = datasets.get("plot" + t + "/" + parameter);
+				if(Arrays.asList(plots).contains(null)) {
+					System.out.println("No time series for " + parameter + ", it wasn't read at every time");
+					continue;
 				}
-				processedTasks++; // For the monitor 
+				addUnits(TimeSeries.write(hdf5File, seriesGroup, parameter, plots, dims3D, layout), parameter);
 			}
 		}
 	}
@@ -654,7 +797,7 @@ public class FileConverter extends javax.swing.JFrame {
 	}
 	
 	
-	private void writeH5Files(ParseRawFiles gp, H5File hdf5File, String scenario) throws Exception {
+	private void writeH5Files(ParseRawFiles gp, H5File hdf5File, String scenario, PlotWriter plots) throws Exception {
 		// Get the root
 		Group root = (Group)((javax.swing.tree.DefaultMutableTreeNode)hdf5File.getRootNode()).getUserObject();
 		Datatype dtype = hdf5File.createDatatype(Datatype.CLASS_FLOAT, 4, Datatype.NATIVE, -1);
@@ -745,24 +888,23 @@ public class FileConverter extends javax.swing.JFrame {
 		///////////////////////////////////////////////////////
 		// Plot groups per step with data for all parameters //
 		///////////////////////////////////////////////////////
+		// Blocks were written as they were read, this adds any held in memory and groups for times nothing was read for
 		for(float time: gp.getSelectedTimesArray()) {
 			int index = gp.getSelectedTimeIndex(time);
-			Group timeStepGroup = hdf5File.createGroup("plot" + index, root);
+			plots.getGroup(index);
 			for(String parameter: gp.getSelectedParameters()) {
-				try {
-					d = hdf5File.createScalarDS(parameter, timeStepGroup, dtype, dims3D, null, null, 0,
-							gp.getData(scenario, parameter)[index]);
-					if (!gp.getUnit(parameter).equals("")) { // Add units as an attribute if they exist
-						classValue[0] = gp.getUnit(parameter);
-						attr = new Attribute("units", attrType, attrDims, classValue);
-						d.writeMetadata(attr);
-					}
-				} catch (Exception theException) {
-					System.out.println("No parameter for the scenario.");
-				}
+				float[][] data = gp.getData(scenario, parameter);
+				if(data != null && data[index] != null)
+					plots.write(scenario, parameter, index, data[index]);
 			}
 		}
 		
+		/////////////////////////////////////////////////////////////
+		// Time Series Group: all times for each node, if selected //
+		/////////////////////////////////////////////////////////////
+		if(plots.timeSeries)
+			plots.writeTimeSeries(gp.getSelectedParameters(), gp.getSelectedTimesArray().length);
+		
 		////////////////////////////////////////////////////////
 		// Statistics Group: min, avg, max for all parameters //
 		////////////////////////////////////////////////////////
@@ -0,0 +1,127 @@
+package hdf5Tool;
+
+import ncsa.hdf.hdf5lib.H5;
+import ncsa.hdf.hdf5lib.HDF5Constants;
+import ncsa.hdf.object.Dataset;
+import ncsa.hdf.object.Datatype;
+import ncsa.hdf.object.Group;
+import ncsa.hdf.object.h5.H5File;
+import ncsa.hdf.object.h5.H5ScalarDS;
+
+/**
+ * How the converter stores each parameter's 3-D grid in a plot group. Contiguous is the original layout. Chunked splits
+ * the grid into tiles of whole k columns, about CHUNK_BYTES each, and runs them through the shuffle and deflate filters,
+ * so a column or subvolume only reads the tiles it touches and the file takes a fraction of the space.
+ * Optionally values are rounded to a number of significant digits first. They stay 32 bit floats, but with the low
+ * mantissa bits cleared they compress several times better. Either way the datasets are floats, and HDF5 undoes the
+ * filters when they are read, so HDF5Interface reads every layout the same way.
+ */
+
+public class H5Layout {
+
+	public static final H5Layout CONTIGUOUS = new H5Layout(false, 0);
+
+	private static final int CHUNK_BYTES = 1 << 18; // Fits several chunks in HDF5's default 1 MB chunk cache
+	private static final int DEFLATE_LEVEL = 4; // Most of the compression of level 9 in a fraction of the time
+	private static final int MANTISSA_BITS = 23;
+
+	private final boolean chunked;
+	private final int significantDigits; // 0 keeps every bit
+
+	public H5Layout(boolean chunked, int significantDigits) {
+		this.chunked = chunked;
+		this.significantDigits = significantDigits;
+	}
+
+	public boolean isChunked() {
+		return chunked;
+	}
+
+	public int getSignificantDigits() {
+		return significantDigits;
+	}
+
+	/**
+	 * Creates an empty float dataset for a grid, ready to be written with init and a hyperslab.
+	 * @param dims - The grid dimensions, in ijk order
+	 */
+	public Dataset create(H5File hdf5File, Group group, String name, Datatype dtype, long[] dims) throws Exception {
+		if(!chunked)
+			return hdf5File.createScalarDS(name, group, dtype, dims, null, null, 0, null);
+		return createChunked(hdf5File, group, name, dims, getChunks(dims));
+	}
+
+	/**
+	 * Creates an empty float dataset split into these chunks, through the filters when this layout compresses.
+	 * Used for datasets that are chunked whatever the layout, like the node-major time series (see TimeSeries).
+	 */
+	public Dataset createChunked(H5File hdf5File, Group group, String name, long[] dims, long[] chunks) throws Exception {
+		// The object API sets chunks and deflate but not shuffle, so the dataset is made directly and then looked up
+		int space = H5.H5Screate_simple(dims.length, dims, null);
+		int plist = H5.H5Pcreate(HDF5Constants.H5P_DATASET_CREATE);
+		try {
+			H5.H5Pset_chunk(plist, dims.length, chunks);
+			if(chunked) {
+				H5.H5Pset_shuffle(plist); // Groups the bytes of each float so the exponents compress together
+				if(H5.H5Zfilter_avail(HDF5Constants.H5Z_FILTER_DEFLATE) > 0)
+					H5.H5Pset_deflate(plist, DEFLATE_LEVEL);
+			}
+			String path = group.isRoot() ? "/" : group.getFullName() + "/";
+			int dataset = H5.H5Dcreate(hdf5File.getFID(), path + name, HDF5Constants.H5T_NATIVE_FLOAT, space,
+					HDF5Constants.H5P_DEFAULT, plist, HDF5Constants.H5P_DEFAULT);
+			H5.H5Dclose(dataset);
+			H5ScalarDS d = new H5ScalarDS(hdf5File, name, path);
+			group.addToMemberList(d);
+			return d;
+		} finally {
+			H5.H5Pclose(plist);
+			H5.H5Sclose(space);
+		}
+	}
+
+	/**
+	 * Whole k columns grouped into a square tile of i and j, as close to CHUNK_BYTES as the grid allows.
+	 * A column of values at one i, j is one chunk read, and neighbouring columns are usually in the same one.
+	 */
+	public static long[] getChunks(long[] dims) {
+		long columns = Math.max(1, CHUNK_BYTES / 4 / Math.max(1, dims[2]));
+		long edge = Math.max(1, (long)Math.sqrt(columns));
+		long i = Math.min(dims[0], edge);
+		long j = Math.min(dims[1], Math.max(1, columns / i));
+		return new long[]{Math.max(1, i), Math.max(1, j), Math.max(1, dims[2])};
+	}
+
+	/**
+	 * The values rounded to the significant digits, as a copy, or the values themselves when every bit is kept.
+	 * Each value is rounded to the nearest float with enough mantissa bits for the digits, so the relative error is
+	 * at most half a unit in the last digit. NaN and infinity are kept as they are.
+	 */
+	public float[] quantize(float[] values) {
+		if(significantDigits <= 0)
+			return values;
+		int bits = (int)Math.ceil(significantDigits * Math.log(10) / Math.log(2));
+		int dropped = MANTISSA_BITS - bits;
+		if(dropped <= 0)
+			return values;
+		int half = 1 << (dropped - 1);
+		int mask = -1 << dropped;
+		float[] rounded = new float[values.length];
+		for(int i=0; i<values.length; i++) {
+			float value = values[i];
+			rounded[i] = value;
+			if(Float.isNaN(value) || Float.isInfinite(value))
+				continue;
+			float result = Float.intBitsToFloat((Float.floatToRawIntBits(value) + half) & mask);
+			if(!Float.isInfinite(result)) // Rounding up past the largest float keeps the value
+				rounded[i] = result;
+		}
+		return rounded;
+	}
+
+	@Override
+	public String toString() {
+		if(!chunked)
+			return "contiguous";
+		return "chunked, shuffle and deflate" + (significantDigits > 0 ? ", " + significantDigits + " significant digits" : "");
+	}
+}
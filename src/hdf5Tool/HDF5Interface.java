@@ -4,15 +4,22 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 
+import objects.DenseDetectionMatrix;
+import objects.DetectionMatrix;
 import objects.NodeStructure;
 import objects.ScenarioSet;
 import objects.SensorSetting;
@@ -24,6 +31,7 @@ import ncsa.hdf.hdf5lib.HDF5Constants;
 import ncsa.hdf.object.Attribute;
 import ncsa.hdf.object.Dataset;
 import ncsa.hdf.object.Group;
+import ncsa.hdf.object.HObject;
 import ncsa.hdf.object.h5.H5File;
 import utilities.Constants;
 import utilities.Point3i;
@@ -40,6 +48,8 @@ public class HDF5Interface {
 	public static Map<String, H5File> hdf5Files = new HashMap<String, H5File>();
 	// Stores global statistics - min, average, max
 	public static Map<String, float[]> statistics = new HashMap<String, float[]>();
+	// Per-node extremes for each parameter, filled in the first time a detection map is made for it
+	public static Map<String, ChangeExtremes> changeExtremes = new HashMap<String, ChangeExtremes>();
 	
 	
 	/*	
@@ -72,6 +82,7 @@ public class HDF5Interface {
 	public static NodeStructure readNodeStructureH5 (File file) {
 		NodeStructure nodeStructure = null;
 		statistics.clear();
+		changeExtremes.clear();
 		try {
 			// Equivalent to opening to line 80 and 81 (Theoretically)
 			H5File hdf5File  = new H5File(file.getAbsolutePath(), HDF5Constants.H5F_ACC_RDONLY);
@@ -200,91 +211,342 @@ public class HDF5Interface {
 	
 	// Instead of querying files for each value, generate a map with TTD at each node number for specific sensor settings
 	public static void createDetectionMap(IProgressMonitor monitor, ScenarioSet set, SensorSetting setting, String specificType) {
+		createDetectionMaps(monitor, set, Arrays.asList(setting), Arrays.asList(specificType));
+	}
+	
+	
+	// Generates the detection maps for several sensor settings (each with its own trigger, delta type and threshold) in one read of the files
+	// Scenario files are scanned in parallel on a bounded pool, each parameter is read once per timestep and checked against every setting that uses it
+	// The first scan of a parameter also records its per-node extremes, so later thresholds can be checked without the files (see changeExtremes)
+	// Settings with a matching detection map in DetectionMapCache are loaded from there instead
+	public static void createDetectionMaps(final IProgressMonitor monitor, final ScenarioSet set, List<SensorSetting> allSettings, List<String> allSpecificTypes) {
 		
 		long startTime = System.currentTimeMillis();
 		
-		Map<Integer, Float> baseline = new HashMap<Integer, Float>(); //stores values at the initial timestep
-		Point3i structure = set.getNodeStructure().getIJKDimensions();
-		for(H5File hdf5File: hdf5Files.values()) { // For every scenario
-			String scenario = hdf5File.getName().replaceAll("\\.h5" , "");
-			if(monitor.isCanceled()) {
+		final NodeStructure nodeStructure = set.getNodeStructure();
+		final List<SensorSetting> settings = new ArrayList<SensorSetting>();
+		final List<String> specificTypes = new ArrayList<String>();
+		for(int i=0; i<allSettings.size(); i++) {
+			DetectionMatrix cached = DetectionMapCache.load(allSettings.get(i), nodeStructure.getTotalNodes());
+			if(cached != null) {
+				set.getDetectionMap().put(allSpecificTypes.get(i), cached);
+				monitor.worked(900);
+			} else {
+				settings.add(allSettings.get(i));
+				specificTypes.add(allSpecificTypes.get(i));
+			}
+		}
+		if(settings.isEmpty())
+			return;
+		
+		final int[] nodeNumbers = getNodeNumbers(nodeStructure); //H5 index to node number, shared by every scenario
+		final DenseDetectionMatrix[] detections = new DenseDetectionMatrix[settings.size()];
+		for(int i=0; i<detections.length; i++)
+			detections[i] = new DenseDetectionMatrix(nodeStructure.getTotalNodes());
+		
+		// Only collect extremes for parameters we haven't seen yet, since collecting them means reading every timestep
+		final Map<String, ChangeExtremes> newExtremes = new HashMap<String, ChangeExtremes>();
+		for(SensorSetting setting: settings) {
+			if(!changeExtremes.containsKey(setting.getType()))
+				newExtremes.put(setting.getType(), new ChangeExtremes(nodeStructure.getTotalNodes()));
+		}
+		
+		final int work = 900 * settings.size() / Math.max(1, hdf5Files.size());
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for(final H5File hdf5File: hdf5Files.values()) { // For every scenario
+			final String scenario = hdf5File.getName().replaceAll("\\.h5" , "");
+			final int[] scenarioIndices = new int[detections.length];
+			for(int i=0; i<detections.length; i++)
+				scenarioIndices[i] = detections[i].addScenario(scenario);
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					if(monitor.isCanceled()) return null;
+					monitor.subTask("generating detection matrix: " + settings.get(0).getType() + (settings.size() > 1 ? " (+" + (settings.size()-1) + ")" : "") + " - " + scenario);
+					try {
+						float[][] ttds = scanScenario(monitor, hdf5File, nodeStructure, settings, nodeNumbers, newExtremes);
+						if(ttds != null) {
+							for(int i=0; i<detections.length; i++)
+								detections[i].setRow(scenarioIndices[i], ttds[i]);
+						}
+					} catch (Exception e) {
+						try {
+							PrintWriter errorWriter = new PrintWriter("Errors " + Constants.uniqueError + ".txt");
+							e.printStackTrace(errorWriter);
+							Constants.uniqueError++;
+							errorWriter.close();
+						} catch (FileNotFoundException e1) {
+							e1.printStackTrace();
+						}
+						System.out.println("Unable to read detection values from the hdf5 files...");
+						e.printStackTrace();
+					}
+					monitor.worked(work);
+					return null;
+				}
+			});
+		}
+		
+		// Each worker holds a few grids in memory, so the pool size also bounds memory use
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(Constants.parallelism, tasks.size())));
+		try {
+			executor.invokeAll(tasks);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			executor.shutdown();
+		}
+		
+		if(monitor.isCanceled()) {
+			for(String specificType: specificTypes)
 				set.getDetectionMap().remove(specificType);
-				return;
+			return;
+		}
+		for(int i=0; i<detections.length; i++) {
+			DetectionMatrix matrix = detections[i].compact();
+			set.getDetectionMap().put(specificTypes.get(i), matrix);
+			DetectionMapCache.save(settings.get(i), matrix);
+		}
+		changeExtremes.putAll(newExtremes); // Only complete once every scenario has been read
+		long elapsedTime = (System.currentTimeMillis() - startTime)/1000;
+		System.out.println("You just created a detection map for " + (specificTypes.size() == 1 ? specificTypes.get(0) : specificTypes.size() + " sensor settings") + " in " + Constants.formatSeconds(elapsedTime) + "! Awesome! So Fast!");
+	}
+	
+	
+	// Reads one scenario in time order, returning the first detection time for each setting and node (node number - 1), NaN for none
+	// Parameters in the extremes map have their extremes from this scenario merged in
+	// Returns null if the user cancels part way through
+	private static float[][] scanScenario(IProgressMonitor monitor, H5File hdf5File, NodeStructure nodeStructure, List<SensorSetting> settings, int[] nodeNumbers, Map<String, ChangeExtremes> extremes) throws Exception {
+		hdf5File.open();
+		try {
+			Group root = (Group)((javax.swing.tree.DefaultMutableTreeNode)hdf5File.getRootNode()).getUserObject();
+			
+			// Sort the plot groups by time index, the member list is in name order (plot10 before plot2)
+			TreeMap<Integer, Group> plots = new TreeMap<Integer, Group>();
+			for(HObject member: root.getMemberList()) {
+				if(!member.getName().startsWith("plot")) // Skip data, statistics and timeseries
+					continue;
+				plots.put(Integer.parseInt(member.getName().replaceAll("plot", "")), (Group)member);
 			}
-			monitor.subTask("generating detection matrix: " + setting.getType() + " - " + scenario);
-			try {
-				if(!set.getDetectionMap().containsKey(specificType))
-					set.getDetectionMap().put(specificType, new HashMap<String, Map<Integer, Float>>());
-				if(!set.getDetectionMap().get(specificType).containsKey(scenario))
-					set.getDetectionMap().get(specificType).put(scenario, new HashMap<Integer, Float>());
-				hdf5File.open();
-				Group root = (Group)((javax.swing.tree.DefaultMutableTreeNode)hdf5File.getRootNode()).getUserObject();
-				for(int rootIndex = 0; rootIndex < root.getMemberList().size(); rootIndex++) {
-					
-					// Skip these
-					if(root.getMemberList().get(rootIndex).getName().contains("data") || root.getMemberList().get(rootIndex).getName().contains("statistics"))
-						continue;
-					
-					int timeIndex = Integer.parseInt(root.getMemberList().get(rootIndex).getName().replaceAll("plot", ""));
+			
+			// Nodes can only be skipped once triggered if later plots are never earlier in time
+			boolean ordered = true;
+			float previous = -Float.MAX_VALUE;
+			for(int timeIndex: plots.keySet()) {
+				if(nodeStructure.getTimeAt(timeIndex) < previous)
+					ordered = false;
+				previous = nodeStructure.getTimeAt(timeIndex);
+			}
+			
+			// Group the settings by parameter so each dataset is read once
+			Map<String, List<Integer>> parameters = new HashMap<String, List<Integer>>();
+			for(int i=0; i<settings.size(); i++) {
+				if(!parameters.containsKey(settings.get(i).getType()))
+					parameters.put(settings.get(i).getType(), new ArrayList<Integer>());
+				parameters.get(settings.get(i).getType()).add(i);
+			}
+			Map<String, float[]> baselines = new HashMap<String, float[]>(); //stores values at the initial timestep
+			Map<String, ChangeExtremes> scenarioExtremes = new HashMap<String, ChangeExtremes>();
+			for(String parameter: parameters.keySet()) {
+				float[] baseline = new float[nodeNumbers.length];
+				Arrays.fill(baseline, Float.NaN);
+				baselines.put(parameter, baseline);
+				if(extremes.containsKey(parameter))
+					scenarioExtremes.put(parameter, new ChangeExtremes(nodeStructure.getTotalNodes()));
+			}
+			
+			float[] dataRead = new float[nodeNumbers.length];
+			float[][] ttds = new float[settings.size()][nodeStructure.getTotalNodes()];
+			for(float[] row: ttds)
+				Arrays.fill(row, Float.NaN);
+			int[] remaining = new int[settings.size()];
+			Arrays.fill(remaining, nodeNumbers.length);
+			int settingsRemaining = settings.size();
+			
+			// Parameters with a node-major time series are scanned from it, the plots are only read for the rest
+			Map<String, Dataset> series = findTimeSeries(root, nodeNumbers.length, plots);
+			for(String parameter: series.keySet()) {
+				if(!parameters.containsKey(parameter)) continue;
+				List<Integer> parameterSettings = parameters.remove(parameter);
+				if(!scanTimeSeries(monitor, series.get(parameter), nodeStructure, settings, parameterSettings, nodeNumbers, ttds, scenarioExtremes.get(parameter), ordered))
+					return null;
+				for(int i: parameterSettings) {
+					remaining[i] = 0;
+					settingsRemaining--;
+				}
+			}
+			
+			for(int timeIndex: plots.keySet()) {
+				for(String parameter: parameters.keySet()) {
+					if(monitor.isCanceled()) return null;
+					ChangeExtremes scenarioExtreme = scenarioExtremes.get(parameter);
+					List<Integer> parameterSettings = parameters.get(parameter);
+					if(scenarioExtreme == null && ordered && allTriggered(remaining, parameterSettings)) continue; // Nothing left to learn from this parameter
+					if(!readDataset(plots.get(timeIndex), parameter, dataRead)) continue;
+					float[] baseline = baselines.get(parameter);
 					
 					// First time step sets the baseline
 					if(timeIndex == 0) {
-						Object group =  root.getMemberList().get(rootIndex);
-						for(int groupIndex = 0; groupIndex < ((Group)group).getMemberList().size(); groupIndex++) {
-							Object child = ((Group)group).getMemberList().get(groupIndex);
-							if(child instanceof Dataset && ((Dataset)child).getName().equals(setting.getType())) {
-								// Found the right data type
-								int dataset_id = ((Dataset)child).open();
-								float[] dataRead = new float[set.getNodeStructure().getTotalNodes()];
-								H5.H5Dread(dataset_id, HDF5Constants.H5T_NATIVE_FLOAT, HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL, HDF5Constants.H5P_DEFAULT, dataRead);	
-								((Dataset)child).close(dataset_id);
-								for(int index=0; index<dataRead.length; index++) {
-									baseline.put(Constants.getNodeNumber(structure, index), dataRead[index]);
-								}
-							}
-						}
+						System.arraycopy(dataRead, 0, baseline, 0, dataRead.length);
+						continue;
+					}
+					
+					if(scenarioExtreme != null) {
+						for(int index=0; index<dataRead.length; index++)
+							scenarioExtreme.add(nodeNumbers[index], dataRead[index], baseline[index]);
+					}
 					
 					// When looping through other timesteps, compare with the baseline
-					} else {
-						float timestep = set.getNodeStructure().getTimeAt(timeIndex);
-						Object group =  root.getMemberList().get(rootIndex);
-						for(int groupIndex = 0; groupIndex < ((Group)group).getMemberList().size(); groupIndex++) {
-							Object child = ((Group)group).getMemberList().get(groupIndex);
-							if(child instanceof Dataset && ((Dataset)child).getName().equals(setting.getType())) {
-								// Found the right data type
-								int dataset_id = ((Dataset)child).open();
-								float[] dataRead = new float[set.getNodeStructure().getTotalNodes()];
-								H5.H5Dread(dataset_id, HDF5Constants.H5T_NATIVE_FLOAT, HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL, HDF5Constants.H5P_DEFAULT, dataRead);	
-								((Dataset)child).close(dataset_id);
-								for(int index=0; index<dataRead.length; index++) {
-									int nodeNumber = Constants.getNodeNumber(structure, index);
-									// If the node triggers, save the timestep
-									if(sensorTriggered(setting, dataRead[index], baseline.get(nodeNumber))) {
-										if(set.getDetectionMap().get(specificType).get(scenario).get(nodeNumber)==null || set.getDetectionMap().get(specificType).get(scenario).get(nodeNumber) > timestep)
-											set.getDetectionMap().get(specificType).get(scenario).put(nodeNumber, timestep);
-									}
-								}
+					float timestep = nodeStructure.getTimeAt(timeIndex);
+					for(int i: parameterSettings) {
+						if(ordered && remaining[i] == 0) continue;
+						SensorSetting setting = settings.get(i);
+						float[] settingTTDs = ttds[i];
+						for(int index=0; index<dataRead.length; index++) {
+							int node = nodeNumbers[index]-1;
+							if(ordered && !Float.isNaN(settingTTDs[node])) continue; // Already triggered at an earlier time
+							// If the node triggers, save the timestep
+							if(sensorTriggered(setting, dataRead[index], baseline[index]) && (Float.isNaN(settingTTDs[node]) || timestep < settingTTDs[node])) {
+								if(Float.isNaN(settingTTDs[node]) && --remaining[i] == 0) settingsRemaining--;
+								settingTTDs[node] = timestep;
 							}
 						}
 					}
 				}
-				hdf5File.close();
-			} catch (Exception e) {
-				try {
-					PrintWriter errorWriter = new PrintWriter("Errors " + Constants.uniqueError + ".txt");
-					e.printStackTrace(errorWriter);
-					Constants.uniqueError++;
-					errorWriter.close();
-				} catch (FileNotFoundException e1) {
-					e1.printStackTrace();
+				// Every node has triggered for every setting, later timesteps can't change anything
+				if(ordered && settingsRemaining == 0 && scenarioExtremes.isEmpty()) break;
+			}
+			
+			for(String parameter: scenarioExtremes.keySet())
+				extremes.get(parameter).merge(scenarioExtremes.get(parameter));
+			return ttds;
+		} finally {
+			hdf5File.close();
+		}
+	}
+	
+	
+	// The time series in the file by parameter, for those that match the grid and have a column for every plot
+	private static Map<String, Dataset> findTimeSeries(Group root, int nodes, TreeMap<Integer, Group> plots) {
+		Map<String, Dataset> series = new HashMap<String, Dataset>();
+		if(plots.isEmpty() || plots.lastKey() != plots.size()-1)
+			return series; // A plot is missing, so the columns wouldn't be the time indices
+		for(HObject member: root.getMemberList()) {
+			if(!(member instanceof Group) || !member.getName().equals(TimeSeries.GROUP))
+				continue;
+			for(HObject child: ((Group)member).getMemberList()) {
+				if(!(child instanceof Dataset))
+					continue;
+				Dataset dataset = (Dataset)child;
+				dataset.init();
+				long[] dims = dataset.getDims();
+				if(dims.length == 2 && dims[0] == nodes && dims[1] == plots.size())
+					series.put(dataset.getName(), dataset);
+			}
+		}
+		return series;
+	}
+	
+	
+	/**
+	 * Scans a parameter's node-major time series (see TimeSeries) one chunk at a time, with the same rules as the plot
+	 * by plot scan. When times are in order and no extremes are wanted, a node is dropped at the time every setting has
+	 * triggered there, and once every node in a block has been dropped its later times are never read.
+	 * @return false if the user cancels part way through
+	 */
+	private static boolean scanTimeSeries(IProgressMonitor monitor, Dataset series, NodeStructure nodeStructure, List<SensorSetting> settings,
+			List<Integer> parameterSettings, int[] nodeNumbers, float[][] ttds, ChangeExtremes extreme, boolean ordered) throws Exception {
+		long[] dims = series.getDims();
+		long[] chunks = series.getChunkSize();
+		int nodes = (int)dims[0];
+		int times = (int)dims[1];
+		int rows = chunks == null ? nodes : (int)chunks[0];
+		int width = chunks == null ? times : (int)chunks[1];
+		float[] timesteps = new float[times];
+		for(int t=0; t<times; t++)
+			timesteps[t] = nodeStructure.getTimeAt(t);
+		boolean stopEarly = ordered && extreme == null;
+		float[] baseline = new float[rows];
+		int[] untriggered = new int[rows]; // Settings that haven't triggered yet at each node in the block
+		long[] start = series.getStartDims();
+		long[] selected = series.getSelectedDims();
+		for(int first=0; first<nodes; first+=rows) {
+			if(monitor.isCanceled()) return false;
+			int count = Math.min(rows, nodes - first);
+			Arrays.fill(baseline, Float.NaN);
+			Arrays.fill(untriggered, parameterSettings.size());
+			int open = count; // Nodes in the block still being scanned
+			for(int from=0; from<times; from+=width) {
+				if(stopEarly && open == 0) break; // The rest of the block's times are never read
+				int span = Math.min(width, times - from);
+				start[0] = first;
+				start[1] = from;
+				selected[0] = count;
+				selected[1] = span;
+				float[] dataRead = (float[])series.read();
+				for(int n=0; n<count; n++) {
+					if(stopEarly && untriggered[n] == 0) continue; // Already triggered for every setting
+					int node = nodeNumbers[first+n]-1;
+					for(int c=0; c<span; c++) {
+						int timeIndex = from + c;
+						float value = dataRead[n*span + c];
+						// First time step sets the baseline
+						if(timeIndex == 0) {
+							baseline[n] = value;
+							continue;
+						}
+						if(extreme != null)
+							extreme.add(node+1, value, baseline[n]);
+						for(int i: parameterSettings) {
+							float[] settingTTDs = ttds[i];
+							if(ordered && !Float.isNaN(settingTTDs[node])) continue; // Already triggered at an earlier time
+							if(sensorTriggered(settings.get(i), value, baseline[n]) && (Float.isNaN(settingTTDs[node]) || timesteps[timeIndex] < settingTTDs[node])) {
+								if(Float.isNaN(settingTTDs[node]) && --untriggered[n] == 0) open--;
+								settingTTDs[node] = timesteps[timeIndex];
+							}
+						}
+						if(stopEarly && untriggered[n] == 0) break;
+					}
 				}
-				System.out.println("Unable to read detection values from the hdf5 files...");
-				e.printStackTrace();
 			}
-			monitor.worked(900 / hdf5Files.size());
 		}
-		long elapsedTime = (System.currentTimeMillis() - startTime)/1000;
-		System.out.println("You just created a detection map for " + specificType + " in " + Constants.formatSeconds(elapsedTime) + "! Awesome! So Fast!");
+		return true;
+	}
+	
+	
+	private static boolean allTriggered(int[] remaining, List<Integer> settings) {
+		for(int i: settings) {
+			if(remaining[i] > 0)
+				return false;
+		}
+		return true;
+	}
+
+	
+	
+	// Reads the named dataset from a plot group into the given array, returns false if the plot doesn't have it
+	// Contiguous and chunked layouts read the same way, HDF5 undoes the shuffle and deflate filters (see H5Layout)
+	private static boolean readDataset(Group plot, String dataType, float[] dataRead) throws Exception {
+		for(HObject child: plot.getMemberList()) {
+			if(child instanceof Dataset && child.getName().equals(dataType)) {
+				// Found the right data type
+				int dataset_id = ((Dataset)child).open();
+				H5.H5Dread(dataset_id, HDF5Constants.H5T_NATIVE_FLOAT, HDF5Constants.H5S_ALL, HDF5Constants.H5S_ALL, HDF5Constants.H5P_DEFAULT, dataRead);
+				((Dataset)child).close(dataset_id);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	
+	// The node number for each index in the hdf5 files
+	private static int[] getNodeNumbers(NodeStructure nodeStructure) {
+		Point3i structure = nodeStructure.getIJKDimensions();
+		int[] nodeNumbers = new int[nodeStructure.getTotalNodes()];
+		for(int index=0; index<nodeNumbers.length; index++)
+			nodeNumbers[index] = Constants.getNodeNumber(structure, index);
+		return nodeNumbers;
 	}
 	
 	
@@ -306,7 +568,7 @@ public class HDF5Interface {
 				for(int rootIndex = 0; rootIndex < root.getMemberList().size(); rootIndex++) {
 					
 					// Skip these
-					if(root.getMemberList().get(rootIndex).getName().contains("data") || root.getMemberList().get(rootIndex).getName().contains("statistics"))
+					if(!root.getMemberList().get(rootIndex).getName().startsWith("plot")) // Data, statistics and timeseries
 						continue;
 					
 					// First time step sets the baseline
@@ -369,9 +631,9 @@ public class HDF5Interface {
 	}
 	
 	
-	public static Boolean sensorTriggered(SensorSetting setting, Float currentValue, Float valueAtTime0) {
-		Boolean triggered = false;
-		if(currentValue==null) return triggered;
+	// Missing values are NaN, which never trigger
+	public static boolean sensorTriggered(SensorSetting setting, float currentValue, float valueAtTime0) {
+		boolean triggered = false;
 		
 		// See if we exceeded threshold
 		if(setting.getTrigger()==Trigger.ABOVE_THRESHOLD) {
@@ -12,6 +12,7 @@ import java.util.Map;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 
+import objects.DenseDetectionMatrix;
 import objects.NodeStructure;
 import objects.ScenarioSet;
 import objects.TimeStep;
@@ -103,6 +104,7 @@ public class IAMInterface {
 	public static void readIAMFiles(IProgressMonitor monitor, File[] list, ScenarioSet set) {
 		Point3i structure = set.getNodeStructure().getIJKDimensions();
 		List<Float> times = new ArrayList<Float>();
+		Map<String, DenseDetectionMatrix> detectionMap = new HashMap<String, DenseDetectionMatrix>(); //Filled here, compacted into the set at the end
 		String line;
 		// Need to loop through all the files and read the files directly into the detectionMap
 		for(File file: list) {
@@ -126,10 +128,9 @@ public class IAMInterface {
 							lineList[4] = Float.toString(Float.parseFloat(lineList[4]));
 						if(!dataTypes.contains(lineList[2])) dataTypes.add(lineList[2]); // Add unique parameters
 						specificType = lineList[2] + "_" + lineList[3] + "_" + lineList[4]; // parameter_trigger_threshold (i.e. tds_rel_2)
-						if(!set.getDetectionMap().containsKey(specificType))
-							set.getDetectionMap().put(specificType, new HashMap<String, Map<Integer, Float>>());
-						if(!set.getDetectionMap().get(specificType).containsKey(scenario)) //scenario
-							set.getDetectionMap().get(specificType).put(scenario, new HashMap<Integer, Float>());
+						if(!detectionMap.containsKey(specificType))
+							detectionMap.put(specificType, new DenseDetectionMatrix(set.getNodeStructure().getTotalNodes()));
+						detectionMap.get(specificType).addScenario(scenario);
 						// Add the sensorSettings now, since we have all the information
 						if(!set.getSensorSettings().containsKey(lineList[2]))
 							set.addSensorSetting(lineList[2], lineList[3], lineList[4]);
@@ -142,7 +143,7 @@ public class IAMInterface {
 						// Now determine the node number and add the detection time to the DetectionMap
 						float time = Float.parseFloat(lineList[3]);
 						if(time < 1e25) { // No detection is usually represented by 1e30, don't add those
-							set.getDetectionMap().get(specificType).get(scenario).put(Constants.getNodeNumber(structure, index), time);
+							detectionMap.get(specificType).setTTD(scenario, Constants.getNodeNumber(structure, index), time);
 							if(!times.contains(time)) times.add(time);
 						}
 					}
@@ -155,6 +156,10 @@ public class IAMInterface {
 			}
 		}
 		
+		// Store the finished matrices in their smallest form
+		for(String specificType: detectionMap.keySet())
+			set.getDetectionMap().put(specificType, detectionMap.get(specificType).compact());
+		
 		// Store all found time steps in node structure
 		java.util.Collections.sort(times);
 		List<TimeStep> timeSteps = new ArrayList<TimeStep>();
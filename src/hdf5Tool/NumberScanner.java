@@ -0,0 +1,376 @@
+package hdf5Tool;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads a text file line by line out of one large byte buffer and parses the numbers on each line in place, so the readers
+ * in ParseRawFiles don't create a String per line and a String[] per split. Only lines a reader asks for with getLine,
+ * like headers and parameter names, become Strings.
+ * Tokens are separated by any run of spaces, tabs, vertical tabs or form feeds, the same as split("\\s+") on a line
+ * without leading whitespace. Lines end at \n, \r or \r\n, the same as BufferedReader.readLine.
+ * Numbers give exactly what Float.parseFloat, Double.parseDouble and Integer.parseInt give. Plain decimals with up to 18
+ * digits are parsed directly, anything else (NaN, hex, many digits, large exponents, values that land on a float rounding
+ * boundary) is handed to those methods, which also throw the same NumberFormatException for a token that isn't a number.
+ * A Listener hears about each read from the file, so a caller can follow progress and stop a reader part way through.
+ */
+
+public class NumberScanner implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 20; // Grows if a line is longer
+	private static final int MAX_DIGITS = 18; // Fits in a long
+	private static final long EXACT_MANTISSA = 1L << 53; // Largest mantissa a double holds exactly
+	private static final double[] POWERS = new double[23]; // Powers of ten a double holds exactly
+	static {
+		POWERS[0] = 1;
+		for(int i=1; i<POWERS.length; i++)
+			POWERS[i] = POWERS[i-1] * 10;
+	}
+
+	private final InputStream in;
+	private final Listener listener;
+	private final Charset charset = Charset.defaultCharset(); // What FileReader would decode with
+	private byte[] buffer = new byte[BUFFER_SIZE];
+	private int limit; // Bytes in the buffer
+	private int next; // Start of the line after this one
+	private int lineStart;
+	private int lineEnd;
+	private int position; // The next token in this line
+	private int tokenStart; // The token last read
+	private int tokenEnd;
+	private boolean skipLineFeed; // The last line ended with \r and the \n after it hasn't been read yet
+	private long bytesRead;
+
+	// Set by parseDecimal
+	private long mantissa;
+	private int exponent;
+	private boolean negative;
+
+	// Told how many bytes each read from the file brought in, up to a buffer at a time
+	public interface Listener {
+		// Throw an unchecked exception (like CancellationException) to stop reading, it passes out of the reader
+		public void read(long bytes);
+	}
+
+	public NumberScanner(File file) throws IOException {
+		this(new FileInputStream(file), null);
+	}
+
+	public NumberScanner(File file, Listener listener) throws IOException {
+		this(new FileInputStream(file), listener);
+	}
+
+	public NumberScanner(InputStream in) {
+		this(in, null);
+	}
+
+	public NumberScanner(InputStream in, Listener listener) {
+		this.in = in;
+		this.listener = listener;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	// Moves to the next line, false at the end of the file
+	public boolean nextLine() throws IOException {
+		if(skipLineFeed) {
+			if(next == limit && !fill())
+				return false;
+			if(buffer[next] == '\n')
+				next++;
+			skipLineFeed = false;
+		}
+		int scan = next;
+		while(true) {
+			for(; scan<limit; scan++) {
+				byte b = buffer[scan];
+				if(b == '\n' || b == '\r') {
+					setLine(next, scan);
+					next = scan + 1;
+					if(b == '\r') {
+						if(next < limit) {
+							if(buffer[next] == '\n')
+								next++;
+						} else
+							skipLineFeed = true;
+					}
+					return true;
+				}
+			}
+			int read = scan - next; // Part of a line, kept when the buffer moves
+			if(!fill()) {
+				if(next == limit)
+					return false;
+				setLine(next, limit); // The last line has no line break
+				next = limit;
+				return true;
+			}
+			scan = next + read;
+		}
+	}
+
+	private void setLine(int start, int end) {
+		lineStart = start;
+		lineEnd = end;
+		position = start;
+	}
+
+	// Moves what is left of the buffer to the front and reads more after it
+	private boolean fill() throws IOException {
+		if(next > 0) {
+			System.arraycopy(buffer, next, buffer, 0, limit - next);
+			limit -= next;
+			next = 0;
+		}
+		if(limit == buffer.length)
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		int read = in.read(buffer, limit, buffer.length - limit);
+		if(read <= 0)
+			return false;
+		limit += read;
+		bytesRead += read;
+		if(listener != null)
+			listener.read(read);
+		return true;
+	}
+
+	// The line as a String, for the few lines that are text
+	public String getLine() {
+		return new String(buffer, lineStart, lineEnd - lineStart, charset);
+	}
+
+	public boolean isEmpty() {
+		return lineStart == lineEnd;
+	}
+
+	// Nothing but whitespace, like line.trim().isEmpty()
+	public boolean isBlank() {
+		for(int i=lineStart; i<lineEnd; i++) {
+			if((buffer[i] & 0xff) > ' ')
+				return false;
+		}
+		return true;
+	}
+
+	public boolean startsWithSpace() {
+		return lineStart < lineEnd && isSpace(buffer[lineStart]);
+	}
+
+	public boolean contains(String text) {
+		return indexOf(text, false) != -1;
+	}
+
+	public boolean containsIgnoreCase(String text) {
+		return indexOf(text, true) != -1;
+	}
+
+	// Text is expected to be ASCII
+	private int indexOf(String text, boolean ignoreCase) {
+		int length = text.length();
+		for(int i=lineStart; i<=lineEnd-length; i++) {
+			int j = 0;
+			while(j < length && matches(buffer[i+j], text.charAt(j), ignoreCase))
+				j++;
+			if(j == length)
+				return i;
+		}
+		return -1;
+	}
+
+	private static boolean matches(byte b, char c, boolean ignoreCase) {
+		if(b == c)
+			return true;
+		return ignoreCase && Character.toLowerCase((char)(b & 0xff)) == Character.toLowerCase(c);
+	}
+
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == 0x0B || b == '\f';
+	}
+
+	// True if another token is left on this line
+	public boolean hasNext() {
+		while(position < lineEnd && isSpace(buffer[position]))
+			position++;
+		return position < lineEnd;
+	}
+
+	// Whether the next token is this text, ignoring case, without moving past it
+	public boolean nextEqualsIgnoreCase(String text) {
+		if(!hasNext())
+			return false;
+		int end = endOfToken();
+		if(end - position != text.length())
+			return false;
+		for(int i=0; i<text.length(); i++) {
+			if(!matches(buffer[position+i], text.charAt(i), true))
+				return false;
+		}
+		return true;
+	}
+
+	public void skip() {
+		if(hasNext())
+			position = endOfToken();
+	}
+
+	// Moves past the rest of the line, returning how many tokens were left
+	public int skipRest() {
+		int count = 0;
+		while(hasNext()) {
+			position = endOfToken();
+			count++;
+		}
+		return count;
+	}
+
+	// The token last read, for error messages
+	public String getToken() {
+		return text(tokenStart, tokenEnd);
+	}
+
+	private int endOfToken() {
+		int end = position;
+		while(end < lineEnd && !isSpace(buffer[end]))
+			end++;
+		return end;
+	}
+
+	// Moves past the next token whether or not it turns out to be a number
+	private void nextToken() {
+		hasNext();
+		tokenStart = position;
+		tokenEnd = endOfToken();
+		position = tokenEnd;
+	}
+
+	private String text(int start, int end) {
+		return new String(buffer, start, end - start, StandardCharsets.ISO_8859_1);
+	}
+
+	public float nextFloat() {
+		nextToken();
+		int start = tokenStart;
+		int end = tokenEnd;
+		if(parseDecimal(start, end)) {
+			if(mantissa == 0)
+				return negative ? -0f : 0f;
+			if(mantissa <= EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+				double value = exponent >= 0 ? mantissa * POWERS[exponent] : mantissa / POWERS[-exponent];
+				// Rounding the double to a float gives the float nearest the decimal, unless the double sits exactly
+				// halfway between two floats, where the decimal itself may have been just above or below
+				long bits = Double.doubleToRawLongBits(value);
+				if(value >= Float.MIN_NORMAL && value < Float.MAX_VALUE && (bits & 0x1FFFFFFFL) != 0x10000000L)
+					return negative ? -(float)value : (float)value;
+			}
+		}
+		return Float.parseFloat(text(start, end));
+	}
+
+	public double nextDouble() {
+		nextToken();
+		int start = tokenStart;
+		int end = tokenEnd;
+		if(parseDecimal(start, end)) {
+			if(mantissa == 0)
+				return negative ? -0d : 0d;
+			if(mantissa <= EXACT_MANTISSA && exponent >= -22 && exponent <= 22) {
+				double value = exponent >= 0 ? mantissa * POWERS[exponent] : mantissa / POWERS[-exponent];
+				return negative ? -value : value;
+			}
+		}
+		return Double.parseDouble(text(start, end));
+	}
+
+	public int nextInt() {
+		nextToken();
+		int start = tokenStart;
+		int end = tokenEnd;
+		int i = start;
+		boolean minus = i < end && buffer[i] == '-';
+		if(i < end && (buffer[i] == '-' || buffer[i] == '+'))
+			i++;
+		if(end - i > 0 && end - i <= 9) {
+			int value = 0;
+			for(; i<end; i++) {
+				int digit = buffer[i] - '0';
+				if(digit < 0 || digit > 9)
+					break;
+				value = value * 10 + digit;
+			}
+			if(i == end)
+				return minus ? -value : value;
+		}
+		return Integer.parseInt(text(start, end));
+	}
+
+	/**
+	 * Reads [sign] digits [. digits] [e|E [sign] digits] into mantissa, exponent and negative.
+	 * False for anything else, or for more significant digits than a long holds.
+	 */
+	private boolean parseDecimal(int start, int end) {
+		int i = start;
+		negative = false;
+		if(i < end && (buffer[i] == '-' || buffer[i] == '+'))
+			negative = buffer[i++] == '-';
+		long value = 0;
+		int digits = 0; // Significant digits, leading zeros don't count
+		int scale = 0;
+		boolean any = false;
+		boolean point = false;
+		for(; i<end; i++) {
+			byte b = buffer[i];
+			if(b >= '0' && b <= '9') {
+				any = true;
+				if(value == 0 && b == '0') {
+					if(point)
+						scale--;
+					continue;
+				}
+				if(++digits > MAX_DIGITS)
+					return false;
+				value = value * 10 + (b - '0');
+				if(point)
+					scale--;
+			} else if(b == '.' && !point)
+				point = true;
+			else
+				break;
+		}
+		if(!any)
+			return false;
+		if(i < end) {
+			if(buffer[i] != 'e' && buffer[i] != 'E')
+				return false;
+			i++;
+			boolean minus = false;
+			if(i < end && (buffer[i] == '-' || buffer[i] == '+'))
+				minus = buffer[i++] == '-';
+			if(i == end || end - i > 4)
+				return false;
+			int power = 0;
+			for(; i<end; i++) {
+				int digit = buffer[i] - '0';
+				if(digit < 0 || digit > 9)
+					return false;
+				power = power * 10 + digit;
+			}
+			scale += minus ? -power : power;
+		}
+		mantissa = value;
+		exponent = scale;
+		return true;
+	}
+}
@@ -8,6 +8,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JCheckBox;
 
@@ -46,7 +48,7 @@ public class ParseRawFiles {
 
 	private float[] porosity;
 
-	private Map<String, Map<String, float[][]>> dataMap; // scenario <parameter, float[time][nodes]>
+	private Map<String, Map<String, float[][]>> dataMap; // scenario <parameter, float[time][nodes]>, only without a BlockSink
 
 	private Map<String, Map<String, float[]>> statistics; // scenario, parameter, float[min, avg, max]
 
@@ -63,6 +65,16 @@ public class ParseRawFiles {
 	// Only used by Tecplot
 	private int elements;
 	
+	/**
+	 * Takes each block of values (one parameter at one time, in ijk order) as soon as it has been read, so the converter
+	 * can write it out and a scenario never has to be held in memory. Without one, blocks are kept for getData.
+	 * It also hears about every read from the input files, and can stop a reader there or at a block by throwing
+	 * a CancellationException, which passes out of the extract methods as it is.
+	 */
+	public interface BlockSink extends NumberScanner.Listener {
+		public void write(String scenario, String parameter, int timeIndex, float[] values) throws Exception;
+	}
+	
 	// Initialize variables
 	public ParseRawFiles() {
 		scenarios = new ArrayList<String>();
@@ -82,8 +94,8 @@ public class ParseRawFiles {
 		vertexY = new ArrayList<Float>();
 		vertexZ = new ArrayList<Float>();
 		positive = "";
-		dataMap = new HashMap<String, Map<String, float[][]>>();
-		statistics = new HashMap<String, Map<String, float[]>>();
+		dataMap = new ConcurrentHashMap<String, Map<String, float[][]>>(); // Each scenario is read on its own thread
+		statistics = new ConcurrentHashMap<String, Map<String, float[]>>();
 		units = new HashMap<String, String>();
 		indexMap = new ArrayList<String>();
 	}
@@ -231,6 +243,11 @@ public class ParseRawFiles {
 
 	// Extracting data, statistics, and porosity from a list of STOMP directories
 	public void extractStompData(File directory) {
+		extractStompData(directory, null);
+	}
+
+	// Blocks go to the sink as each is read
+	public void extractStompData(File directory, BlockSink sink) {
 		String scenario = directory.getName();
 		dataMap.put(scenario, new HashMap<String, float[][]>()); // Initialize dataMap for this scenario
 		statistics.put(scenario, new HashMap<String, float[]>()); // Initialize statistics for this scenario
@@ -239,18 +256,20 @@ public class ParseRawFiles {
 		for (File dataFile : directory.listFiles()) {
 			System.out.print("    Reading " + scenario + "/" + dataFile.getName() + "...");
 			long startTime = System.currentTimeMillis();
-			String line;
+			long bytes = 0;
 			String parameter = "";
+			boolean reading = false; // The values are for a selected parameter or porosity
 			Integer timeIndex = 0;
 			float[] tempData = new float[nodes];
 			float[] tempStats = new float[3];
 			int countNodes = 0;
 			boolean blankLine = false;
 			boolean header = true;
-			try (BufferedReader br = new BufferedReader(new FileReader(dataFile))) {
-				while ((line = br.readLine()) != null) { // We are reading the entire file
+			try (NumberScanner scanner = new NumberScanner(dataFile, sink)) {
+				while (scanner.nextLine()) { // We are reading the entire file
 					// Need to skip files that aren't selected times
-					if (line.contains("Time =") & line.contains(",yr")) {
+					if (scanner.contains("Time =") & scanner.contains(",yr")) {
+						String line = scanner.getLine();
 						String year = line.substring(line.indexOf(",wk") + 3, line.indexOf(",yr")).trim();
 						float time = Math.round(Float.parseFloat(year) * 1000f) / 1000f; // This rounds to 3 decimal
 																							// places
@@ -263,21 +282,20 @@ public class ParseRawFiles {
 					}
 					// We are assuming this is always the last line of the header, good until proven
 					// otherwise
-					else if (line.contains("Number of Vertices"))
+					else if (scanner.contains("Number of Vertices"))
 						header = false;
 					// These are the criteria to isolate the parameter text above blocks
 					else if (!header && blankLine) {
+						String line = scanner.getLine();
 						// STOMP orders values differently and needs to be reordered into ijk
 						tempData = reorderStomp(tempData);
 						// Save the stored values for the selected parameter
 						if (selectedParameters.contains(parameter) && countNodes > 0) { // Make sure we actually have
 																						// data for a selected parameter
-							if (!dataMap.get(scenario).containsKey(parameter)) { // If data doesn't yet exist for the
+							if (!statistics.get(scenario).containsKey(parameter)) // If data doesn't yet exist for the
 																					// parameter
-								dataMap.get(scenario).put(parameter, new float[selectedTimes.size()][nodes]);
 								statistics.get(scenario).put(parameter, new float[3]);
-							}
-							dataMap.get(scenario).get(parameter)[timeIndex] = tempData;
+							storeBlock(scenario, parameter, timeIndex, tempData, sink);
 							if (tempStats[0] < statistics.get(scenario).get(parameter)[0])
 								statistics.get(scenario).get(parameter)[0] = tempStats[0]; // Min
 							statistics.get(scenario).get(parameter)[1] += tempStats[1] / selectedTimes.size(); // Avg
@@ -298,15 +316,12 @@ public class ParseRawFiles {
 						parameter = parameter.substring(commonStartCount, parameter.length() - commonEndCount);
 						if (parameter.toLowerCase().contains("porosity"))
 							parameter = "porosity"; // Override if porosity
+						reading = selectedParameters.contains(parameter) || parameter.equals("porosity");
 						// These are the criteria to isolate the data
-					} else if (!header && !line.equals("")
-							&& (selectedParameters.contains(parameter) || parameter.equals("porosity"))) {
-						String[] tokens = line.trim().split("\\s+"); // Split the line by any number of spaces between
-																		// values
-						for (String token : tokens) { // Loop through the tokens
-							Float value = null;
+					} else if (!header && !scanner.isEmpty() && reading) {
+						while (scanner.hasNext()) { // Loop through the values, separated by any number of spaces
 							try {
-								value = Float.parseFloat(token); // Parse value into float
+								float value = scanner.nextFloat(); // Parse value into float
 								tempData[countNodes] = value; // Save the value
 								if (value < tempStats[0])
 									tempStats[0] = value; // Min
@@ -315,22 +330,19 @@ public class ParseRawFiles {
 									tempStats[2] = value; // Max
 								countNodes++;
 							} catch (Exception e) {
-								System.out.println("Error parsing the " + parameter + " value: " + token);
+								System.out.println("Error parsing the " + parameter + " value: " + scanner.getToken());
 							}
 						}
 					}
-					if (line.isEmpty())
-						blankLine = true;
-					else
-						blankLine = false;
+					blankLine = scanner.isEmpty();
 				}
+				bytes = scanner.getBytesRead();
 			} catch (IOException e) {
 				System.out.println(" error reading the file");
 				e.printStackTrace();
 			}
-			long endTime = (System.currentTimeMillis() - startTime) / 1000;
 			if (!parameter.equals(""))
-				System.out.println(" took " + Constants.formatSeconds(endTime));
+				System.out.println(" " + took(startTime, bytes));
 		}
 	}
 
@@ -419,8 +431,23 @@ public class ParseRawFiles {
 
 	// Extracting data, statistics, and porosity from a list of NUFT files
 	public void extractNuftData(File directory, String scenarioThread) {
+		extractNuftData(directory, scenarioThread, null);
+	}
+
+	// A NUFT file has every time of one parameter, so one parameter is held until its file has been read
+	public void extractNuftData(File directory, String scenarioThread, BlockSink sink) {
 		FileFilter fileFilter = new WildcardFileFilter("*.ntab"); // Ignore any files in the directory that aren't NUFT
 																	// files
+		// Look up the columns once: i, j and k, where the times start, and each time's selected index (-1 if not selected)
+		int iColumn = indexMap.indexOf("i");
+		int jColumn = indexMap.indexOf("j");
+		int kColumn = indexMap.indexOf("k");
+		int dataColumn = indexMap.indexOf("data");
+		int[] timeIndices = new int[times.size()];
+		for (int t = 0; t < timeIndices.length; t++)
+			timeIndices[t] = selectedTimes.indexOf(times.get(t));
+		int ySize = y.size();
+		int zSize = z.size();
 		for (File subFile : directory.listFiles(fileFilter)) {
 			String scenario = "Scenario" + subFile.getName().split("\\.")[0].replaceAll("\\D+", "");
 			if (!scenarioThread.equals(scenario))
@@ -434,44 +461,57 @@ public class ParseRawFiles {
 			if (!selectedParameters.contains(parameter))
 				continue; // Skip parameters that weren't selected
 			long startTime = System.currentTimeMillis();
+			long bytes = 0;
 			float[][] tempData = new float[selectedTimes.size()][nodes];
 			float[] tempStats = new float[3];
-			String line;
-			try (BufferedReader br = new BufferedReader(new FileReader(subFile))) {
-				while ((line = br.readLine()) != null) { // Read each line
+			try (NumberScanner scanner = new NumberScanner(subFile, sink)) {
+				while (scanner.nextLine()) { // Read each line
 					// index i j k element_ref nuft_ind x y z dx dy dz volume [times]
-					String[] tokens = line.split("\\s+"); // The line is space delimited
-					if (!tokens[0].equalsIgnoreCase("index")) { // Ignore the header
-						int i = Integer.parseInt(tokens[indexMap.indexOf("i")]) - 1;
-						int j = Integer.parseInt(tokens[indexMap.indexOf("j")]) - 1;
-						int k = Integer.parseInt(tokens[indexMap.indexOf("k")]) - 1;
-						int index = i * y.size() * z.size() + j * z.size() + k;
-						// int index = Integer.parseInt(tokens[indexMap.indexOf("index")]) - 1;
-						for (int ii = indexMap.indexOf("data"); ii < tokens.length; ii++) { // Only read data
-							float time = times.get(ii - indexMap.indexOf("data"));
-							if (!selectedTimes.contains(time))
-								continue; // Skip times that weren't selected
-							float value = Float.parseFloat(tokens[ii]);
-							tempData[selectedTimes.indexOf(time)][index] = value;
-							if (value < tempStats[0])
-								tempStats[0] = value; // Min
-							tempStats[1] += value / nodes / selectedTimes.size(); // Avg
-							if (value > tempStats[2])
-								tempStats[2] = value; // Max
+					// The line is space delimited, a leading space counts as an empty first column
+					int column = scanner.startsWithSpace() ? 1 : 0;
+					if (column == 0 && scanner.nextEqualsIgnoreCase("index"))
+						continue; // Ignore the header
+					int i = 0, j = 0, k = 0;
+					for (; column < dataColumn; column++) {
+						if (column == iColumn)
+							i = scanner.nextInt() - 1;
+						else if (column == jColumn)
+							j = scanner.nextInt() - 1;
+						else if (column == kColumn)
+							k = scanner.nextInt() - 1;
+						else
+							scanner.skip();
+					}
+					int index = i * ySize * zSize + j * zSize + k;
+					for (int t = 0; scanner.hasNext(); t++) { // Only read data
+						int timeIndex = t < timeIndices.length ? timeIndices[t] : -1;
+						if (timeIndex == -1) {
+							scanner.skip();
+							continue; // Skip times that weren't selected
 						}
+						float value = scanner.nextFloat();
+						tempData[timeIndex][index] = value;
+						if (value < tempStats[0])
+							tempStats[0] = value; // Min
+						tempStats[1] += value / nodes / selectedTimes.size(); // Avg
+						if (value > tempStats[2])
+							tempStats[2] = value; // Max
 					}
 				}
+				bytes = scanner.getBytesRead();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 			if (parameter.toLowerCase().contains("porosity")) {
 				porosity = tempData[0];
 			} else {
-				dataMap.get(scenario).put(parameter, tempData);
 				statistics.get(scenario).put(parameter, tempStats);
+				for (int time = 0; time < tempData.length; time++) {
+					storeBlock(scenario, parameter, time, tempData[time], sink);
+					tempData[time] = null; // Written, let it go
+				}
 			}
-			long endTime = (System.currentTimeMillis() - startTime) / 1000;
-			System.out.println("    Reading " + subFile.getName() + "... took " + Constants.formatSeconds(endTime));
+			System.out.println("    Reading " + subFile.getName() + "... " + took(startTime, bytes));
 		}
 	}
 
@@ -598,26 +638,32 @@ public class ParseRawFiles {
 	}
 	
 	/**
-	 * Returns the nearest key entered from the list of keys we have.
+	 * Returns the index of the nearest key entered from the list of keys we have.
 	 * 
 	 * @param theValue
-	 * @param keyList
-	 * @return the nearest key in the interval.
+	 * @param theXYZVal
+	 * @return the index of the nearest key in the interval, the first if two are as near.
 	 */
-	private float getKeyInInterval(final double theValue, final ArrayList<Float> theXYZVal) {
+	private static int getIndexInInterval(final double theValue, final float[] theXYZVal) {
 		float minDiff = Float.MAX_VALUE;
-		float nearest = 0;
-		float diff = 0;
-		for (double key : theXYZVal) {
-			diff = (float) Math.abs(theValue - key);
+		int nearest = -1;
+		for (int i = 0; i < theXYZVal.length; i++) {
+			float diff = (float) Math.abs(theValue - theXYZVal[i]);
 			if (diff < minDiff) {
-				nearest = (float) key;
+				nearest = i;
 				minDiff = diff;
 			}
 		}
 		return nearest;
 	}
 
+	private static float[] toArray(ArrayList<Float> values) {
+		float[] array = new float[values.size()];
+		for (int i = 0; i < array.length; i++)
+			array[i] = values.get(i);
+		return array;
+	}
+
 	private double calculateInterval(final double max, final double min, final double interval) {
 		return (max + (Math.abs(min))) / interval;
 	}
@@ -625,21 +671,37 @@ public class ParseRawFiles {
 	// Extracting data, statistics, and porosity from a list of TOUGH directories
 	//TODO: Might have to assign the 0's as a value when calculating wet bulk density.
 	public void extractToughData(File directory) {
-		Map<String, Map<String, float[][]>> counterMap = new HashMap<String, Map<String,float[][]>>();
+		extractToughData(directory, null);
+	}
+
+	// Each file is one time, its blocks go to the sink once the file has been read and averaged
+	public void extractToughData(File directory, BlockSink sink) {
 		FileFilter fileFilter = new WildcardFileFilter("*.OUT"); // Ignore any files in the directory that aren't TOUGH
 																	// files
 		String scenario = directory.getName();
 		if (!selectedScenarios.contains(scenario))
 			return; // Make sure this is a selected scenario
 		porosity = new float[nodes];
-		counterMap.put(scenario, new HashMap<String, float[][]>());
 		dataMap.put(scenario, new HashMap<String, float[][]>()); // Initialize dataMap for this scenario
 		statistics.put(scenario, new HashMap<String, float[]>()); // Initialize statistics for this scenario
-		for (String parameter : selectedParameters) {
-			counterMap.get(scenario).put(parameter, new float[selectedTimes.size()][nodes]);
-			dataMap.get(scenario).put(parameter, new float[selectedTimes.size()][nodes]);
+		for (String parameter : selectedParameters)
 			statistics.get(scenario).put(parameter, new float[3]);
+		// Look up once: the grid, and each column's selected parameter (-1 if not selected) and its statistics
+		float[] xKeys = toArray(x);
+		float[] yKeys = toArray(y);
+		float[] zKeys = toArray(z);
+		int columns = indexMap.size();
+		int[] columnParameters = new int[columns];
+		float[][] columnStatistics = new float[columns][];
+		boolean[] porosityColumns = new boolean[columns];
+		for (int c = 3; c < columns; c++) {
+			columnParameters[c] = selectedParameters.indexOf(indexMap.get(c));
+			if (columnParameters[c] != -1)
+				columnStatistics[c] = statistics.get(scenario).get(indexMap.get(c));
+			porosityColumns[c] = indexMap.get(c).contains("porosity");
 		}
+		int ySize = y.size();
+		int zSize = z.size();
 		System.out.println("Reading variables: " + selectedParameters.toString());
 		// Loop through the list of files in each directory
 		for (File dataFile : directory.listFiles(fileFilter)) {
@@ -650,48 +712,45 @@ public class ParseRawFiles {
 				continue;
 			System.out.print("    Reading " + scenario + "/" + dataFile.getName() + "...");
 			long startTime = System.currentTimeMillis();
-			String line;
-			try (BufferedReader br = new BufferedReader(new FileReader(dataFile))) {
-				while ((line = br.readLine()) != null) { // We are reading the entire file
-					// index is pulled from the structure map earlier
-					String[] tokens = line.trim().split("\\s+"); // The line is space delimited
-					int i = x.indexOf((float) getKeyInInterval(Double.parseDouble(tokens[0]), x)); // Assuming i comes
-																									// first
-					int j = y.indexOf((float) getKeyInInterval(Double.parseDouble(tokens[1]), y)); // Assuming j comes
-																									// second
-					int k = z.indexOf((float) getKeyInInterval(Double.parseDouble(tokens[2]), z)); // Assuming k comes
-					int index = i * y.size() * z.size() + j * z.size() + k;
-					// i and k does not contain the parsed values.
-					for (String parameter : indexMap.subList(3, indexMap.size())) {
-						float value = Float.parseFloat(tokens[indexMap.indexOf(parameter)]);
-						if (dataMap.get(scenario).containsKey(parameter)) {
-							counterMap.get(scenario).get(parameter)[selectedTimes.indexOf(time)][index]++;
-							dataMap.get(scenario).get(parameter)[selectedTimes.indexOf(time)][index] += value; // [min,avg]
-							if (value < statistics.get(scenario).get(parameter)[0]) // Min
-								statistics.get(scenario).get(parameter)[0] = value;
-							else if (value > statistics.get(scenario).get(parameter)[2]) // Max
-								statistics.get(scenario).get(parameter)[2] = value;
-							statistics.get(scenario).get(parameter)[1] += value / nodes / selectedTimes.size(); // Avg
-						} else if (parameter.contains("porosity")) {
+			float[][] sums = new float[selectedParameters.size()][nodes]; // This time's values, averaged once read
+			float[][] counts = new float[selectedParameters.size()][nodes];
+			long bytes = 0;
+			try (NumberScanner scanner = new NumberScanner(dataFile, sink)) {
+				while (scanner.nextLine()) { // We are reading the entire file
+					// index is pulled from the structure map earlier, the line is space delimited
+					int i = getIndexInInterval(scanner.nextDouble(), xKeys); // Assuming i comes first
+					int j = getIndexInInterval(scanner.nextDouble(), yKeys); // Assuming j comes second
+					int k = getIndexInInterval(scanner.nextDouble(), zKeys); // Assuming k comes third
+					int index = i * ySize * zSize + j * zSize + k;
+					for (int c = 3; c < columns; c++) {
+						float value = scanner.nextFloat();
+						int p = columnParameters[c];
+						if (p != -1) {
+							float[] stats = columnStatistics[c];
+							counts[p][index]++;
+							sums[p][index] += value; // [min,avg]
+							if (value < stats[0]) // Min
+								stats[0] = value;
+							else if (value > stats[2]) // Max
+								stats[2] = value;
+							stats[1] += value / nodes / selectedTimes.size(); // Avg
+						} else if (porosityColumns[c]) {
 							porosity[index] = value;
 						}
 					}
 				}
+				bytes = scanner.getBytesRead();
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
-			long endTime = (System.currentTimeMillis() - startTime) / 1000;
-			System.out.println("    Reading " + dataFile.getName() + "... took " + Constants.formatSeconds(endTime));
-			for (String scen : counterMap.keySet()) {
-				for (String map: counterMap.get(scen).keySet()) {
-					for (int i = 0; i < counterMap.get(scen).get(map).length; i++) {
-						for (int j = 0; j < counterMap.get(scen).get(map)[i].length; j++) {
-							if (counterMap.get(scen).get(map)[i][j] != 0)
-								dataMap.get(scen).get(map)[i][j] /= counterMap.get(scen).get(map)[i][j];
-						}
-					}
+			System.out.println("    Reading " + dataFile.getName() + "... " + took(startTime, bytes));
+			for (int p = 0; p < sums.length; p++) {
+				for (int j = 0; j < nodes; j++) {
+					if (counts[p][j] != 0)
+						sums[p][j] /= counts[p][j];
 				}
-			}		
+				storeBlock(scenario, selectedParameters.get(p), selectedTimes.indexOf(time), sums[p], sink);
+			}
 		}
 	}
 
@@ -799,13 +858,28 @@ public class ParseRawFiles {
 	// TODO: Tecplot Data here...
 	// Extracting data, statistics, and porosity from a list of Tecplot files
 	public void extractTecplotData(File subFile) {
+		extractTecplotData(subFile, null);
+	}
+
+	// Blocks go to the sink as each is read
+	public void extractTecplotData(File subFile, BlockSink sink) {
 		String scenario = subFile.getName().split("\\.")[0];
 		dataMap.put(scenario, new HashMap<String, float[][]>()); // Initialize dataMap for this scenario
 		statistics.put(scenario, new HashMap<String, float[]>()); // Initialize statistics for this scenario
 		System.out.print("Reading " + subFile.getName() + "...");
 		long startTime = System.currentTimeMillis();
+		long bytes = 0;
+		// Look up once what each block is: a coordinate, a selected parameter or porosity
+		boolean[] coordinateBlocks = new boolean[indexMap.size()];
+		boolean[] selectedBlocks = new boolean[indexMap.size()];
+		boolean[] porosityBlocks = new boolean[indexMap.size()];
+		for (int i = 0; i < indexMap.size(); i++) {
+			String name = indexMap.get(i);
+			coordinateBlocks[i] = name.equals("x") || name.equals("y") || name.equals("z");
+			selectedBlocks[i] = selectedParameters.contains(name);
+			porosityBlocks[i] = name.toLowerCase().contains("porosity");
+		}
 		int index = 0;
-		String line;
 		String parameter = indexMap.get(index);
 		int timeIndex = 0;
 		float[] tempData = new float[elements];
@@ -814,12 +888,12 @@ public class ParseRawFiles {
 		int countElements = 0;
 		int countNodes = 0;
 		boolean skip = false;
-		try (BufferedReader br = new BufferedReader(new FileReader(subFile))) {
-			while ((line = br.readLine()) != null) {
+		try (NumberScanner scanner = new NumberScanner(subFile, sink)) {
+			while (scanner.nextLine()) {
 				// Get the time index from the header
-				if (line.contains("ZONE") && !nextHeader) {
+				if (scanner.contains("ZONE") && !nextHeader) {
 					nextHeader = false;// This lists the zone name, which includes the timestep
-					String[] tokens = line.split("\""); // Zone name is wrapped in quotes
+					String[] tokens = scanner.getLine().split("\""); // Zone name is wrapped in quotes
 					float time = Float.parseFloat(tokens[1].replaceAll("[^0-9.]", ""));
 					if (!selectedTimes.contains(time)) {
 						skip = true; // This means we don't want the timestep - skip it until we check at the next
@@ -831,20 +905,19 @@ public class ParseRawFiles {
 
 				}
 				// This is the data - we want all selected parameters and porosity
-				if (!line.contains("=") && !line.trim().isEmpty() && !skip && !nextHeader) {
-					String[] tokens = line.split("\\s+"); // Space delimited
+				if (!scanner.contains("=") && !scanner.isBlank() && !skip && !nextHeader) {
+					// Space delimited
 					// Count the numbers so we know when we finish the block - x, y, z based on node
 					// count
-					if (parameter.equals("x") || parameter.equals("y") || parameter.equals("z")) {
-						countNodes += tokens.length;
+					if (coordinateBlocks[index]) {
+						countNodes += scanner.skipRest();
 						// Read in data for all selected parameters and porosity, saving statistics as
 						// we go
 						// Any parameters that weren't selected are skipped, only the first porosity is
 						// stored (special handling)
-					} else if (selectedParameters.contains(parameter)
-							|| (parameter.toLowerCase().contains("porosity") && porosity == null)) {
-						for (String token : tokens) {
-							float value = Float.parseFloat(token);
+					} else if (selectedBlocks[index] || (porosityBlocks[index] && porosity == null)) {
+						while (scanner.hasNext()) {
+							float value = scanner.nextFloat();
 							tempData[countElements] = value;
 							if (value < tempStats[0])
 								tempStats[0] = value; // Min
@@ -856,21 +929,19 @@ public class ParseRawFiles {
 						// Count the numbers so we know when we finish the block - parameters based on
 						// elements count
 					} else { // Unselected parameters
-						countElements += tokens.length;
+						countElements += scanner.skipRest();
 					}
 					// When the counter is high enough, we have finished with the parameter and
 					// should save
 					if (countNodes >= nodes || countElements >= elements) {
 						// Tecplot orders values differently and needs to be reordered into ijk
 						tempData = reorderStomp(tempData);
-						if (selectedParameters.contains(parameter)) { // Make sure we are looking at a selected
-																		// parameter
-							if (!dataMap.get(scenario).containsKey(parameter)) { // If data doesn't yet exist for the
+						if (selectedBlocks[index]) { // Make sure we are looking at a selected
+														// parameter
+							if (!statistics.get(scenario).containsKey(parameter)) // If data doesn't yet exist for the
 																					// parameter
-								dataMap.get(scenario).put(parameter, new float[selectedTimes.size()][elements]);
 								statistics.get(scenario).put(parameter, new float[3]);
-							}
-							dataMap.get(scenario).get(parameter)[timeIndex] = tempData;
+							storeBlock(scenario, parameter, timeIndex, tempData, sink);
 							if (tempStats[0] < statistics.get(scenario).get(parameter)[0])
 								statistics.get(scenario).get(parameter)[0] = tempStats[0]; // Min
 							statistics.get(scenario).get(parameter)[1] += tempStats[1] / selectedTimes.size(); // Avg
@@ -878,9 +949,7 @@ public class ParseRawFiles {
 								statistics.get(scenario).get(parameter)[2] = tempStats[2]; // Max
 						}
 						// Save porosity values
-						else if (parameter.toLowerCase().contains("porosity") && porosity == null) { // Make sure we are
-																										// looking at
-																										// porosity
+						else if (porosityBlocks[index] && porosity == null) { // Make sure we are looking at porosity
 							porosity = tempData;
 						}
 						tempData = new float[elements]; // Reset these for the next parameter
@@ -890,7 +959,7 @@ public class ParseRawFiles {
 						System.out.print(parameter + " ");
 						if (index < indexMap.size() - 1)
 							index++;
-						else if (index == indexMap.size() - 1 && !line.toLowerCase().contains("zone")) {
+						else if (index == indexMap.size() - 1 && !scanner.containsIgnoreCase("zone")) {
 							nextHeader = true;
 						} else
 							index = 3; // Index of the first parameter that is not x, y, z
@@ -898,11 +967,34 @@ public class ParseRawFiles {
 					}
 				}
 			}
-			long endTime = (System.currentTimeMillis() - startTime) / 1000;
-			System.out.println(" took " + Constants.formatSeconds(endTime));
+			bytes = scanner.getBytesRead();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		System.out.println(" " + took(startTime, bytes));
+	}
+
+	// How long reading a file took and how fast, for the log
+	private static String took(long startTime, long bytes) {
+		long millis = Math.max(1, System.currentTimeMillis() - startTime);
+		return "took " + Constants.formatSeconds(millis / 1000) + String.format(" (%.1f MB/s)", bytes / 1048576.0 / millis * 1000);
+	}
+
+	// Hands a finished block to the sink, or keeps it for getData when there is none
+	private void storeBlock(String scenario, String parameter, int timeIndex, float[] values, BlockSink sink) {
+		if (sink == null) {
+			if (!dataMap.get(scenario).containsKey(parameter))
+				dataMap.get(scenario).put(parameter, new float[selectedTimes.size()][values.length]);
+			dataMap.get(scenario).get(parameter)[timeIndex] = values;
+			return;
+		}
+		try {
+			sink.write(scenario, parameter, timeIndex, values);
+		} catch (CancellationException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to write " + parameter + " at time index " + timeIndex + " for " + scenario, e);
+		}
 	}
 
 	private static ArrayList<Float> calculateEdges(ArrayList<Float> cellCenters) {
@@ -1049,17 +1141,23 @@ public class ParseRawFiles {
 	}
 
 	public float[][] getData(String scenario, String parameter) {
-		if (dataMap.get(scenario).containsKey(parameter))
+		if (dataMap.containsKey(scenario) && dataMap.get(scenario).containsKey(parameter))
 			return dataMap.get(scenario).get(parameter);
 		return null;
 	}
 
 	public float[] getStatistics(String scenario, String parameter) {
-		if (statistics.get(scenario).containsKey(parameter))
+		if (statistics.containsKey(scenario) && statistics.get(scenario).containsKey(parameter))
 			return statistics.get(scenario).get(parameter);
 		return null;
 	}
 
+	// Drops everything kept for the scenario once its file has been written
+	public void release(String scenario) {
+		dataMap.remove(scenario);
+		statistics.remove(scenario);
+	}
+
 	public String getUnit(String parameter) {
 		if (units.containsKey(parameter))
 			return units.get(parameter);
@@ -0,0 +1,69 @@
+package hdf5Tool;
+
+import ncsa.hdf.object.Dataset;
+import ncsa.hdf.object.Group;
+import ncsa.hdf.object.h5.H5File;
+
+/**
+ * The node-major copy of a parameter that the converter can write next to the plot groups, as timeseries/<parameter>
+ * shaped [nodes x times]. Nodes are in the same ijk order as the plot datasets. Chunks hold a run of nodes over a run of
+ * times, so HDF5Interface can scan a node block from the first time, stop reading once every node in it has triggered,
+ * and never read the later times. The plot groups are still written, the time series is only read when it is there.
+ */
+
+public class TimeSeries {
+
+	public static final String GROUP = "timeseries";
+
+	private static final int CHUNK_BYTES = 1 << 18; // Same size as H5Layout's tiles
+	private static final int CHUNK_TIMES = 16; // Times per chunk, a block that triggers early skips the rest
+	private static final int SLAB_VALUES = 1 << 22; // Values transposed at once, 16 MB
+
+	public static long[] getChunks(long nodes, long times) {
+		long width = Math.max(1, Math.min(times, CHUNK_TIMES));
+		long rows = Math.max(1, Math.min(nodes, CHUNK_BYTES / 4 / width));
+		return new long[]{rows, width};
+	}
+
+	/**
+	 * Writes the time series for one parameter by reading its plot datasets back a slab of i at a time, so only the
+	 * slab is held in memory. Slabs are whole tiles of a chunked plot dataset, so each tile is read once per time.
+	 * @param plots - The parameter's dataset at each time index, already written and initialized
+	 * @param dims3D - The grid dimensions, in ijk order
+	 */
+	public static Dataset write(H5File hdf5File, Group group, String parameter, Dataset[] plots, long[] dims3D, H5Layout layout) throws Exception {
+		int times = plots.length;
+		long plane = dims3D[1] * dims3D[2]; // Nodes at one i
+		long nodes = dims3D[0] * plane;
+		Dataset series = layout.createChunked(hdf5File, group, parameter, new long[]{nodes, times}, getChunks(nodes, times));
+		series.init();
+		long tile = layout.isChunked() ? H5Layout.getChunks(dims3D)[0] : 1;
+		long slab = Math.min(dims3D[0], tile * Math.max(1, SLAB_VALUES / times / plane / tile));
+		for(long first=0; first<dims3D[0]; first+=slab) {
+			int count = (int)Math.min(slab, dims3D[0] - first);
+			int rows = (int)(count * plane);
+			float[] values = new float[rows * times];
+			for(int t=0; t<times; t++) {
+				long[] start = plots[t].getStartDims();
+				long[] selected = plots[t].getSelectedDims();
+				start[0] = first;
+				start[1] = 0;
+				start[2] = 0;
+				selected[0] = count;
+				selected[1] = dims3D[1];
+				selected[2] = dims3D[2];
+				float[] read = (float[])plots[t].read();
+				for(int n=0; n<rows; n++)
+					values[n*times + t] = read[n];
+			}
+			long[] start = series.getStartDims();
+			long[] selected = series.getSelectedDims();
+			start[0] = first * plane;
+			start[1] = 0;
+			selected[0] = rows;
+			selected[1] = times;
+			series.write(values);
+		}
+		return series;
+	}
+}
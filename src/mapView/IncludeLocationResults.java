@@ -13,6 +13,7 @@ import javax.swing.JOptionPane;
 
 import org.apache.commons.io.FileUtils;
 
+import objects.DetectionMatrix;
 import utilities.Constants;
 import wizardPages.DREAMWizard.STORMData;
 
@@ -167,18 +168,17 @@ public class IncludeLocationResults {
 			// For each parameter the user has selected.
 			for (String parameter : myData.getSet().getSensorSettings().keySet()) {
 				String specificType = myData.getSet().getSensorSettings(parameter).specificType;
-				numberOfScenarios = myData.getSet().getDetectionMap().get(specificType).size();
+				DetectionMatrix detections = myData.getSet().getDetectionMatrix(specificType);
+				numberOfScenarios = detections.getScenarios().size();
 				counterForDetectingScenarios = 0;
 				// For each scenario the user has entered.\
 				sumTTDForScenario = 0;
-				for (String scenario : myData.getSet().getDetectionMap().get(specificType).keySet()) {
+				for (String scenario : detections.getScenarios()) {
 					firstValueNode = false;
 					for (int i = 0; i < wellNumberToNodes.get(z).size(); i++) {
-						if (myData.getSet().getDetectionMap().get(specificType).get(scenario)
-								.containsKey(wellNumberToNodes.get(z).get(i))) {
-							// Get the TTD
-							float ttd = myData.getSet().getDetectionMap().get(specificType).get(scenario)
-									.get((wellNumberToNodes.get(z).get(i)));
+						// Get the TTD
+						float ttd = detections.getTTD(scenario, wellNumberToNodes.get(z).get(i));
+						if (!Float.isNaN(ttd)) {
 							// Keep track of the number of detecting scenarios we have
 							if (!firstValueNode) {
 								firstValueNode = true;
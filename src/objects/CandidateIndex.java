@@ -0,0 +1,214 @@
+package objects;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Valid nodes for one sensor setting, laid out so the optimizer can pick a random unoccupied node without building a list.
+ * Nodes are kept sorted in an int array for membership tests, and again bucketed by (i,j) column so that once the well
+ * limit is reached only the columns of the existing wells need to be looked at.
+ * The index is immutable and shared by every configuration and chain. Occupancy comes from the configuration being mutated,
+ * which only holds a handful of sensors, so a random pick is drawn from the candidates and rejected if it is taken.
+ */
+
+public class CandidateIndex {
+
+	private static final int ATTEMPTS = 32; // Random draws before falling back to counting the free candidates
+
+	private final Set<Integer> source; // Valid nodes the index was built from, for noticing when they change
+	private final int sourceModifications;
+
+	private final int iMax;
+	private final int columns;
+	private final int[] nodes; // Sorted node numbers
+	private final int[] columnStart; // columnStart[c] to columnStart[c+1] holds the nodes in column c
+	private final int[] columnNodes;
+	private final int[] usedColumns; // Columns holding at least one node
+
+	public CandidateIndex(SensorSetting setting, NodeStructure nodeStructure) {
+		sourceModifications = setting.getNodeModifications();
+		source = setting.getValidNodes();
+		iMax = nodeStructure.getIJKDimensions().getI();
+		columns = iMax * nodeStructure.getIJKDimensions().getJ();
+
+		nodes = new int[source.size()];
+		int n = 0;
+		for(Integer node: source)
+			nodes[n++] = node;
+		Arrays.sort(nodes);
+
+		// Node numbers run i fastest, then j, then k, so (node-1) % columns is the column
+		columnStart = new int[columns+1];
+		for(int node: nodes)
+			columnStart[column(node)+1]++;
+		for(int c=0; c<columns; c++)
+			columnStart[c+1] += columnStart[c];
+		columnNodes = new int[nodes.length];
+		int[] fill = Arrays.copyOf(columnStart, columns);
+		for(int node: nodes)
+			columnNodes[fill[column(node)]++] = node;
+		int used = 0;
+		for(int c=0; c<columns; c++) {
+			if(columnStart[c+1] > columnStart[c]) used++;
+		}
+		usedColumns = new int[used];
+		used = 0;
+		for(int c=0; c<columns; c++) {
+			if(columnStart[c+1] > columnStart[c]) usedColumns[used++] = c;
+		}
+	}
+
+	// True while the setting still holds the nodes this index was built from
+	public boolean isCurrent(SensorSetting setting) {
+		return setting.getValidNodes() == source && setting.getNodeModifications() == sourceModifications;
+	}
+
+	public int size() {
+		return nodes.length;
+	}
+
+	public boolean contains(int node) {
+		return Arrays.binarySearch(nodes, node) >= 0;
+	}
+
+	private int column(int node) {
+		return (node-1) % columns;
+	}
+
+	private int column(Well well) {
+		return (well.getJ()-1) * iMax + (well.getI()-1);
+	}
+
+	// Columns are numbered from 0, i fastest, the same way for every index on a node structure
+	public int[] getColumns() {
+		return usedColumns;
+	}
+
+	public int getI(int column) {
+		return column % iMax + 1;
+	}
+
+	public int getJ(int column) {
+		return column / iMax + 1;
+	}
+
+	// Nodes in the column that are not in the occupied list (from ExtendedConfiguration.getSensorPositions)
+	public int countFree(int column, List<Integer> occupied) {
+		int free = columnStart[column+1] - columnStart[column];
+		for(int o=0; o<occupied.size(); o++) {
+			int node = occupied.get(o);
+			if(column(node) == column && contains(node))
+				free--;
+		}
+		return free;
+	}
+
+	/**
+	 * True if the node is in the index, not occupied by a sensor of this type, not the excluded node,
+	 * and (with the well constraint) inside one of the existing wells.
+	 */
+	public boolean isCandidate(int node, String type, ExtendedConfiguration configuration, boolean inWells, int exclude) {
+		if(node == exclude || !contains(node) || configuration.isOccupied(type, node))
+			return false;
+		if(!inWells)
+			return true;
+		int column = column(node);
+		List<Well> wells = configuration.getWells();
+		for(int w=0; w<wells.size(); w++) {
+			if(column(wells.get(w)) == column)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Picks a uniformly random candidate node, or returns -1 if there is none.
+	 * With inWells only nodes in the columns of the configuration's wells are considered.
+	 */
+	public int pickRandom(String type, ExtendedConfiguration configuration, boolean inWells, int exclude, Random random) {
+		List<Well> wells = configuration.getWells();
+		int total = inWells ? countInWells(wells) : nodes.length;
+		if(total == 0)
+			return -1;
+
+		for(int attempt=0; attempt<ATTEMPTS; attempt++) {
+			int node = inWells ? getInWells(wells, random.nextInt(total)) : nodes[random.nextInt(total)];
+			if(node != exclude && !configuration.isOccupied(type, node))
+				return node;
+		}
+
+		// Almost everything is taken, count what is left and pick one of those
+		int free = 0;
+		for(int c=0; c<total; c++) {
+			int node = inWells ? getInWells(wells, c) : nodes[c];
+			if(node != exclude && !configuration.isOccupied(type, node))
+				free++;
+		}
+		if(free == 0)
+			return -1;
+		int pick = random.nextInt(free);
+		for(int c=0; c<total; c++) {
+			int node = inWells ? getInWells(wells, c) : nodes[c];
+			if(node != exclude && !configuration.isOccupied(type, node) && pick-- == 0)
+				return node;
+		}
+		return -1;
+	}
+
+	// True if pickRandom would find a node, without drawing from the random stream
+	public boolean hasCandidate(String type, ExtendedConfiguration configuration, boolean inWells, int exclude) {
+		List<Well> wells = configuration.getWells();
+		int total = inWells ? countInWells(wells) : nodes.length;
+		for(int c=0; c<total; c++) {
+			int node = inWells ? getInWells(wells, c) : nodes[c];
+			if(node != exclude && !configuration.isOccupied(type, node))
+				return true; // Usually the first node, only a crowded index is scanned further
+		}
+		return false;
+	}
+
+	/**
+	 * Adds every candidate to the list, in node order unless limited to the wells.
+	 */
+	public void addCandidates(List<Integer> candidates, String type, ExtendedConfiguration configuration, boolean inWells) {
+		List<Integer> occupied = configuration.getSensorPositions(type);
+		if(inWells) {
+			List<Well> wells = configuration.getWells();
+			for(int w=0; w<wells.size(); w++) {
+				int column = column(wells.get(w));
+				for(int c=columnStart[column]; c<columnStart[column+1]; c++) {
+					if(!occupied.contains(columnNodes[c]))
+						candidates.add(columnNodes[c]);
+				}
+			}
+		} else {
+			for(int node: nodes) {
+				if(!occupied.contains(node))
+					candidates.add(node);
+			}
+		}
+	}
+
+	private int countInWells(List<Well> wells) {
+		int count = 0;
+		for(int w=0; w<wells.size(); w++) {
+			int column = column(wells.get(w));
+			count += columnStart[column+1] - columnStart[column];
+		}
+		return count;
+	}
+
+	// The position'th node across the columns of the wells
+	private int getInWells(List<Well> wells, int position) {
+		for(int w=0; w<wells.size(); w++) {
+			int column = column(wells.get(w));
+			int size = columnStart[column+1] - columnStart[column];
+			if(position < size)
+				return columnNodes[columnStart[column] + position];
+			position -= size;
+		}
+		return -1;
+	}
+}
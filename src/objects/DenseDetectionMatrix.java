@@ -0,0 +1,160 @@
+package objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Detection matrix backed by one primitive float row per scenario, indexed by node number - 1.
+ * Rows are only allocated once a scenario has a detection, so scenarios that never detect cost nothing.
+ * This is the format used while building the matrix; call compact() once it is complete.
+ */
+
+public class DenseDetectionMatrix implements DetectionMatrix {
+
+	// Below this fraction of detecting nodes the sparse format is smaller and just as fast to query
+	public static final float SPARSE_DENSITY = 0.01f;
+
+	private final int totalNodes;
+	private final List<String> scenarios;
+	private final Map<String, Integer> scenarioIndex;
+	private final List<float[]> rows; // null until the scenario has a detection
+	private final List<Integer> counts;
+
+	public DenseDetectionMatrix(int totalNodes) {
+		this.totalNodes = totalNodes;
+		scenarios = new ArrayList<String>();
+		scenarioIndex = new HashMap<String, Integer>();
+		rows = new ArrayList<float[]>();
+		counts = new ArrayList<Integer>();
+	}
+
+	public DenseDetectionMatrix(int totalNodes, List<String> scenarios) {
+		this(totalNodes);
+		for(String scenario: scenarios)
+			addScenario(scenario);
+	}
+
+	// Returns the index of the scenario, adding it if needed
+	public synchronized int addScenario(String scenario) {
+		Integer index = scenarioIndex.get(scenario);
+		if(index != null)
+			return index;
+		scenarios.add(scenario);
+		rows.add(null);
+		counts.add(0);
+		scenarioIndex.put(scenario, scenarios.size()-1);
+		return scenarios.size()-1;
+	}
+
+	@Override
+	public List<String> getScenarios() {
+		return scenarios;
+	}
+
+	@Override
+	public int getScenarioIndex(String scenario) {
+		Integer index = scenarioIndex.get(scenario);
+		return index == null ? -1 : index;
+	}
+
+	@Override
+	public int getTotalNodes() {
+		return totalNodes;
+	}
+
+	@Override
+	public float getTTD(int scenarioIndex, int nodeNumber) {
+		if(scenarioIndex < 0)
+			return Float.NaN;
+		float[] row = rows.get(scenarioIndex);
+		return row == null ? Float.NaN : row[nodeNumber-1];
+	}
+
+	@Override
+	public float getTTD(String scenario, int nodeNumber) {
+		return getTTD(getScenarioIndex(scenario), nodeNumber);
+	}
+
+	public void setTTD(String scenario, int nodeNumber, float ttd) {
+		setTTD(addScenario(scenario), nodeNumber, ttd);
+	}
+
+	public void setTTD(int scenarioIndex, int nodeNumber, float ttd) {
+		float[] row = getRow(scenarioIndex);
+		if(Float.isNaN(row[nodeNumber-1]) && !Float.isNaN(ttd))
+			counts.set(scenarioIndex, counts.get(scenarioIndex) + 1);
+		else if(!Float.isNaN(row[nodeNumber-1]) && Float.isNaN(ttd))
+			counts.set(scenarioIndex, counts.get(scenarioIndex) - 1);
+		row[nodeNumber-1] = ttd;
+	}
+
+	// Only keeps the earliest detection, which is what the H5 scan needs when it sees the same node at later times
+	public void setTTDIfEarlier(int scenarioIndex, int nodeNumber, float ttd) {
+		float current = getTTD(scenarioIndex, nodeNumber);
+		if(Float.isNaN(current) || current > ttd)
+			setTTD(scenarioIndex, nodeNumber, ttd);
+	}
+
+	// Replaces a whole scenario row at once, used by builders that keep their own primitive arrays
+	public synchronized void setRow(int scenarioIndex, float[] row) {
+		int count = 0;
+		for(float ttd: row)
+			if(!Float.isNaN(ttd)) count++;
+		rows.set(scenarioIndex, count == 0 ? null : row);
+		counts.set(scenarioIndex, count);
+	}
+
+	private synchronized float[] getRow(int scenarioIndex) {
+		float[] row = rows.get(scenarioIndex);
+		if(row == null) {
+			row = new float[totalNodes];
+			Arrays.fill(row, Float.NaN);
+			rows.set(scenarioIndex, row);
+		}
+		return row;
+	}
+
+	@Override
+	public int[] getDetectingNodes(String scenario) {
+		int index = getScenarioIndex(scenario);
+		if(index < 0 || rows.get(index) == null)
+			return new int[0];
+		float[] row = rows.get(index);
+		int[] nodes = new int[counts.get(index)];
+		int n = 0;
+		for(int i=0; i<row.length; i++) {
+			if(!Float.isNaN(row[i]))
+				nodes[n++] = i+1;
+		}
+		return nodes;
+	}
+
+	@Override
+	public int countDetections(String scenario) {
+		int index = getScenarioIndex(scenario);
+		return index < 0 ? 0 : counts.get(index);
+	}
+
+	public long countDetections() {
+		long total = 0;
+		for(int count: counts)
+			total += count;
+		return total;
+	}
+
+	/**
+	 * Returns the smallest representation of this matrix once it has been filled.
+	 * Detection clouds that cover less than SPARSE_DENSITY of the nodes are converted to compressed sparse rows.
+	 */
+	public DetectionMatrix compact() {
+		if(scenarios.isEmpty() || totalNodes == 0)
+			return this;
+		double density = (double)countDetections() / ((double)totalNodes * scenarios.size());
+		if(density < SPARSE_DENSITY)
+			return new SparseDetectionMatrix(this);
+		return this;
+	}
+}
@@ -0,0 +1,30 @@
+package objects;
+
+import java.util.List;
+
+/**
+ * Time to detection (TTD) for every scenario and node of a single specific type (parameter, trigger and threshold).
+ * All readers of the detection map should go through this interface so the storage can be dense or sparse.
+ * It is read-only, matrices are built with DenseDetectionMatrix and then compacted.
+ * Node numbers are 1-indexed (see HDF5Interface), and NaN is returned when a node does not detect in a scenario.
+ */
+
+public interface DetectionMatrix {
+
+	// Scenarios in the order of their index
+	public List<String> getScenarios();
+
+	// Returns -1 when the scenario is not stored in this matrix
+	public int getScenarioIndex(String scenario);
+
+	public int getTotalNodes();
+
+	public float getTTD(int scenarioIndex, int nodeNumber);
+
+	public float getTTD(String scenario, int nodeNumber);
+
+	// Detecting node numbers for a scenario, sorted smallest to largest
+	public int[] getDetectingNodes(String scenario);
+
+	public int countDetections(String scenario);
+}
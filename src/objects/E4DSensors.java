@@ -14,7 +14,6 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
 import java.util.TreeMap;
 
 import org.apache.commons.io.filefilter.WildcardFileFilter;
@@ -47,6 +46,10 @@ public class E4DSensors {
 		//// Then convert the nodes to wells and make sure we have enough based on user input
 		int iteration = 1;
 		String specificType = "";
+		SensorSetting setting = data.getSet().getSensorSettings(parameter);
+		if(!data.getSet().getSensorSettings().containsKey(parameter)) //Sensor Settings might be in the removed list...
+			setting = data.getSet().getRemovedSensorSettings(parameter);
+		setting.setTrigger(Trigger.RELATIVE_CHANGE);
 		while (wellList.size() < maximumWells) {
 			wellList.clear();
 			allNodes.clear();
@@ -54,18 +57,18 @@ public class E4DSensors {
 			// Loop through scenarios and add all nodes that trigger
 			monitor.subTask("Scanning for valid nodes with threshold = " + threshold);
 			specificType = parameter + "_rel_" + threshold;
-			if(!data.getSet().getSensorSettings().containsKey(parameter)) { //Sensor Settings might be in the removed list...
-				data.getSet().getRemovedSensorSettings(parameter).setTrigger(Trigger.RELATIVE_CHANGE);
-				data.getSet().getRemovedSensorSettings(parameter).setDetectionThreshold(threshold);
-				HDF5Interface.createDetectionMap(monitor, data.getSet(), data.getSet().getRemovedSensorSettings(parameter), specificType);
+			setting.setDetectionThreshold(threshold);
+			// The first scan records the per-node extremes, after that smaller thresholds are checked without reading the files
+			if(!HDF5Interface.changeExtremes.containsKey(parameter))
+				HDF5Interface.createDetectionMap(monitor, data.getSet(), setting, specificType);
+			if(HDF5Interface.changeExtremes.containsKey(parameter)) {
+				allNodes.addAll(HDF5Interface.changeExtremes.get(parameter).getTriggeringNodes(setting));
 			} else {
-				data.getSet().getSensorSettings(parameter).setTrigger(Trigger.RELATIVE_CHANGE);
-				data.getSet().getSensorSettings(parameter).setDetectionThreshold(threshold);
-				HDF5Interface.createDetectionMap(monitor, data.getSet(), data.getSet().getSensorSettings(parameter), specificType);
-			}
-			for(Map<Integer, Float> detections: data.getSet().getDetectionMap().get(specificType).values()) {
-				for(Integer node: detections.keySet())
-					allNodes.add(node);
+				DetectionMatrix detections = data.getSet().getDetectionMatrix(specificType);
+				for(String scenario: detections.getScenarios()) {
+					for(int node: detections.getDetectingNodes(scenario))
+						allNodes.add(node);
+				}
 			}
 			threshold = Math.round(threshold / Math.sqrt(10) * 100000f) / 100000f; //Rounds the value to the fifth decimal
 			monitor.worked(70000/iteration); //This loop will be 70% of the progress bar
@@ -98,11 +101,16 @@ public class E4DSensors {
 			ArrayList<Float> ttds = new ArrayList<Float>();
 			
 			// Find the average TTD for each node above (no detection has penalty)
+			// The extremes only tell us which nodes trigger, the times need a detection map for the final threshold
+			if(data.getSet().getDetectionMatrix(specificType) == null)
+				HDF5Interface.createDetectionMap(monitor, data.getSet(), setting, specificType);
+			DetectionMatrix detections = data.getSet().getDetectionMatrix(specificType);
 			for(Integer node: allNodes) {
 				float ttd = 0;
-				for(String scenario: data.getSet().getDetectionMap().get(specificType).keySet()) {
-					if(data.getSet().getDetectionMap().get(specificType).get(scenario).containsKey(node))
-						ttd += data.getSet().getDetectionMap().get(specificType).get(scenario).get(node);
+				for(String scenario: detections.getScenarios()) {
+					float detection = detections.getTTD(scenario, node);
+					if(!Float.isNaN(detection))
+						ttd += detection;
 					else
 						ttd += 1000000;
 				}
@@ -362,8 +370,7 @@ public class E4DSensors {
 		for(float threshold: ertPotentialWellPairings.keySet()) {
 			ertWellPairings.put(threshold, new HashMap<Integer, Integer>());
 			for(Integer primaryWell: ertPotentialWellPairings.get(threshold).keySet()) {
-				Random rand = new Random();
-				int n = rand.nextInt(ertPotentialWellPairings.get(threshold).get(primaryWell).size());
+				int n = Constants.random.nextInt(ertPotentialWellPairings.get(threshold).get(primaryWell).size());
 				ertWellPairings.get(threshold).put(primaryWell, ertPotentialWellPairings.get(threshold).get(primaryWell).get(n));
 			}
 		}
@@ -389,7 +396,7 @@ public class E4DSensors {
 				//If moved, randomly pick one of the potential well pairings to assign
 				if(moved) {
 					int nodeNumber = sensor.getNodeNumber();
-					int n = new Random().nextInt(ertPotentialWellPairings.get(threshold).get(nodeNumber).size());
+					int n = Constants.random.nextInt(ertPotentialWellPairings.get(threshold).get(nodeNumber).size());
 					int nodePairNumber = ertPotentialWellPairings.get(threshold).get(nodeNumber).get(n);
 					ertWellPairings.get(threshold).put(nodeNumber, ertPotentialWellPairings.get(threshold).get(nodeNumber).get(n));
 					sensor.setNodePair(nodePairNumber, nodeStructure);
@@ -27,8 +27,9 @@ public class ExtendedConfiguration extends Configuration {
 	// Cost of configuration
 	private float configCost = 0;
 	
-	// List of wells
+	// List of wells, derived from the sensors when wellsCurrent is false
 	private List<Well> wells;
+	private boolean wellsCurrent = true;
 
 	// Weighted with penalty for scenarios that do not detect
 	private Map<String, Float> objectiveValues;
@@ -59,66 +60,49 @@ public class ExtendedConfiguration extends Configuration {
 
 	public synchronized void matchConfiguration(ExtendedConfiguration toDuplicate) {
 
-		if(!toDuplicate.wells.isEmpty() && toDuplicate.wells.get(0) instanceof RealizedWell) {
+		List<Well> toDuplicateWells = toDuplicate.getWells();
+		if(!toDuplicateWells.isEmpty() && toDuplicateWells.get(0) instanceof RealizedWell) {
 			this.sensors.clear();
-			for(Well well: toDuplicate.wells) {
+			this.wells.clear();
+			wellsCurrent = true; // Realized wells carry their own sensors, they aren't rebuilt from them
+			for(Well well: toDuplicateWells) {
 				addRealizedWell((RealizedWell)well);
 			}
 		} else {
-			this.sensors.clear();
-			for(ExtendedSensor sensor: toDuplicate.getExtendedSensors()) {
-				this.addSensor(sensor.makeCopy());
-			}
-		}
-
-		timesToDetection.clear();
-		objectiveValues.clear();
-		inferenceResults.clear();
-
-		if(toDuplicate.getTimesToDetection() != null) {
-			for(String key: toDuplicate.getTimesToDetection().keySet()) {
-				addTimeToDetection(key, toDuplicate.getTimesToDetection().get(key));
-			}
-		}
-
-		if(toDuplicate.getTimesToDetection() != null) {
-			for(String key: toDuplicate.objectiveValues.keySet()) {
-				addObjectiveValue(key, toDuplicate.objectiveValues.get(key));
+			// Overwrite our sensors in place, only allocating when the other configuration has more of them
+			List<ExtendedSensor> toDuplicateSensors = toDuplicate.getExtendedSensors();
+			while(sensors.size() > toDuplicateSensors.size())
+				sensors.remove(sensors.size()-1);
+			for(int i=0; i<toDuplicateSensors.size(); i++) {
+				if(i < sensors.size() && sensors.get(i) instanceof ExtendedSensor)
+					((ExtendedSensor)sensors.get(i)).matchSensor(toDuplicateSensors.get(i));
+				else if(i < sensors.size())
+					sensors.set(i, toDuplicateSensors.get(i).makeCopy());
+				else
+					sensors.add(toDuplicateSensors.get(i).makeCopy());
 			}
+			wellsCurrent = false; // Rebuilt when they are next needed
 		}
 
-		if(toDuplicate.inferenceResults != null) {		
-			for(String key: toDuplicate.inferenceResults.keySet()) {
-				addInferenceResult(key, toDuplicate.inferenceResults.get(key));
-			}
+		// Mostly the same scenarios each time, overwriting the entries avoids reallocating them
+		matchMap(timesToDetection, toDuplicate.getTimesToDetection());
+		matchMap(objectiveValues, toDuplicate.getTimesToDetection() != null ? toDuplicate.objectiveValues : null);
+		matchMap(inferenceResults, toDuplicate.inferenceResults);
+	}
+	
+	private static <V> void matchMap(Map<String, V> map, Map<String, V> toDuplicate) {
+		if(toDuplicate == null || toDuplicate.isEmpty()) {
+			map.clear();
+			return;
 		}
+		map.keySet().retainAll(toDuplicate.keySet());
+		map.putAll(toDuplicate);
 	}
 
 
 	public synchronized ExtendedConfiguration makeCopy() {
-
 		ExtendedConfiguration copy = new ExtendedConfiguration(true);
-
-		// Copy sensors, this will add the wells
-		for(ExtendedSensor sensor: getExtendedSensors()) {
-			ExtendedSensor sensorCopy = sensor.makeCopy();
-			copy.addSensor(sensorCopy);
-		}
-		if(!wells.isEmpty() && wells.get(0) instanceof RealizedWell) {
-			for(Well well: wells) {
-				copy.addRealizedWell((RealizedWell)well);
-			}
-		} else {
-			for(ExtendedSensor sensor: getExtendedSensors()) {
-				ExtendedSensor sensorCopy = sensor.makeCopy();
-				copy.addSensor(sensorCopy);
-			}
-		}
-		
-		copy.timesToDetection = new HashMap<String, Float>(timesToDetection);
-		copy.objectiveValues = new HashMap<String, Float>(objectiveValues);
-		copy.inferenceResults = new HashMap<String, InferenceResult>(inferenceResults);
-		
+		copy.matchConfiguration(this);
 		return copy;		
 	}
 
@@ -127,6 +111,7 @@ public class ExtendedConfiguration extends Configuration {
 	public String toString() {
 		StringBuilder toString = new StringBuilder();
 		toString.append("Configuration: ");
+		List<Well> wells = getWells();
 		if(wells.isEmpty()) {
 			toString.append("Empty\n");
 			return toString.toString();
@@ -187,6 +172,8 @@ public class ExtendedConfiguration extends Configuration {
 	}
 
 	public List<Well> getWells() {
+		if(!wellsCurrent)
+			updateWells();
 		return wells;
 	}
 
@@ -259,6 +246,16 @@ public class ExtendedConfiguration extends Configuration {
 		}
 		return positions;
 	}
+	// Same as getSensorPositions(type).contains(node), without building the list
+	public synchronized boolean isOccupied(String type, int node) {
+		for(int s=0; s<sensors.size(); s++) {
+			Sensor sensor = sensors.get(s);
+			if(sensor.getNodeNumber() == node && sensor.getSensorType().equals(type))
+				return true;
+		}
+		return false;
+	}
+	
 	/*
 	 * Will return a list of sensor positions excluding the sensor passed in
 	 */
@@ -316,6 +313,10 @@ public class ExtendedConfiguration extends Configuration {
 	public Map<String, Float> getObjectiveValues() {
 		return objectiveValues;
 	}
+	
+	public Map<String, InferenceResult> getInferenceResultsByScenario() {
+		return inferenceResults;
+	}
 
 	public void setTimesToDetection(Map<String, Float> timesToDetection) {
 		this.timesToDetection = timesToDetection;
@@ -341,6 +342,11 @@ public class ExtendedConfiguration extends Configuration {
 
 	}
 	
+	// A sensor of this configuration moved, its wells are rebuilt when they are next needed
+	public synchronized void sensorMoved() {
+		wellsCurrent = false;
+	}
+	
 	public synchronized void removeSensor() {
 		int index = Constants.random.nextInt(sensors.size());
 		try {
@@ -358,6 +364,7 @@ public class ExtendedConfiguration extends Configuration {
 		}
 
 		wells.clear();
+		wellsCurrent = true;
 
 		for(Sensor sensor: sensors)  {
 			if(!(sensor instanceof ExtendedSensor))
@@ -482,6 +489,7 @@ public class ExtendedConfiguration extends Configuration {
 	
 	
 	public synchronized boolean mutateSensor(final ScenarioSet scenarioSet) {	
+	getWells(); // Sensors need their wells to decide how they can move
 	while (!pickRand.isEmpty()) {
 		int index = Constants.random.nextInt(pickRand.size());
 		int num = pickRand.get(index);
@@ -575,7 +583,7 @@ public class ExtendedConfiguration extends Configuration {
 	private Object addRealizedWell(final ScenarioSet scenarioSet) {
 
 		// Add well at add point
-		if(wells.size() < scenarioSet.getMaxWells()) {
+		if(getWells().size() < scenarioSet.getMaxWells()) {
 			RealizedWell well = new RealizedWell(scenarioSet.getAddPoint().getI(), scenarioSet.getAddPoint().getJ(), scenarioSet);
 			addRealizedWell(well);
 			return well;
@@ -586,7 +594,7 @@ public class ExtendedConfiguration extends Configuration {
 
 	private Object moveRealizedWellInBounds(final ScenarioSet set) {
 		List<Well> outOfBoundsWells = new ArrayList<Well>();
-		for(Well well: wells) {
+		for(Well well: getWells()) {
 			if(well instanceof RealizedWell) {
 				if(((RealizedWell)well).isOutOfBounds(set)) {
 					outOfBoundsWells.add(well);
@@ -597,7 +605,7 @@ public class ExtendedConfiguration extends Configuration {
 	}
 
 	private Object moveRealizedWell(final ScenarioSet scenarioSet) {
-		return moveRealizedWell(wells, scenarioSet); // Any well can move
+		return moveRealizedWell(getWells(), scenarioSet); // Any well can move
 	}
 	
 	private Object addSensor(final ScenarioSet scenarioSet) {
@@ -606,33 +614,33 @@ public class ExtendedConfiguration extends Configuration {
 
 		// We will try to add here first.
 		int addPoint = scenarioSet.getNodeStructure().getNodeNumberFromIJK(scenarioSet.getAddPoint());
-		Map<String, List<Integer>> affordableSensors = new HashMap<String, List<Integer>>();
-		List<String> types = new ArrayList<String>();
+		List<String> types = new ArrayList<String>(); // Types with an affordable node
 		boolean atAddPoint = false;
 		for(String type: scenarioSet.getDataTypes()) {
-			List<Integer> validNodes = scenarioSet.getValidNodes(type, this, true, true, true);
-			if(!validNodes.isEmpty()) {
-//				affordableSensors.put(type, scenarioSet.getValidNodes(type, this, true, true, true));
-				affordableSensors.put(type, validNodes);
+			if(scenarioSet.hasValidNode(type, this, true, true)) {
 				types.add(type);
-				if(validNodes.contains(addPoint)) {
+				if(!atAddPoint && scenarioSet.isValidNode(type, this, addPoint, true, true)) {
 					atAddPoint = true; // We can add a sensor at the add point
 				}
 			}
 		}
-		if(affordableSensors.isEmpty()) {
+		if(types.isEmpty()) {
 			// System.out.println("Could not add sensor, time taken: " + (System.currentTimeMillis()-startTime));
 			return null;
 		}
 
-		String type = types.get(Constants.random.nextInt(types.size()));
+		int index = Constants.random.nextInt(types.size());
+		String type = types.get(index);
 		if(atAddPoint) {
 			ExtendedSensor toAdd = new ExtendedSensor(addPoint, type, scenarioSet.getNodeStructure());
 			addSensor(toAdd);
 			return toAdd;
 		} else {
-			int index = Constants.random.nextInt(affordableSensors.get(type).size());
-			ExtendedSensor toAdd = new ExtendedSensor(affordableSensors.get(type).get(index), type, scenarioSet.getNodeStructure());
+			// Only the chosen type draws a node
+			int node = scenarioSet.getRandomValidNode(type, this, true, true, -1);
+			if(node == -1)
+				return null;
+			ExtendedSensor toAdd = new ExtendedSensor(node, type, scenarioSet.getNodeStructure());
 			addSensor(toAdd);
 			return toAdd;
 		}
@@ -663,7 +671,7 @@ public class ExtendedConfiguration extends Configuration {
 	}*/
 	
 	private Object moveWell(final ScenarioSet scenarioSet) {
-		if(wells.size() == 0)
+		if(getWells().size() == 0)
 			return null; // No wells to move
 		// Otherwise randomize and try to move the well
 		List<Well> wells = getWells();
@@ -678,7 +686,7 @@ public class ExtendedConfiguration extends Configuration {
 	}
 
 	private Object shuffleWell(final ScenarioSet scenarioSet) {
-		if(wells.size() == 0)
+		if(getWells().size() == 0)
 			return null; // No wells to move
 
 		// Otherwise randomize and try to move the well
@@ -743,6 +751,7 @@ public class ExtendedConfiguration extends Configuration {
 	}
 
 	private void addRealizedWell(final RealizedWell realizedWell) {
+		List<Well> wells = getWells(); // Before the sensors are added, so they aren't made into wells of their own
 		for(ExtendedSensor sensor: realizedWell.getSensors()) {
 			sensors.add(sensor);
 		}
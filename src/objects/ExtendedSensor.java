@@ -69,6 +69,29 @@ public class ExtendedSensor extends Sensor {
 	public ExtendedSensor makeCopy() {
 		return new ExtendedSensor(this);
 	}
+	
+	/**
+	 * Turns this sensor into a copy of the given one without allocating, for copying configurations in place.
+	 * The location points are shared, they are never modified after a sensor is placed.
+	 */
+	public void matchSensor(ExtendedSensor toCopy) {
+		nodeNumber = toCopy.nodeNumber;
+		node = toCopy.node;
+		point = toCopy.point;
+		type = toCopy.type;
+		
+		synchronized(toCopy.scenariosUsed) {
+			scenariosUsed.clear();
+			scenariosUsed.putAll(toCopy.scenariosUsed);
+		}
+		if(history != null && !history.isEmpty())
+			history.clear();
+		
+		triggering = toCopy.isTriggering();
+		well = null;
+		pairNodeNumber = toCopy.getNodePairNumber();
+		pairXYZ = toCopy.getPairXYZ();
+	}
     
     @Override
     public String toString() {    	
@@ -166,18 +189,14 @@ public class ExtendedSensor extends Sensor {
 		Collections.shuffle(validTypes, Constants.random);
 		
 		for(String type : validTypes){
-			// Get all the nodes we can afford to move to that are in the cloud and unoccupied
-			List<Integer> validMoves = set.getValidNodes(type, configuration, false, false, !isWell());
-			
-			// Remove our current location
-			if(validMoves.contains(getNodeNumber()))
-				validMoves.remove(getNodeNumber());
+			// Pick a node we can afford to move to that is in the cloud, unoccupied, and not our current location
+			int validMove = set.getRandomValidNode(type, configuration, false, !isWell(), getNodeNumber());
 			
 			// If there's somewhere to put a sensor of this type, do it.
-			if(!validMoves.isEmpty()){
+			if(validMove != -1){
 				//System.out.println("changing a sensor of type " + getSensorType() + " to " + type);
 				this.type = type;
-				move(validMoves.get(Constants.random.nextInt(validMoves.size())), set.getNodeStructure());
+				move(validMove, set.getNodeStructure());
 				return true;
 			}
 		}
@@ -190,16 +209,11 @@ public class ExtendedSensor extends Sensor {
 
 		ExtendedSensor sensor = sensors.get(0);
 		
-		// Get all the nodes we can afford to move to that are in the cloud and unoccupied
-		List<Integer> validMoves = set.getValidNodes("allSensors", configuration, false, false, false);
-		
-		// Remove our current location
-		if(validMoves.contains(sensor.getNodeNumber()))
-			validMoves.remove(sensor.getNodeNumber());
+		// Pick a node we can afford to move to that is in the cloud, unoccupied, and not our current location
+		int newSpot = set.getRandomValidNode("allSensors", configuration, false, false, sensor.getNodeNumber());
 		
 		// If there's somewhere to put a sensor of this type, do it.
-		if(!validMoves.isEmpty()){
-			Integer newSpot = validMoves.get(Constants.random.nextInt(validMoves.size()));
+		if(newSpot != -1){
 			for(ExtendedSensor extSensor: sensors){
 				extSensor.moveTo(newSpot, set.getNodeStructure());
 			}
@@ -218,17 +232,10 @@ public class ExtendedSensor extends Sensor {
 	 */
 	public boolean move(List<Integer> spots, ExtendedConfiguration configuration, ScenarioSet set) {
 		
-		// Get all the nodes we can afford to move to that are in the cloud and unoccupied
-		List<Integer> validNodes = set.getValidNodes(getSensorType(), configuration, false, false, !isWell());
-
-		// Remove our current location
-		if(validNodes.contains(getNodeNumber()))
-			validNodes.remove(getNodeNumber());
-				
-		// Go through the list of spots, see if any are unoccupied and in the cloud
+		// Go through the list of spots, see if any are unoccupied and in the cloud (other than our current location)
 		List<Integer> validMoves = new ArrayList<Integer>();
 		for(Integer spot: spots) {
-			if(validNodes.contains(spot)) {
+			if(!spot.equals(getNodeNumber()) && set.isValidNode(getSensorType(), configuration, spot, false, !isWell())) {
 				validMoves.add(spot);
 			}
 		}
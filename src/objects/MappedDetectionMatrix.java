@@ -0,0 +1,108 @@
+package objects;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only detection matrix backed by memory-mapped rows of a cache file (see hdf5Tool.DetectionMapCache).
+ * Each scenario row is either sparse (sorted node numbers followed by their TTDs) or dense (one TTD per node, NaN for none),
+ * so values are paged in from disk as they are read instead of being loaded up front.
+ */
+
+public class MappedDetectionMatrix implements DetectionMatrix {
+
+	public static final byte EMPTY = 0;
+	public static final byte SPARSE = 1;
+	public static final byte DENSE = 2;
+
+	private final int totalNodes;
+	private final List<String> scenarios;
+	private final Map<String, Integer> scenarioIndex;
+	private final ByteBuffer[] rows; // null for scenarios without detections
+	private final byte[] layouts;
+	private final int[] counts;
+
+	public MappedDetectionMatrix(int totalNodes, List<String> scenarios, ByteBuffer[] rows, byte[] layouts, int[] counts) {
+		this.totalNodes = totalNodes;
+		this.scenarios = new ArrayList<String>(scenarios);
+		this.rows = rows;
+		this.layouts = layouts;
+		this.counts = counts;
+		scenarioIndex = new HashMap<String, Integer>();
+		for(int s=0; s<scenarios.size(); s++)
+			scenarioIndex.put(scenarios.get(s), s);
+	}
+
+	@Override
+	public List<String> getScenarios() {
+		return scenarios;
+	}
+
+	@Override
+	public int getScenarioIndex(String scenario) {
+		Integer index = scenarioIndex.get(scenario);
+		return index == null ? -1 : index;
+	}
+
+	@Override
+	public int getTotalNodes() {
+		return totalNodes;
+	}
+
+	@Override
+	public float getTTD(int scenarioIndex, int nodeNumber) {
+		if(scenarioIndex < 0 || layouts[scenarioIndex] == EMPTY)
+			return Float.NaN;
+		ByteBuffer row = rows[scenarioIndex];
+		if(layouts[scenarioIndex] == DENSE)
+			return row.getFloat((nodeNumber-1)*4);
+		// Binary search the sorted node numbers, absolute gets are safe to share between threads
+		int low = 0;
+		int high = counts[scenarioIndex]-1;
+		while(low <= high) {
+			int middle = (low + high) >>> 1;
+			int node = row.getInt(middle*4);
+			if(node < nodeNumber)
+				low = middle+1;
+			else if(node > nodeNumber)
+				high = middle-1;
+			else
+				return row.getFloat((counts[scenarioIndex] + middle)*4);
+		}
+		return Float.NaN;
+	}
+
+	@Override
+	public float getTTD(String scenario, int nodeNumber) {
+		return getTTD(getScenarioIndex(scenario), nodeNumber);
+	}
+
+	@Override
+	public int[] getDetectingNodes(String scenario) {
+		int index = getScenarioIndex(scenario);
+		if(index < 0 || layouts[index] == EMPTY)
+			return new int[0];
+		ByteBuffer row = rows[index];
+		int[] nodes = new int[counts[index]];
+		if(layouts[index] == SPARSE) {
+			for(int n=0; n<nodes.length; n++)
+				nodes[n] = row.getInt(n*4);
+		} else {
+			int n = 0;
+			for(int i=0; i<totalNodes && n<nodes.length; i++) {
+				if(!Float.isNaN(row.getFloat(i*4)))
+					nodes[n++] = i+1;
+			}
+		}
+		return nodes;
+	}
+
+	@Override
+	public int countDetections(String scenario) {
+		int index = getScenarioIndex(scenario);
+		return index < 0 ? 0 : counts[index];
+	}
+}
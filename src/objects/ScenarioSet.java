@@ -35,7 +35,7 @@ public class ScenarioSet {
 	// detectionMap stores values of TTD for all scenarios and specific sensors
 	// IAM files are immediately loaded into detectionMap
 	// H5 files are loaded to detectionMap at Page_LeakageCriteria based on user input settings, and saved as more are added
-	private Map<String, Map<String, Map<Integer, Float>>> detectionMap; //Specific Type <Scenario <Index, TTD>> 
+	private Map<String, DetectionMatrix> detectionMap; //Specific Type <Scenario x Node TTD>
 	
 	/**
 	 * User settings - 
@@ -57,6 +57,9 @@ public class ScenarioSet {
 	//When removing sensor settings, they are instead saved in this Hashmap
 	private Map<String, SensorSetting> sensorSettingsRemoved;
 	
+	// Built from the valid nodes on first use in a run, rebuilt if the valid nodes change
+	private Map<String, CandidateIndex> candidateIndexes;
+	
 	private InferenceTest inferenceTest;
 	
 	
@@ -68,12 +71,13 @@ public class ScenarioSet {
 		scenarios = new ArrayList<String>();
 		wells = new ArrayList<Well>();
 		
-		detectionMap = new HashMap<String, Map<String, Map<Integer, Float>>>();
+		detectionMap = new HashMap<String, DetectionMatrix>();
 		
 		equalWeights = true;
 		scenarioWeights = new HashMap<String, Float>();
 		sensorSettings = new HashMap<String, SensorSetting>();
 		sensorSettingsRemoved = new HashMap<String, SensorSetting>();
+		candidateIndexes = new HashMap<String, CandidateIndex>();
 		scenarioEnsemble = "";
 		addPoint = new Point3i(1,1,1);
 		maxWells = 10;
@@ -102,6 +106,7 @@ public class ScenarioSet {
 		scenarioWeights.clear();
 		sensorSettings.clear();
 		sensorSettingsRemoved.clear();
+		candidateIndexes.clear();
 		scenarioEnsemble = "";
 		addPoint = new Point3i(0,0,0);
 		maxWells = 10;
@@ -453,37 +458,60 @@ public class ScenarioSet {
 	 * @param configuration
 	 * @return
 	 */
+	public synchronized CandidateIndex getCandidateIndex(String sensorType) {
+		SensorSetting setting = sensorSettings.get(sensorType);
+		CandidateIndex index = candidateIndexes.get(sensorType);
+		if(index == null || !index.isCurrent(setting)) {
+			index = new CandidateIndex(setting, nodeStructure);
+			candidateIndexes.put(sensorType, index);
+		}
+		return index;
+	}
+	
+	// Make sure we can afford adding a new sensor of the given type
+	private boolean canAfford(String sensorType, ExtendedConfiguration configuration) {
+		float configurationCost = getSensorCost(configuration); //Current cost for sensors in the configuration
+		float sensorCost = getSensorSettings(sensorType).getSensorCost(); //Cost of the sensor in question
+		return configurationCost+sensorCost <= getSensorCostConstraint();
+	}
+	
+	/**
+	 * Picks a random node from the ones getValidNodes would return, without building the list.
+	 * Returns -1 if there is no such node, exclude is a node to skip (-1 for none).
+	 */
+	public int getRandomValidNode(String sensorType, ExtendedConfiguration configuration, boolean cost, boolean wellConstraint, int exclude) {
+		if(cost && !canAfford(sensorType, configuration))
+			return -1; // Can't afford a new sensor of this type
+		boolean inWells = wellConstraint && configuration.getWells().size() >= maxWells;
+		return getCandidateIndex(sensorType).pickRandom(sensorType, configuration, inWells, exclude, Constants.random);
+	}
+	
+	// True if getRandomValidNode would find a node, without drawing one
+	public boolean hasValidNode(String sensorType, ExtendedConfiguration configuration, boolean cost, boolean wellConstraint) {
+		if(cost && !canAfford(sensorType, configuration))
+			return false;
+		boolean inWells = wellConstraint && configuration.getWells().size() >= maxWells;
+		return getCandidateIndex(sensorType).hasCandidate(sensorType, configuration, inWells, -1);
+	}
+	
+	// True if getValidNodes would include the node
+	public boolean isValidNode(String sensorType, ExtendedConfiguration configuration, int node, boolean cost, boolean wellConstraint) {
+		if(cost && !canAfford(sensorType, configuration))
+			return false;
+		boolean inWells = wellConstraint && configuration.getWells().size() >= maxWells;
+		return getCandidateIndex(sensorType).isCandidate(node, sensorType, configuration, inWells, -1);
+	}
+	
 	public List<Integer> getValidNodes(String sensorType, ExtendedConfiguration configuration, boolean withAddPoint, boolean cost, boolean wellConstraint) {
 		
 		List<Integer> validNodes = new ArrayList<Integer>();
 		
-		// Make sure we can afford adding a new sensor of the given type
-		if(cost) {
-			float configurationCost = getSensorCost(configuration); //Current cost for sensors in the configuration
-			float sensorCost = getSensorSettings(sensorType).getSensorCost(); //Cost of the sensor in question
-			
-			if(configurationCost+sensorCost > getSensorCostConstraint())
-				return validNodes; // Can't afford a new sensor of this type
-		}
-				
-		//System.out.println("Spots I can move to: " + cloudNodes.size());
-		List<Integer> occupiedNodes = configuration.getSensorPositions(sensorType);
-//		System.out.println("Cloud nodes after occupied check: " + cloudNodes.size());
-		for(Integer node: sensorSettings.get(sensorType).getValidNodes()) {
-			if(occupiedNodes.contains(node)) continue; // Sensor is unoccupied
-			if(wellConstraint && configuration.getWells().size() >= maxWells) {
-				// We can't create another well, lets see if there is a spot left in one that already exists
-				Point3i point = getNodeStructure().getIJKFromNodeNumber(node);
-				for(Well well: configuration.getWells()) {
-					if(well.getI() == point.getI() && well.getJ() == point.getJ()) {
-						validNodes.add(node); // Well is at node point
-						break;
-					}
-				}
-			} else {
-				validNodes.add(node);
-			}
-		}
+		if(cost && !canAfford(sensorType, configuration))
+			return validNodes; // Can't afford a new sensor of this type
+		
+		// If we can't create another well, only look for a spot left in one that already exists
+		boolean inWells = wellConstraint && configuration.getWells().size() >= maxWells;
+		getCandidateIndex(sensorType).addCandidates(validNodes, sensorType, configuration, inWells);
 		
 		
 		// if you want to run the "old" way, comment out everything below this until the matching comment
@@ -584,14 +612,19 @@ public class ScenarioSet {
 	}	
 	
 	public Float getTTD(String specificType, String scenario, Integer nodeNumber) {
-		return detectionMap.get(specificType).get(scenario).get(nodeNumber);
+		float ttd = detectionMap.get(specificType).getTTD(scenario, nodeNumber);
+		return Float.isNaN(ttd) ? null : ttd;
+	}
+	
+	public DetectionMatrix getDetectionMatrix(String specificType) {
+		return detectionMap.get(specificType);
 	}
 	
-	public void setDetectionMap(Map<String, Map<String, Map<Integer, Float>>> detectionMap) {
+	public void setDetectionMap(Map<String, DetectionMatrix> detectionMap) {
 		this.detectionMap = detectionMap;
 	}
 	
-	public Map<String, Map<String, Map<Integer, Float>>> getDetectionMap() {
+	public Map<String, DetectionMatrix> getDetectionMap() {
 		return detectionMap;
 	}
 	
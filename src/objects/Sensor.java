@@ -55,10 +55,8 @@ public class Sensor {
 		return nodeNumber;
 	}
 	
+	// Points are replaced rather than changed, configuration copies share them
 	public void setLocation(int i, int j, int k, NodeStructure domain) {
-		node.setI(i);
-		node.setJ(j);
-		node.setK(k);
 		node =  new Point3i(i,j,k);
     	nodeNumber = domain.getNodeNumberFromIJK(node);
     	point = domain.getXYZFromIJK(node);
@@ -2,6 +2,7 @@ package objects;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -11,6 +12,7 @@ import java.util.logging.Level;
 
 import utilities.Constants;
 import utilities.Point3f;
+import utilities.Point3i;
 
 /**
  * Holds the logic for a specific sensor type and threshold
@@ -70,6 +72,7 @@ public class SensorSetting {
 	private float detectionThreshold;
 
 	private HashSet<Integer> validNodes; //Detecting nodes
+	private int nodeModifications = 0; //Bumped by every change to validNodes, so CandidateIndex notices in-place edits
 	private static Map<String, HashMap<Float, Float>> volumeDegradedByYear; //Scenario <time, VAD>
 	private static List<Float> years;
 	public static float globalMinZ;
@@ -126,6 +129,78 @@ public class SensorSetting {
 		volumeDegradedByYear = volumeDegraded;
 	}
 	
+	// Calculates a list of timesteps and a map of volume degraded by year from the set's sensor settings
+	// Used by Page_LeakageCriteria and the batch runner
+	public static void calculateVolumeDegradedByYear(ScenarioSet set) {
+		
+		// Loop through scenarios and sensor types to get a list of all detection times or timesteps
+		// Also create a TTD map that combines all the selected sensors (for quicker VOD calculations)
+		Map<String, HashMap<Integer, Float>> earliestDetectionForAllSensors = new HashMap<String, HashMap<Integer, Float>>(); //Scenario <NodeNumber, Detection>
+		for(String scenario: set.getAllScenarios())
+			earliestDetectionForAllSensors.put(scenario, new HashMap<Integer, Float>()); //initialize scenarios
+		HashSet<Float> yearSet = new HashSet<Float>();
+		for(SensorSetting setting: set.getSensorSettings().values()) {
+			if(!setting.getType().contains("Electrical Conductivity")) { //Handle normal sensors
+				DetectionMatrix detections = set.getDetectionMatrix(setting.specificType);
+				for(String scenario: detections.getScenarios()) {
+					for(int nodeNumber: detections.getDetectingNodes(scenario)) {
+						float ttd = detections.getTTD(scenario, nodeNumber);
+						yearSet.add(ttd); //TODO: If IAM has too many steps, round values to nearest year to reduce
+						addDetection(earliestDetectionForAllSensors.get(scenario), nodeNumber, ttd);
+					}
+				}
+			} else { // ERT is currently stored in a separate matrix, handle it differently
+				E4DSensors.ertNewPairing();
+				Map<String, Map<Integer, Map<Integer, Float>>> ertDetections = E4DSensors.ertDetectionTimes.get(setting.getDetectionThreshold());
+				for(String scenario: ertDetections.keySet()) {
+					for(Integer primaryNode: ertDetections.get(scenario).keySet()) {
+						for(Float ttd: ertDetections.get(scenario).get(primaryNode).values()) {
+							yearSet.add(ttd);
+							addDetection(earliestDetectionForAllSensors.get(scenario), primaryNode, ttd);
+						}
+					}
+				}
+			}
+		}
+		
+		// Sort the timesteps
+		ArrayList<Float> sortedYears = new ArrayList<Float>(yearSet);
+		Collections.sort(sortedYears);
+		
+		// Determine the volume of aquifer degraded per scenario
+		// The volume at a time holds every node detected by then, so each scenario's nodes are added in order of detection
+		Map<String, HashMap<Float, Float>> volumeDegraded = new HashMap<String, HashMap<Float, Float>>(); //Scenario <Year, VolumeDegraded>
+		for(String scenario: set.getScenarios()) {
+			final HashMap<Integer, Float> earliestDetection = earliestDetectionForAllSensors.get(scenario);
+			List<Integer> nodes = new ArrayList<Integer>(earliestDetection.keySet());
+			Collections.sort(nodes, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return Float.compare(earliestDetection.get(a), earliestDetection.get(b));
+				}
+			});
+			volumeDegraded.put(scenario, new HashMap<Float, Float>());
+			float vad = 0;
+			int next = 0;
+			for(Float time: sortedYears) {
+				for(; next < nodes.size() && earliestDetection.get(nodes.get(next)) <= time; next++) {
+					Point3i location = set.getNodeStructure().getIJKFromNodeNumber(nodes.get(next)); //get location of node that detected by this time
+					vad += set.getNodeStructure().getVolumeOfNode(location); //convert the found node into a volume and add cumulatively
+				}
+				volumeDegraded.get(scenario).put(time, vad);
+			}
+		}
+		
+		// Save the VOD information
+		setVolumeDegradedByYear(volumeDegraded, sortedYears);
+	}
+	
+	private static void addDetection(HashMap<Integer, Float> earliestDetection, Integer nodeNumber, float ttd) {
+		Float earliest = earliestDetection.get(nodeNumber);
+		if(earliest == null || ttd < earliest)
+			earliestDetection.put(nodeNumber, ttd);
+	}
+	
 	public static List<Float> getYears() {
 		return years;
 	}
@@ -211,6 +286,7 @@ public class SensorSetting {
 	}
 	
 	public void setValidNodes(HashSet<Integer> newSet){
+		nodeModifications++;
 		validNodes = new HashSet<Integer>();
 		validNodes.addAll(newSet);
 	}
@@ -218,17 +294,17 @@ public class SensorSetting {
 	
 	public void setNodes(ScenarioSet set) {
 		
+		nodeModifications++;
 		validNodes.clear();
 		
 		if(type.contains("Electrical Conductivity"))
 			validNodes = E4DSensors.setValidNodesERT(detectionThreshold);
 		else {
 			// From the detectionMap, we just need to get a list of nodes that exist across selected scenarios (fullCloudNodes)
+			DetectionMatrix detections = set.getDetectionMatrix(specificType);
 			for(String scenario: set.getScenarios()) {
-				if(set.getDetectionMap().get(specificType).get(scenario).size() > 0) {
-					for(Integer node: set.getDetectionMap().get(specificType).get(scenario).keySet())
-						validNodes.add(node);
-				}
+				for(int node: detections.getDetectingNodes(scenario))
+					validNodes.add(node);
 			}
 			trimZ(); // Remove nodes outside of Z range
 		}
@@ -238,6 +314,7 @@ public class SensorSetting {
 	private void trimZ() {
 //		System.out.println(minZ);
 		//Find the nodes that fit this z restriction
+		nodeModifications++;
 		for(Integer node: validNodes) {
 			Point3f test = nodeStructure.getXYZFromNodeNumber(node);
 //			System.out.println("Minimum: " + minZ + " Current: " + test.getZ() + " Maximum: " + maxZ);
@@ -348,6 +425,7 @@ public class SensorSetting {
 			}
 			myOptimalSolutions.put(nodeNumber, counter);
 		}
+		nodeModifications++;
 		validNodes.clear();
 		//Go through every node and if the node has less number of scenarios than max
 		//(accounting for the threshold) then we don't add it to our valid node set.
@@ -385,8 +463,13 @@ public class SensorSetting {
 	}
 	
 	public void removeNode(Integer node) {
+		nodeModifications++;
 		validNodes.remove(node);
 	}
+	
+	public int getNodeModifications() {
+		return nodeModifications;
+	}
 
 	public Trigger getTrigger() {
 		return trigger;
@@ -437,6 +520,7 @@ public class SensorSetting {
 	}
 
 	public void clearNodes() {
+		nodeModifications++;
 		validNodes.clear();
 	}
 	
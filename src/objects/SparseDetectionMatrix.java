@@ -0,0 +1,92 @@
+package objects;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only detection matrix stored as compressed sparse rows (one row per scenario).
+ * Used for small detection clouds, where a dense row per scenario would be almost entirely NaN.
+ */
+
+public class SparseDetectionMatrix implements DetectionMatrix {
+
+	private final int totalNodes;
+	private final List<String> scenarios;
+	private final Map<String, Integer> scenarioIndex;
+
+	private final int[] rowStart; // rowStart[s] to rowStart[s+1] holds the detections for scenario s
+	private final int[] nodes; // sorted within each row
+	private final float[] ttds;
+
+	public SparseDetectionMatrix(DetectionMatrix source) {
+		totalNodes = source.getTotalNodes();
+		scenarios = new ArrayList<String>(source.getScenarios());
+		scenarioIndex = new HashMap<String, Integer>();
+		rowStart = new int[scenarios.size()+1];
+
+		int size = 0;
+		for(int s=0; s<scenarios.size(); s++) {
+			scenarioIndex.put(scenarios.get(s), s);
+			rowStart[s] = size;
+			size += source.countDetections(scenarios.get(s));
+		}
+		rowStart[scenarios.size()] = size;
+
+		nodes = new int[size];
+		ttds = new float[size];
+		for(int s=0; s<scenarios.size(); s++) {
+			int n = rowStart[s];
+			for(int node: source.getDetectingNodes(scenarios.get(s))) {
+				nodes[n] = node;
+				ttds[n] = source.getTTD(s, node);
+				n++;
+			}
+		}
+	}
+
+	@Override
+	public List<String> getScenarios() {
+		return scenarios;
+	}
+
+	@Override
+	public int getScenarioIndex(String scenario) {
+		Integer index = scenarioIndex.get(scenario);
+		return index == null ? -1 : index;
+	}
+
+	@Override
+	public int getTotalNodes() {
+		return totalNodes;
+	}
+
+	@Override
+	public float getTTD(int scenarioIndex, int nodeNumber) {
+		if(scenarioIndex < 0)
+			return Float.NaN;
+		int position = Arrays.binarySearch(nodes, rowStart[scenarioIndex], rowStart[scenarioIndex+1], nodeNumber);
+		return position < 0 ? Float.NaN : ttds[position];
+	}
+
+	@Override
+	public float getTTD(String scenario, int nodeNumber) {
+		return getTTD(getScenarioIndex(scenario), nodeNumber);
+	}
+
+	@Override
+	public int[] getDetectingNodes(String scenario) {
+		int index = getScenarioIndex(scenario);
+		if(index < 0)
+			return new int[0];
+		return Arrays.copyOfRange(nodes, rowStart[index], rowStart[index+1]);
+	}
+
+	@Override
+	public int countDetections(String scenario) {
+		int index = getScenarioIndex(scenario);
+		return index < 0 ? 0 : rowStart[index+1] - rowStart[index];
+	}
+}
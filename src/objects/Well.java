@@ -60,97 +60,53 @@ public class Well
 	//	System.out.println("----------------------Moving well-----------------------------");
 		Map<String, List<Integer>> typeCount =  getSensorCountByType();
 
-		List<Integer> sizes = new ArrayList<Integer>();
-		Map<String, List<Integer>> validNodes = new HashMap<String, List<Integer>>();
-		for(String type: typeCount.keySet()) {
-			// Get all the nodes where we can fit each type
-			List<Integer> nodes = scenarioSet.getValidNodes(type, configuration, false, false, false);
-			validNodes.put(type, nodes);
-			sizes.add(nodes.size());
-		}
-		
-		Collections.sort(sizes); // We want to start with the most constraining list
+		// Start with the most constraining type, then keep the columns where every other type also fits
+		List<String> types = new ArrayList<String>(typeCount.keySet());
+		final Map<String, CandidateIndex> indexes = new HashMap<String, CandidateIndex>();
+		for(String type: types)
+			indexes.put(type, scenarioSet.getCandidateIndex(type));
+		Collections.sort(types, new Comparator<String>() {
+			@Override
+			public int compare(String a, String b) {
+				return Integer.compare(indexes.get(a).size(), indexes.get(b).size());
+			}
+		});
 	
-		boolean initial = true;
-		Map<Integer, Map<Integer, Well>> wellsByIJ = new HashMap<Integer, Map<Integer, Well>>();
-		for(Integer size: sizes) {
-			List<Integer> toRemove = null;
-			for(String type : validNodes.keySet()) {
-				List<Integer> temp = validNodes.get(type);
-				if(temp.size() == size) {
-					
-					//System.out.println("Spots needed for " + type + ": " + typeCount.get(type).size());
-					// Build wells using these constraints
-
-					// Process the nodes
-					Map<Integer, Map<Integer, List<Integer>>> validKsByIJ = new HashMap<Integer, Map<Integer,  List<Integer>>>();
-					for(Integer nodeNumber: temp) {
-						Point3i point = scenarioSet.getNodeStructure().getIJKFromNodeNumber(nodeNumber);
-						if(!initial) {
-							if(!wellsByIJ.containsKey(point.getI()) || !wellsByIJ.get(point.getI()).containsKey(point.getJ())) {
-								continue;	// Skip this one, its not worth considering the well location
-							}
-						}
-						if(!validKsByIJ.containsKey(point.getI()))
-							validKsByIJ.put(point.getI(), new HashMap<Integer, List<Integer>>()); // By i's
-						if(!validKsByIJ.get(point.getI()).containsKey(point.getJ()))
-							validKsByIJ.get(point.getI()).put(point.getJ(), new ArrayList<Integer>()); // By j's
-						
-						validKsByIJ.get(point.getI()).get(point.getJ()).add(nodeNumber);						
-					}
-
-					int currentConstraint = typeCount.get(type).size();
-					// Make some valid wells out of the processed values
-					for(Integer i: validKsByIJ.keySet()) {
-						for(Integer j: validKsByIJ.get(i).keySet()) {
-							if(validKsByIJ.get(i).get(j).size() >= currentConstraint) {
-								// This is a valid well location for the given type
-								if(initial) {
-									Well tempWell = new Well(i,j);
-									if(!wellsByIJ.containsKey(i)) {
-										wellsByIJ.put(i, new HashMap<Integer, Well>()); // By i's
-									}
-									wellsByIJ.get(i).put(j, tempWell);
-								} 
-								//System.out.println(validKsByIJ.get(i).get(j).size() + " " + type + " spots for well " + wellsByIJ.get(i).get(j) + ": " + validKsByIJ.get(i).get(j).toString());
-							} else {
-								if(!initial) {
-									wellsByIJ.get(i).remove(j); // This one is not valid, remove any well that is there
-									if(wellsByIJ.get(i).isEmpty())
-										wellsByIJ.remove(i);
-								}
-							}
-						}
-					}
-
-					toRemove = temp;
-					break;
-				}
+		int[] columns = null;
+		int count = 0;
+		for(String type: types) {
+			CandidateIndex index = indexes.get(type);
+			int currentConstraint = typeCount.get(type).size();
+			List<Integer> occupied = configuration.getSensorPositions(type);
+			if(columns == null) {
+				columns = index.getColumns().clone();
+				count = columns.length;
 			}
-			if(initial)
-				initial = false;
-			HashMap<String, List<Integer>> temp = new HashMap<String, List<Integer>>();
-			temp.putAll(validNodes);
-			for(String key: temp.keySet())
-				if(validNodes.get(key).equals(toRemove))
-					validNodes.remove(key);
+			int kept = 0;
+			for(int c=0; c<count; c++) {
+				if(index.countFree(columns[c], occupied) >= currentConstraint)
+					columns[kept++] = columns[c]; // This is a valid well location for the given type
+			}
+			count = kept;
 		}
-		List<Well> validWells = new ArrayList<Well>();
-		
+		if(columns == null)
+			return false; // No sensors in this well
 		
+		CandidateIndex index = indexes.get(types.get(0));
+		List<Well> validWells = new ArrayList<Well>();
 		List<Well> neighboringWells = new ArrayList<Well>();
-		for(Integer i: wellsByIJ.keySet()) {
-			for(Integer j: wellsByIJ.get(i).keySet()) {
-				if(i == getI() && j == getJ())
-					continue; // Not the same spot
-				// if this is a neighbor
-				Well well = wellsByIJ.get(i).get(j);
-				boolean iNeighbor = i + 1 == getI() || i - 1 == getI() || i == getI();
-				boolean jNeighbor = j + 1 == getJ() || j - 1 == getJ() || j == getJ();
-				if(iNeighbor && jNeighbor)
-					neighboringWells.add(well);
-				validWells.add(well);
-			}
+		for(int c=0; c<count; c++) {
+			int i = index.getI(columns[c]);
+			int j = index.getJ(columns[c]);
+			if(i == getI() && j == getJ())
+				continue; // Not the same spot
+			// if this is a neighbor
+			Well well = new Well(i,j);
+			boolean iNeighbor = i + 1 == getI() || i - 1 == getI() || i == getI();
+			boolean jNeighbor = j + 1 == getJ() || j - 1 == getJ() || j == getJ();
+			if(iNeighbor && jNeighbor)
+				neighboringWells.add(well);
+			validWells.add(well);
 		}
 	//	System.out.println("Neighboring wells: " + neighboringWells.size());
 	//	System.out.println("Other wells: " + validWells.size());
@@ -198,10 +154,9 @@ public class Well
 		List<Integer> nodesInWell = scenarioSet.getNodeStructure().getNodesInWell(well);
 		
 		for(String type: scenarioSet.getDataTypes()) {
-			List<Integer> nodes = scenarioSet.getValidNodes(type, configuration, false, false, false);
 			for(Integer inWell: nodesInWell) {
 				// We know the node is valid for this data type
-				if(nodes.contains(inWell)) {
+				if(scenarioSet.isValidNode(type, configuration, inWell, false, false)) {
 					if(!validKs.containsKey(type))
 						validKs.put(type, new ArrayList<Integer>());
 					validKs.get(type).add(inWell);
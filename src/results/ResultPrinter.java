@@ -1,7 +1,10 @@
 package results;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -22,7 +25,6 @@ import objects.NodeStructure;
 import objects.ScenarioSet;
 import objects.Sensor;
 import objects.SensorSetting;
-import results.Results.ObjectiveResult;
 import results.Results.Type;
 import utilities.Constants;
 import utilities.Point3f;
@@ -49,6 +51,14 @@ public class ResultPrinter {
 	private static String xUnit;
 	
 	public static void clearResults(ScenarioSet set, boolean makePlots) {
+		if(results != null) {
+			// A run that was cancelled never printed, keep what it streamed and let the writer go
+			try {
+				results.stream.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
 		results = new Results(set, makePlots);
 	}
 	
@@ -59,7 +69,7 @@ public class ResultPrinter {
 		}
 	}
 
-	public static void storeResults(int run, int iteration, ExtendedConfiguration newConfiguration,
+	public static synchronized void storeResults(int run, int iteration, ExtendedConfiguration newConfiguration,
 			ExtendedConfiguration bestConfiguration, ExtendedConfiguration currentConfiguration, ScenarioSet set) {
 
 		if(results == null)
@@ -67,6 +77,13 @@ public class ResultPrinter {
 
 		results.storeResult(run, iteration, newConfiguration, bestConfiguration, currentConfiguration, set);
 	}
+	
+	public static synchronized void storeEarlyStop(int run, int iterations, int saved) {
+		if(results == null)
+			return;
+		results.iterationsRun.put(run, iterations);
+		results.iterationsSaved.put(run, saved);
+	}
 
 	/**
 	 * Prints everything we currently know how to prints
@@ -75,7 +92,7 @@ public class ResultPrinter {
 		timeUnit = nodeStructure.getUnit("times");
 		xUnit = nodeStructure.getUnit("x");
 		try {
-			printAllConfigs();	
+			results.stream.close(); // The run files are already written, wait for the last rows	
 		} catch (Exception e) {
 			e.printStackTrace();
 			System.out.println("Failed to print all configurations");
@@ -104,59 +121,14 @@ public class ResultPrinter {
 			e.printStackTrace();
 			System.out.println("Failed to print objective per iteration summary");
 		}
-	}
-
-	/**
-	 * If results have been stored for all configs:
-	 * One file per type per run will be generated
-	 * @throws IOException 
-	 */
-	public static void printAllConfigs() throws IOException {
-		if(!results.allConfigs)
-			return;
-
-		for(Type type: results.allConfigsMap.keySet()) {			
-			for(Integer run: results.allConfigsMap.get(type).keySet()) {
-				String fileName = "run_" + run +"_" + type.toString();
-				List<String> lines = new ArrayList<String>();
-				StringBuilder header = new StringBuilder();
-				header.append("Iteration,Average TTD (Weighted),Scenarios Detected,Sensors");
-				lines.add(header.toString());
-				for(Integer iteration: results.allConfigsMap.get(type).get(run).keySet()) {
-					if(iteration<0) continue; //Skip the initialization iterations
-					
-					Configuration configuration = results.allConfigsMap.get(type).get(run).get(iteration);
-					
-					float scenariosDetected = configuration.countScenariosDetected();
-					float totalWeightsForDetectedScenarios = 0.0f;
-					float weightedAverageTTD = 0.0f;
-					
-					// If we want weighted, we need to weight based on the normalized value of just the detected scenarios
-					for(String detectingScenario: configuration.getTimesToDetection().keySet()) {
-						totalWeightsForDetectedScenarios += results.set.getScenarioWeights().get(detectingScenario);
-					}
-					
-					for(String detectingScenario: configuration.getTimesToDetection().keySet()) {
-						float scenarioWeight = results.set.getScenarioWeights().get(detectingScenario);
-						weightedAverageTTD += configuration.getTimesToDetection().get(detectingScenario) * (scenarioWeight/totalWeightsForDetectedScenarios);
-					}
-					
-					StringBuilder line = new StringBuilder();
-					line.append(iteration + "," + Constants.decimalFormat.format(weightedAverageTTD) + " " + timeUnit + "," + scenariosDetected);
-					for(Sensor sensor: configuration.getSensors()) {
-						if(sensor.getSensorType().contains("Electrical Conductivity"))
-							line.append("," + sensor.getXYZ().toString() + "+" + ((ExtendedSensor)sensor).getPairXYZ().toString() + " " + Sensor.sensorAliases.get(sensor.getSensorType()));
-						else
-							line.append("," + sensor.getXYZ().toString() + " " + Sensor.sensorAliases.get(sensor.getSensorType()));
-					}
-					lines.add(line.toString());
-				}
-				FileUtils.writeLines(new File(resultsDirectory, fileName + ".csv"), lines);
-			}	
+		try {
+			printEarlyStops();
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Failed to print early stopping summary");
 		}
-
 	}
-	
+
 	/**
 	 * Prints the best_configurations.csv
 	 * All unique configurations are listed, ordered by cost of configuration
@@ -381,40 +353,110 @@ public class ResultPrinter {
 	}
 	
 	
+	/**
+	 * Joins the part file each run streamed into one objective_summary file per type, one column pair per run
+	 * Runs that stopped early have no value for the later iterations, those are left blank
+	 * @throws IOException
+	 */
 	public static void printObjPerIterSum() throws IOException {
 		if(!results.objPerIterSum) 
 			return;
 		
-		for(Type type: results.objPerIterSumMap.keySet()) {	
+		for(Type type: results.objPerIterSumRuns.keySet()) {
+			if(results.objPerIterSumRuns.get(type).isEmpty())
+				continue;
 			String fileName = "objective_summary_" + type.toString();
-			List<String> lines = new ArrayList<String>();
-			for(Integer iteration: results.objPerIterSumMap.get(type).keySet()) {
-				if(lines.isEmpty()) { // Add the heading
-					StringBuilder line = new StringBuilder();
-					line.append("Iteration");
-					for(Integer run: results.objPerIterSumMap.get(type).get(iteration).keySet()) {
-						line.append(",Run" + run + ": TTD,Run" + run + ": Scenarios Detected");
-					}
-					lines.add(line.toString());
+			List<Integer> runs = new ArrayList<Integer>();
+			for(Integer run: results.objPerIterSumRuns.get(type)) {
+				if(results.stream.getFile(Results.getObjPerIterSumPart(type, run)).exists())
+					runs.add(run); // A resumed run may list earlier runs whose parts are gone
+			}
+			if(runs.isEmpty())
+				continue;
+			List<File> parts = new ArrayList<File>();
+			List<BufferedReader> readers = new ArrayList<BufferedReader>();
+			File fileToWrite = new File(resultsDirectory, fileName + ".csv");
+			BufferedWriter writer = null;
+			try {
+				for(Integer run: runs) {
+					File part = results.stream.getFile(Results.getObjPerIterSumPart(type, run));
+					parts.add(part);
+					readers.add(new BufferedReader(new FileReader(part)));
 				}
-				StringBuilder line = new StringBuilder();
-				line.append(String.valueOf(iteration));
+				writer = new BufferedWriter(new FileWriter(fileToWrite));
+				StringBuilder heading = new StringBuilder();
+				heading.append("Iteration");
+				for(Integer run: runs)
+					heading.append(",Run" + run + ": TTD,Run" + run + ": Scenarios Detected");
+				writer.write(heading.toString());
+				writer.newLine();
 				
-				for(ObjectiveResult objRes: results.objPerIterSumMap.get(type).get(iteration).values()) {
-					line.append(", " + (Double.isNaN(objRes.timeToDetectionInDetected) ? "" : Constants.percentageFormat.format(objRes.timeToDetectionInDetected) + " " + timeUnit) +
-							"," + (Double.isNaN(objRes.percentScenariosDetected) ? "" : Constants.percentageFormat.format(objRes.percentScenariosDetected)) + "%");
+				// Each part lists its iterations in order, so the rows can be joined a line at a time
+				String[] lines = new String[runs.size()];
+				int[] iterations = new int[runs.size()];
+				for(int r=0; r<runs.size(); r++)
+					iterations[r] = readPart(readers.get(r), lines, r);
+				while(true) {
+					int iteration = Integer.MAX_VALUE;
+					for(int r=0; r<runs.size(); r++) {
+						if(lines[r] != null)
+							iteration = Math.min(iteration, iterations[r]);
+					}
+					if(iteration == Integer.MAX_VALUE)
+						break;
+					StringBuilder line = new StringBuilder();
+					line.append(String.valueOf(iteration));
+					for(int r=0; r<runs.size(); r++) {
+						if(lines[r] == null || iterations[r] != iteration) {
+							line.append(",,");
+							continue;
+						}
+						line.append(lines[r].substring(lines[r].indexOf(',')));
+						iterations[r] = readPart(readers.get(r), lines, r);
+					}
+					writer.write(line.toString());
+					writer.newLine();
 				}
-				lines.add(line.toString());
+			} finally {
+				for(BufferedReader reader: readers)
+					reader.close();
+				if(writer != null)
+					writer.close();
 			}
-			File fileToWrite = new File(resultsDirectory, fileName + ".csv");
-			FileUtils.writeLines(fileToWrite, lines);
+			for(File part: parts)
+				part.delete();
 			
 			if(runScripts) {
 				runPythonScript("plot_dreamout01.py", new String[] {fileToWrite.getAbsolutePath()});
 			}
 		}
 	}
+	
+	// Reads the next row of a part file into lines[r] (null at the end) and returns its iteration
+	private static int readPart(BufferedReader reader, String[] lines, int r) throws IOException {
+		lines[r] = reader.readLine();
+		return lines[r] == null ? 0 : Integer.parseInt(lines[r].substring(0, lines[r].indexOf(',')));
+	}
 
+	/**
+	 * Prints early_stopping.csv when any run converged before its last iteration
+	 * Each run lists the iterations it ran and the iterations it saved
+	 * @throws IOException
+	 */
+	public static void printEarlyStops() throws IOException {
+		if(results.iterationsRun.isEmpty())
+			return;
+		List<String> lines = new ArrayList<String>();
+		lines.add("Run,Iterations Run,Iterations Saved");
+		int totalSaved = 0;
+		for(Integer run: results.iterationsRun.keySet()) {
+			lines.add(run + "," + results.iterationsRun.get(run) + "," + results.iterationsSaved.get(run));
+			totalSaved += results.iterationsSaved.get(run);
+		}
+		lines.add("Total,," + totalSaved);
+		FileUtils.writeLines(new File(resultsDirectory, "early_stopping.csv"), lines);
+	}
+	
 	public static void printPlotData(List<Float> percentScenariosDetected, List<Float> averageTTDInDetecting, List<Float> costOfConfig, List<Configuration> configs, List<Float> volumeDegraded) throws IOException{
 		String fileName = "plot_data.csv";
 		List<String> lines = new ArrayList<String>();
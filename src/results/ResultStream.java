@@ -0,0 +1,225 @@
+package results;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends result rows to their files on a background thread as they are stored, so memory use stays the same however
+ * many iterations are run and everything written so far survives if the run dies.
+ * Rows wait in a bounded queue and whoever stores a row blocks while the queue is full. Files are flushed about once
+ * a second, so a run that dies loses at most the last second of rows.
+ * A row for an iteration at or before the last one in its file starts the file over, the same way storing an iteration
+ * twice used to replace it. Files of a resumed run are instead cut back to the rows before the iteration it resumes from
+ * and appended to.
+ */
+
+public class ResultStream {
+
+	private static final int CAPACITY = 4096; // Rows waiting to be written
+	private static final long FLUSH_INTERVAL = 1000; // Milliseconds
+	private static final Row END = new Row(null, null, 0, null, null);
+
+	private final File directory;
+	private final BlockingQueue<Row> queue = new ArrayBlockingQueue<Row>(CAPACITY);
+	private final Thread thread;
+	private volatile IOException failure;
+	private final Map<String, Integer> resumeAt = new ConcurrentHashMap<String, Integer>(); // File name, iteration
+
+	// Only used by the writer thread
+	private final Map<File, Writer> writers = new HashMap<File, Writer>();
+	private final Map<File, Integer> lastIteration = new HashMap<File, Integer>();
+	private long lastFlush = System.currentTimeMillis();
+
+	private static class Row {
+		private final String file;
+		private final String header; // Written when the file is started, null for none
+		private final int iteration;
+		private final String line;
+		private final CountDownLatch written; // Only for flush requests
+
+		private Row(String file, String header, int iteration, String line, CountDownLatch written) {
+			this.file = file;
+			this.header = header;
+			this.iteration = iteration;
+			this.line = line;
+			this.written = written;
+		}
+	}
+
+	public ResultStream(String directory) {
+		this.directory = directory == null ? null : new File(directory);
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				write();
+			}
+		}, "DREAM results");
+		thread.setDaemon(true); // A run that is abandoned should not keep DREAM open
+		thread.start();
+	}
+
+	public File getFile(String fileName) {
+		return new File(directory, fileName);
+	}
+
+	public void append(String fileName, String header, int iteration, String line) {
+		try {
+			queue.put(new Row(fileName, header, iteration, line, null));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Rows for this file continue an earlier run from the given iteration, call before appending any
+	public void resume(String fileName, int iteration) {
+		resumeAt.put(fileName, iteration);
+	}
+
+	// Waits until every row appended so far is on disk, so a checkpoint never gets ahead of the results
+	public void flush() {
+		if(!thread.isAlive())
+			return;
+		CountDownLatch written = new CountDownLatch(1);
+		try {
+			queue.put(new Row(null, null, 0, null, written));
+			written.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits for every row to be written, then closes the files
+	 * @throws IOException if any row could not be written
+	 */
+	public void close() throws IOException {
+		if(thread.isAlive()) {
+			try {
+				queue.put(END);
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(failure != null)
+			throw failure;
+	}
+
+	private void write() {
+		while(true) {
+			Row row;
+			try {
+				row = queue.poll(FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				break;
+			}
+			if(row == END)
+				break;
+			if(row == null || row.written != null || System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL)
+				flushWriters();
+			if(row != null && row.written != null)
+				row.written.countDown();
+			if(row == null || row.written != null)
+				continue;
+			if(failure != null)
+				continue; // Keep draining so the run is never blocked on a broken disk
+			try {
+				File file = getFile(row.file);
+				Writer writer = writers.get(file);
+				Integer last = lastIteration.get(file);
+				if(writer == null || (last != null && row.iteration <= last)) {
+					if(writer != null)
+						writer.close();
+					Integer resume = writer == null ? resumeAt.remove(row.file) : null;
+					boolean append = resume != null && cutBack(file, resume);
+					file.getAbsoluteFile().getParentFile().mkdirs();
+					writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, append)));
+					writers.put(file, writer);
+					if(row.header != null && !append)
+						writer.write(row.header + System.lineSeparator());
+				}
+				writer.write(row.line + System.lineSeparator());
+				lastIteration.put(file, row.iteration);
+			} catch (IOException e) {
+				failure = e;
+				System.out.println("Failed to write " + row.file + ", later results will not be saved: " + e.getMessage());
+			}
+		}
+		for(Writer writer: writers.values()) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				if(failure == null)
+					failure = e;
+			}
+		}
+		writers.clear();
+	}
+
+	/**
+	 * Keeps the header and the rows before the iteration, false if there is no file to keep.
+	 * Rows are one iteration apart, so the first that isn't (like a line cut short by a crash) ends what is kept.
+	 */
+	private static boolean cutBack(File file, int iteration) throws IOException {
+		if(!file.exists())
+			return false;
+		File kept = new File(file.getPath() + ".tmp");
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		BufferedWriter writer = new BufferedWriter(new FileWriter(kept));
+		try {
+			Integer previous = null;
+			String line;
+			for(int count=0; (line = reader.readLine()) != null; count++) {
+				int comma = line.indexOf(',');
+				Integer rowIteration;
+				try {
+					rowIteration = Integer.parseInt(comma == -1 ? line : line.substring(0, comma));
+				} catch (NumberFormatException e) {
+					rowIteration = null;
+				}
+				if(rowIteration == null && count == 0) { // The header
+					writer.write(line + System.lineSeparator());
+					continue;
+				}
+				if(rowIteration == null || comma == -1 || rowIteration >= iteration || (previous != null && rowIteration != previous + 1))
+					break;
+				writer.write(line + System.lineSeparator());
+				previous = rowIteration;
+			}
+		} finally {
+			reader.close();
+			writer.close();
+		}
+		Files.move(kept.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return true;
+	}
+
+	private void flushWriters() {
+		lastFlush = System.currentTimeMillis();
+		if(failure != null)
+			return;
+		try {
+			for(Writer writer: writers.values())
+				writer.flush();
+		} catch (IOException e) {
+			failure = e;
+			System.out.println("Failed to write results, later results will not be saved: " + e.getMessage());
+		}
+	}
+}
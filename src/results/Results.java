@@ -2,13 +2,17 @@ package results;
 
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 import objects.Configuration;
 import objects.ExtendedConfiguration;
 import objects.ExtendedSensor;
 import objects.ScenarioSet;
+import objects.Sensor;
+import utilities.Constants;
 
 /**
  * Catch-all class used to store the results of a particular run.
@@ -48,17 +52,26 @@ public class Results {
 	 * 2
 	 * ...
 	 * n
+	 * 
+	 * Each run is streamed to its own part file, ResultPrinter joins them when printing
 	 */
 	public boolean objPerIterSum = true;
-	public Map<Type, Map<Integer, Map<Integer, ObjectiveResult>>> objPerIterSumMap;
+	public Map<Type, Set<Integer>> objPerIterSumRuns;
 
 	// Print a file for each run, for each type, that contains all iterations,
 	// their times to detection, and their configuration
+	// These are streamed as the iterations are stored rather than kept in memory
 	public boolean allConfigs = true;
-	public Map<Type, Map<Integer, Map<Integer, Configuration>>> allConfigsMap;
+	public ResultStream stream;
+	private String timeUnit;
 
 	public boolean resultsPlots = true;
 	public TimeToDetectionPlots ttdPlots;
+	public Integer plotRun = null; // Only plot this run, null plots every run
+	
+	// Runs that converged before their last iteration: run, iterations actually run
+	public Map<Integer, Integer> iterationsRun = new TreeMap<Integer, Integer>();
+	public Map<Integer, Integer> iterationsSaved = new TreeMap<Integer, Integer>();
 	
 	public ScenarioSet set;
 	
@@ -70,15 +83,13 @@ public class Results {
 		bestConfigSumPercents = new HashMap<Configuration, Float>();
 		bestObjValue = Float.MAX_VALUE;
 		
-		objPerIterSumMap = new HashMap<Type, Map<Integer, Map<Integer, ObjectiveResult>>>();
-		objPerIterSumMap.put(Type.New, new LinkedHashMap<Integer, Map<Integer, ObjectiveResult>>());
-		objPerIterSumMap.put(Type.Best, new LinkedHashMap<Integer, Map<Integer, ObjectiveResult>>());
-		objPerIterSumMap.put(Type.Current, new LinkedHashMap<Integer, Map<Integer, ObjectiveResult>>());
+		objPerIterSumRuns = new HashMap<Type, Set<Integer>>();
+		objPerIterSumRuns.put(Type.New, new TreeSet<Integer>());
+		objPerIterSumRuns.put(Type.Best, new TreeSet<Integer>());
+		objPerIterSumRuns.put(Type.Current, new TreeSet<Integer>());
 		
-		allConfigsMap = new HashMap<Type, Map<Integer, Map<Integer, Configuration>>>();
-		allConfigsMap.put(Type.New, new LinkedHashMap<Integer, Map<Integer, Configuration>>());
-		allConfigsMap.put(Type.Best, new LinkedHashMap<Integer, Map<Integer, Configuration>>());
-		allConfigsMap.put(Type.Current, new LinkedHashMap<Integer, Map<Integer, Configuration>>());
+		stream = new ResultStream(ResultPrinter.resultsDirectory);
+		timeUnit = set.getNodeStructure().getUnit("times");
 
 		resultsPlots = makePlots;
 		
@@ -94,88 +105,119 @@ public class Results {
 		storeResult(run, iteration, Type.Current, currentConfiguration, set);		
 	}
 
+	private static float getWeightedAverageTTD(ExtendedConfiguration configuration, ScenarioSet set) {
+		float totalWeightsForDetectedScenarios = 0.0f;
+		float weightedAverageTTD = 0.0f;
+		
+		// If we want weighted, we need to weight based on the normalized value of just the detected scenarios
+		for(String detectingScenario: configuration.getTimesToDetection().keySet()) {
+			totalWeightsForDetectedScenarios += set.getScenarioWeights().get(detectingScenario);
+		}
+		
+		for(String detectingScenario: configuration.getTimesToDetection().keySet()) {
+			float scenarioWeight = set.getScenarioWeights().get(detectingScenario);
+			weightedAverageTTD += configuration.getTimesToDetection().get(detectingScenario) * (scenarioWeight/totalWeightsForDetectedScenarios);
+		}
+		return weightedAverageTTD;
+	}
+
 	public void storeResult(int run, int iteration, Type type, ExtendedConfiguration configuration, ScenarioSet set) {
 
-		if(type == Type.Best && !bestConfigSumList.contains(configuration)) {
-			float ttd = configuration.getNormalizedAverageTimeToDetection(set.getScenarioWeights());
-			float percent = configuration.getNormalizedPercentScenariosDetected(set.getScenarioWeights(), set.getTotalScenarioWeight());
-			float global_ttd = ttd + (1-percent)*1000000; //penalty
-			if(Float.compare(global_ttd, bestObjValue) < 0) {
-				// Clear the list and set this as our new best objective value
-				bestConfigSumList.clear();
-				bestConfigSumTTDs.clear();
-				bestConfigSumPercents.clear();
-				bestObjValue = global_ttd;
-			}
-			
-			boolean newConfiguration = true;
-			if(Float.compare(global_ttd, bestObjValue) == 0) {
-				// Check if the configuration already exists in the best configuration list
-				for(ExtendedConfiguration configurationCheck: bestConfigSumList) {
-					if(configuration.checkForMatch(configurationCheck)) {
-						newConfiguration = false;
-						break;
-					}
-				}
-				if(newConfiguration) {
-					ExtendedConfiguration newExtendedConfiguration = new ExtendedConfiguration();
-					for(ExtendedSensor sensor: configuration.getExtendedSensors()) {
-						if(sensor.isTriggering())
-							newExtendedConfiguration.addSensor(sensor.makeCopy());
-					}
-					newExtendedConfiguration.setTimesToDetection(configuration.getTimesToDetection());
-					bestConfigSumList.add(newExtendedConfiguration);
-					bestConfigSumTTDs.put(newExtendedConfiguration, ttd);
-					bestConfigSumPercents.put(newExtendedConfiguration, percent);
-				}
-			}
-		}
+		if(type == Type.Best)
+			addBest(configuration, set);
+		
+		// Both outputs report the same average, work it out once
+		float weightedAverageTTD = 0.0f;
+		if(objPerIterSum || (allConfigs && iteration >= 0))
+			weightedAverageTTD = getWeightedAverageTTD(configuration, set);
 		
 		if(objPerIterSum) {
-			if(!objPerIterSumMap.get(type).containsKey(iteration)) {
-				objPerIterSumMap.get(type).put(iteration, new LinkedHashMap<Integer, ObjectiveResult>());
-			}	
-			
 			float scenariosDetected = 0;
-			float totalWeightsForDetectedScenarios = 0.0f;
-			float weightedAverageTTD = 0.0f;
-
-			// If we want weighted, we need to weight based on the normalized value of just the detected scenarios
-			for(String detectingScenario: configuration.getTimesToDetection().keySet()) {
-				totalWeightsForDetectedScenarios += set.getScenarioWeights().get(detectingScenario);
-			}
 			
 			// If we want weighted percent of scenarios detected, we can just add up the globally normalized values for each detecting scenario
 			for(String detectingScenario: configuration.getTimesToDetection().keySet()) {
 				scenariosDetected += set.getGloballyNormalizedScenarioWeight(detectingScenario)*100;
 			}
-			
-			for(String detectingScenario: configuration.getTimesToDetection().keySet()) {
-				float scenarioWeight = set.getScenarioWeights().get(detectingScenario);
-				weightedAverageTTD += configuration.getTimesToDetection().get(detectingScenario) * (scenarioWeight/totalWeightsForDetectedScenarios);
-			}
 
-			objPerIterSumMap.get(type).get(iteration).put(run, new ObjectiveResult(weightedAverageTTD, scenariosDetected));
+			objPerIterSumRuns.get(type).add(run);
+			stream.append(getObjPerIterSumPart(type, run), null, iteration, iteration + ", " +
+					(Double.isNaN(weightedAverageTTD) ? "" : Constants.percentageFormat.format(weightedAverageTTD) + " " + timeUnit) +
+					"," + (Double.isNaN(scenariosDetected) ? "" : Constants.percentageFormat.format(scenariosDetected)) + "%");
 		}
 		
-		if(allConfigs) {
-			if(!allConfigsMap.get(type).containsKey(run)) {
-				allConfigsMap.get(type).put(run, new LinkedHashMap<Integer, Configuration>());
+		if(allConfigs && iteration >= 0) { //Skip the initialization iterations
+			float scenariosDetected = configuration.countScenariosDetected();
+			
+			StringBuilder line = new StringBuilder();
+			line.append(iteration + "," + Constants.decimalFormat.format(weightedAverageTTD) + " " + timeUnit + "," + scenariosDetected);
+			for(ExtendedSensor sensor: configuration.getExtendedSensors()) {
+				if(sensor.getSensorType().contains("Electrical Conductivity"))
+					line.append("," + sensor.getXYZ().toString() + "+" + sensor.getPairXYZ().toString() + " " + Sensor.sensorAliases.get(sensor.getSensorType()));
+				else
+					line.append("," + sensor.getXYZ().toString() + " " + Sensor.sensorAliases.get(sensor.getSensorType()));
 			}
-			allConfigsMap.get(type).get(run).put(iteration, new Configuration(configuration));
+			stream.append(getRunFile(type, run), "Iteration,Average TTD (Weighted),Scenarios Detected,Sensors", iteration, line.toString());
 		}
 		
-		if(resultsPlots) {
+		if(resultsPlots && (plotRun == null || plotRun == run)) {
 			ttdPlots.addData(type, iteration, configuration, set);			
 		}
 	}
 	
-	public class ObjectiveResult {
-		public float timeToDetectionInDetected;
-		public float percentScenariosDetected;
-		public ObjectiveResult(float ttd, float p) {
-			this.timeToDetectionInDetected = ttd;
-			this.percentScenariosDetected = p;
+	// Adds the configuration to the summary of unique best configurations if it is as good as the best so far
+	public void addBest(ExtendedConfiguration configuration, ScenarioSet set) {
+		if(bestConfigSumList.contains(configuration))
+			return;
+		float ttd = configuration.getNormalizedAverageTimeToDetection(set.getScenarioWeights());
+		float percent = configuration.getNormalizedPercentScenariosDetected(set.getScenarioWeights(), set.getTotalScenarioWeight());
+		float global_ttd = ttd + (1-percent)*1000000; //penalty
+		if(Float.compare(global_ttd, bestObjValue) < 0) {
+			// Clear the list and set this as our new best objective value
+			bestConfigSumList.clear();
+			bestConfigSumTTDs.clear();
+			bestConfigSumPercents.clear();
+			bestObjValue = global_ttd;
+		}
+		
+		boolean newConfiguration = true;
+		if(Float.compare(global_ttd, bestObjValue) == 0) {
+			// Check if the configuration already exists in the best configuration list
+			for(ExtendedConfiguration configurationCheck: bestConfigSumList) {
+				if(configuration.checkForMatch(configurationCheck)) {
+					newConfiguration = false;
+					break;
+				}
+			}
+			if(newConfiguration) {
+				ExtendedConfiguration newExtendedConfiguration = new ExtendedConfiguration();
+				for(ExtendedSensor sensor: configuration.getExtendedSensors()) {
+					if(sensor.isTriggering())
+						newExtendedConfiguration.addSensor(sensor.makeCopy());
+				}
+				newExtendedConfiguration.setTimesToDetection(configuration.getTimesToDetection());
+				bestConfigSumList.add(newExtendedConfiguration);
+				bestConfigSumTTDs.put(newExtendedConfiguration, ttd);
+				bestConfigSumPercents.put(newExtendedConfiguration, percent);
+			}
+		}
+	}
+	
+	// Continues a checkpointed run: earlier runs are already on disk and this run's files are cut back to the checkpoint
+	public void resume(int run, int iteration) {
+		for(Type type: Type.values()) {
+			for(int earlier=0; earlier<=run; earlier++)
+				objPerIterSumRuns.get(type).add(earlier);
+			stream.resume(getRunFile(type, run), iteration);
+			stream.resume(getObjPerIterSumPart(type, run), iteration);
 		}
 	}
+	
+	public static String getRunFile(Type type, int run) {
+		return "run_" + run + "_" + type.toString() + ".csv";
+	}
+	
+	// The objective summary rows of one run: iteration, then the TTD and percent detected columns
+	public static String getObjPerIterSumPart(Type type, int run) {
+		return "objective_summary_" + type.toString() + "_run" + run + ".part";
+	}
 }
@@ -0,0 +1,122 @@
+package utilities;
+
+import java.util.Random;
+
+/**
+ * Seeded random number generator that can be given a separate stream per thread.
+ * Parallel annealing chains each set their own stream so they don't share (or fight over) one sequence,
+ * while every other caller of Constants.random keeps the original seeded sequence.
+ * The shared sequence uses the same generator as java.util.Random, so seeded results are unchanged. Thread streams use
+ * SplitMix64, the generator behind SplittableRandom, seeded by mixing the stream's index into the seed, so stream i is
+ * the same for a given seed whatever was drawn before it and however many threads run.
+ * The state of either can be read and restored so a checkpointed run continues with the same numbers.
+ */
+
+public class ChainRandom extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ThreadLocal<Stream> streams = new ThreadLocal<Stream>();
+	private Stream base; // Set by setSeed, which Random's constructor calls before the fields are initialized
+	private long seed;
+
+	public ChainRandom(long seed) {
+		super(seed);
+	}
+
+	@Override
+	public synchronized void setSeed(long seed) {
+		super.setSeed(seed);
+		base = new Lcg(seed);
+		this.seed = seed;
+	}
+
+	// Gives the calling thread the stream with this index, until clearStream() is called
+	public void setStream(int index) {
+		long streamSeed;
+		synchronized(this) {
+			streamSeed = SplitMix.mix64(seed + (index+1) * SplitMix.GAMMA);
+		}
+		streams.set(new SplitMix(streamSeed));
+	}
+
+	public void clearStream() {
+		streams.remove();
+	}
+
+	// The state of the calling thread's stream, or of the shared sequence if it has none
+	public long getState() {
+		Stream stream = streams.get();
+		if(stream != null)
+			return stream.state;
+		synchronized(this) {
+			return base.state;
+		}
+	}
+
+	public void setState(long state) {
+		Stream stream = streams.get();
+		if(stream != null) {
+			stream.state = state;
+			return;
+		}
+		synchronized(this) {
+			base.state = state;
+		}
+	}
+
+	// Every nextX method of Random goes through here
+	@Override
+	protected int next(int bits) {
+		Stream stream = streams == null ? null : streams.get(); // Random's constructor runs before the field is set
+		if(stream != null)
+			return stream.next(bits);
+		synchronized(this) {
+			return base.next(bits);
+		}
+	}
+
+	private static abstract class Stream {
+		protected long state;
+
+		protected abstract int next(int bits);
+	}
+
+	// The linear congruential generator from java.util.Random
+	private static class Lcg extends Stream {
+		private static final long MULTIPLIER = 0x5DEECE66DL;
+		private static final long ADDEND = 0xBL;
+		private static final long MASK = (1L << 48) - 1;
+
+		private Lcg(long seed) {
+			state = (seed ^ MULTIPLIER) & MASK;
+		}
+
+		@Override
+		protected int next(int bits) {
+			state = (state * MULTIPLIER + ADDEND) & MASK;
+			return (int)(state >>> (48 - bits));
+		}
+	}
+
+	// SplitMix64 with SplittableRandom's default gamma, the state is a counter so it is one long like the LCG
+	private static class SplitMix extends Stream {
+		private static final long GAMMA = 0x9e3779b97f4a7c15L;
+
+		private SplitMix(long seed) {
+			state = seed;
+		}
+
+		@Override
+		protected int next(int bits) {
+			state += GAMMA;
+			return (int)(mix64(state) >>> (64 - bits));
+		}
+
+		private static long mix64(long z) {
+			z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+			z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+			return z ^ (z >>> 31);
+		}
+	}
+}
@@ -5,7 +5,6 @@ import java.io.IOException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -14,6 +13,8 @@ import java.util.logging.SimpleFormatter;
 import org.eclipse.swt.graphics.Color;
 import org.eclipse.swt.widgets.Display;
 
+import functions.CoolingSchedule.SCHEDULE;
+
 /**
  * Constants for use throughout code, the booleans at the top and random seed can be changed to alter functionality
  * @author port091
@@ -25,6 +26,22 @@ public class Constants {
 	// These probably be eventually wrapped into the code directly, but for now give us functionality for debugging/developing extensions without breaking the working release
 	public static boolean buildDev = false;
 	public static boolean runThreaded = true;
+	public static int parallelism = Math.max(1, Runtime.getRuntime().availableProcessors()-1); //Worker threads used when runThreaded is on
+	public static boolean runIncremental = true; //Only re-evaluate the sensor that changed between configurations
+	public static boolean verifyIncremental = false; //Check every incremental evaluation against a full recompute
+	public static int objectiveCacheSize = 2000; //Scored configurations kept so revisits skip the objective, 0 turns it off
+	public static boolean runChainsInParallel = false; //Run multiple runs as parallel annealing chains that exchange configurations
+	public static int chainExchanges = 20; //How many times per run the parallel chains meet
+	public static double chainTemperatureRatio = 0.5; //Each chain on the ladder runs at this fraction of the previous chain's temperature
+	public static boolean useGuidedMutation = false; //Bias sensor moves toward nodes that detect missed scenarios, see GuidedMutation
+	public static SCHEDULE coolingSchedule = SCHEDULE.EXPONENTIAL; //How the annealing temperature falls over a run, see CoolingSchedule
+	public static boolean earlyStop = false; //End a run once it has converged instead of running every iteration
+	public static double stagnationFraction = 0.3; //Converged means no new best for this fraction of the iterations...
+	public static double minAcceptanceRate = 0.05; //...and fewer than this share of recent proposals accepted
+	public static boolean greedyStart = false; //Start the annealing from a greedy design instead of the initial configuration, see LazyGreedy
+	public static int checkpointInterval = 300; //Seconds between checkpoints of runs in the results directory, 0 turns them off, see Checkpoint
+	public static boolean resume = false; //Continue from the checkpoint in the results directory instead of starting over
+	public static boolean useDetectionCache = true; //Save detection maps under the working directory and reload them while the hdf5 files are unchanged
 	public static boolean runScripts = true;
 	public static boolean useParetoOptimal = true;
 	public static boolean runningJar = false; 
@@ -36,15 +53,15 @@ public class Constants {
 	public static String userDir = userDirectory.getPath();
 	public static String parentDir = userDirectory.getParent();
 	
-	public static Color black = new Color(Display.getCurrent(), 0, 0, 0);
-	public static Color red = new Color(Display.getCurrent(), 255, 0, 0);
-	public static Color grey = new Color(Display.getCurrent(), 109, 109, 109);
-	public static Color white = new Color(Display.getCurrent(), 255, 255, 255);
+	public static Color black = createColor(0, 0, 0);
+	public static Color red = createColor(255, 0, 0);
+	public static Color grey = createColor(109, 109, 109);
+	public static Color white = createColor(255, 255, 255);
 
 	// "Diana Bacon Runs 03"; 
 	public static String RUN_TEST =  "STORM";//"Bacon Base Case with Flux 3-D";//"120517_small_domain_STOMP_runs";//"Bacon Base Case with Flux 3-D";
 
-	public static Random random = new Random(1); //Right now this is seeded, this way we have reproducable results. Should probably un-seed for release.
+	public static ChainRandom random = new ChainRandom(1); //Right now this is seeded, this way we have reproducable results. Should probably un-seed for release.
 	
 	public static DecimalFormat decimalFormat = new DecimalFormat("###.###");
 	public static DecimalFormat percentageFormat = new DecimalFormat("###.##");
@@ -59,6 +76,16 @@ public class Constants {
 	
 	public static Timer timer = new Constants().new Timer();
 	
+	// The colors are only used by the wizard, so they are left null when running headless (see BatchRunner)
+	private static Color createColor(int red, int green, int blue) {
+		try {
+			Display display = Display.getCurrent();
+			return display == null ? null : new Color(display, red, green, blue);
+		} catch (Throwable e) { // No SWT library for this platform
+			return null;
+		}
+	}
+	
 	// This function takes a 0-indexed index and returns a 1-indexed node number. (See above)
 	public static int getNodeNumber(Point3i ijkDimensions, int index) {
 		return getNodeNumber(ijkDimensions.getI(), ijkDimensions.getJ(), ijkDimensions.getK(), index);
@@ -149,6 +176,10 @@ public class Constants {
 		private long perConfiguration;
 		private long perScenario;
 		private long perTime;
+		private double utilisation;
+		private long utilisationCount;
+		private long cacheHits;
+		private long cacheMisses;
 
 		public synchronized void addPerConfiguration(long time) {
 			perConfiguration += time;
@@ -164,9 +195,36 @@ public class Constants {
 			perTime += time;
 		}
 		
+		
+		public synchronized void addUtilisation(double fraction) {
+			utilisation += fraction;
+			utilisationCount++;
+		}
+		
+		
+		public synchronized void addCacheHit() {
+			cacheHits++;
+		}
+		
+		
+		public synchronized void addCacheMiss() {
+			cacheMisses++;
+		}
+		
+		
+		public synchronized float getCacheHitRate() {
+			long total = cacheHits + cacheMisses;
+			return total == 0 ? 0 : (float)cacheHits / total;
+		}
+		
 		@Override 
-		public String toString() {
-			return "Per configuration, scenario, time: " + perConfiguration + ", " + perScenario + ", " + perTime;
+		public synchronized String toString() {
+			String text = "Per configuration, scenario, time: " + perConfiguration + ", " + perScenario + ", " + perTime;
+			if(utilisationCount > 0)
+				text += "; Average thread utilisation: " + percentageFormat.format(utilisation / utilisationCount * 100) + "%";
+			if(cacheHits + cacheMisses > 0)
+				text += "; Objective cache hits: " + cacheHits + "/" + (cacheHits + cacheMisses) + " (" + percentageFormat.format(getCacheHitRate() * 100) + "%)";
+			return text;
 		}
 	}
 	
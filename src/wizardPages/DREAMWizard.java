@@ -12,6 +12,7 @@ import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
@@ -52,6 +53,7 @@ import visualization.DomainVisualization;
 import wizardPages.Page_LeakageCriteria.SensorData;
 import functions.SimulatedAnnealing;
 import functions.Function;
+import functions.LazyGreedy;
 import functions.MutationFunction.MUTATE;
 
 /**
@@ -182,6 +184,12 @@ public class DREAMWizard extends Wizard {
 	public boolean performFinish() {
 		return true;
 	}
+	
+	@Override
+	public void dispose() {
+		super.dispose();
+		Function.shutdownEngine(); // Stop the objective worker threads along with the wizard
+	}
 
 
 	public static void main(final String[] args) {
@@ -443,11 +451,16 @@ public class DREAMWizard extends Wizard {
 							
 							// First we generate a TTD matrix based on new selected sensors settings
 							// Only do this for H5 variables, IAM is already in detectionMap
-							if(data.fileType=="hdf5") {
+							// All new sensors are built together, so each file is only read once
+							if(data.fileType=="hdf5" && !newSensors.isEmpty()) {
+								List<SensorSetting> settings = new ArrayList<SensorSetting>();
+								List<String> specificTypes = new ArrayList<String>();
 								for(SensorData sensor: newSensors) {
-									if(monitor.isCanceled()) break;
-									HDF5Interface.createDetectionMap(monitor, set, set.getSensorSettings(sensor.sensorType), sensor.specificType);
+									if(specificTypes.contains(sensor.specificType)) continue;
+									settings.add(set.getSensorSettings(sensor.sensorType));
+									specificTypes.add(sensor.specificType);
 								}
+								HDF5Interface.createDetectionMaps(monitor, set, settings, specificTypes);
 							}
 							
 							// Last we create a list of valid nodes from the new detectionMap
@@ -461,11 +474,9 @@ public class DREAMWizard extends Wizard {
 							
 							// If the user canceled, clear any added data
 							if(monitor.isCanceled()) {
-								for(String scenario: set.getAllScenarios()) {
-									for(SensorData sensor: newSensors) {
-										set.getDetectionMap().get(scenario.toString()).remove(sensor.specificType);
-										set.getSensorSettings(sensor.sensorType).clearNodes();
-									}
+								for(SensorData sensor: newSensors) {
+									set.getDetectionMap().remove(sensor.specificType);
+									set.getSensorSettings(sensor.sensorType).clearNodes();
 								}
 							}
 							
@@ -550,13 +561,28 @@ public class DREAMWizard extends Wizard {
 			dialog.run(true, false, new IRunnableWithProgress() {
 				@Override
 				public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
-					monitor.beginTask("Running full enumeration ", 1000); // Not sure who much work this will end up being	
+					monitor.beginTask("Running exact search ", IProgressMonitor.UNKNOWN); // Pruning makes the amount of work unknown up front
 					runner.setMonitor(monitor);
 					runner.fullEnumeration(initialConfiguration, set);	
 				}
 			});
 		}
 
+		public void runGreedy() throws Exception {
+			// Resets the vis window
+			wizard.launchVisWindow(true, true);
+			final LazyGreedy greedy = new LazyGreedy();
+			greedy.setDomainViewer(wizard.domainViewer);
+			dialog.run(true, false, new IRunnableWithProgress() {
+				@Override
+				public void run(IProgressMonitor monitor) throws InvocationTargetException, InterruptedException {
+					monitor.beginTask("Building greedy design ", IProgressMonitor.UNKNOWN);
+					greedy.setMonitor(monitor);
+					greedy.run(initialConfiguration, set, "");
+				}
+			});
+		}
+
 		public void setWorkingDirectory(final String dir) {
 			runner.setResultsDirectory(dir);
 		}
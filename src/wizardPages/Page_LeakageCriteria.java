@@ -1075,7 +1075,7 @@ public class Page_LeakageCriteria extends DreamWizardPage implements AbstractWiz
 			errorFound(true, "  No nodes were found for the provided parameters.");
 		
 		// Calculate the volume of aquifer degraded
-		volumeOfAquiferDegraded(nodes);
+		SensorSetting.calculateVolumeDegradedByYear(data.getSet());
 		
 		// Initialize the active tests for the next page
 		data.getSet().setupInferenceTest();
@@ -1090,68 +1090,6 @@ public class Page_LeakageCriteria extends DreamWizardPage implements AbstractWiz
 	}
 	
 	
-	// Calculates a list of timesteps and a map of volume degraded by year
-	private void volumeOfAquiferDegraded(final HashSet<Integer> nodes) {
-		
-		// Loop through scenarios and sensor types to get a list of all detection times or timesteps
-		// Also create a TTD map that combines all the selected sensors (for quicker VOD calculations)
-		Map<String, HashMap<Integer, Float>> earliestDetectionForAllSensors = new HashMap<String, HashMap<Integer, Float>>(); //Scenario <NodeNumber, Detection>
-		for(String scenario: data.getSet().getAllScenarios())
-			earliestDetectionForAllSensors.put(scenario, new HashMap<Integer, Float>()); //initialize scenarios
-		HashSet<Float> years = new HashSet<Float>();
-		for(SensorData sensor: sensorData.values()) {
-			if(!sensor.isIncluded) continue; //Only included sensors
-			if(!sensor.sensorType.contains("Electrical Conductivity")) { //Handle normal sensors
-				for(String scenario: data.getSet().getDetectionMap().get(sensor.specificType).keySet()) {
-					for(Integer nodeNumber: data.getSet().getDetectionMap().get(sensor.specificType).get(scenario).keySet()) {
-						float ttd = data.getSet().getDetectionMap().get(sensor.specificType).get(scenario).get(nodeNumber);
-						years.add(ttd); //TODO: If IAM has too many steps, round values to nearest year to reduce
-						if(!earliestDetectionForAllSensors.get(scenario).containsKey(nodeNumber))
-							earliestDetectionForAllSensors.get(scenario).put(nodeNumber, ttd);
-						else if (ttd < earliestDetectionForAllSensors.get(scenario).get(nodeNumber))
-							earliestDetectionForAllSensors.get(scenario).put(nodeNumber, ttd);
-					}
-				}
-			} else { // ERT is currently stored in a separate matrix, handle it differently
-				E4DSensors.ertNewPairing();
-				for(String scenario: E4DSensors.ertDetectionTimes.get(sensor.detectionThreshold).keySet()) {
-					for(Integer primaryNode: E4DSensors.ertDetectionTimes.get(sensor.detectionThreshold).get(scenario).keySet()) {
-						for(Float ttd: E4DSensors.ertDetectionTimes.get(sensor.detectionThreshold).get(scenario).get(primaryNode).values()) {
-							years.add(ttd);
-							if(!earliestDetectionForAllSensors.get(scenario).containsKey(primaryNode))
-								earliestDetectionForAllSensors.get(scenario).put(primaryNode, ttd);
-							else if (ttd < earliestDetectionForAllSensors.get(scenario).get(primaryNode))
-								earliestDetectionForAllSensors.get(scenario).put(primaryNode, ttd);
-						}
-					}
-				}
-			}
-		}
-		
-		// Sort the timesteps
-		ArrayList<Float> sortedYears = new ArrayList<Float>(years);
-		java.util.Collections.sort(sortedYears);
-		
-		// Determine the volume of aquifer degraded per scenario
-		Map<String, HashMap<Float, Float>> volumeDegradedByYear = new HashMap<String, HashMap<Float, Float>>(); //Scenario <Year, VolumeDegraded>
-		float vad = 0;
-		for(String scenario: data.getSet().getScenarios()) {
-			volumeDegradedByYear.put(scenario, new HashMap<Float, Float>());
-			for(Float time: sortedYears) {
-				for(Integer nodeNumber: earliestDetectionForAllSensors.get(scenario).keySet()) {
-					if(earliestDetectionForAllSensors.get(scenario).get(nodeNumber) <= time) {
-						Point3i location = data.getSet().getNodeStructure().getIJKFromNodeNumber(nodeNumber); //get location of node that detected at this time
-						vad += data.getSet().getNodeStructure().getVolumeOfNode(location); //convert the found node into a volume and add cumulatively
-					}
-				}
-				volumeDegradedByYear.get(scenario).put(time, vad);
-			}
-		}
-		
-		// Save the VOD information
-		SensorSetting.setVolumeDegradedByYear(volumeDegradedByYear, sortedYears);
-	}
-	
 	//We want to do the same process when the page is completed or the "find triggering nodes" is selected
 	private void findTriggeringNodes() {
 		//Removal portion of the code where it removes the sensorname from sensor settings.
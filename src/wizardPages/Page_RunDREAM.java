@@ -29,6 +29,7 @@ import org.eclipse.swt.graphics.FontData;
 import org.eclipse.swt.layout.GridData;
 import org.eclipse.swt.layout.GridLayout;
 import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Combo;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.DirectoryDialog;
 import org.eclipse.swt.widgets.Event;
@@ -47,7 +48,9 @@ import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
+import functions.CoolingSchedule.SCHEDULE;
 import objects.Configuration;
+import objects.DetectionMatrix;
 import objects.ExtendedConfiguration;
 import objects.ExtendedSensor;
 import objects.NodeStructure;
@@ -83,6 +86,7 @@ public class Page_RunDREAM extends DreamWizardPage implements AbstractWizardPage
 	private Button showPlots;
 	private Button plotResults;
 	private Button fullEnumerationButton;
+	private Button greedyDesignButton;
 	private Button ijkToxyzButton;
 	private Button randomSampleButton;
 	private Button solutionSpaceButton;
@@ -251,6 +255,7 @@ public class Page_RunDREAM extends DreamWizardPage implements AbstractWizardPage
 					vadButton.setEnabled(false);
 					iterativeProceedureButton.setEnabled(false);
 					fullEnumerationButton.setEnabled(false);
+					greedyDesignButton.setEnabled(false);
 					ijkToxyzButton.setEnabled(false);
 					randomSampleButton.setEnabled(false);
 					solutionSpaceButton.setEnabled(false);
@@ -263,6 +268,7 @@ public class Page_RunDREAM extends DreamWizardPage implements AbstractWizardPage
 					if (!runsError && !iterationsError)
 						iterativeProceedureButton.setEnabled(true);
 					fullEnumerationButton.setEnabled(true);
+					greedyDesignButton.setEnabled(true);
 					ijkToxyzButton.setEnabled(true);
 					if (!samplesError)
 						randomSampleButton.setEnabled(true);
@@ -368,6 +374,81 @@ public class Page_RunDREAM extends DreamWizardPage implements AbstractWizardPage
 		plotResults.setText("Plot Results");
 		plotResults.setSelection(ResultPrinter.runScripts);
 		
+		// Selecting Parallel Runs will run multiple runs at the same time as chains that share their best configurations
+		final Button parallelRuns = new Button(runGroup, SWT.CHECK);
+		parallelRuns.setText("Parallel Runs");
+		parallelRuns.setToolTipText("Run all runs at the same time, periodically exchanging configurations between them");
+		parallelRuns.setSelection(Constants.runChainsInParallel);
+		parallelRuns.addListener(SWT.Selection, new Listener() {
+			@Override
+			public void handleEvent(Event arg0) {
+				Constants.runChainsInParallel = parallelRuns.getSelection();
+			}
+		});
+		
+		// Selecting Guided Mutation moves sensors toward nodes that detect the scenarios the configuration misses
+		final Button guidedMutation = new Button(runGroup, SWT.CHECK);
+		guidedMutation.setText("Guided Mutation");
+		guidedMutation.setToolTipText("Move sensors toward nodes that detect missed scenarios, or detect sooner, instead of purely at random");
+		guidedMutation.setSelection(Constants.useGuidedMutation);
+		guidedMutation.addListener(SWT.Selection, new Listener() {
+			@Override
+			public void handleEvent(Event arg0) {
+				Constants.useGuidedMutation = guidedMutation.getSelection();
+			}
+		});
+		
+		// The cooling schedule decides how quickly the annealing stops accepting worse configurations
+		Label scheduleLabel = new Label(runGroup, SWT.NULL);
+		scheduleLabel.setText("Cooling Schedule");
+		final Combo scheduleCombo = new Combo(runGroup, SWT.BORDER | SWT.DROP_DOWN | SWT.READ_ONLY);
+		for(SCHEDULE schedule: SCHEDULE.values())
+			scheduleCombo.add(schedule.toString());
+		scheduleCombo.setText(Constants.coolingSchedule.toString());
+		scheduleCombo.setToolTipText("Exponential cools at a fixed rate, Adaptive follows a target acceptance rate, Reheating warms up again when the best stops improving");
+		scheduleCombo.addModifyListener(new ModifyListener() {
+			@Override
+			public void modifyText(ModifyEvent e) {
+				Constants.coolingSchedule = SCHEDULE.values()[scheduleCombo.getSelectionIndex()];
+			}
+		});
+		
+		// Selecting Early Stop ends each run once it has stopped improving, the iterations saved are listed in early_stopping.csv
+		final Button earlyStop = new Button(runGroup, SWT.CHECK);
+		earlyStop.setText("Early Stop");
+		earlyStop.setToolTipText("Stop a run once the best configuration has not improved for a while and few new configurations are accepted");
+		earlyStop.setSelection(Constants.earlyStop);
+		earlyStop.addListener(SWT.Selection, new Listener() {
+			@Override
+			public void handleEvent(Event arg0) {
+				Constants.earlyStop = earlyStop.getSelection();
+			}
+		});
+		
+		// Selecting Greedy Start begins each run from a greedy design instead of an empty configuration
+		final Button greedyStart = new Button(runGroup, SWT.CHECK);
+		greedyStart.setText("Greedy Start");
+		greedyStart.setToolTipText("Start the annealing from a design built by adding whichever sensor helps most until the budget or wells run out");
+		greedyStart.setSelection(Constants.greedyStart);
+		greedyStart.addListener(SWT.Selection, new Listener() {
+			@Override
+			public void handleEvent(Event arg0) {
+				Constants.greedyStart = greedyStart.getSelection();
+			}
+		});
+		
+		// Selecting Resume continues from the checkpoint an interrupted run left in the output folder
+		final Button resume = new Button(runGroup, SWT.CHECK);
+		resume.setText("Resume");
+		resume.setToolTipText("Continue from the checkpoint a cancelled or interrupted run with the same settings left in the output folder, checkpoints are saved every " + Constants.checkpointInterval + " seconds");
+		resume.setSelection(Constants.resume);
+		resume.addListener(SWT.Selection, new Listener() {
+			@Override
+			public void handleEvent(Event arg0) {
+				Constants.resume = resume.getSelection();
+			}
+		});
+		
 		Group diagnosticGroup = new Group(container, SWT.SHADOW_NONE);
 		diagnosticGroup.setText("Diagnostic Tools");
 		diagnosticGroup.setFont(boldFontSmall);
@@ -548,6 +629,22 @@ public class Page_RunDREAM extends DreamWizardPage implements AbstractWizardPage
 		});
 		fullEnumerationButton.setVisible(Constants.buildDev);
 		
+		greedyDesignButton = new Button(devGroup, SWT.BALLOON);
+		greedyDesignButton.setSelection(true);
+		greedyDesignButton.setText(" Run Greedy Design  ");
+		greedyDesignButton.addListener(SWT.Selection, new Listener() {
+			@Override
+			public void handleEvent(Event arg0) {
+				data.setWorkingDirectory(outputFolder.getText());
+				try {
+					data.runGreedy();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		greedyDesignButton.setVisible(Constants.buildDev);
+		
 		ijkToxyzButton = new Button(devGroup, SWT.BALLOON);
 		ijkToxyzButton.setSelection(true);
 		ijkToxyzButton.setText("IJK to XYZ");
@@ -993,11 +1090,12 @@ public class Page_RunDREAM extends DreamWizardPage implements AbstractWizardPage
 					float[] avg = new float[solutionNodes.size()];
 					float[] count = new float[solutionNodes.size()];
 					// Each scenario should be a column
-					for(String scenario: data.getSet().getDetectionMap().get(parameter).keySet()) {
+					DetectionMatrix detections = data.getSet().getDetectionMatrix(parameter);
+					for(String scenario: detections.getScenarios()) {
 						// Each node should be a row
-						for(int node: data.getSet().getDetectionMap().get(parameter).get(scenario).keySet()) {
+						for(int node: detections.getDetectingNodes(scenario)) {
 							int i = solutionNodes.indexOf(node);
-							float ttd = data.getSet().getDetectionMap().get(parameter).get(scenario).get(node);
+							float ttd = detections.getTTD(scenario, node);
 							ttds[i][scenarios.indexOf(scenario)] = ttd;
 							if(ttd < min[i]) min[i] = ttd;
 							if(ttd > max[i]) max[i] = ttd;